@@ -0,0 +1,14 @@
+package ru.ifmo.cs;
+
+/**
+ * Точка входа для запуска из тонкого jar, когда JavaFX лежит в пути классов, а не в пути модулей.
+ * Класс не наследует Application, поэтому лаунчер java не требует модулей JavaFX при старте.
+ */
+public final class Launcher {
+    private Launcher() {
+    }
+
+    public static void main(String[] args) {
+        App.main(args);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.ifmo.cs.controller;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Стеки отмены и повтора неизменяемых версий состояния. Версии хранятся целиком, поэтому
+ * история дешёвая, только если версии разделяют структуру (как {@link ru.ifmo.cs.model.PersistentPoints}).
+ * Глубина отмены ограничена, самые старые версии отбрасываются.
+ */
+final class EditHistory<T> {
+    private final int limit;
+    private final Deque<Entry<T>> undo = new ArrayDeque<>();
+    private final Deque<Entry<T>> redo = new ArrayDeque<>();
+
+    EditHistory(int limit) {
+        this.limit = limit;
+    }
+
+    /** Запоминает версию до правки label; повтор отменённых правок после новой правки невозможен. */
+    void record(T previous, String label) {
+        undo.push(new Entry<>(previous, label));
+        if (undo.size() > limit) {
+            undo.removeLast();
+        }
+        redo.clear();
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /** Название правки, которую отменит {@link #undo}; null, если отменять нечего. */
+    String getUndoLabel() {
+        return undo.isEmpty() ? null : undo.peek().label;
+    }
+
+    String getRedoLabel() {
+        return redo.isEmpty() ? null : redo.peek().label;
+    }
+
+    /** Версия до последней правки; current переносится в стек повтора. */
+    T undo(T current) {
+        Entry<T> entry = undo.pop();
+        redo.push(new Entry<>(current, entry.label));
+        return entry.version;
+    }
+
+    T redo(T current) {
+        Entry<T> entry = redo.pop();
+        undo.push(new Entry<>(current, entry.label));
+        return entry.version;
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+    }
+
+    private static final class Entry<T> {
+        final T version;
+        final String label;
+
+        Entry(T version, String label) {
+            this.version = version;
+            this.label = label;
+        }
+    }
+}
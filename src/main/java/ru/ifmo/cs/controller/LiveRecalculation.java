@@ -0,0 +1,111 @@
+package ru.ifmo.cs.controller;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.RegressionResult;
+
+/**
+ * Живой пересчёт при изменении точек.
+ * <p>
+ * Серия изменений сливается в один расчёт: каждое изменение перезапускает окно ожидания, и расчёт
+ * начинается, только когда изменения затихли. Снимок точек берётся в потоке JavaFX, расчёт идёт
+ * в фоновом потоке. У каждого запуска есть номер поколения; новое изменение увеличивает номер и прерывает
+ * выполняемый расчёт. Результат применяется, только если его поколение всё ещё текущее, поэтому устаревший
+ * расчёт, не отреагировавший на прерывание, не попадёт на экран.
+ * <p>
+ * Все методы вызываются из потока JavaFX.
+ */
+final class LiveRecalculation {
+    private final PauseTransition debounce;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "live-recalculation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Supplier<List<DataPoint>> snapshot;
+    private final Function<List<DataPoint>, RegressionResult> calculation;
+    private final BiConsumer<List<DataPoint>, RegressionResult> onResult;
+    private final Consumer<Exception> onError;
+
+    private boolean enabled;
+    private long generation;
+    private Future<?> running;
+
+    LiveRecalculation(Duration window, Supplier<List<DataPoint>> snapshot,
+                      Function<List<DataPoint>, RegressionResult> calculation,
+                      BiConsumer<List<DataPoint>, RegressionResult> onResult, Consumer<Exception> onError) {
+        this.snapshot = snapshot;
+        this.calculation = calculation;
+        this.onResult = onResult;
+        this.onError = onError;
+        this.debounce = new PauseTransition(window);
+        this.debounce.setOnFinished(event -> start());
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** При включении сразу планируется расчёт по текущим точкам. */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            changed();
+        } else {
+            cancel();
+        }
+    }
+
+    /** Точки изменились: выполняемый расчёт отменяется, окно ожидания начинается заново. */
+    void changed() {
+        if (!enabled) {
+            return;
+        }
+        cancel();
+        debounce.playFromStart();
+    }
+
+    /** Отменить запланированный и выполняемый расчёт; уже полученный результат не применяется. */
+    void cancel() {
+        generation++;
+        debounce.stop();
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    private void start() {
+        List<DataPoint> points = snapshot.get();
+        long started = generation;
+        running = executor.submit(() -> {
+            try {
+                RegressionResult result = calculation.apply(points);
+                Platform.runLater(() -> {
+                    if (started == generation) {
+                        running = null;
+                        onResult.accept(points, result);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (started == generation) {
+                        running = null;
+                        onError.accept(e);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -2,38 +2,63 @@ package ru.ifmo.cs.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.beans.InvalidationListener;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.control.SelectionMode;
+import javafx.util.Duration;
 import javafx.util.converter.DoubleStringConverter;
+import ru.ifmo.cs.model.ColumnEncoding;
 import ru.ifmo.cs.model.DataPoint;
-import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.SegmentedPoints;
+import ru.ifmo.cs.model.functions.AbstractFunctionApproximation;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.RobustLoss;
+import ru.ifmo.cs.service.BootstrapEngine;
+import ru.ifmo.cs.service.BootstrapIntervals;
+import ru.ifmo.cs.service.Correlation;
+import ru.ifmo.cs.service.CrossValidator;
 import ru.ifmo.cs.service.FileService;
+import ru.ifmo.cs.service.Instrumentation;
+import ru.ifmo.cs.service.LeastSquaresFit;
+import ru.ifmo.cs.service.ModelRegistry;
+import ru.ifmo.cs.service.ModelSelectionReport;
+import ru.ifmo.cs.service.OutOfCoreRegression;
+import ru.ifmo.cs.service.PrecisionBounds;
+import ru.ifmo.cs.service.ProgressMonitor;
 import ru.ifmo.cs.service.RegressionResult;
 import ru.ifmo.cs.service.RegressionService;
+import ru.ifmo.cs.service.ResidualDiagnostics;
+import ru.ifmo.cs.service.SessionFile;
+import ru.ifmo.cs.service.StreamedFit;
+import ru.ifmo.cs.service.SubsampleSelector;
 
 public class MainController {
     @FXML
-    private TableView<DataPoint> pointsTable;
+    private TableView<PointRow> pointsTable;
     @FXML
-    private TableColumn<DataPoint, Double> xColumn;
+    private TableColumn<PointRow, Double> xColumn;
     @FXML
-    private TableColumn<DataPoint, Double> yColumn;
+    private TableColumn<PointRow, Double> yColumn;
 
     @FXML
     private TextField xInput;
@@ -41,6 +66,22 @@ public class MainController {
     private TextField yInput;
     @FXML
     private Button addUpdateButton;
+    @FXML
+    private CheckBox liveModeCheckBox;
+    @FXML
+    private CheckBox refinementCheckBox;
+    @FXML
+    private ChoiceBox<ColumnEncoding> storageChoice;
+    @FXML
+    private ChoiceBox<LossChoice> lossChoice;
+    @FXML
+    private Button calculateButton;
+    @FXML
+    private Button cancelCalculationButton;
+    @FXML
+    private CheckBox bootstrapCheckBox;
+    @FXML
+    private ProgressBar calculationProgress;
 
     @FXML
     private LineChart<Number, Number> chart;
@@ -52,21 +93,39 @@ public class MainController {
     @FXML
     private TextArea resultsArea;
     @FXML
+    private TextArea diagnosticsArea;
+    @FXML
     private Label statusBar;
 
-    private final ObservableList<DataPoint> dataPoints = FXCollections.observableArrayList();
+    private final PointTableModel pointModel = new PointTableModel();
+    private final List<DataPoint> dataPoints = pointModel.asDataPoints();
     private RegressionController regressionController;
 
-    private final FileService fileService = new FileService();
-    private final RegressionService regressionService = new RegressionService();
-    private RegressionResult lastResult;
+    // Сервисы создаются при первом обращении: до первого расчёта не загружаются реестр моделей,
+    // commons-math, диалоги выбора файлов и JMX, и первый кадр появляется быстрее
+    private FileService fileService;
+    private FittingEngine engine;
+    private volatile RegressionResult lastResult; // Читается фоновыми расчётами для тёплого старта
+    private List<DataPoint> lastPoints; // Точки, по которым получен lastResult
+    private LiveRecalculation liveRecalculation;
+    private Task<?> calculation; // Выполняемый расчёт по кнопке "Рассчитать" или обработка большого файла
+    private volatile RobustLoss robustLoss; // null - обычный МНК; читается фоновыми расчётами
+    private volatile boolean nonlinearRefinement = Boolean.getBoolean(
+            AbstractFunctionApproximation.NONLINEAR_REFINEMENT_PROPERTY);
     
-    private DataPoint editingPoint = null; // Точка, которую мы редактируем
+    private int editingIndex = -1; // Индекс точки, которую мы редактируем
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_SIZE);
+
+    private static final int DETAIL_ROWS_LIMIT = 1000;
+    private static final int RESULT_CACHE_SIZE = 32;
+    private static final Duration LIVE_DEBOUNCE = Duration.millis(300);
 
     @FXML
     public void initialize() {
-        xColumn.setCellValueFactory(new PropertyValueFactory<>("x"));
-        yColumn.setCellValueFactory(new PropertyValueFactory<>("y"));
+        // Свойства строк создаются лениво, только для видимых ячеек
+        xColumn.setCellValueFactory(cell -> cell.getValue().xProperty());
+        yColumn.setCellValueFactory(cell -> cell.getValue().yProperty());
         
         // Настройка редактируемых ячеек
         xColumn.setCellFactory(TextFieldTableCell.forTableColumn(new DoubleStringConverter()));
@@ -76,18 +135,29 @@ public class MainController {
         
         // Обработчики для редактирования
         xColumn.setOnEditCommit(event -> {
-            DataPoint point = event.getRowValue();
-            point.setX(event.getNewValue());
-            updateStatus("Точка обновлена: (" + point.getX() + ", " + point.getY() + ")");
+            PointRow row = event.getRowValue();
+            pointModel.setPoint(row.getIndex(), event.getNewValue(), row.getY());
+            updateStatus("Точка обновлена: (" + row.getX() + ", " + row.getY() + ")");
         });
         
         yColumn.setOnEditCommit(event -> {
-            DataPoint point = event.getRowValue();
-            point.setY(event.getNewValue());
-            updateStatus("Точка обновлена: (" + point.getX() + ", " + point.getY() + ")");
+            PointRow row = event.getRowValue();
+            pointModel.setPoint(row.getIndex(), row.getX(), event.getNewValue());
+            updateStatus("Точка обновлена: (" + row.getX() + ", " + row.getY() + ")");
         });
         
-        pointsTable.setItems(dataPoints);
+        pointsTable.setItems(pointModel);
+        storageChoice.getItems().setAll(ColumnEncoding.values());
+        storageChoice.setValue(pointModel.getEncoding());
+        lossChoice.getItems().setAll(LossChoice.values());
+        lossChoice.setValue(LossChoice.LEAST_SQUARES);
+        refinementCheckBox.setSelected(nonlinearRefinement);
+
+        // Живой режим: без бутстрепа, он пересчитывается только по кнопке "Рассчитать"
+        liveRecalculation = new LiveRecalculation(LIVE_DEBOUNCE, pointModel::snapshot,
+                points -> calculate(points, false), this::showLiveResult,
+                e -> updateStatus("Ошибка расчета: " + e.getMessage()));
+        pointModel.addListener((InvalidationListener) observable -> handlePointsChanged());
 
         chart.setAnimated(false);
         chart.setCreateSymbols(false);
@@ -102,17 +172,16 @@ public class MainController {
             double x = parseDouble(xInput.getText(), "X");
             double y = parseDouble(yInput.getText(), "Y");
 
-            if (editingPoint != null) {
+            if (editingIndex >= 0) {
                 // Режим редактирования - обновляем существующую точку
-                editingPoint.setX(x);
-                editingPoint.setY(y);
-                editingPoint = null;
+                pointModel.setPoint(editingIndex, x, y);
+                editingIndex = -1;
                 addUpdateButton.setText("Добавить");
                 clearInputs();
                 updateStatus("Точка обновлена: (" + x + ", " + y + ")");
             } else {
                 // Режим добавления - добавляем новую точку
-                dataPoints.add(new DataPoint(x, y));
+                pointModel.addPoint(x, y);
                 clearInputs();
                 updateStatus("Точка добавлена: (" + x + ", " + y + ")");
             }
@@ -123,15 +192,19 @@ public class MainController {
 
     @FXML
     private void handleRemovePoint() {
-        ObservableList<DataPoint> selectedPoints = pointsTable.getSelectionModel().getSelectedItems();
+        int[] selectedIndices = pointsTable.getSelectionModel().getSelectedIndices().stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
 
-        if (selectedPoints.isEmpty()) {
+        if (selectedIndices.length == 0) {
             updateStatus("Ошибка: Не выбраны точки для удаления");
             return;
         }
 
-        dataPoints.removeAll(selectedPoints);
-        updateStatus("Удалено точек: " + selectedPoints.size());
+        pointsTable.getSelectionModel().clearSelection();
+        cancelEditing();
+        pointModel.removeIndices(selectedIndices);
+        updateStatus("Удалено точек: " + selectedIndices.length);
     }
 
     @FXML
@@ -140,16 +213,15 @@ public class MainController {
             updateStatus("Точек нет");
             return;
         }
-        dataPoints.clear();
-        chart.getData().clear();
-        resultsArea.clear();
-        lastResult = null;
+        cancelEditing();
+        pointModel.clear();
+        clearResults();
         updateStatus("Все точки удалены");
     }
 
     @FXML
     private void handleEditPoint() {
-        DataPoint selectedPoint = pointsTable.getSelectionModel().getSelectedItem();
+        PointRow selectedPoint = pointsTable.getSelectionModel().getSelectedItem();
 
         if (selectedPoint == null) {
             updateStatus("Ошибка: Не выбрана точка для редактирования");
@@ -157,7 +229,7 @@ public class MainController {
         }
 
         // Устанавливаем режим редактирования
-        editingPoint = selectedPoint;
+        editingIndex = selectedPoint.getIndex();
         addUpdateButton.setText("Обновить");
         
         // Заполняем поля ввода текущими значениями выбранной точки
@@ -169,27 +241,115 @@ public class MainController {
 
     @FXML
     private void handleCancelEdit() {
-        editingPoint = null;
+        cancelEditing();
+        updateStatus("Режим редактирования отменен");
+    }
+
+    private void cancelEditing() {
+        editingIndex = -1;
         clearInputs();
         addUpdateButton.setText("Добавить");
-        updateStatus("Режим редактирования отменен");
     }
 
     @FXML
     private void handleLoadFile() {
-        File file = fileService.showOpenDialog(pointsTable.getScene().getWindow());
+        File file = fileService().showOpenDialog(pointsTable.getScene().getWindow());
         if (file == null)
             return;
 
         try {
-            List<DataPoint> points = fileService.loadPoints(file);
-            dataPoints.setAll(points);
+            List<DataPoint> points = fileService().loadPoints(file);
+            cancelEditing();
+            pointModel.setPoints(points);
             updateStatus("Загружено точек: " + points.size());
         } catch (Exception e) {
             updateStatus("Ошибка загрузки: " + e.getMessage());
         }
     }
 
+    /**
+     * Расчёт по файлу, который не загружается в таблицу: данные читаются сегментами вне кучи.
+     */
+    @FXML
+    private void handleLoadLargeFile() {
+        if (calculation != null) {
+            return;
+        }
+        File file = fileService().showOpenLargeDialog(pointsTable.getScene().getWindow());
+        if (file == null)
+            return;
+
+        // Проход по файлу может занять минуты: он идёт в фоне с тем же индикатором и отменой, что и расчёт
+        liveRecalculation.cancel();
+        LargeFileTask task = new LargeFileTask(file, bootstrapCheckBox.isSelected());
+        task.setOnSucceeded(event -> {
+            finishCalculation();
+            showLargeFileResult(file, task.getValue());
+        });
+        task.setOnCancelled(event -> {
+            finishCalculation();
+            updateStatus("Обработка файла прервана");
+        });
+        task.setOnFailed(event -> {
+            finishCalculation();
+            Instrumentation.getDefault().recordFailure(Instrumentation.CALCULATION, task.getException());
+            updateStatus("Ошибка обработки файла: " + task.getException().getMessage());
+        });
+        startBackground(task, "large-file", "Обработка файла " + file.getName() + "...");
+    }
+
+    private void showLargeFileResult(File file, List<StreamedFit> fits) {
+        if (fits.isEmpty()) {
+            updateStatus("Ошибка: Нет моделей, применимых к данным файла");
+            return;
+        }
+        StreamedFit best = fits.stream()
+                .min(Comparator.comparingDouble(StreamedFit::getStandardDeviation))
+                .orElseThrow();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("РЕЗУЛЬТАТЫ ПО ФАЙЛУ ").append(file.getName())
+                .append(" (").append(best.getPointCount()).append(" точек, вне памяти)\n");
+        sb.append("========================================\n\n");
+        sb.append("Наилучшая аппроксимация: ").append(best.getName()).append("\n\n");
+        for (StreamedFit fit : fits) {
+            sb.append("ФУНКЦИЯ: ").append(fit.getName()).append("\n");
+            sb.append("Коэффициенты: ").append(fit.getCoefficientsAsString()).append("\n");
+            BootstrapIntervals intervals = fit.getCoefficientIntervals();
+            if (intervals != null) {
+                sb.append(String.format("%.0f%% интервалы (пуассоновский бутстреп, %d повторов):",
+                        intervals.getConfidenceLevel() * 100, intervals.getReplicates()));
+                for (int k = 0; k < intervals.getCoefficientCount(); k++) {
+                    sb.append(String.format(" [%.4f; %.4f]", intervals.getLower(k), intervals.getUpper(k)));
+                }
+                sb.append("\n");
+            }
+            sb.append("СКО (σ): ").append(String.format("%.6f", fit.getStandardDeviation())).append("\n");
+            sb.append("R²: ").append(String.format("%.6f", fit.getRSquared())).append("\n\n");
+        }
+        resultsArea.setText(sb.toString());
+        lastResult = null;
+        lastPoints = null;
+
+        chart.getData().clear();
+        for (StreamedFit fit : fits) {
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName(fit.getName());
+            int numberOfPlotPoints = 200;
+            for (int i = 0; i <= numberOfPlotPoints; i++) {
+                double x = fit.getMinX() + i * (fit.getMaxX() - fit.getMinX()) / numberOfPlotPoints;
+                double y = fit.calculate(x);
+                if (Double.isFinite(y)) {
+                    series.getData().add(new XYChart.Data<>(x, y));
+                }
+            }
+            if (!series.getData().isEmpty()) {
+                chart.getData().add(series);
+            }
+        }
+        updateStatus("Обработано точек: " + best.getPointCount());
+    }
+
     @FXML
     private void handleSaveFile() {
         if (dataPoints.isEmpty()) {
@@ -197,12 +357,12 @@ public class MainController {
             return;
         }
 
-        File file = fileService.showSaveDialog(pointsTable.getScene().getWindow());
+        File file = fileService().showSaveDialog(pointsTable.getScene().getWindow());
         if (file == null)
             return;
 
         try {
-            fileService.savePoints(dataPoints, file);
+            fileService().savePoints(dataPoints, file);
             updateStatus("Данные сохранены в: " + file.getName());
         } catch (Exception e) {
             updateStatus("Ошибка сохранения: " + e.getMessage());
@@ -216,41 +376,357 @@ public class MainController {
             return;
         }
         
-        File file = fileService.showSaveReportDialog(pointsTable.getScene().getWindow());
+        File file = fileService().showSaveReportDialog(pointsTable.getScene().getWindow());
         if (file == null) return;
 
         try {
-            fileService.saveFullReport(dataPoints, lastResult, file);
+            fileService().saveFullReport(lastPoints, lastResult, file);
             updateStatus("Отчет сохранен в: " + file.getName());
         } catch (IOException e) {
             updateStatus("Ошибка сохранения отчета: " + e.getMessage());
         }
     }
 
+    @FXML
+    private void handleSaveSession() {
+        File file = fileService().showSaveSessionDialog(pointsTable.getScene().getWindow());
+        if (file == null)
+            return;
+
+        // Результат сохраняется, только если он получен по текущей версии точек
+        List<DataPoint> points = pointModel.snapshot();
+        boolean current = lastResult != null && lastPoints == points;
+        List<SessionFile.Series> series = new ArrayList<>();
+        if (current) {
+            for (XYChart.Series<Number, Number> s : chart.getData()) {
+                double[] xs = new double[s.getData().size()];
+                double[] ys = new double[xs.length];
+                for (int i = 0; i < xs.length; i++) {
+                    XYChart.Data<Number, Number> d = s.getData().get(i);
+                    xs[i] = d.getXValue().doubleValue();
+                    ys[i] = d.getYValue().doubleValue();
+                }
+                series.add(new SessionFile.Series(s.getName(), xs, ys));
+            }
+        }
+        SessionFile.Session session = new SessionFile.Session(pointModel.getVersion(),
+                current ? lastResult : null, current ? resultsArea.getText() : "", series,
+                liveRecalculation.isEnabled(), pointsTable.getSelectionModel().getSelectedIndex());
+        try {
+            fileService().saveSession(session, file);
+            updateStatus("Сеанс сохранен в: " + file.getName());
+        } catch (IOException e) {
+            updateStatus("Ошибка сохранения сеанса: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Восстановление сеанса без пересчёта: результат, текст и ряды графика берутся из файла,
+     * а результат помещается в кэш, так что и живой пересчёт по этой версии ничего не считает.
+     */
+    @FXML
+    private void handleOpenSession() {
+        File file = fileService().showOpenSessionDialog(pointsTable.getScene().getWindow());
+        if (file == null)
+            return;
+
+        SessionFile.Session session;
+        try {
+            session = fileService().loadSession(file);
+        } catch (IOException e) {
+            updateStatus("Ошибка открытия сеанса: " + e.getMessage());
+            return;
+        }
+
+        cancelEditing();
+        pointModel.setVersion(session.getPoints(), "открытие сеанса");
+        // Пересчёт, запланированный заменой точек, не нужен: результат берётся из сеанса
+        liveRecalculation.cancel();
+        storageChoice.setValue(pointModel.getEncoding());
+        List<DataPoint> points = pointModel.snapshot();
+        RegressionResult result = session.getResult();
+        if (result != null) {
+            // Сеанс хранит результат обычного МНК; в робастном режиме версия будет пересчитана
+            if (robustLoss == null) {
+                resultCache.put(points, !result.getCoefficientIntervals().isEmpty(), result);
+            }
+            lastResult = result;
+            lastPoints = points;
+            resultsArea.setText(session.getResultsText());
+            try (Instrumentation.Timer timer = Instrumentation.getDefault().start(Instrumentation.RENDER)) {
+                timer.setPoints(points.size());
+                chart.getData().clear();
+                for (SessionFile.Series s : session.getChart()) {
+                    XYChart.Series<Number, Number> series = new XYChart.Series<>();
+                    series.setName(s.getName());
+                    for (int i = 0; i < s.getX().length; i++) {
+                        series.getData().add(new XYChart.Data<>(s.getX()[i], s.getY()[i]));
+                    }
+                    chart.getData().add(series);
+                }
+            }
+        } else {
+            clearResults();
+        }
+
+        liveModeCheckBox.setSelected(session.isLiveMode());
+        liveRecalculation.setEnabled(session.isLiveMode());
+        int selected = session.getSelectedIndex();
+        if (selected >= 0 && selected < pointModel.size()) {
+            pointsTable.getSelectionModel().clearAndSelect(selected);
+            pointsTable.scrollTo(selected);
+        }
+        updateStatus("Сеанс открыт: " + file.getName() + ", точек: " + points.size());
+    }
+
+    /**
+     * Полный расчёт со скользящим контролем (и бутстрепом, если он включён) идёт в фоновом потоке:
+     * интерфейс остаётся отзывчивым, ход расчёта виден на индикаторе, а расчёт можно прервать.
+     */
     @FXML
     private void handleCalculate() {
         if (dataPoints.size() < 2) {
             updateStatus("Ошибка: Минимум 2 точки требуются");
             return;
         }
+        if (calculation != null) {
+            return;
+        }
 
-        try {
-            RegressionResult result = regressionService.calculateAll(dataPoints);
+        // Ручной расчёт полнее живого: выполняемый живой пересчёт не должен перезаписать его результат
+        liveRecalculation.cancel();
+        List<DataPoint> points = pointModel.snapshot();
+        boolean withBootstrap = bootstrapCheckBox.isSelected();
+        CalculationTask task = new CalculationTask(points, withBootstrap);
+        task.setOnSucceeded(event -> {
+            finishCalculation();
+            showResult(points, task.getValue());
+        });
+        task.setOnCancelled(event -> {
+            finishCalculation();
+            updateStatus("Расчёт прерван");
+        });
+        task.setOnFailed(event -> {
+            finishCalculation();
+            Instrumentation.getDefault().recordFailure(Instrumentation.CALCULATION, task.getException());
+            updateStatus("Ошибка расчета: " + task.getException().getMessage());
+        });
 
-            lastResult = result;
+        startBackground(task, "calculation", withBootstrap ? "Расчёт с бутстрепом..." : "Расчёт...");
+    }
 
-            displayResults(result);
+    /** Запуск фоновой задачи с индикатором хода и кнопкой отмены; одновременно выполняется одна задача. */
+    private void startBackground(Task<?> task, String threadName, String status) {
+        calculation = task;
+        calculateButton.setDisable(true);
+        cancelCalculationButton.setDisable(false);
+        calculationProgress.progressProperty().bind(task.progressProperty());
+        calculationProgress.setVisible(true);
+        updateStatus(status);
 
-            plotGraphs(result);
+        Thread thread = new Thread(task, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-            updateStatus("Расчеты завершены успешно");
-        } catch (Exception e) {
-            updateStatus("Ошибка расчета: " + e.getMessage());
-            e.printStackTrace();
+    @FXML
+    private void handleCancelCalculation() {
+        if (calculation != null) {
+            calculation.cancel();
+        }
+    }
+
+    private void finishCalculation() {
+        calculation = null;
+        calculateButton.setDisable(false);
+        cancelCalculationButton.setDisable(true);
+        calculationProgress.progressProperty().unbind();
+        calculationProgress.setVisible(false);
+    }
+
+    @FXML
+    private void handleUndo() {
+        String label = pointModel.getUndoLabel();
+        cancelEditing();
+        if (!pointModel.undo()) {
+            updateStatus("Нечего отменять");
+            return;
+        }
+        storageChoice.setValue(pointModel.getEncoding());
+        updateStatus("Отменено: " + label);
+    }
+
+    @FXML
+    private void handleRedo() {
+        String label = pointModel.getRedoLabel();
+        cancelEditing();
+        if (!pointModel.redo()) {
+            updateStatus("Нечего повторять");
+            return;
+        }
+        storageChoice.setValue(pointModel.getEncoding());
+        updateStatus("Повторено: " + label);
+    }
+
+    @FXML
+    private void handleToggleLiveMode() {
+        liveRecalculation.setEnabled(liveModeCheckBox.isSelected());
+        updateStatus(liveRecalculation.isEnabled() ? "Живой пересчёт включен" : "Живой пересчёт выключен");
+    }
+
+    @FXML
+    private void handleStorageChanged() {
+        ColumnEncoding encoding = storageChoice.getValue();
+        if (encoding == null || encoding == pointModel.getEncoding()) {
+            return;
         }
+        cancelEditing();
+        pointModel.setEncoding(encoding);
+        updateStatus(String.format("Хранение точек: %s, %d байт на точку; погрешность x ≤ %.3g, y ≤ %.3g",
+                encoding, pointModel.getBytesPerPoint(), pointModel.getXErrorBound(), pointModel.getYErrorBound()));
     }
 
-    private void displayResults(RegressionResult result) {
+    @FXML
+    private void handleToggleRefinement() {
+        if (refinementCheckBox.isSelected() == nonlinearRefinement) {
+            return;
+        }
+        nonlinearRefinement = refinementCheckBox.isSelected();
+        // Кэш хранит результаты прежних моделей
+        resultCache.clear();
+        updateStatus(nonlinearRefinement
+                ? "Экспоненциальная и степенная модели уточняются МНК в исходных координатах"
+                : "Экспоненциальная и степенная модели строятся в логарифмах");
+        handlePointsChanged();
+    }
+
+    @FXML
+    private void handleLossChanged() {
+        LossChoice choice = lossChoice.getValue();
+        RobustLoss loss = choice != null ? choice.loss : null;
+        if (loss == robustLoss) {
+            return;
+        }
+        robustLoss = loss;
+        // Кэш хранит результаты прежней функции потерь
+        resultCache.clear();
+        updateStatus(loss == null ? "Метод: обычный МНК" : "Метод: робастный МНК (" + choice + ")");
+        handlePointsChanged();
+    }
+
+    @FXML
+    private void handleRefreshDiagnostics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ЭТАПЫ РАСЧЁТА (время в мс)\n");
+        sb.append("========================================\n");
+        sb.append(String.format("%-32s %7s %9s %9s %9s %9s %9s %12s %10s %7s\n",
+                "Этап", "Раз", "Среднее", "p50", "p90", "p99", "Макс", "Точек/с", "Выдел., МБ", "Ошибок"));
+        StringBuilder errors = new StringBuilder();
+        for (Instrumentation.StageSnapshot stage : Instrumentation.getDefault().getStages()) {
+            sb.append(String.format("%-32s %7d %9.3f %9.3f %9.3f %9.3f %9.3f %12.0f %10.1f %7d\n",
+                    stage.getStage(), stage.getCount(), stage.getMeanMillis(), stage.getP50Millis(),
+                    stage.getP90Millis(), stage.getP99Millis(), stage.getMaxMillis(),
+                    stage.getPointsPerSecond(), stage.getAllocatedBytes() / (1024.0 * 1024.0),
+                    stage.getFailures()));
+            if (stage.getLastError() != null) {
+                errors.append(stage.getStage()).append(": ").append(stage.getLastError()).append("\n");
+            }
+        }
+        if (errors.length() > 0) {
+            sb.append("\nПОСЛЕДНИЕ ОШИБКИ\n").append(errors);
+        }
+        if (!Instrumentation.getDefault().isAllocationTrackingSupported()) {
+            sb.append("\nУчёт выделенной памяти недоступен в этой JVM\n");
+        }
+        sb.append("\nJMX: ").append(Instrumentation.OBJECT_NAME)
+                .append("; события JFR: ru.ifmo.cs.Stage\n");
+        diagnosticsArea.setText(sb.toString());
+    }
+
+    @FXML
+    private void handleResetDiagnostics() {
+        Instrumentation.getDefault().reset();
+        handleRefreshDiagnostics();
+    }
+
+    private void handlePointsChanged() {
+        if (!liveRecalculation.isEnabled()) {
+            return;
+        }
+        if (dataPoints.size() < 2) {
+            // Строить нечего: прежние результаты убираются, чтобы не расходиться с таблицей
+            liveRecalculation.cancel();
+            clearResults();
+            return;
+        }
+        liveRecalculation.changed();
+    }
+
+    /**
+     * Расчёт по снимку точек; вызывается из фоновых потоков живого режима и расчёта по кнопке.
+     * Для версий, уже рассчитанных ранее (например, после отмены правки), результат берётся из кэша.
+     */
+    private RegressionResult calculate(List<DataPoint> points, boolean withBootstrap) {
+        return calculate(points, withBootstrap, ProgressMonitor.NONE);
+    }
+
+    private RegressionResult calculate(List<DataPoint> points, boolean withBootstrap, ProgressMonitor monitor) {
+        RegressionResult cached = resultCache.get(points, withBootstrap);
+        if (cached != null) {
+            return cached;
+        }
+        // Робастные модели строятся и сравниваются по всем данным: подвыборки, скользящий контроль
+        // и бутстреп перестраивают модели обычным МНК. На больших наборах модели ранжируются
+        // по подвыборкам, на остальных - скользящим контролем
+        // Итерационные модели стартуют с последнего показанного результата: правки меняют данные мало
+        FittingEngine fitting = engine();
+        RobustLoss loss = robustLoss;
+        RegressionResult previous = lastResult;
+        RegressionResult result = loss != null
+                ? fitting.regressionService.calculateAll(points, loss, previous)
+                : fitting.subsampleSelector.isWorthwhile(points.size())
+                ? fitting.regressionService.calculateSubsampled(points, fitting.subsampleSelector)
+                : fitting.regressionService.calculateCrossValidated(points, fitting.crossValidator,
+                        withBootstrap ? fitting.bootstrapEngine : null, monitor, previous);
+        // Результат для сменившихся за время расчёта настроек в кэш не попадает
+        if (loss == robustLoss && fitting.nonlinearRefinement == nonlinearRefinement) {
+            resultCache.put(points, withBootstrap && loss == null, result);
+        }
+        return result;
+    }
+
+    /** Результат живого пересчёта; уже показанный результат (из кэша) не перерисовывается. */
+    private void showLiveResult(List<DataPoint> points, RegressionResult result) {
+        if (result != lastResult || points != lastPoints) {
+            showResult(points, result);
+        }
+    }
+
+    private void showResult(List<DataPoint> points, RegressionResult result) {
+        lastResult = result;
+        lastPoints = points;
+
+        try (Instrumentation.Timer timer = Instrumentation.getDefault().start(Instrumentation.REPORT)) {
+            timer.setPoints(points.size());
+            displayResults(points, result);
+        }
+
+        try (Instrumentation.Timer timer = Instrumentation.getDefault().start(Instrumentation.RENDER)) {
+            timer.setPoints(points.size());
+            plotGraphs(points, result);
+        }
+
+        updateStatus("Расчеты завершены успешно");
+    }
+
+    private void clearResults() {
+        chart.getData().clear();
+        resultsArea.clear();
+        lastResult = null;
+        lastPoints = null;
+    }
+
+    private void displayResults(List<DataPoint> points, RegressionResult result) {
         StringBuilder sb = new StringBuilder();
 
         sb.append("РЕЗУЛЬТАТЫ АППРОКСИМАЦИИ\n");
@@ -260,15 +736,56 @@ public class MainController {
                 .append(result.getBestFunction().getName())
                 .append("\n\n");
 
+        // Погрешность хранения берётся у текущего буфера: результат применяется, только если точки не менялись
+        boolean compact = !pointModel.getEncoding().isExact();
+        double errorX = pointModel.getXErrorBound();
+        double errorY = pointModel.getYErrorBound();
+        if (compact) {
+            sb.append(String.format("Хранение точек: %s, %d байт на точку; погрешность x ≤ %.3g, y ≤ %.3g\n\n",
+                    pointModel.getEncoding(), pointModel.getBytesPerPoint(), errorX, errorY));
+        }
+
         sb.append("ВСЕ МОДЕЛИ АППРОКСИМАЦИИ:\n");
         sb.append("========================================\n\n");
 
-        for (FunctionApproximation fa : result.getAllFunctions()) {
+        for (ApproximationResult fa : result.getAllFunctions()) {
             sb.append("ФУНКЦИЯ: ").append(fa.getName()).append("\n");
             sb.append("----------------------------------------\n");
             sb.append("Коэффициенты: ").append(fa.getCoefficientsAsString()).append("\n");
+            BootstrapIntervals intervals = result.getCoefficientIntervals(fa);
+            if (intervals != null) {
+                sb.append(String.format("%.0f%% интервалы (бутстреп, %d повторов):",
+                        intervals.getConfidenceLevel() * 100, intervals.getReplicates()));
+                for (int k = 0; k < intervals.getCoefficientCount(); k++) {
+                    sb.append(String.format(" [%.4f; %.4f]", intervals.getLower(k), intervals.getUpper(k)));
+                }
+                sb.append("\n");
+            }
+            LeastSquaresFit fit = fa.getLeastSquaresFit();
+            if (fit != null) {
+                double[] standardErrors = fit.getStandardErrors();
+                double[] tStatistics = fit.getTStatistics();
+                sb.append("Стандартные ошибки (t-статистики):");
+                for (int k = 0; k < standardErrors.length; k++) {
+                    sb.append(String.format(" %.4f (%.2f)", standardErrors[k], tStatistics[k]));
+                }
+                sb.append("\n");
+            }
             sb.append("СКО (σ): ").append(String.format("%.6f", fa.getStandardDeviation())).append("\n");
             sb.append("R²: ").append(String.format("%.6f", fa.getRSquared())).append("\n");
+            if (compact) {
+                PrecisionBounds bounds = PrecisionBounds.of(fa, points, errorX, errorY);
+                sb.append(String.format("Влияние хранения: σ ± %.3g, R² при полной точности в [%.6f; %.6f]\n",
+                        bounds.getSigmaError(), bounds.getRSquaredLower(), bounds.getRSquaredUpper()));
+            }
+            if (!result.getCrossValidationScores().isEmpty() && !fa.isReference()) {
+                sb.append("Скользящий контроль (").append(result.getCrossValidationFolds()).append(" частей): ")
+                        .append(String.format("%.6f", result.getCrossValidationScore(fa))).append("\n");
+            }
+            ResidualDiagnostics diagnostics = result.getDiagnostics(fa);
+            if (diagnostics != null) {
+                appendDiagnostics(sb, diagnostics, points);
+            }
             
             // Интерпретация R² для каждой модели
             double rSquared = fa.getRSquared();
@@ -286,46 +803,101 @@ public class MainController {
             
             // Детали для каждой модели
             sb.append("Детали для ").append(fa.getName()).append(":\n");
-            sb.append("   X       Y       Ф(X)    Отклонение\n");
-            sb.append("-------------------------------------\n");
-            for (int i = 0; i < dataPoints.size(); i++) {
-                DataPoint p = dataPoints.get(i);
-                double actual = fa.getCalculatedValues().get(i);
-                double error = fa.getErrors().get(i);
-                sb.append(String.format("%7.4f  %7.4f  %7.4f  %7.4f\n",
-                        p.getX(), p.getY(), actual, error));
+            boolean influence = diagnostics != null && diagnostics.hasLeverage();
+            sb.append(influence
+                    ? "   X       Y       Ф(X)    Отклонение  Рычаг   Кук      t\n"
+                    : "   X       Y       Ф(X)    Отклонение\n");
+            sb.append(influence
+                    ? "-------------------------------------------------------------\n"
+                    : "-------------------------------------\n");
+            DoubleVector calculated = fa.getCalculatedValueVector();
+            DoubleVector errors = fa.getErrorVector();
+            // На больших наборах таблица усечена: текстовое поле с миллионами строк блокирует интерфейс
+            int shown = Math.min(points.size(), DETAIL_ROWS_LIMIT);
+            for (int i = 0; i < shown; i++) {
+                DataPoint p = points.get(i);
+                double actual = calculated.get(i);
+                double error = errors.get(i);
+                if (influence) {
+                    sb.append(String.format("%7.4f  %7.4f  %7.4f  %7.4f     %6.4f  %7.4f  %6.2f\n",
+                            p.getX(), p.getY(), actual, error, diagnostics.getLeverage(i),
+                            diagnostics.getCooksDistance(i), diagnostics.getStudentizedResidual(i)));
+                } else {
+                    sb.append(String.format("%7.4f  %7.4f  %7.4f  %7.4f\n",
+                            p.getX(), p.getY(), actual, error));
+                }
+            }
+            if (shown < points.size()) {
+                sb.append("... ещё ").append(points.size() - shown).append(" точек\n");
             }
             sb.append("\n");
         }
 
+        ModelSelectionReport selection = result.getSelectionReport();
+        if (selection != null) {
+            sb.append("ВЫБОР ПО ПОДВЫБОРКАМ (").append(selection.getSubsampleCount())
+                    .append(" x ").append(selection.getSubsampleSize()).append(" точек):\n");
+            sb.append("========================================\n");
+            for (ModelSelectionReport.Entry e : selection.getEntries()) {
+                sb.append(String.format("%-20s СКО %.6f [%.6f; %.6f], консенсус %.3f, побед %.3f\n",
+                        e.getModelName(), e.getMedianScore(), e.getScoreLower(), e.getScoreUpper(),
+                        e.getConsensus(), e.getWinFraction()));
+            }
+            sb.append(String.format("Надёжность выбора: 95%% интервал [%.3f; %.3f]\n\n",
+                    selection.getWinnerConfidenceLower(), selection.getWinnerConfidenceUpper()));
+        }
+
         sb.append("ОБЩАЯ СТАТИСТИКА:\n");
         sb.append("========================================\n");
+        Correlation correlation = result.getCorrelation();
         sb.append("Коэффициент корреляции Пирсона (линейная): ")
-                .append(String.format("%.6f\n", result.getPearsonCorrelation()));
+                .append(String.format("%.6f\n", correlation.getPearson()));
+        sb.append("Коэффициент корреляции Спирмена (ранговая): ")
+                .append(String.format("%.6f\n", correlation.getSpearman()));
+        sb.append("Коэффициент τ-b Кендалла (ранговая): ")
+                .append(String.format("%.6f\n", correlation.getKendallTau()));
 
         resultsArea.setText(sb.toString());
     }
 
-    private void plotGraphs(RegressionResult result) {
+    private static void appendDiagnostics(StringBuilder sb, ResidualDiagnostics diagnostics, List<DataPoint> points) {
+        sb.append(String.format("Остатки: Дурбин-Уотсон %.3f; серий %d (z = %.2f, p = %.3f)\n",
+                diagnostics.getDurbinWatson(), diagnostics.getRuns(), diagnostics.getRunsZ(),
+                diagnostics.getRunsPValue()));
+        sb.append(String.format("Выбросы (|t| > %.0f): %d", ResidualDiagnostics.OUTLIER_THRESHOLD,
+                diagnostics.getOutlierCount()));
+        if (diagnostics.hasLeverage()) {
+            sb.append(String.format("; влиятельные точки (Кук > 4/n): %d", diagnostics.getInfluentialCount()));
+            int index = diagnostics.getMaxCookIndex();
+            if (index >= 0) {
+                DataPoint p = points.get(index);
+                sb.append(String.format("; наибольшее D = %.4f в точке %d (%.4f; %.4f)",
+                        diagnostics.getMaxCooksDistance(), index + 1, p.getX(), p.getY()));
+            }
+        }
+        sb.append("\n");
+    }
+
+    private void plotGraphs(List<DataPoint> points, RegressionResult result) {
         chart.getData().clear();
 
         double dataMinX, dataMaxX;
-        if (dataPoints.isEmpty()) {
+        if (points.isEmpty()) {
             dataMinX = 0.0;
             dataMaxX = 1.0;
         } else {
-            dataMinX = dataPoints.stream().mapToDouble(DataPoint::getX).min().getAsDouble();
-            dataMaxX = dataPoints.stream().mapToDouble(DataPoint::getX).max().getAsDouble();
+            dataMinX = points.stream().mapToDouble(DataPoint::getX).min().getAsDouble();
+            dataMaxX = points.stream().mapToDouble(DataPoint::getX).max().getAsDouble();
         }
 
-        if (dataPoints.size() <= 1 || Math.abs(dataMaxX - dataMinX) < 1e-9) {
-            double centerX = dataPoints.isEmpty() ? 0.5 : dataPoints.get(0).getX();
+        if (points.size() <= 1 || Math.abs(dataMaxX - dataMinX) < 1e-9) {
+            double centerX = points.isEmpty() ? 0.5 : points.get(0).getX();
             dataMinX = centerX - 0.5;
             dataMaxX = centerX + 0.5;
         }
 
 
-        for (FunctionApproximation fa : result.getAllFunctions()) {
+        for (ApproximationResult fa : result.getAllFunctions()) {
             XYChart.Series<Number, Number> series = new XYChart.Series<>();
             series.setName(fa.getName());
 
@@ -372,19 +944,68 @@ public class MainController {
             }
         }
 
+        plotPredictionBand(result.getBestFunction(), dataMinX, dataMaxX);
+
         xAxis.setAutoRanging(true);
         yAxis.setAutoRanging(true);
     }
 
+    /**
+     * Полоса предсказания лучшей модели по сохранённой ковариации, без повторного построения.
+     */
+    private void plotPredictionBand(ApproximationResult best, double minX, double maxX) {
+        LeastSquaresFit fit = best.getLeastSquaresFit();
+        if (fit == null || fit.getDegreesOfFreedom() <= 0) {
+            return;
+        }
+        int numberOfPlotPoints = 200;
+        double[] xs = new double[numberOfPlotPoints + 1];
+        for (int i = 0; i <= numberOfPlotPoints; i++) {
+            xs[i] = minX + i * (maxX - minX) / numberOfPlotPoints;
+        }
+        double[] lower = new double[xs.length];
+        double[] upper = new double[xs.length];
+        fit.predictionBand(xs, 0.95, lower, upper);
+
+        XYChart.Series<Number, Number> lowerSeries = new XYChart.Series<>();
+        lowerSeries.setName(best.getName() + ": 95% интервал предсказания (нижняя граница)");
+        XYChart.Series<Number, Number> upperSeries = new XYChart.Series<>();
+        upperSeries.setName(best.getName() + ": 95% интервал предсказания (верхняя граница)");
+        for (int i = 0; i < xs.length; i++) {
+            if (Double.isFinite(lower[i]) && Double.isFinite(upper[i])) {
+                lowerSeries.getData().add(new XYChart.Data<>(xs[i], lower[i]));
+                upperSeries.getData().add(new XYChart.Data<>(xs[i], upper[i]));
+            }
+        }
+        if (!lowerSeries.getData().isEmpty()) {
+            chart.getData().add(lowerSeries);
+            chart.getData().add(upperSeries);
+        }
+    }
+
+    private FileService fileService() {
+        if (fileService == null) {
+            fileService = new FileService();
+        }
+        return fileService;
+    }
+
+    /** Вызывается и из потока JavaFX, и из потока живого пересчёта. */
+    private synchronized FittingEngine engine() {
+        if (engine == null || engine.nonlinearRefinement != nonlinearRefinement) {
+            engine = new FittingEngine(nonlinearRefinement);
+        }
+        return engine;
+    }
+
     private void clearInputs() {
         xInput.clear();
         yInput.clear();
     }
 
     private void clearAll() {
-        dataPoints.clear();
-        chart.getData().clear();
-        resultsArea.clear();
+        pointModel.clear();
+        clearResults();
         statusBar.setText("Готово");
     }
 
@@ -411,4 +1032,98 @@ public class MainController {
     public void handleAddPointFromInput(ActionEvent actionEvent) {
 
     }
+
+    /**
+     * Расчёт по кнопке "Рассчитать". Задача сама служит наблюдателем расчёта: передаёт его ход
+     * в индикатор и сообщает об отмене.
+     */
+    private final class CalculationTask extends Task<RegressionResult> implements ProgressMonitor {
+        private final List<DataPoint> points;
+        private final boolean withBootstrap;
+
+        CalculationTask(List<DataPoint> points, boolean withBootstrap) {
+            this.points = points;
+            this.withBootstrap = withBootstrap;
+        }
+
+        @Override
+        protected RegressionResult call() {
+            return calculate(points, withBootstrap, this);
+        }
+
+        @Override
+        public void progress(double done) {
+            updateProgress(done, 1);
+        }
+    }
+
+    /** Построение моделей по файлу вне памяти; файл открывается и закрывается в фоновом потоке. */
+    private final class LargeFileTask extends Task<List<StreamedFit>> implements ProgressMonitor {
+        private final File file;
+        private final boolean withBootstrap;
+
+        LargeFileTask(File file, boolean withBootstrap) {
+            this.file = file;
+            this.withBootstrap = withBootstrap;
+        }
+
+        @Override
+        protected List<StreamedFit> call() throws IOException {
+            try (SegmentedPoints points = fileService().openLarge(file)) {
+                FittingEngine fitting = engine();
+                return fitting.outOfCoreRegression.fitAll(points,
+                        withBootstrap ? fitting.streamingBootstrap : null, this);
+            }
+        }
+
+        @Override
+        public void progress(double done) {
+            updateProgress(done, 1);
+        }
+    }
+
+    /** Функция потерь в списке на панели инструментов. */
+    private enum LossChoice {
+        LEAST_SQUARES("МНК", null),
+        HUBER("Хьюбер", RobustLoss.HUBER),
+        TUKEY("Тьюки", RobustLoss.TUKEY);
+
+        final String title;
+        final RobustLoss loss;
+
+        LossChoice(String title, RobustLoss loss) {
+            this.title = title;
+            this.loss = loss;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * Сервисы расчёта; общий реестр моделей загружается вместе с ними.
+     */
+    private static final class FittingEngine {
+        private static final int STREAMING_REPLICATES = 200;
+
+        final boolean nonlinearRefinement;
+        final RegressionService regressionService;
+        final SubsampleSelector subsampleSelector;
+        final CrossValidator crossValidator = new CrossValidator();
+        final BootstrapEngine bootstrapEngine = new BootstrapEngine();
+        // Пуассоновский бутстреп обновляет все повторы на каждой точке файла, поэтому повторов меньше
+        final BootstrapEngine streamingBootstrap = new BootstrapEngine(STREAMING_REPLICATES);
+        final OutOfCoreRegression outOfCoreRegression;
+
+        FittingEngine(boolean nonlinearRefinement) {
+            this.nonlinearRefinement = nonlinearRefinement;
+            ModelRegistry registry = ModelRegistry.getDefault().withNonlinearRefinement(nonlinearRefinement);
+            regressionService = new RegressionService(registry);
+            subsampleSelector = new SubsampleSelector(registry);
+            // Потоковое построение идёт только по достаточным статистикам, уточнять в нём нечем
+            outOfCoreRegression = new OutOfCoreRegression(ModelRegistry.getDefault().withNonlinearRefinement(false));
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package ru.ifmo.cs.controller;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PersistentPoints;
+
+/**
+ * Строка таблицы точек: представление точки неизменяемой версии набора по индексу.
+ * Наблюдаемые свойства создаются только при первом обращении (для видимых строк);
+ * при изменении точки модель заменяет строку новой.
+ */
+public final class PointRow {
+    private final PersistentPoints points;
+    private final int index;
+    private ReadOnlyObjectWrapper<Double> x;
+    private ReadOnlyObjectWrapper<Double> y;
+
+    PointRow(PersistentPoints points, int index) {
+        this.points = points;
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public double getX() {
+        return points.x(index);
+    }
+
+    public double getY() {
+        return points.y(index);
+    }
+
+    public ReadOnlyObjectProperty<Double> xProperty() {
+        if (x == null) {
+            x = new ReadOnlyObjectWrapper<>(this, "x", getX());
+        }
+        return x.getReadOnlyProperty();
+    }
+
+    public ReadOnlyObjectProperty<Double> yProperty() {
+        if (y == null) {
+            y = new ReadOnlyObjectWrapper<>(this, "y", getY());
+        }
+        return y.getReadOnlyProperty();
+    }
+
+    public DataPoint toDataPoint() {
+        return points.toDataPoint(index);
+    }
+}
@@ -0,0 +1,271 @@
+package ru.ifmo.cs.controller;
+
+import javafx.collections.ObservableListBase;
+import ru.ifmo.cs.model.ColumnEncoding;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PersistentPoints;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Модель таблицы точек поверх неизменяемых версий {@link PersistentPoints}.
+ * <p>
+ * Объекты строк создаются только для запрошенных (видимых) индексов и кэшируются в небольшом LRU-кэше,
+ * так что таблица на миллион точек не держит миллион объектов. Массовое добавление, замена и удаление
+ * публикуются одним событием изменения списка. Кодировка хранения ({@link ColumnEncoding}) применяется
+ * ко всем последующим загрузкам.
+ * <p>
+ * Каждая правка создаёт новую версию, разделяющую структуру с прежней (O(log n) памяти на правку),
+ * а прежняя версия уходит в историю: отмена и повтор - замена текущей версии. Строки и снимки
+ * ссылаются на свою версию, поэтому остаются верными после любых последующих правок.
+ */
+public class PointTableModel extends ObservableListBase<PointRow> {
+    private static final int ROW_CACHE_SIZE = 1024;
+    private static final int HISTORY_LIMIT = 200;
+
+    private ColumnEncoding encoding = ColumnEncoding.DOUBLE;
+    private PersistentPoints points = PersistentPoints.empty(encoding);
+    private final EditHistory<PersistentPoints> history = new EditHistory<>(HISTORY_LIMIT);
+
+    private final Map<Integer, PointRow> rows = new LinkedHashMap<>(ROW_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PointRow> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+
+    @Override
+    public PointRow get(int index) {
+        if (index < 0 || index >= points.size()) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " вне диапазона 0.." + (points.size() - 1));
+        }
+        return rows.computeIfAbsent(index, i -> new PointRow(points, i));
+    }
+
+    @Override
+    public int size() {
+        return points.size();
+    }
+
+    public ColumnEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Перекодирует текущие точки; значения могут измениться в пределах погрешности новой кодировки,
+     * поэтому публикуется замена всех строк. Смена кодировки отменяется как обычная правка.
+     */
+    public void setEncoding(ColumnEncoding encoding) {
+        if (encoding == this.encoding) {
+            return;
+        }
+        this.encoding = encoding;
+        history.record(points, "смена хранения");
+        replaceVersion(points.encoded(encoding));
+    }
+
+    public double getXErrorBound() {
+        return points.getXErrorBound();
+    }
+
+    public double getYErrorBound() {
+        return points.getYErrorBound();
+    }
+
+    public int getBytesPerPoint() {
+        return points.getBytesPerPoint();
+    }
+
+    /** Живое представление точек только для чтения (для отображения и отчётов в потоке UI). */
+    public List<DataPoint> asDataPoints() {
+        return new AbstractList<>() {
+            @Override
+            public DataPoint get(int index) {
+                return points.toDataPoint(index);
+            }
+
+            @Override
+            public int size() {
+                return points.size();
+            }
+        };
+    }
+
+    /**
+     * Текущая версия точек - для расчётов, которые не должны видеть последующих правок. Копирования нет;
+     * для одной версии возвращается один и тот же список, что позволяет кэшировать результаты по версии.
+     */
+    public List<DataPoint> snapshot() {
+        return points.asList();
+    }
+
+    /** Текущая версия точек. */
+    public PersistentPoints getVersion() {
+        return points;
+    }
+
+    /** Замена точек готовой версией (например, из файла сеанса) с её кодировкой; отменяется как правка. */
+    public void setVersion(PersistentPoints version, String label) {
+        history.record(points, label);
+        replaceVersion(version);
+    }
+
+    public void addPoint(double x, double y) {
+        int from = points.size();
+        history.record(points, "добавление точки");
+        points = points.add(x, y, DataPoint.DEFAULT_WEIGHT);
+        beginChange();
+        nextAdd(from, from + 1);
+        endChange();
+    }
+
+    public void addPoints(List<DataPoint> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int from = points.size();
+        history.record(points, "добавление точек");
+        points = points.addAll(added);
+        beginChange();
+        nextAdd(from, points.size());
+        endChange();
+    }
+
+    public void setPoint(int index, double x, double y) {
+        PointRow previous = get(index);
+        history.record(points, "изменение точки");
+        points = points.set(index, x, y);
+        rows.remove(index);
+        beginChange();
+        nextSet(index, previous);
+        endChange();
+    }
+
+    /**
+     * Замена всех точек одним событием.
+     */
+    public void setPoints(List<DataPoint> loaded) {
+        history.record(points, "загрузка точек");
+        replaceVersion(PersistentPoints.of(loaded, encoding));
+    }
+
+    @Override
+    public void clear() {
+        if (points.isEmpty()) {
+            return;
+        }
+        history.record(points, "очистка");
+        replaceVersion(PersistentPoints.empty(encoding));
+    }
+
+    /**
+     * Удаляет точки с указанными индексами (в любом порядке, повторы допускаются) одним событием.
+     */
+    public void removeIndices(int[] indices) {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] >= 0 && sorted[i] < points.size() && (count == 0 || sorted[i] != sorted[count - 1])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // Удалённые строки в событии читают прежнюю версию - она не меняется
+        PersistentPoints previous = points;
+        history.record(previous, "удаление точек");
+        points = previous.removeSorted(sorted, count);
+        rows.clear();
+
+        // Подряд идущие индексы публикуются одним фрагментом; индексы фрагментов - после предыдущих удалений
+        beginChange();
+        int start = 0;
+        while (start < count) {
+            int end = start + 1;
+            while (end < count && sorted[end] == sorted[end - 1] + 1) {
+                end++;
+            }
+            nextRemove(sorted[start] - start, new RowRange(previous, sorted[start], sorted[end - 1] + 1));
+            start = end;
+        }
+        endChange();
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    public String getUndoLabel() {
+        return history.getUndoLabel();
+    }
+
+    public String getRedoLabel() {
+        return history.getRedoLabel();
+    }
+
+    /** Возвращает версию до последней правки; false, если отменять нечего. */
+    public boolean undo() {
+        if (!history.canUndo()) {
+            return false;
+        }
+        replaceVersion(history.undo(points));
+        return true;
+    }
+
+    public boolean redo() {
+        if (!history.canRedo()) {
+            return false;
+        }
+        replaceVersion(history.redo(points));
+        return true;
+    }
+
+    private void replaceVersion(PersistentPoints next) {
+        PersistentPoints previous = points;
+        points = next;
+        encoding = next.getEncoding();
+        rows.clear();
+        beginChange();
+        if (!previous.isEmpty()) {
+            nextRemove(0, new RowRange(previous, 0, previous.size()));
+        }
+        if (!points.isEmpty()) {
+            nextAdd(0, points.size());
+        }
+        endChange();
+    }
+
+    /** Строки диапазона версии, создаваемые по запросу. */
+    private static final class RowRange extends AbstractList<PointRow> {
+        private final PersistentPoints source;
+        private final int from;
+        private final int to;
+
+        RowRange(PersistentPoints source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public PointRow get(int index) {
+            return new PointRow(source, from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -7,13 +7,15 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
 import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DoubleVector;
 import ru.ifmo.cs.service.RegressionService;
 import ru.ifmo.cs.service.RegressionResult;
-import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.ApproximationResult;
 
 public class RegressionController {
 
-    private final RegressionService regressionService = new RegressionService();
+    private final RegressionService regressionService = RegressionService.getDefault();
+    private RegressionResult lastResult;
 
     @FXML private TextArea resultsTextArea;
     @FXML private Label statusLabel;
@@ -38,6 +40,7 @@ public class RegressionController {
 
         try {
             RegressionResult result = regressionService.calculateAll(dataPoints);
+            lastResult = result;
             displayResults(result);
             updateStatus("Анализ завершен успешно");
         } catch (Exception ex) {
@@ -57,7 +60,7 @@ public class RegressionController {
                 .append("\n\n");
 
         sb.append("КОЭФФИЦИЕНТЫ ФУНКЦИЙ:\n");
-        for (FunctionApproximation fa : result.getAllFunctions()) {
+        for (ApproximationResult fa : result.getAllFunctions()) {
             sb.append(String.format("%-15s: ", fa.getName()))
                     .append(fa.getCoefficientsAsString())
                     .append("\n");
@@ -67,14 +70,18 @@ public class RegressionController {
         sb.append("СТАТИСТИЧЕСКИЕ ПОКАЗАТЕЛИ:\n");
         sb.append("Функция            СКО (σ)     R²\n");
         sb.append("---------------------------------\n");
-        for (FunctionApproximation fa : result.getAllFunctions()) {
+        for (ApproximationResult fa : result.getAllFunctions()) {
             sb.append(String.format("%-15s %9.6f   %9.6f\n",
                     fa.getName(), fa.getStandardDeviation(), fa.getRSquared()));
         }
         sb.append("\n");
 
         sb.append("Коэффициент корреляции Пирсона (линейная): ")
-                .append(String.format("%.6f\n\n", result.getPearsonCorrelation()));
+                .append(String.format("%.6f\n", result.getPearsonCorrelation()));
+        sb.append("Коэффициент корреляции Спирмена (ранговая): ")
+                .append(String.format("%.6f\n", result.getCorrelation().getSpearman()));
+        sb.append("Коэффициент τ-b Кендалла (ранговая): ")
+                .append(String.format("%.6f\n\n", result.getCorrelation().getKendallTau()));
 
         double rSquared = result.getBestFunction().getRSquared();
         sb.append("ИНТЕРПРЕТАЦИЯ R²: ");
@@ -89,14 +96,16 @@ public class RegressionController {
         }
         sb.append("\n\n");
 
-        FunctionApproximation best = result.getBestFunction();
+        ApproximationResult best = result.getBestFunction();
         sb.append("ДЕТАЛИ ДЛЯ ").append(best.getName()).append(":\n");
         sb.append("   X       Y       Ф(X)    Отклонение\n");
         sb.append("-------------------------------------\n");
+        DoubleVector calculated = best.getCalculatedValueVector();
+        DoubleVector errors = best.getErrorVector();
         for (int i = 0; i < dataPoints.size(); i++) {
             DataPoint p = dataPoints.get(i);
-            double actual = best.getCalculatedValues().get(i);
-            double error = best.getErrors().get(i);
+            double actual = calculated.get(i);
+            double error = errors.get(i);
             sb.append(String.format("%7.4f  %7.4f  %7.4f  %7.4f\n",
                     p.getX(), p.getY(), actual, error));
         }
@@ -119,6 +128,6 @@ public class RegressionController {
     }
 
     public RegressionResult getLastResult() {
-        return regressionService.getLastResult();
+        return lastResult;
     }
 }
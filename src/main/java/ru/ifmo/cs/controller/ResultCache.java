@@ -0,0 +1,67 @@
+package ru.ifmo.cs.controller;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.RegressionResult;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Результаты расчёта для недавних версий точек, чтобы отмена и повтор правок показывали
+ * прежний результат без пересчёта. Ключ - список-снимок версии ({@link PointTableModel#snapshot()}),
+ * сравниваемый по ссылке: версии неизменяемы, и одной версии соответствует один список.
+ * Результат с бутстрепом подходит и для запроса без него. Вызывается из потока JavaFX
+ * и из потока живого пересчёта.
+ */
+final class ResultCache {
+    private final int capacity;
+    private final Deque<Entry> entries = new ArrayDeque<>(); // Последний использованный - первым
+
+    ResultCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    synchronized RegressionResult get(List<DataPoint> points, boolean withBootstrap) {
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.points == points && (entry.withBootstrap || !withBootstrap)) {
+                it.remove();
+                entries.addFirst(entry);
+                return entry.result;
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(List<DataPoint> points, boolean withBootstrap, RegressionResult result) {
+        // Прежний результат той же версии заменяется, если он не полнее нового
+        for (Entry entry : entries) {
+            if (entry.points == points && entry.withBootstrap && !withBootstrap) {
+                return;
+            }
+        }
+        entries.removeIf(entry -> entry.points == points);
+        entries.addFirst(new Entry(points, withBootstrap, result));
+        while (entries.size() > capacity) {
+            entries.removeLast();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        final List<DataPoint> points;
+        final boolean withBootstrap;
+        final RegressionResult result;
+
+        Entry(List<DataPoint> points, boolean withBootstrap, RegressionResult result) {
+            this.points = points;
+            this.withBootstrap = withBootstrap;
+            this.result = result;
+        }
+    }
+}
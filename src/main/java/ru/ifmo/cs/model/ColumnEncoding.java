@@ -0,0 +1,36 @@
+package ru.ifmo.cs.model;
+
+/**
+ * Способ хранения столбца значений в {@link PointBuffer}.
+ */
+public enum ColumnEncoding {
+    /** Полная точность. */
+    DOUBLE("double (64 бита)", Double.BYTES),
+    /** Одинарная точность: относительная погрешность не больше 2⁻²⁴. */
+    FLOAT32("float32 (32 бита)", Float.BYTES),
+    /** Целое 16 бит со смещением и шагом: 65536 уровней в диапазоне столбца, как у 16-битного АЦП. */
+    SCALED16("целое 16 бит", 2),
+    /** Целое 24 бита со смещением и шагом (три байта на значение), как у 24-битного АЦП. */
+    SCALED24("целое 24 бита", 3);
+
+    private final String label;
+    private final int bytesPerValue;
+
+    ColumnEncoding(String label, int bytesPerValue) {
+        this.label = label;
+        this.bytesPerValue = bytesPerValue;
+    }
+
+    public int getBytesPerValue() {
+        return bytesPerValue;
+    }
+
+    public boolean isExact() {
+        return this == DOUBLE;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
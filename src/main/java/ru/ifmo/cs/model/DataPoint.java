@@ -1,12 +1,22 @@
 package ru.ifmo.cs.model;
 
+import java.util.List;
+
 public class DataPoint {
+    public static final double DEFAULT_WEIGHT = 1.0;
+
     private double x;
     private double y;
+    private double weight; // вес точки, обычно 1/σ² погрешности измерения
 
     public DataPoint(double x, double y) {
+        this(x, y, DEFAULT_WEIGHT);
+    }
+
+    public DataPoint(double x, double y, double weight) {
         this.x = x;
         this.y = y;
+        this.weight = weight;
     }
 
     public double getX() {
@@ -17,6 +27,10 @@ public class DataPoint {
         return y;
     }
 
+    public double getWeight() {
+        return weight;
+    }
+
     public void setX(double x) {
         this.x = x;
     }
@@ -25,8 +39,40 @@ public class DataPoint {
         this.y = y;
     }
 
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public boolean isWeighted() {
+        return weight != DEFAULT_WEIGHT;
+    }
+
+    /**
+     * Веса точек или null, если все веса равны 1 (тогда расчёты идут по невзвешенной ветке).
+     */
+    public static double[] weightsOf(List<DataPoint> points) {
+        boolean weighted = false;
+        for (DataPoint p : points) {
+            if (p.isWeighted()) {
+                weighted = true;
+                break;
+            }
+        }
+        if (!weighted) {
+            return null;
+        }
+        double[] weights = new double[points.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = points.get(i).getWeight();
+        }
+        return weights;
+    }
+
     @Override
     public String toString() {
+        if (isWeighted()) {
+            return String.format("(%.4f, %.4f; w=%.4f)", x, y, weight);
+        }
         return String.format("(%.4f, %.4f)", x, y);
     }
 }
@@ -0,0 +1,73 @@
+package ru.ifmo.cs.model;
+
+import java.util.List;
+
+/**
+ * Сводка по набору точек, достаточная для проверки применимости моделей
+ * без повторного прохода по данным для каждой модели.
+ */
+public final class DataSummary {
+    private final int count;
+    private final double minX;
+    private final double maxX;
+    private final double minY;
+    private final double maxY;
+
+    private DataSummary(int count, double minX, double maxX, double minY, double maxY) {
+        this.count = count;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    public static DataSummary of(List<DataPoint> points) {
+        int n = points.size();
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+            minY = Math.min(minY, p.getY());
+            maxY = Math.max(maxY, p.getY());
+        }
+        return new DataSummary(n, minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Сводка по границам данных, которые не хранятся в памяти (потоковая обработка файла).
+     * Число точек ограничивается Integer.MAX_VALUE - для проверки применимости этого достаточно.
+     */
+    public static DataSummary ofBounds(long count, double minX, double maxX, double minY, double maxY) {
+        return new DataSummary((int) Math.min(count, Integer.MAX_VALUE), minX, maxX, minY, maxY);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public boolean hasNonPositiveX() {
+        return count > 0 && minX <= 0;
+    }
+
+    public boolean hasNonPositiveY() {
+        return count > 0 && minY <= 0;
+    }
+}
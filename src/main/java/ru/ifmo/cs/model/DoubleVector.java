@@ -0,0 +1,86 @@
+package ru.ifmo.cs.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.DoubleStream;
+
+/**
+ * Неизменяемое представление массива double без упаковки в Double.
+ * Используется вместо List&lt;Double&gt; для коэффициентов, значений и отклонений.
+ */
+public final class DoubleVector {
+    public static final DoubleVector EMPTY = new DoubleVector(new double[0]);
+
+    private final double[] values;
+
+    private DoubleVector(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Оборачивает массив без копирования. Вызывающий код не должен менять массив после передачи.
+     */
+    public static DoubleVector wrap(double[] values) {
+        return values.length == 0 ? EMPTY : new DoubleVector(values);
+    }
+
+    public static DoubleVector copyOf(double[] values) {
+        return wrap(values.clone());
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    public double get(int index) {
+        return values[index];
+    }
+
+    public double[] toArray() {
+        return values.clone();
+    }
+
+    public void copyTo(double[] target, int offset) {
+        System.arraycopy(values, 0, target, offset, values.length);
+    }
+
+    public DoubleStream stream() {
+        return Arrays.stream(values);
+    }
+
+    /**
+     * Тонкий адаптер к старому API на List&lt;Double&gt;: только для чтения, упаковка при каждом get.
+     */
+    public List<Double> asList() {
+        return new ListView(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+
+    private static final class ListView extends AbstractList<Double> implements RandomAccess {
+        private final double[] values;
+
+        ListView(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Double get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.ifmo.cs.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Представление части списка точек по массиву индексов, без копирования самих точек.
+ */
+public final class IndexedPoints extends AbstractList<DataPoint> implements RandomAccess {
+    private final List<DataPoint> source;
+    private final int[] indices;
+
+    public IndexedPoints(List<DataPoint> source, int[] indices) {
+        this.source = source;
+        this.indices = indices;
+    }
+
+    @Override
+    public DataPoint get(int index) {
+        return source.get(indices[index]);
+    }
+
+    @Override
+    public int size() {
+        return indices.length;
+    }
+}
@@ -0,0 +1,337 @@
+package ru.ifmo.cs.model;
+
+import java.util.Arrays;
+
+/**
+ * Столбец значений в одной из кодировок {@link ColumnEncoding}. Чтение всегда возвращает double,
+ * поэтому все вычисления по столбцу ведутся в двойной точности, сжатие затрагивает только хранение.
+ * <p>
+ * Целочисленные кодировки хранят код q, значение восстанавливается как offset + q·scale. Диапазон
+ * задаётся при кодировании набора целиком; если новое значение выходит за него, диапазон расширяется
+ * с запасом и столбец перекодируется, а граница погрешности увеличивается на половину нового шага.
+ * <p>
+ * {@link #getErrorBound()} - наибольшая абсолютная разница между записанным и хранимым значением.
+ */
+public abstract class PackedColumn {
+    protected double errorBound;
+
+    public static PackedColumn allocate(ColumnEncoding encoding, int capacity) {
+        switch (encoding) {
+            case FLOAT32:
+                return new Floats(capacity);
+            case SCALED16:
+                return new Scaled16(capacity);
+            case SCALED24:
+                return new Scaled24(capacity);
+            default:
+                return new Doubles(capacity);
+        }
+    }
+
+    /**
+     * Столбец с заранее известным диапазоном значений [min, max]: целочисленные кодировки
+     * используют весь диапазон кодов, и значения квантуются один раз.
+     */
+    public static PackedColumn allocate(ColumnEncoding encoding, int capacity, double min, double max) {
+        PackedColumn column = allocate(encoding, capacity);
+        if (column instanceof Scaled && min <= max) {
+            ((Scaled) column).setRange(min, max);
+        }
+        return column;
+    }
+
+    public abstract ColumnEncoding getEncoding();
+
+    public abstract int capacity();
+
+    public abstract double get(int i);
+
+    public abstract void set(int i, double value);
+
+    /** Увеличивает ёмкость, сохраняя значения. */
+    public abstract void grow(int capacity);
+
+    /** Переносит значение из from в to (сдвиг при удалении). */
+    public abstract void move(int from, int to);
+
+    /** Копия первых size значений в той же кодировке, с тем же диапазоном и границей погрешности. */
+    public abstract PackedColumn copy(int size);
+
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    private static final class Doubles extends PackedColumn {
+        private double[] values;
+
+        Doubles(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        @Override
+        public ColumnEncoding getEncoding() {
+            return ColumnEncoding.DOUBLE;
+        }
+
+        @Override
+        public int capacity() {
+            return values.length;
+        }
+
+        @Override
+        public double get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void set(int i, double value) {
+            values[i] = value;
+        }
+
+        @Override
+        public void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void move(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public PackedColumn copy(int size) {
+            Doubles result = new Doubles(Math.max(size, 1));
+            System.arraycopy(values, 0, result.values, 0, size);
+            return result;
+        }
+    }
+
+    private static final class Floats extends PackedColumn {
+        private float[] values;
+
+        Floats(int capacity) {
+            this.values = new float[capacity];
+        }
+
+        @Override
+        public ColumnEncoding getEncoding() {
+            return ColumnEncoding.FLOAT32;
+        }
+
+        @Override
+        public int capacity() {
+            return values.length;
+        }
+
+        @Override
+        public double get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void set(int i, double value) {
+            float stored = (float) value;
+            values[i] = stored;
+            errorBound = Math.max(errorBound, Math.abs(stored - value));
+        }
+
+        @Override
+        public void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void move(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        public PackedColumn copy(int size) {
+            Floats result = new Floats(Math.max(size, 1));
+            System.arraycopy(values, 0, result.values, 0, size);
+            result.errorBound = errorBound;
+            return result;
+        }
+    }
+
+    /**
+     * Общая часть целочисленных кодировок: код q в [0, maxCode], значение offset + q·scale.
+     * Пока диапазон не задан, offset = NaN.
+     */
+    private abstract static class Scaled extends PackedColumn {
+        private static final double RANGE_MARGIN = 0.25;
+
+        private final int maxCode;
+        private double offset = Double.NaN;
+        private double scale;
+
+        Scaled(int maxCode) {
+            this.maxCode = maxCode;
+        }
+
+        abstract int code(int i);
+
+        abstract void setCode(int i, int code);
+
+        @Override
+        public double get(int i) {
+            return offset + code(i) * scale;
+        }
+
+        @Override
+        public void set(int i, double value) {
+            if (!covers(value)) {
+                extendRange(value);
+            }
+            int code = encode(value);
+            setCode(i, code);
+            errorBound = Math.max(errorBound, Math.abs(offset + code * scale - value));
+        }
+
+        void setRange(double min, double max) {
+            offset = min;
+            scale = (max - min) / maxCode;
+        }
+
+        private boolean covers(double value) {
+            return value >= offset && value <= offset + maxCode * scale;
+        }
+
+        private int encode(double value) {
+            if (scale == 0) {
+                return 0;
+            }
+            long code = Math.round((value - offset) / scale);
+            return (int) Math.max(0, Math.min(maxCode, code));
+        }
+
+        /**
+         * Расширение диапазона с запасом в четверть ширины, чтобы серия значений за краем
+         * не перекодировала столбец каждый раз. Все хранимые коды пересчитываются.
+         */
+        private void extendRange(double value) {
+            if (Double.isNaN(offset)) {
+                setRange(value, value);
+                return;
+            }
+            double min = offset;
+            double max = offset + maxCode * scale;
+            double margin = (Math.max(max, value) - Math.min(min, value)) * RANGE_MARGIN;
+            double newMin = value < min ? value - margin : min;
+            double newMax = value > max ? value + margin : max;
+
+            double oldOffset = offset;
+            double oldScale = scale;
+            setRange(newMin, newMax);
+            for (int i = 0; i < capacity(); i++) {
+                setCode(i, encode(oldOffset + code(i) * oldScale));
+            }
+            errorBound += scale / 2;
+        }
+
+        void copyRangeTo(Scaled target) {
+            target.offset = offset;
+            target.scale = scale;
+            target.errorBound = errorBound;
+        }
+    }
+
+    private static final class Scaled16 extends Scaled {
+        private short[] codes;
+
+        Scaled16(int capacity) {
+            super(0xFFFF);
+            this.codes = new short[capacity];
+        }
+
+        @Override
+        public ColumnEncoding getEncoding() {
+            return ColumnEncoding.SCALED16;
+        }
+
+        @Override
+        public int capacity() {
+            return codes.length;
+        }
+
+        @Override
+        int code(int i) {
+            return codes[i] & 0xFFFF;
+        }
+
+        @Override
+        void setCode(int i, int code) {
+            codes[i] = (short) code;
+        }
+
+        @Override
+        public void grow(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        @Override
+        public void move(int from, int to) {
+            codes[to] = codes[from];
+        }
+
+        @Override
+        public PackedColumn copy(int size) {
+            Scaled16 result = new Scaled16(Math.max(size, 1));
+            System.arraycopy(codes, 0, result.codes, 0, size);
+            copyRangeTo(result);
+            return result;
+        }
+    }
+
+    /** Коды по три байта (младший первым). */
+    private static final class Scaled24 extends Scaled {
+        private byte[] bytes;
+
+        Scaled24(int capacity) {
+            super(0xFFFFFF);
+            this.bytes = new byte[3 * capacity];
+        }
+
+        @Override
+        public ColumnEncoding getEncoding() {
+            return ColumnEncoding.SCALED24;
+        }
+
+        @Override
+        public int capacity() {
+            return bytes.length / 3;
+        }
+
+        @Override
+        int code(int i) {
+            int at = 3 * i;
+            return (bytes[at] & 0xFF) | (bytes[at + 1] & 0xFF) << 8 | (bytes[at + 2] & 0xFF) << 16;
+        }
+
+        @Override
+        void setCode(int i, int code) {
+            int at = 3 * i;
+            bytes[at] = (byte) code;
+            bytes[at + 1] = (byte) (code >>> 8);
+            bytes[at + 2] = (byte) (code >>> 16);
+        }
+
+        @Override
+        public void grow(int capacity) {
+            bytes = Arrays.copyOf(bytes, 3 * capacity);
+        }
+
+        @Override
+        public void move(int from, int to) {
+            System.arraycopy(bytes, 3 * from, bytes, 3 * to, 3);
+        }
+
+        @Override
+        public PackedColumn copy(int size) {
+            Scaled24 result = new Scaled24(Math.max(size, 1));
+            System.arraycopy(bytes, 0, result.bytes, 0, 3 * size);
+            copyRangeTo(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package ru.ifmo.cs.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемый (персистентный) набор точек: каждая правка возвращает новую версию, разделяющую
+ * с прежней всё, что не изменилось.
+ * <p>
+ * Точки лежат в листьях - небольших {@link PointBuffer} до {@link #LEAF_POINTS} точек в общей кодировке,
+ * листья собраны в сбалансированное по высоте (AVL) дерево конкатенации с размерами поддеревьев.
+ * Изменение точки копирует один лист и путь к нему: O(log n) памяти. Удаление подряд идущих точек -
+ * разрез и склейка деревьев, O(log² n); добавление в конец дописывает последний лист. Поэтому хранить
+ * сотни версий миллиона точек для отмены правок дёшево, а любая версия - готовый снимок для расчёта
+ * в другом потоке без копирования.
+ * <p>
+ * Листья после публикации не изменяются, поэтому чтение потокобезопасно.
+ */
+public final class PersistentPoints implements PointColumns {
+    static final int LEAF_POINTS = 128;
+
+    private final ColumnEncoding encoding;
+    private final Tree root; // null - пустой набор
+    private final List<DataPoint> list = new ListView();
+
+    private PersistentPoints(ColumnEncoding encoding, Tree root) {
+        this.encoding = encoding;
+        this.root = root;
+    }
+
+    public static PersistentPoints empty(ColumnEncoding encoding) {
+        return new PersistentPoints(encoding, null);
+    }
+
+    public static PersistentPoints of(List<DataPoint> points, ColumnEncoding encoding) {
+        return new PersistentPoints(encoding, build(points, 0, points.size(), encoding));
+    }
+
+    /** Сбалансированное дерево из листьев по LEAF_POINTS точек (последний лист может быть неполным). */
+    private static Tree build(List<DataPoint> points, int from, int to, ColumnEncoding encoding) {
+        int count = to - from;
+        if (count == 0) {
+            return null;
+        }
+        if (count <= LEAF_POINTS) {
+            return new Leaf(PointBuffer.of(points.subList(from, to), encoding));
+        }
+        int leaves = (count + LEAF_POINTS - 1) / LEAF_POINTS;
+        int middle = from + leaves / 2 * LEAF_POINTS;
+        return new Node(build(points, from, middle, encoding), build(points, middle, to, encoding));
+    }
+
+    /** Набор из столбцового источника (например, отображённого в память файла) без объектов DataPoint. */
+    public static PersistentPoints of(PointColumns columns, ColumnEncoding encoding) {
+        return new PersistentPoints(encoding, build(columns, 0, columns.size(), encoding));
+    }
+
+    private static Tree build(PointColumns columns, int from, int to, ColumnEncoding encoding) {
+        int count = to - from;
+        if (count == 0) {
+            return null;
+        }
+        if (count <= LEAF_POINTS) {
+            return new Leaf(PointBuffer.of(columns, from, to, encoding));
+        }
+        int leaves = (count + LEAF_POINTS - 1) / LEAF_POINTS;
+        int middle = from + leaves / 2 * LEAF_POINTS;
+        return new Node(build(columns, from, middle, encoding), build(columns, middle, to, encoding));
+    }
+
+    /** Та же последовательность точек в другой кодировке. */
+    public PersistentPoints encoded(ColumnEncoding target) {
+        return of(list, target);
+    }
+
+    public ColumnEncoding getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public double x(int i) {
+        Located located = locate(i);
+        return located.points.x(i - located.start);
+    }
+
+    @Override
+    public double y(int i) {
+        Located located = locate(i);
+        return located.points.y(i - located.start);
+    }
+
+    @Override
+    public double weight(int i) {
+        Located located = locate(i);
+        return located.points.weight(i - located.start);
+    }
+
+    public DataPoint toDataPoint(int i) {
+        Located located = locate(i);
+        return located.points.toDataPoint(i - located.start);
+    }
+
+    /** Наибольшая абсолютная погрешность хранения x по всем листьям. */
+    public double getXErrorBound() {
+        return root == null ? 0 : root.xError;
+    }
+
+    public double getYErrorBound() {
+        return root == null ? 0 : root.yError;
+    }
+
+    /** Байт на точку в столбцах листьев (с учётом столбца весов, если он есть хотя бы в одном листе). */
+    public int getBytesPerPoint() {
+        return root == null ? 2 * encoding.getBytesPerValue() : root.bytesPerPoint;
+    }
+
+    /** Версия с изменёнными координатами точки i (вес сохраняется). */
+    public PersistentPoints set(int i, double x, double y) {
+        checkIndex(i);
+        return new PersistentPoints(encoding, set(root, i, x, y));
+    }
+
+    private static Tree set(Tree tree, int i, double x, double y) {
+        if (tree instanceof Leaf) {
+            PointBuffer copy = ((Leaf) tree).points.copy();
+            copy.set(i, x, y);
+            return new Leaf(copy);
+        }
+        Node node = (Node) tree;
+        return i < node.left.size
+                ? new Node(set(node.left, i, x, y), node.right)
+                : new Node(node.left, set(node.right, i - node.left.size, x, y));
+    }
+
+    public PersistentPoints add(double x, double y, double weight) {
+        if (root == null || lastLeaf(root).size >= LEAF_POINTS) {
+            PointBuffer leaf = new PointBuffer(1, encoding);
+            leaf.add(x, y, weight);
+            return new PersistentPoints(encoding, concat(root, new Leaf(leaf)));
+        }
+        return new PersistentPoints(encoding, addToLast(root, x, y, weight));
+    }
+
+    private static Leaf lastLeaf(Tree tree) {
+        while (tree instanceof Node) {
+            tree = ((Node) tree).right;
+        }
+        return (Leaf) tree;
+    }
+
+    private static Tree addToLast(Tree tree, double x, double y, double weight) {
+        if (tree instanceof Leaf) {
+            PointBuffer copy = ((Leaf) tree).points.copy();
+            copy.add(x, y, weight);
+            return new Leaf(copy);
+        }
+        Node node = (Node) tree;
+        return new Node(node.left, addToLast(node.right, x, y, weight));
+    }
+
+    public PersistentPoints addAll(List<DataPoint> points) {
+        if (points.isEmpty()) {
+            return this;
+        }
+        return new PersistentPoints(encoding, concat(root, build(points, 0, points.size(), encoding)));
+    }
+
+    /**
+     * Версия без точек с указанными индексами (первые count элементов, строго возрастают).
+     * Подряд идущие индексы удаляются одним разрезом.
+     */
+    public PersistentPoints removeSorted(int[] indices, int count) {
+        Tree tree = root;
+        int end = count;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && indices[start - 1] == indices[start] - 1) {
+                start--;
+            }
+            Tree[] tail = split(tree, indices[end - 1] + 1);
+            Tree[] head = split(tail[0], indices[start]);
+            tree = concat(head[0], tail[1]);
+            end = start;
+        }
+        return new PersistentPoints(encoding, tree);
+    }
+
+    /** Разрез дерева на первые i точек и остальные; пустая часть - null. */
+    private Tree[] split(Tree tree, int i) {
+        if (i == 0) {
+            return new Tree[]{null, tree};
+        }
+        if (i == tree.size) {
+            return new Tree[]{tree, null};
+        }
+        if (tree instanceof Leaf) {
+            PointBuffer points = ((Leaf) tree).points;
+            return new Tree[]{new Leaf(points.slice(0, i)), new Leaf(points.slice(i, points.size()))};
+        }
+        Node node = (Node) tree;
+        int leftSize = node.left.size;
+        if (i < leftSize) {
+            Tree[] parts = split(node.left, i);
+            return new Tree[]{parts[0], concat(parts[1], node.right)};
+        }
+        if (i > leftSize) {
+            Tree[] parts = split(node.right, i - leftSize);
+            return new Tree[]{concat(node.left, parts[0]), parts[1]};
+        }
+        return new Tree[]{node.left, node.right};
+    }
+
+    /**
+     * Склейка с сохранением баланса (соединение AVL-деревьев): более низкое дерево вставляется
+     * на соответствующую высоту вдоль края более высокого. Соседние неполные листья при полной
+     * точности сливаются, чтобы удаления не дробили дерево; в компактных кодировках слияние
+     * перекодировало бы значения, и листья остаются раздельными.
+     */
+    private Tree concat(Tree a, Tree b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.height > b.height + 1) {
+            Node node = (Node) a;
+            return balance(node.left, concat(node.right, b));
+        }
+        if (b.height > a.height + 1) {
+            Node node = (Node) b;
+            return balance(concat(a, node.left), node.right);
+        }
+        if (a instanceof Leaf && b instanceof Leaf && encoding.isExact() && a.size + b.size <= LEAF_POINTS) {
+            PointBuffer merged = ((Leaf) a).points.copy();
+            merged.addAll(((Leaf) b).points.asList());
+            return new Leaf(merged);
+        }
+        return new Node(a, b);
+    }
+
+    /** Узел из поддеревьев, высоты которых различаются не больше чем на 2, с поворотом при необходимости. */
+    private static Tree balance(Tree left, Tree right) {
+        if (left.height > right.height + 1) {
+            Node l = (Node) left;
+            if (l.left.height >= l.right.height) {
+                return new Node(l.left, new Node(l.right, right));
+            }
+            Node lr = (Node) l.right;
+            return new Node(new Node(l.left, lr.left), new Node(lr.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Node r = (Node) right;
+            if (r.right.height >= r.left.height) {
+                return new Node(new Node(left, r.left), r.right);
+            }
+            Node rl = (Node) r.left;
+            return new Node(new Node(left, rl.left), new Node(rl.right, r.right));
+        }
+        return new Node(left, right);
+    }
+
+    /**
+     * Обход листьев по порядку - последовательное чтение без спуска по дереву для каждой точки.
+     * Листья передаются только для чтения.
+     */
+    public void forEachLeaf(Consumer<PointColumns> action) {
+        forEachLeaf(root, action);
+    }
+
+    private static void forEachLeaf(Tree tree, Consumer<PointColumns> action) {
+        if (tree instanceof Leaf) {
+            action.accept(((Leaf) tree).points);
+        } else if (tree != null) {
+            forEachLeaf(((Node) tree).left, action);
+            forEachLeaf(((Node) tree).right, action);
+        }
+    }
+
+    /** Есть ли точки с весом, отличным от 1. */
+    public boolean isWeighted() {
+        boolean[] weighted = new boolean[1];
+        forEachLeaf(leaf -> {
+            for (int i = 0; i < leaf.size() && !weighted[0]; i++) {
+                weighted[0] = leaf.weight(i) != DataPoint.DEFAULT_WEIGHT;
+            }
+        });
+        return weighted[0];
+    }
+
+    /**
+     * Представление только для чтения; для одной версии всегда один и тот же объект,
+     * так что его можно использовать как ключ версии по ссылке.
+     */
+    public List<DataPoint> asList() {
+        return list;
+    }
+
+    private Located locate(int i) {
+        checkIndex(i);
+        Tree tree = root;
+        int start = 0;
+        while (tree instanceof Node) {
+            Node node = (Node) tree;
+            if (i - start < node.left.size) {
+                tree = node.left;
+            } else {
+                start += node.left.size;
+                tree = node.right;
+            }
+        }
+        return new Located(((Leaf) tree).points, start);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Индекс " + i + " вне диапазона 0.." + (size() - 1));
+        }
+    }
+
+    private abstract static class Tree {
+        final int size;
+        final int height;
+        final double xError;
+        final double yError;
+        final int bytesPerPoint;
+
+        Tree(int size, int height, double xError, double yError, int bytesPerPoint) {
+            this.size = size;
+            this.height = height;
+            this.xError = xError;
+            this.yError = yError;
+            this.bytesPerPoint = bytesPerPoint;
+        }
+    }
+
+    private static final class Leaf extends Tree {
+        final PointBuffer points;
+
+        Leaf(PointBuffer points) {
+            super(points.size(), 0, points.getXErrorBound(), points.getYErrorBound(), points.getBytesPerPoint());
+            this.points = points;
+        }
+    }
+
+    private static final class Node extends Tree {
+        final Tree left;
+        final Tree right;
+
+        Node(Tree left, Tree right) {
+            super(left.size + right.size, Math.max(left.height, right.height) + 1,
+                    Math.max(left.xError, right.xError), Math.max(left.yError, right.yError),
+                    Math.max(left.bytesPerPoint, right.bytesPerPoint));
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Located {
+        final PointBuffer points;
+        final int start;
+
+        Located(PointBuffer points, int start) {
+            this.points = points;
+            this.start = start;
+        }
+    }
+
+    /**
+     * При последовательном обходе соседние индексы попадают в один лист, поэтому последний найденный
+     * лист запоминается. Поле читается без синхронизации: объект Located и лист неизменяемы
+     * после публикации, так что в худшем случае поток просто спустится по дереву заново.
+     */
+    private final class ListView extends AbstractList<DataPoint> implements RandomAccess {
+        private Located last;
+
+        @Override
+        public DataPoint get(int index) {
+            Located located = last;
+            if (located == null || index < located.start || index >= located.start + located.points.size()) {
+                located = locate(index);
+                last = located;
+            }
+            return located.points.toDataPoint(index - located.start);
+        }
+
+        @Override
+        public int size() {
+            return PersistentPoints.this.size();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package ru.ifmo.cs.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Изменяемый набор точек в примитивных столбцах x, y, w - без объекта на каждую точку.
+ * <p>
+ * Столбцы x и y хранятся в выбранной кодировке {@link ColumnEncoding}: полная точность или компактное
+ * хранение (float32, целые 16/24 бита со смещением и шагом) для данных АЦП и больших наборов.
+ * Столбец весов заводится только при появлении веса, отличного от 1. Чтение всегда в double, так что
+ * расчёты по буферу ведутся в двойной точности; погрешность хранения - {@link #getXErrorBound()},
+ * {@link #getYErrorBound()}.
+ * <p>
+ * Не потокобезопасен; для расчётов в другом потоке используется копия ({@link #copy()}).
+ */
+public final class PointBuffer implements PointColumns {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ColumnEncoding encoding;
+    private PackedColumn x;
+    private PackedColumn y;
+    private PackedColumn w; // null - все веса равны DataPoint.DEFAULT_WEIGHT
+    private int size;
+
+    public PointBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PointBuffer(int capacity) {
+        this(capacity, ColumnEncoding.DOUBLE);
+    }
+
+    public PointBuffer(int capacity, ColumnEncoding encoding) {
+        int initial = Math.max(capacity, 1);
+        this.encoding = encoding;
+        this.x = PackedColumn.allocate(encoding, initial);
+        this.y = PackedColumn.allocate(encoding, initial);
+    }
+
+    private PointBuffer(ColumnEncoding encoding, PackedColumn x, PackedColumn y, PackedColumn w, int size) {
+        this.encoding = encoding;
+        this.x = x;
+        this.y = y;
+        this.w = w;
+        this.size = size;
+    }
+
+    public static PointBuffer of(List<DataPoint> points) {
+        return of(points, ColumnEncoding.DOUBLE);
+    }
+
+    /**
+     * Буфер в заданной кодировке; диапазоны целочисленных столбцов берутся по самим точкам,
+     * так что каждое значение квантуется один раз.
+     */
+    public static PointBuffer of(List<DataPoint> points, ColumnEncoding encoding) {
+        PointBuffer buffer = new PointBuffer(encoding, null, null, null, 0);
+        buffer.allocateFor(points.size(), i -> points.get(i).getX(), i -> points.get(i).getY());
+        buffer.addAll(points);
+        return buffer;
+    }
+
+    /** Буфер из точек [from, to) столбцового источника, без промежуточных объектов DataPoint. */
+    public static PointBuffer of(PointColumns source, int from, int to, ColumnEncoding encoding) {
+        PointBuffer buffer = new PointBuffer(encoding, null, null, null, 0);
+        buffer.allocateFor(to - from, i -> source.x(from + i), i -> source.y(from + i));
+        for (int i = from; i < to; i++) {
+            buffer.add(source.x(i), source.y(i), source.weight(i));
+        }
+        return buffer;
+    }
+
+    /** Копия в другой кодировке. */
+    public PointBuffer encoded(ColumnEncoding target) {
+        PointBuffer result = new PointBuffer(target, null, null, null, 0);
+        result.allocateFor(size, x::get, y::get);
+        for (int i = 0; i < size; i++) {
+            result.add(x.get(i), y.get(i), weight(i));
+        }
+        return result;
+    }
+
+    private void allocateFor(int count, IntToDoubleFunction xs, IntToDoubleFunction ys) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        if (!encoding.isExact()) {
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, xs.applyAsDouble(i));
+                maxX = Math.max(maxX, xs.applyAsDouble(i));
+                minY = Math.min(minY, ys.applyAsDouble(i));
+                maxY = Math.max(maxY, ys.applyAsDouble(i));
+            }
+        }
+        int capacity = Math.max(count, 1);
+        x = PackedColumn.allocate(encoding, capacity, minX, maxX);
+        y = PackedColumn.allocate(encoding, capacity, minY, maxY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public double x(int i) {
+        return x.get(checkIndex(i));
+    }
+
+    @Override
+    public double y(int i) {
+        return y.get(checkIndex(i));
+    }
+
+    @Override
+    public double weight(int i) {
+        checkIndex(i);
+        return w == null ? DataPoint.DEFAULT_WEIGHT : w.get(i);
+    }
+
+    public ColumnEncoding getEncoding() {
+        return encoding;
+    }
+
+    /** Наибольшая абсолютная погрешность хранения x. */
+    public double getXErrorBound() {
+        return x.getErrorBound();
+    }
+
+    /** Наибольшая абсолютная погрешность хранения y. */
+    public double getYErrorBound() {
+        return y.getErrorBound();
+    }
+
+    /** Байт на точку в столбцах (без учёта запаса ёмкости). */
+    public int getBytesPerPoint() {
+        int bytes = 2 * encoding.getBytesPerValue();
+        return w == null ? bytes : bytes + w.getEncoding().getBytesPerValue();
+    }
+
+    public void add(double px, double py, double weight) {
+        ensureCapacity(size + 1);
+        x.set(size, px);
+        y.set(size, py);
+        setWeight(size, weight);
+        size++;
+    }
+
+    public void addAll(List<DataPoint> points) {
+        ensureCapacity(size + points.size());
+        for (DataPoint p : points) {
+            x.set(size, p.getX());
+            y.set(size, p.getY());
+            setWeight(size, p.getWeight());
+            size++;
+        }
+    }
+
+    private void setWeight(int i, double weight) {
+        if (w == null) {
+            if (weight == DataPoint.DEFAULT_WEIGHT) {
+                return;
+            }
+            // Веса не квантуются по диапазону: float32 при компактном хранении, иначе double
+            w = PackedColumn.allocate(encoding.isExact() ? ColumnEncoding.DOUBLE : ColumnEncoding.FLOAT32,
+                    x.capacity());
+            for (int k = 0; k < i; k++) {
+                w.set(k, DataPoint.DEFAULT_WEIGHT);
+            }
+        }
+        w.set(i, weight);
+    }
+
+    public void set(int i, double px, double py) {
+        checkIndex(i);
+        x.set(i, px);
+        y.set(i, py);
+    }
+
+    /**
+     * Удаляет точки с указанными индексами (строго возрастающими) одним проходом со сдвигом.
+     */
+    public void removeSorted(int[] indices, int count) {
+        if (count == 0) {
+            return;
+        }
+        int write = indices[0];
+        int next = 0;
+        for (int read = indices[0]; read < size; read++) {
+            if (next < count && indices[next] == read) {
+                next++;
+                continue;
+            }
+            x.move(read, write);
+            y.move(read, write);
+            if (w != null) {
+                w.move(read, write);
+            }
+            write++;
+        }
+        size = write;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public PointBuffer copy() {
+        return new PointBuffer(encoding, x.copy(size), y.copy(size), w == null ? null : w.copy(size), size);
+    }
+
+    /**
+     * Копия точек [from, to) в той же кодировке: хранимые коды переносятся без повторного квантования,
+     * граница погрешности сохраняется.
+     */
+    public PointBuffer slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Диапазон [" + from + ", " + to + ") вне 0.." + size);
+        }
+        PointBuffer result = new PointBuffer(encoding, x.copy(to), y.copy(to), w == null ? null : w.copy(to), to);
+        if (from > 0) {
+            for (int i = from; i < to; i++) {
+                result.x.move(i, i - from);
+                result.y.move(i, i - from);
+                if (result.w != null) {
+                    result.w.move(i, i - from);
+                }
+            }
+            result.size = to - from;
+        }
+        return result;
+    }
+
+    public DataPoint toDataPoint(int i) {
+        return new DataPoint(x(i), y(i), weight(i));
+    }
+
+    /**
+     * Представление только для чтения в виде List&lt;DataPoint&gt; для расчётов: каждый get создаёт
+     * короткоживущую копию точки. Изменения буфера видны через представление.
+     */
+    public List<DataPoint> asList() {
+        return new ListView();
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > x.capacity()) {
+            int capacity = Math.max(required, x.capacity() + (x.capacity() >> 1));
+            x.grow(capacity);
+            y.grow(capacity);
+            if (w != null) {
+                w.grow(capacity);
+            }
+        }
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Индекс " + i + " вне диапазона 0.." + (size - 1));
+        }
+        return i;
+    }
+
+    private final class ListView extends AbstractList<DataPoint> implements RandomAccess {
+        @Override
+        public DataPoint get(int index) {
+            return toDataPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.ifmo.cs.model;
+
+/**
+ * Последовательность точек в столбцовом виде с доступом по индексу, без объектов DataPoint.
+ */
+public interface PointColumns {
+    int size();
+
+    double x(int i);
+
+    double y(int i);
+
+    double weight(int i);
+}
@@ -0,0 +1,18 @@
+package ru.ifmo.cs.model;
+
+import java.io.IOException;
+
+/**
+ * Набор точек, разбитый на сегменты, которые можно обрабатывать независимо и параллельно.
+ * Данные могут находиться вне кучи или на диске, поэтому набор имеет явное время жизни.
+ */
+public interface SegmentedPoints extends AutoCloseable {
+    long getCount();
+
+    int getSegmentCount();
+
+    PointColumns segment(int index) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,359 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.service.LeastSquaresFit;
+import ru.ifmo.cs.service.LevenbergMarquardt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Общая часть всех аппроксимаций: хранение результатов в примитивных массивах
+ * и расчёт СКО / R² по всем исходным точкам.
+ */
+public abstract class AbstractFunctionApproximation implements FunctionApproximation {
+    /**
+     * Системное свойство: уточнять нелинейные модели МНК в исходном пространстве по умолчанию.
+     * В приложении уточнение включается и выключается на панели инструментов.
+     */
+    public static final String NONLINEAR_REFINEMENT_PROPERTY = "ru.ifmo.cs.nonlinearRefinement";
+
+    protected double[] coefficients = new double[0];
+    protected double[] calculatedValues = new double[0];
+    protected double[] errors = new double[0];
+    protected double standardDeviation = Double.NaN;
+    protected double rSquared = Double.NaN;
+    protected LeastSquaresFit leastSquaresFit;
+
+    private static final int MAX_ROBUST_ITERATIONS = 30;
+    private static final double ROBUST_TOLERANCE = 1e-8;
+    // MAD / 0.6745 - состоятельная оценка σ при нормальном шуме
+    private static final double MAD_TO_SIGMA = 1 / 0.6745;
+
+    // Буферы IRLS переиспользуются между итерациями и повторными построениями
+    private List<DataPoint> robustPoints;
+    private double[] robustResiduals;
+    private double[] robustScratch;
+
+    @Override
+    public DoubleVector getCoefficientVector() {
+        return DoubleVector.wrap(coefficients);
+    }
+
+    @Override
+    public DoubleVector getCalculatedValueVector() {
+        return DoubleVector.wrap(calculatedValues);
+    }
+
+    @Override
+    public DoubleVector getErrorVector() {
+        return DoubleVector.wrap(errors);
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    @Override
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    @Override
+    public LeastSquaresFit getLeastSquaresFit() {
+        return leastSquaresFit;
+    }
+
+    /**
+     * IRLS: модель строится обычным (взвешенным) МНК, после чего веса точек умножаются на ψ(r/s)/(r/s)
+     * для выбранной функции потерь, где s - MAD остатков, и построение повторяется до сходимости коэффициентов.
+     * Работает для любого семейства, так как использует его собственный approximate на рабочей копии точек.
+     * СКО и R² считаются по исходным весам: итоговые робастные веса у каждой модели свои, и СКО с ними
+     * несравнимы между моделями. Выбор лучшей робастной модели - в RegressionService, по общему масштабу.
+     */
+    @Override
+    public FunctionApproximation approximateRobust(List<DataPoint> points, RobustLoss loss) {
+        int n = points.size();
+        prepareRobustBuffers(points);
+
+        approximate(robustPoints);
+        double[] previous = convergenceState().clone();
+
+        for (int iteration = 0; iteration < MAX_ROBUST_ITERATIONS && hasValidCoefficients(); iteration++) {
+            int valid = 0;
+            for (int i = 0; i < n; i++) {
+                DataPoint p = points.get(i);
+                double r = p.getY() - calculate(p.getX());
+                robustResiduals[i] = r;
+                if (Double.isFinite(r)) {
+                    robustScratch[valid++] = Math.abs(r);
+                }
+            }
+            double scale = MAD_TO_SIGMA * median(robustScratch, valid);
+            if (!(scale > 0)) {
+                break; // Остатки (почти) нулевые - перевзвешивать нечего
+            }
+
+            for (int i = 0; i < n; i++) {
+                double r = robustResiduals[i];
+                double factor = Double.isFinite(r) ? loss.weight(r / scale) : 1.0;
+                robustPoints.get(i).setWeight(points.get(i).getWeight() * factor);
+            }
+
+            approximate(robustPoints);
+            double[] current = convergenceState();
+            if (!hasValidCoefficients() || converged(previous, current)) {
+                break;
+            }
+            // Число коэффициентов может меняться между построениями (например, число участков)
+            if (previous.length == current.length) {
+                System.arraycopy(current, 0, previous, 0, previous.length);
+            } else {
+                previous = current.clone();
+            }
+        }
+
+        calculateMetrics(points);
+        return this;
+    }
+
+    /**
+     * Величины, по которым IRLS проверяет сходимость. По умолчанию - коэффициенты; модели, у которых
+     * коэффициенты не описывают кривую (например, непараметрические), возвращают свои значения.
+     */
+    protected double[] convergenceState() {
+        return coefficients;
+    }
+
+    private void prepareRobustBuffers(List<DataPoint> points) {
+        int n = points.size();
+        if (robustPoints == null || robustPoints.size() != n) {
+            robustPoints = new ArrayList<>(n);
+            for (DataPoint p : points) {
+                robustPoints.add(new DataPoint(p.getX(), p.getY(), p.getWeight()));
+            }
+            robustResiduals = new double[n];
+            robustScratch = new double[n];
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            DataPoint source = points.get(i);
+            DataPoint target = robustPoints.get(i);
+            target.setX(source.getX());
+            target.setY(source.getY());
+            target.setWeight(source.getWeight());
+        }
+    }
+
+    private static boolean converged(double[] previous, double[] current) {
+        if (previous.length != current.length) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (Math.abs(current[i] - previous[i]) > ROBUST_TOLERANCE * (Math.abs(previous[i]) + ROBUST_TOLERANCE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Медиана первых count элементов; порядок элементов в buffer меняется (выбор Хоара, в среднем O(n)).
+     */
+    private static double median(double[] buffer, int count) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        int k = count / 2;
+        double upper = select(buffer, 0, count - 1, k);
+        if (count % 2 == 1) {
+            return upper;
+        }
+        // После выбора k-го все элементы слева не больше него: нижняя медиана - максимум левой части
+        double lower = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < k; i++) {
+            lower = Math.max(lower, buffer[i]);
+        }
+        return (lower + upper) / 2;
+    }
+
+    private static double select(double[] a, int left, int right, int k) {
+        while (left < right) {
+            double pivot = a[(left + right) >>> 1];
+            int i = left, j = right;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+
+    /**
+     * Координаты, y и веса точек в порядке возрастания x (устойчивая сортировка индексов);
+     * уже упорядоченные данные только копируются.
+     */
+    protected static void sortByX(List<DataPoint> points, double[] x, double[] y, double[] w) {
+        int n = points.size();
+        boolean sorted = true;
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+            w[i] = p.getWeight();
+            if (i > 0 && x[i] < x[i - 1]) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        double[] xs = x.clone();
+        double[] ys = y.clone();
+        double[] ws = w.clone();
+        Arrays.sort(order, (a, b) -> Double.compare(xs[a], xs[b]));
+        for (int i = 0; i < n; i++) {
+            x[i] = xs[order[i]];
+            y[i] = ys[order[i]];
+            w[i] = ws[order[i]];
+        }
+    }
+
+    /**
+     * Начальное приближение для следующего построения - коэффициенты previous той же модели.
+     * Модели, уточняемые итерационно, стартуют с него, как при повторном построении того же экземпляра.
+     */
+    protected void startFrom(ApproximationResult previous) {
+        coefficients = previous.getCoefficientVector().toArray();
+    }
+
+    protected boolean hasValidCoefficients() {
+        if (coefficients.length == 0) {
+            return false;
+        }
+        for (double c : coefficients) {
+            if (Double.isNaN(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Состояние "не вычислено": коэффициенты и значения для всех исходных точек равны NaN.
+     */
+    protected void markNotComputed(int pointCount, int coefficientCount) {
+        coefficients = new double[coefficientCount];
+        Arrays.fill(coefficients, Double.NaN);
+        calculatedValues = new double[pointCount];
+        Arrays.fill(calculatedValues, Double.NaN);
+        errors = new double[pointCount];
+        Arrays.fill(errors, Double.NaN);
+        standardDeviation = Double.NaN;
+        rSquared = Double.NaN;
+        leastSquaresFit = null;
+    }
+
+    /**
+     * Уточнение параметров методом Левенберга-Марквардта. Стартует с тёплого приближения,
+     * а если его нет или уточнение от него не сошлось - с решения из seed.
+     * Если seed недоступен, стартует с константы, равной среднему y.
+     */
+    protected static double[] refineNonlinear(LevenbergMarquardt solver, double[] x, double[] y, double[] weights,
+                                              int count, double[] warmStart, Supplier<double[]> seed) {
+        if (warmStart != null) {
+            double[] params = warmStart.clone();
+            double sse = solver.minimize(x, y, weights, count, params);
+            if (Double.isFinite(sse) && solver.isConverged()) {
+                return params;
+            }
+        }
+        double[] params = seed.get();
+        if (params == null) {
+            double meanY = 0;
+            for (int i = 0; i < count; i++) {
+                meanY += y[i];
+            }
+            params = new double[]{count > 0 ? meanY / count : 0, 0};
+        }
+        solver.minimize(x, y, weights, count, params);
+        return params;
+    }
+
+    /**
+     * СКО и R² с учётом весов точек: σ = sqrt(Σw·e² / Σw), R² = 1 - Σw·e² / Σw·(y - ȳ_w)².
+     * Взвешенные среднее и SST накапливаются инкрементально (алгоритм Уэста) в том же проходе, что и SSE.
+     */
+    protected void calculateMetrics(List<DataPoint> points) {
+        int n = points.size();
+        calculatedValues = new double[n];
+        errors = new double[n];
+
+        if (n == 0) {
+            standardDeviation = Double.NaN;
+            rSquared = Double.NaN;
+            return;
+        }
+
+        double sse = 0;         // Взвешенная сумма квадратов ошибок только для точек с валидным предсказанием
+        double validWeight = 0; // Суммарный вес таких точек
+        double totalWeight = 0;
+        double meanY = 0;
+        double sst = 0;         // Взвешенная сумма квадратов отклонений от среднего по ВСЕМ исходным точкам
+
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            double w = p.getWeight();
+            double yActual = p.getY();
+            double yPredicted = calculate(p.getX());
+            calculatedValues[i] = yPredicted;
+
+            if (Double.isFinite(yPredicted)) {
+                double error = yPredicted - yActual;
+                errors[i] = error;
+                sse += w * error * error;
+                validWeight += w;
+            } else {
+                errors[i] = Double.NaN;
+            }
+
+            if (w > 0) {
+                totalWeight += w;
+                double delta = yActual - meanY;
+                meanY += delta * w / totalWeight;
+                sst += w * delta * (yActual - meanY);
+            }
+        }
+
+        standardDeviation = validWeight > 0 ? Math.sqrt(sse / validWeight) : Double.NaN;
+
+        // Если все y одинаковы (sst = 0), R² определён только для идеального совпадения
+        if (sst > 0) {
+            rSquared = 1 - sse / sst;
+        } else {
+            rSquared = (sse == 0) ? 1.0 : Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.service.LeastSquaresFit;
+
+import java.util.List;
+
+/**
+ * Построенная модель только для чтения: значение в точке, коэффициенты и метрики.
+ * Этот вид отдают результаты расчёта и файлы сеансов; перестраивает модель только
+ * {@link FunctionApproximation}, которая сама является результатом своего последнего построения.
+ */
+public interface ApproximationResult {
+    String getName();
+    double calculate(double x);
+    double getStandardDeviation();
+    double getRSquared();
+
+    // Примитивный API результатов: без упаковки и с доступом по индексу
+    DoubleVector getCoefficientVector();
+    DoubleVector getCalculatedValueVector();
+    DoubleVector getErrorVector();
+
+    /**
+     * Опорная (непараметрическая) кривая для сравнения: строится и рисуется вместе с моделями,
+     * но не выбирается наилучшей, так как повторяет данные за счёт гибкости, а не формулы.
+     */
+    default boolean isReference() {
+        return false;
+    }
+
+    /**
+     * Коэффициенты - параметры формулы: их число и смысл не зависят от данных. Только для таких моделей
+     * строятся бутстреп-интервалы; у опорных кривых коэффициенты - настройки сглаживания.
+     */
+    default boolean isParametric() {
+        return !isReference();
+    }
+
+    /**
+     * Решение МНК с ковариацией коэффициентов для стандартных ошибок и полос;
+     * null, если модель строится не полиномиальным МНК.
+     */
+    default LeastSquaresFit getLeastSquaresFit() {
+        return null;
+    }
+
+    // Старый API сохранён как адаптер поверх DoubleVector
+    default List<Double> getCoefficients() {
+        return getCoefficientVector().asList();
+    }
+
+    default List<Double> getCalculatedValues() {
+        return getCalculatedValueVector().asList();
+    }
+
+    default List<Double> getErrors() {
+        return getErrorVector().asList();
+    }
+
+    default String getCoefficientsAsString() {
+        DoubleVector coeffs = getCoefficientVector();
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < coeffs.size(); i++) {
+            sb.append(String.format("%.6f", coeffs.get(i)));
+            if (i < coeffs.size() - 1) sb.append(", ");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -1,66 +1,106 @@
 package ru.ifmo.cs.model.functions;
 
 import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.service.LevenbergMarquardt;
+import ru.ifmo.cs.service.MathService;
 import org.apache.commons.math3.fitting.PolynomialCurveFitter;
 import org.apache.commons.math3.fitting.WeightedObservedPoints;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class ExponentialFunction implements FunctionApproximation {
-    private List<Double> coefficients = new ArrayList<>();
-    private List<Double> calculatedValues = new ArrayList<>(); // Будут храниться предсказания для ВСЕХ исходных точек
-    private List<Double> errors = new ArrayList<>();           // Будут храниться ошибки для ВСЕХ исходных точек
-    private double standardDeviation;
-    private double rSquared;
+public class ExponentialFunction extends AbstractFunctionApproximation {
+    private boolean nonlinearRefinement;
+    private LevenbergMarquardt solver; // создаётся при первом уточнении и переиспользуется
+
+    public ExponentialFunction() {
+        this(Boolean.getBoolean(NONLINEAR_REFINEMENT_PROPERTY));
+    }
+
+    public ExponentialFunction(boolean nonlinearRefinement) {
+        this.nonlinearRefinement = nonlinearRefinement;
+    }
+
+    public boolean isNonlinearRefinement() {
+        return nonlinearRefinement;
+    }
+
+    public void setNonlinearRefinement(boolean nonlinearRefinement) {
+        this.nonlinearRefinement = nonlinearRefinement;
+    }
 
     @Override
     public FunctionApproximation approximate(List<DataPoint> allOriginalPoints) {
-        WeightedObservedPoints obs = new WeightedObservedPoints();
-        // Список pointsUsedForFitting не нужен напрямую здесь, так как мы используем allOriginalPoints
-        // для calculateMetricsAndPopulateLists, но obs будет содержать только валидные точки для фиттинга.
+        if (nonlinearRefinement) {
+            return approximateNonlinear(allOriginalPoints);
+        }
+
+        double[] logLinear = fitLogLinear(allOriginalPoints);
+        if (logLinear == null) {
+            // Коэффициенты и значения для всех исходных точек - NaN, сигнализируя о неудаче
+            markNotComputed(allOriginalPoints.size(), 2);
+            return this;
+        }
+
+        coefficients = logLinear;
 
-        // Отчистка предыдущих результатов
-        coefficients.clear();
-        calculatedValues.clear();
-        errors.clear();
-        standardDeviation = Double.NaN;
-        rSquared = Double.NaN;
+        // Вычисляем метрики и заполняем значения для всех исходных точек
+        calculateMetrics(allOriginalPoints);
+
+        return this;
+    }
+
+    /**
+     * МНК в исходном пространстве по всем точкам, включая y <= 0.
+     * Начальное приближение - решение в логарифмах. При повторном построении того же экземпляра
+     * (итерации IRLS в {@link #approximateRobust}) и у экземпляра, созданного по прошлому результату
+     * ({@link ModelProvider#createWarmStarted}, живой пересчёт), старт - предыдущее решение: данные
+     * и веса меняются мало, и оно ближе к новому минимуму.
+     */
+    private FunctionApproximation approximateNonlinear(List<DataPoint> allOriginalPoints) {
+        double[] warmStart = hasValidCoefficients() ? coefficients.clone() : null;
+
+        int n = allOriginalPoints.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] weights = DataPoint.weightsOf(allOriginalPoints);
+        for (int i = 0; i < n; i++) {
+            DataPoint p = allOriginalPoints.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+        }
+
+        if (solver == null) {
+            solver = new LevenbergMarquardt(MathService.EXPONENTIAL_MODEL);
+        }
+        coefficients = refineNonlinear(solver, x, y, weights, n, warmStart, () -> fitLogLinear(allOriginalPoints));
+        calculateMetrics(allOriginalPoints);
+        return this;
+    }
+
+    /**
+     * Линейная аппроксимация ln(y) = ln(a) + b*x по точкам с y > 0; null, если таких точек меньше двух.
+     */
+    private double[] fitLogLinear(List<DataPoint> allOriginalPoints) {
+        WeightedObservedPoints obs = new WeightedObservedPoints();
 
         // Фильтруем точки: для экспоненциальной аппроксимации y должен быть > 0
         for (DataPoint p : allOriginalPoints) {
             if (p.getY() > 0) {
-                obs.add(p.getX(), Math.log(p.getY()));
+                obs.add(p.getWeight(), p.getX(), Math.log(p.getY()));
             }
         }
 
         // Проверяем, достаточно ли точек для аппроксимации (минимум 2 для линейной регрессии)
         if (obs.toList().size() < 2) {
-            // Если точек недостаточно, устанавливаем коэффициенты в NaN, сигнализируя о неудаче.
-            coefficients.add(Double.NaN); // Коэффициент 'a'
-            coefficients.add(Double.NaN); // Коэффициент 'b'
-
-            // Заполняем calculatedValues и errors значениями NaN для всех исходных точек
-            // чтобы их размеры совпадали с dataPoints.
-            for (int i = 0; i < allOriginalPoints.size(); i++) {
-                calculatedValues.add(Double.NaN);
-                errors.add(Double.NaN);
-            }
-            return this; // Возвращаем текущий объект в состоянии "не вычислено"
+            return null;
         }
 
-        // Выполняем линейную аппроксимацию для ln(y) = ln(a) + b*x
-        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(1); // Степень 1 для линейной регрессии
+        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(1);
         double[] fittedLogCoeffs = fitter.fit(obs.toList()); // coeffs[0] = ln(a), coeffs[1] = b
 
-        // Сохраняем восстановленные коэффициенты (a и b)
-        coefficients.add(Math.exp(fittedLogCoeffs[0])); // a = exp(coeffs[0])
-        coefficients.add(fittedLogCoeffs[1]);           // b = coeffs[1]
-
-        // Вычисляем метрики и заполняем списки для всех исходных точек
-        calculateMetricsAndPopulateLists(allOriginalPoints);
-
-        return this;
+        // Восстановленные коэффициенты (a и b)
+        return new double[]{Math.exp(fittedLogCoeffs[0]), fittedLogCoeffs[1]};
     }
 
     @Override
@@ -68,85 +108,66 @@ public class ExponentialFunction implements FunctionApproximation {
         return "Экспоненциальная";
     }
 
-    @Override
-    public List<Double> getCoefficients() {
-        return coefficients;
-    }
-
     @Override
     public double calculate(double x) {
         // Если коэффициенты невалидны (например, аппроксимация не удалась), возвращаем NaN
-        if (coefficients.isEmpty() || coefficients.get(0).isNaN() || coefficients.get(1).isNaN()) {
+        if (!hasValidCoefficients()) {
             return Double.NaN;
         }
         // Вычисляем значение функции ae^(bx)
-        return coefficients.get(0) * Math.exp(coefficients.get(1) * x);
-    }
-
-    @Override
-    public double getStandardDeviation() {
-        return standardDeviation;
-    }
-
-    @Override
-    public double getRSquared() {
-        return rSquared;
+        return coefficients[0] * Math.exp(coefficients[1] * x);
     }
 
-    @Override
-    public List<Double> getCalculatedValues() {
-        return calculatedValues;
-    }
+    // Точки с y <= 0 отбрасываются в логарифмах и учитываются при уточнении, поэтому ограничений на область нет
+    public static class Provider implements ModelProvider {
+        private final boolean nonlinearRefinement;
 
-    @Override
-    public List<Double> getErrors() {
-        return errors;
-    }
+        public Provider() {
+            this(Boolean.getBoolean(NONLINEAR_REFINEMENT_PROPERTY));
+        }
 
-    private void calculateMetricsAndPopulateLists(List<DataPoint> allOriginalPoints) {
-        calculatedValues.clear();
-        errors.clear();
+        public Provider(boolean nonlinearRefinement) {
+            this.nonlinearRefinement = nonlinearRefinement;
+        }
 
-        double sse = 0;
-        double sst = 0;
+        @Override
+        public String getName() {
+            return new ExponentialFunction().getName();
+        }
 
-        if (allOriginalPoints.isEmpty()) {
-            standardDeviation = Double.NaN;
-            rSquared = Double.NaN;
-            return;
+        @Override
+        public int getMinPoints() {
+            return 2;
         }
 
-        double meanY = allOriginalPoints.stream().mapToDouble(DataPoint::getY).average().orElse(0);
+        @Override
+        public double getCostEstimate(int pointCount) {
+            return pointCount * 6.0;
+        }
 
-        int validPredictionCount = 0;
-        for (DataPoint p : allOriginalPoints) {
-            double yActual = p.getY();
-            double yPredicted = calculate(p.getX());
-
-            calculatedValues.add(yPredicted);
-
-            if (!Double.isNaN(yPredicted) && Double.isFinite(yPredicted)) {
-                double error = yPredicted - yActual;
-                errors.add(error);
-                sse += error * error;
-                validPredictionCount++;
-            } else {
-                errors.add(Double.NaN);
-            }
+        /** После нелинейного уточнения модель уже не линейна по параметрам в логарифмах. */
+        @Override
+        public LinearBasis getLinearBasis(DataSummary summary) {
+            return nonlinearRefinement ? null : LinearBasis.exponential();
+        }
 
-            sst += (yActual - meanY) * (yActual - meanY);
+        @Override
+        public FunctionApproximation create() {
+            return new ExponentialFunction(nonlinearRefinement);
         }
 
-        if (validPredictionCount > 0) {
-            standardDeviation = Math.sqrt(sse / validPredictionCount);
-        } else {
-            standardDeviation = Double.NaN;
+        @Override
+        public FunctionApproximation createWarmStarted(ApproximationResult previous) {
+            ExponentialFunction function = new ExponentialFunction(nonlinearRefinement);
+            if (nonlinearRefinement) {
+                function.startFrom(previous);
+            }
+            return function;
         }
 
-        if (sst > 0) {
-            rSquared = 1 - sse / sst;
-        } else {
-            rSquared = (sse == 0) ? 1.0 : Double.NaN;
+        @Override
+        public ModelProvider withNonlinearRefinement(boolean enabled) {
+            return enabled == nonlinearRefinement ? this : new Provider(enabled);
         }
     }
-}
\ No newline at end of file
+}
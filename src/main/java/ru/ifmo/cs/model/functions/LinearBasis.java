@@ -0,0 +1,232 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataSummary;
+
+import java.util.Arrays;
+
+/**
+ * Описание модели, линейной по параметрам в преобразованных координатах: t(y) ≈ βᵀ·φ(x).
+ * Такие модели решаются по достаточным статистикам (ΦᵀWΦ, ΦᵀWt), которые можно складывать и вычитать
+ * по частям данных - на этом основаны скользящий контроль и потоковое построение.
+ */
+public abstract class LinearBasis {
+
+    public abstract int dimension();
+
+    /** Участвует ли точка в построении (область определения преобразований). */
+    public abstract boolean accepts(double x, double y);
+
+    public abstract void features(double x, double[] out);
+
+    public abstract double target(double y);
+
+    /** Предсказание в исходных координатах y; NaN вне области определения. */
+    public abstract double predict(double x, double[] beta);
+
+    /** Коэффициенты модели в том виде, в каком их хранит соответствующая FunctionApproximation. */
+    public double[] toModelCoefficients(double[] beta) {
+        double[] result = new double[dimension()];
+        toModelCoefficients(beta, result);
+        return result;
+    }
+
+    /** Вариант без выделения памяти: out длины dimension(), не совпадает с beta. */
+    public abstract void toModelCoefficients(double[] beta, double[] out);
+
+    /**
+     * Многочлен степени degree по нормированной переменной u = (x - center) / scale:
+     * нормировка сохраняет обусловленность нормальных уравнений при больших x. Цель - y за вычетом
+     * середины диапазона y, иначе при большом смещении y суммы ΦᵀWt складывают и вычитают
+     * почти равные большие числа.
+     */
+    public static LinearBasis polynomial(int degree, DataSummary summary) {
+        double center = (summary.getMinX() + summary.getMaxX()) / 2;
+        double halfRange = (summary.getMaxX() - summary.getMinX()) / 2;
+        double offset = (summary.getMinY() + summary.getMaxY()) / 2;
+        return new Polynomial(degree, center, halfRange > 0 ? halfRange : 1, Double.isFinite(offset) ? offset : 0);
+    }
+
+    /** y = a + b·ln(x), x > 0. */
+    public static LinearBasis logarithmic() {
+        return new Logarithmic();
+    }
+
+    /** ln(y) = ln(a) + b·x, y > 0. */
+    public static LinearBasis exponential() {
+        return new Exponential();
+    }
+
+    /** ln(y) = ln(a) + b·ln(x), x > 0, y > 0. */
+    public static LinearBasis power() {
+        return new Power();
+    }
+
+    private static final class Polynomial extends LinearBasis {
+        private final int degree;
+        private final double center;
+        private final double scale;
+        private final double offset;
+
+        Polynomial(int degree, double center, double scale, double offset) {
+            this.degree = degree;
+            this.center = center;
+            this.scale = scale;
+            this.offset = offset;
+        }
+
+        @Override
+        public int dimension() {
+            return degree + 1;
+        }
+
+        @Override
+        public boolean accepts(double x, double y) {
+            return true;
+        }
+
+        @Override
+        public void features(double x, double[] out) {
+            double u = (x - center) / scale;
+            double power = 1;
+            for (int j = 0; j <= degree; j++) {
+                out[j] = power;
+                power *= u;
+            }
+        }
+
+        @Override
+        public double target(double y) {
+            return y - offset;
+        }
+
+        @Override
+        public double predict(double x, double[] beta) {
+            double u = (x - center) / scale;
+            double result = 0;
+            for (int j = degree; j >= 0; j--) {
+                result = result * u + beta[j];
+            }
+            return result + offset;
+        }
+
+        /**
+         * Переход от коэффициентов по u к коэффициентам по x: раскрытие ((x - c)/s)^j по биному
+         * и возврат смещения y в свободный член.
+         */
+        @Override
+        public void toModelCoefficients(double[] beta, double[] result) {
+            Arrays.fill(result, 0);
+            for (int j = 0; j <= degree; j++) {
+                double factor = beta[j] / Math.pow(scale, j);
+                double binomial = 1;
+                for (int m = 0; m <= j; m++) {
+                    // Слагаемое C(j, m)·x^m·(-c)^(j-m)
+                    result[m] += factor * binomial * Math.pow(-center, j - m);
+                    binomial = binomial * (j - m) / (m + 1);
+                }
+            }
+            result[0] += offset;
+        }
+    }
+
+    private static final class Logarithmic extends LinearBasis {
+        @Override
+        public int dimension() {
+            return 2;
+        }
+
+        @Override
+        public boolean accepts(double x, double y) {
+            return x > 0;
+        }
+
+        @Override
+        public void features(double x, double[] out) {
+            out[0] = 1;
+            out[1] = Math.log(x);
+        }
+
+        @Override
+        public double target(double y) {
+            return y;
+        }
+
+        @Override
+        public double predict(double x, double[] beta) {
+            return x > 0 ? beta[0] + beta[1] * Math.log(x) : Double.NaN;
+        }
+
+        @Override
+        public void toModelCoefficients(double[] beta, double[] out) {
+            System.arraycopy(beta, 0, out, 0, 2);
+        }
+    }
+
+    private static final class Exponential extends LinearBasis {
+        @Override
+        public int dimension() {
+            return 2;
+        }
+
+        @Override
+        public boolean accepts(double x, double y) {
+            return y > 0;
+        }
+
+        @Override
+        public void features(double x, double[] out) {
+            out[0] = 1;
+            out[1] = x;
+        }
+
+        @Override
+        public double target(double y) {
+            return Math.log(y);
+        }
+
+        @Override
+        public double predict(double x, double[] beta) {
+            return Math.exp(beta[0] + beta[1] * x);
+        }
+
+        @Override
+        public void toModelCoefficients(double[] beta, double[] out) {
+            out[0] = Math.exp(beta[0]);
+            out[1] = beta[1];
+        }
+    }
+
+    private static final class Power extends LinearBasis {
+        @Override
+        public int dimension() {
+            return 2;
+        }
+
+        @Override
+        public boolean accepts(double x, double y) {
+            return x > 0 && y > 0;
+        }
+
+        @Override
+        public void features(double x, double[] out) {
+            out[0] = 1;
+            out[1] = Math.log(x);
+        }
+
+        @Override
+        public double target(double y) {
+            return Math.log(y);
+        }
+
+        @Override
+        public double predict(double x, double[] beta) {
+            return x > 0 ? Math.exp(beta[0] + beta[1] * Math.log(x)) : Double.NaN;
+        }
+
+        @Override
+        public void toModelCoefficients(double[] beta, double[] out) {
+            out[0] = Math.exp(beta[0]);
+            out[1] = beta[1];
+        }
+    }
+}
@@ -1,32 +1,21 @@
 package ru.ifmo.cs.model.functions;
 
 import ru.ifmo.cs.model.DataPoint;
-import org.apache.commons.math3.fitting.PolynomialCurveFitter;
-import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.service.MathService;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class LinearFunction implements FunctionApproximation {
-    private List<Double> coefficients = new ArrayList<>();
-    private List<Double> calculatedValues = new ArrayList<>();
-    private List<Double> errors = new ArrayList<>();
-    private double standardDeviation;
-    private double rSquared;
+public class LinearFunction extends AbstractFunctionApproximation {
 
     @Override
     public FunctionApproximation approximate(List<DataPoint> points) {
-        WeightedObservedPoints obs = new WeightedObservedPoints();
-        for (DataPoint p : points) {
-            obs.add(p.getX(), p.getY());
+        leastSquaresFit = MathService.polynomialFit(points, 1);
+        if (leastSquaresFit == null) {
+            markNotComputed(points.size(), 2);
+            return this;
         }
-
-        PolynomialCurveFitter fitter = PolynomialCurveFitter.create(1);
-        double[] coeffs = fitter.fit(obs.toList());
-
-        coefficients.clear();
-        coefficients.add(coeffs[0]); 
-        coefficients.add(coeffs[1]); 
+        coefficients = leastSquaresFit.getCoefficients();
 
         calculateMetrics(points);
         return this;
@@ -37,57 +26,35 @@ public class LinearFunction implements FunctionApproximation {
         return "Линейная";
     }
 
-    @Override
-    public List<Double> getCoefficients() {
-        return coefficients;
-    }
-
     @Override
     public double calculate(double x) {
-        return coefficients.get(0) + coefficients.get(1) * x;
-    }
-
-    @Override
-    public double getStandardDeviation() {
-        return standardDeviation;
-    }
-
-    @Override
-    public double getRSquared() {
-        return rSquared;
+        return leastSquaresFit != null ? leastSquaresFit.evaluate(x) : Double.NaN;
     }
 
-    @Override
-    public List<Double> getCalculatedValues() {
-        return calculatedValues;
-    }
-
-    @Override
-    public List<Double> getErrors() {
-        return errors;
-    }
-
-    private void calculateMetrics(List<DataPoint> points) {
-        calculatedValues.clear();
-        errors.clear();
-
-        double sse = 0; 
-        double sst = 0; 
-        double meanY = points.stream().mapToDouble(DataPoint::getY).average().orElse(0);
+    public static class Provider implements ModelProvider {
+        @Override
+        public String getName() {
+            return new LinearFunction().getName();
+        }
 
-        for (DataPoint p : points) {
-            double yActual = p.getY();
-            double yPredicted = calculate(p.getX());
+        @Override
+        public int getMinPoints() {
+            return 2;
+        }
 
-            calculatedValues.add(yPredicted);
-            double error = yPredicted - yActual;
-            errors.add(error);
+        @Override
+        public double getCostEstimate(int pointCount) {
+            return pointCount * 4.0;
+        }
 
-            sse += error * error;
-            sst += (yActual - meanY) * (yActual - meanY);
+        @Override
+        public LinearBasis getLinearBasis(DataSummary summary) {
+            return LinearBasis.polynomial(1, summary);
         }
 
-        standardDeviation = Math.sqrt(sse / points.size());
-        rSquared = 1 - sse / sst;
+        @Override
+        public FunctionApproximation create() {
+            return new LinearFunction();
+        }
     }
 }
@@ -0,0 +1,327 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.NormalEquations;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Локальная регрессия (LOESS): в каждой точке кривая - значение взвешенного многочлена степени degree,
+ * построенного по доле span ближайших по x точек с ядром tricube (1 - |u|³)³. Непараметрическая опорная
+ * кривая: рисуется и сравнивается с параметрическими моделями, но не выбирается наилучшей.
+ * <p>
+ * Прямой расчёт в каждой из n точек стоит O(n²). Здесь локальные многочлены строятся только в GRID_SIZE
+ * равноотстоящих узлах (параллельно), а между узлами кривая восстанавливается кубическим сплайном Эрмита
+ * по значениям и наклонам локальных многочленов. Ядро заменено ступенчатым: KERNEL_LEVELS вложенных окон
+ * |x - x0| &lt; h·l/L с весами, дающими tricube в середине каждой ступени. Суммы Σw·t^k и Σw·t^k·y по окну
+ * - разности префиксных сумм по точкам, упорядоченным по x, поэтому узел стоит O(L·(log n + d²))
+ * независимо от ширины окна, а всё построение - O(n log n) на сортировку и O(n) на суммы.
+ * <p>
+ * Моменты окна пересчитываются к центру узла из сумм по глобальной нормированной координате, и при
+ * узком окне это теряет точность как (ширина окна)^(2·degree), поэтому степень ограничена двумя.
+ */
+public class LoessFunction extends AbstractFunctionApproximation {
+    public static final double DEFAULT_SPAN = 0.3;
+    private static final int GRID_SIZE = 512;
+    private static final int KERNEL_LEVELS = 16;
+    // Вклад окна радиуса h·l/L: разность tricube в серединах соседних ступеней
+    private static final double[] LEVEL_WEIGHTS = levelWeights();
+
+    private final double span;
+    private final int degree;
+
+    private double center;
+    private double scale = 1;
+    private double yShift;
+    private double gridStart;
+    private double gridStep;
+    private double[] nodeValues = new double[0];
+    private double[] nodeSlopes = new double[0];
+
+    public LoessFunction() {
+        this(DEFAULT_SPAN, 1);
+    }
+
+    public LoessFunction(double span, int degree) {
+        if (!(span > 0 && span <= 1)) {
+            throw new IllegalArgumentException("Доля точек окрестности должна быть в (0, 1]");
+        }
+        if (degree < 0 || degree > 2) {
+            throw new IllegalArgumentException("Степень локального многочлена должна быть от 0 до 2");
+        }
+        this.span = span;
+        this.degree = degree;
+    }
+
+    private static double[] levelWeights() {
+        double[] weights = new double[KERNEL_LEVELS];
+        for (int l = 0; l < KERNEL_LEVELS; l++) {
+            double inner = tricube((l + 0.5) / KERNEL_LEVELS);
+            double outer = l + 1 < KERNEL_LEVELS ? tricube((l + 1.5) / KERNEL_LEVELS) : 0;
+            weights[l] = inner - outer;
+        }
+        return weights;
+    }
+
+    private static double tricube(double u) {
+        double a = 1 - u * u * u;
+        return a * a * a;
+    }
+
+    @Override
+    public boolean isReference() {
+        return true;
+    }
+
+    @Override
+    public FunctionApproximation approximate(List<DataPoint> points) {
+        int n = points.size();
+        if (n < degree + 2) {
+            markNotComputed(n, 2);
+            nodeValues = new double[0];
+            nodeSlopes = new double[0];
+            return this;
+        }
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] w = new double[n];
+        sortByX(points, x, y, w);
+
+        center = (x[0] + x[n - 1]) / 2;
+        scale = (x[n - 1] - x[0]) / 2;
+        if (!(scale > 0)) {
+            scale = 1;
+        }
+        double weightSum = 0;
+        double weightedY = 0;
+        for (int i = 0; i < n; i++) {
+            weightSum += w[i];
+            weightedY += w[i] * y[i];
+        }
+        yShift = weightSum > 0 ? weightedY / weightSum : 0;
+
+        NormalEquations.PrefixSums sums = new NormalEquations.PrefixSums(x, y, w, n, degree, center, scale, yShift);
+        int neighbours = Math.min(n, Math.max(degree + 2, (int) Math.ceil(span * n)));
+        int nodes = x[n - 1] > x[0] ? GRID_SIZE : 1;
+        gridStart = x[0];
+        gridStep = nodes > 1 ? (x[n - 1] - x[0]) / (nodes - 1) : 0;
+        nodeValues = new double[nodes];
+        nodeSlopes = new double[nodes];
+
+        // Узлы независимы: каждый пишет только свои элементы nodeValues и nodeSlopes
+        IntStream.range(0, nodes).parallel().forEach(j -> {
+            double x0 = j == nodes - 1 ? x[n - 1] : gridStart + j * gridStep;
+            fitNode(j, x0, x, n, neighbours, sums);
+        });
+
+        coefficients = new double[]{span, degree};
+        calculateMetrics(points);
+        return this;
+    }
+
+    /** Локальный многочлен в узле x0 по окну из neighbours ближайших точек; пишет значение и наклон. */
+    private void fitNode(int node, double x0, double[] x, int n, int neighbours,
+                         NormalEquations.PrefixSums sums) {
+        double h = bandwidth(x0, x, n, neighbours);
+        if (!(h > 0)) {
+            // Все соседи в самом узле: значение - взвешенное среднее, наклон не определён данными
+            int from = lowerBound(x, n, x0);
+            int to = upperBound(x, n, x0);
+            double total = sums.power(0, from, to);
+            nodeValues[node] = total > 0
+                    ? sums.moment(0, from, to) / total + yShift
+                    : Double.NaN;
+            nodeSlopes[node] = 0;
+            return;
+        }
+
+        int p = degree + 1;
+        double[] raw = new double[2 * p - 1];
+        double[] rawY = new double[p];
+        for (int l = 0; l < KERNEL_LEVELS; l++) {
+            double radius = h * (l + 1) / KERNEL_LEVELS;
+            int from;
+            int to;
+            if (l == KERNEL_LEVELS - 1) {
+                // Внешнее окно включает самого дальнего соседа (с запасом на округление x0 ± h),
+                // иначе при равноудалённых соседях окно оказалось бы пустым
+                radius += 2 * Math.ulp(Math.abs(x0) + h);
+                from = lowerBound(x, n, x0 - radius);
+                to = upperBound(x, n, x0 + radius);
+            } else {
+                from = upperBound(x, n, x0 - radius);
+                to = lowerBound(x, n, x0 + radius);
+            }
+            if (from >= to) {
+                continue;
+            }
+            double c = LEVEL_WEIGHTS[l];
+            for (int m = 0; m < raw.length; m++) {
+                raw[m] += c * sums.power(m, from, to);
+            }
+            for (int m = 0; m < p; m++) {
+                rawY[m] += c * sums.moment(m, from, to);
+            }
+        }
+
+        // Моменты относительно узла в единицах окна: u = (t - t0) / ht
+        double t0 = (x0 - center) / scale;
+        double ht = h / scale;
+        double[] local = shift(raw, t0, ht);
+        double[] localY = shift(rawY, t0, ht);
+
+        double[] factor = new double[p * p];
+        NormalEquations.hankel(local, p, factor);
+        int rank = NormalEquations.factor(factor, p, 1e-10, 0);
+        if (rank == 0) {
+            nodeValues[node] = Double.NaN;
+            nodeSlopes[node] = Double.NaN;
+            return;
+        }
+        // При вырожденном окне (мало разных x) остаётся многочлен меньшей степени - ведущий блок множителя
+        double[] beta = new double[rank];
+        NormalEquations.solve(factor, p, rank, localY, beta);
+        nodeValues[node] = beta[0] + yShift;
+        nodeSlopes[node] = rank > 1 ? beta[1] / ht / scale : 0;
+    }
+
+    /**
+     * Расстояние от x0 до самой дальней из neighbours ближайших точек: окно из neighbours подряд идущих
+     * точек, сдвинутое так, чтобы наибольшее из расстояний до его краёв было минимальным.
+     */
+    private static double bandwidth(double x0, double[] x, int n, int neighbours) {
+        int position = lowerBound(x, n, x0);
+        int low = Math.max(0, position - neighbours);
+        int high = Math.min(position, n - neighbours);
+        // Разность (правый край - x0) - (x0 - левый край) не убывает при сдвиге окна вправо
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (x[mid + neighbours - 1] - x0 >= x0 - x[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        double best = Math.max(x0 - x[low], x[low + neighbours - 1] - x0);
+        if (low > 0) {
+            best = Math.min(best, Math.max(x0 - x[low - 1], x[low + neighbours - 2] - x0));
+        }
+        return best;
+    }
+
+    /** Σ c·(t - t0)^m / ht^m по суммам Σ c·t^i (бином Ньютона). */
+    private static double[] shift(double[] raw, double t0, double ht) {
+        double[] result = new double[raw.length];
+        double unit = 1;
+        for (int m = 0; m < raw.length; m++) {
+            double sum = 0;
+            double binomial = 1;
+            double power = 1;
+            // (t - t0)^m = Σ C(m, i)·t^i·(-t0)^(m - i), перебор от i = m вниз
+            for (int i = m; i >= 0; i--) {
+                sum += binomial * power * raw[i];
+                binomial = binomial * i / (m - i + 1);
+                power *= -t0;
+            }
+            result[m] = sum / unit;
+            unit *= ht;
+        }
+        return result;
+    }
+
+    /** Первый индекс с x[i] &gt;= value. */
+    private static int lowerBound(double[] x, int n, double value) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (x[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Первый индекс с x[i] &gt; value. */
+    private static int upperBound(double[] x, int n, double value) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (x[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Коэффициенты (span, степень) постоянны, сходимость IRLS проверяется по значениям в узлах
+    @Override
+    protected double[] convergenceState() {
+        return nodeValues;
+    }
+
+    @Override
+    public String getName() {
+        return "Локальная регрессия (LOESS)";
+    }
+
+    /**
+     * Кубический сплайн Эрмита между узлами; за пределами данных - касательная в крайнем узле.
+     */
+    @Override
+    public double calculate(double x) {
+        int nodes = nodeValues.length;
+        if (nodes == 0) {
+            return Double.NaN;
+        }
+        double position = nodes > 1 ? (x - gridStart) / gridStep : 0;
+        if (!(position > 0)) {
+            return nodeValues[0] + nodeSlopes[0] * (x - gridStart);
+        }
+        if (position >= nodes - 1) {
+            return nodeValues[nodes - 1] + nodeSlopes[nodes - 1] * (x - (gridStart + (nodes - 1) * gridStep));
+        }
+        int i = (int) position;
+        double u = position - i;
+        double v = 1 - u;
+        return (1 + 2 * u) * v * v * nodeValues[i]
+                + u * v * v * gridStep * nodeSlopes[i]
+                + u * u * (3 - 2 * u) * nodeValues[i + 1]
+                - u * u * v * gridStep * nodeSlopes[i + 1];
+    }
+
+    @Override
+    public String getCoefficientsAsString() {
+        return String.format("доля окрестности %.2f, степень %d, узлов %d", span, degree, nodeValues.length);
+    }
+
+    public static class Provider implements ModelProvider {
+        @Override
+        public String getName() {
+            return new LoessFunction().getName();
+        }
+
+        @Override
+        public int getMinPoints() {
+            return 10;
+        }
+
+        @Override
+        public double getCostEstimate(int pointCount) {
+            // Сортировка и префиксные суммы; узлы сетки от n не зависят
+            return pointCount * 30.0;
+        }
+
+        @Override
+        public FunctionApproximation create() {
+            return new LoessFunction();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataSummary;
+
+/**
+ * Точка расширения для семейств моделей. Реализации находятся через ServiceLoader
+ * (META-INF/services/ru.ifmo.cs.model.functions.ModelProvider) и должны иметь
+ * публичный конструктор без аргументов.
+ */
+public interface ModelProvider {
+    String getName();
+
+    /** Минимальное количество точек, при котором модель строится. */
+    int getMinPoints();
+
+    /** Модель определена только при x > 0 для всех точек. */
+    default boolean requiresPositiveX() {
+        return false;
+    }
+
+    /** Модель определена только при y > 0 для всех точек. */
+    default boolean requiresPositiveY() {
+        return false;
+    }
+
+    /**
+     * Относительная стоимость построения на n точках. Планировщик ставит дешёвые модели в начало очереди.
+     */
+    double getCostEstimate(int pointCount);
+
+    default boolean isApplicable(DataSummary summary) {
+        if (summary.getCount() < getMinPoints()) {
+            return false;
+        }
+        if (requiresPositiveX() && summary.hasNonPositiveX()) {
+            return false;
+        }
+        return !requiresPositiveY() || !summary.hasNonPositiveY();
+    }
+
+    /**
+     * Линейное по параметрам представление модели для расчётов по достаточным статистикам;
+     * null, если модель так не представима (тогда она перестраивается по каждой части данных заново).
+     */
+    default LinearBasis getLinearBasis(DataSummary summary) {
+        return null;
+    }
+
+    /** Новый экземпляр модели; экземпляры не разделяются между расчётами. */
+    FunctionApproximation create();
+
+    /**
+     * Новый экземпляр для перестроения по части данных (скользящий контроль) с той же структурой,
+     * что у модели fitted, построенной по всем точкам. По умолчанию - {@link #create()}: структура
+     * моделей, которые выбирают её по данным, иначе выбиралась бы по каждой части заново.
+     */
+    default FunctionApproximation createLike(ApproximationResult fitted) {
+        return create();
+    }
+
+    /**
+     * Новый экземпляр для построения по немного изменённым данным (живой пересчёт), стартующий
+     * с прошлого результата previous этой же модели. По умолчанию - {@link #create()}: тёплый старт
+     * нужен только моделям, которые уточняются итерационно.
+     */
+    default FunctionApproximation createWarmStarted(ApproximationResult previous) {
+        return create();
+    }
+
+    /**
+     * Тот же провайдер с включённым или выключенным уточнением МНК в исходных координатах.
+     * По умолчанию - он сам: моделям, линейным по параметрам, уточнять нечего.
+     */
+    default ModelProvider withNonlinearRefinement(boolean enabled) {
+        return this;
+    }
+}
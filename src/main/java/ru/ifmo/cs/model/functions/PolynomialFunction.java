@@ -0,0 +1,128 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.OrthogonalPolynomialFit;
+import ru.ifmo.cs.service.OrthogonalPolynomialFit.Criterion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Многочлен произвольной степени. Строится через ортогональное разложение, поэтому одно построение
+ * степени D даёт все степени 1..D; степень либо задаётся явно, либо выбирается по критерию.
+ */
+public class PolynomialFunction extends AbstractFunctionApproximation {
+    private final int maxDegree;
+    private final Criterion criterion; // null - степень фиксирована
+    private OrthogonalPolynomialFit fit;
+    private int degree;
+
+    public PolynomialFunction(int degree) {
+        this(degree, null);
+    }
+
+    public PolynomialFunction(int maxDegree, Criterion criterion) {
+        if (maxDegree < 1) {
+            throw new IllegalArgumentException("Степень многочлена должна быть не меньше 1");
+        }
+        this.maxDegree = maxDegree;
+        this.criterion = criterion;
+        this.degree = maxDegree;
+    }
+
+    private PolynomialFunction(OrthogonalPolynomialFit fit, int degree) {
+        this(degree, null);
+        applyFit(fit, degree);
+    }
+
+    @Override
+    public FunctionApproximation approximate(List<DataPoint> points) {
+        double[][] xy = toArrays(points);
+        OrthogonalPolynomialFit decomposition =
+                OrthogonalPolynomialFit.fit(xy[0], xy[1], DataPoint.weightsOf(points), maxDegree);
+        int chosen = criterion == null ? decomposition.getMaxDegree() : decomposition.selectDegree(criterion);
+        applyFit(decomposition, chosen);
+
+        calculateMetrics(points);
+        return this;
+    }
+
+    /**
+     * Все степени 1..maxDegree по одному ортогональному разложению.
+     */
+    public static List<FunctionApproximation> approximateAllDegrees(List<DataPoint> points, int maxDegree) {
+        double[][] xy = toArrays(points);
+        OrthogonalPolynomialFit decomposition =
+                OrthogonalPolynomialFit.fit(xy[0], xy[1], DataPoint.weightsOf(points), maxDegree);
+
+        List<FunctionApproximation> result = new ArrayList<>();
+        for (int k = 1; k <= decomposition.getMaxDegree(); k++) {
+            PolynomialFunction function = new PolynomialFunction(decomposition, k);
+            function.calculateMetrics(points);
+            result.add(function);
+        }
+        return result;
+    }
+
+    private void applyFit(OrthogonalPolynomialFit decomposition, int chosenDegree) {
+        this.fit = decomposition;
+        this.degree = chosenDegree;
+        this.coefficients = decomposition.monomialCoefficients(chosenDegree);
+    }
+
+    private static double[][] toArrays(List<DataPoint> points) {
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+        }
+        return new double[][]{x, y};
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    @Override
+    public String getName() {
+        if (criterion == null) {
+            return "Полиномиальная (степень " + degree + ")";
+        }
+        return "Полиномиальная (" + criterion + ", степень " + degree + ")";
+    }
+
+    @Override
+    public double calculate(double x) {
+        // Вычисление в ортогональном базисе устойчивее, чем по мономиальным коэффициентам
+        return fit.evaluate(degree, x);
+    }
+
+    // Степень выбирается автоматически по BIC среди 1..MAX_DEGREE
+    public static class Provider implements ModelProvider {
+        private static final int MAX_DEGREE = 6;
+
+        @Override
+        public String getName() {
+            return "Полиномиальная (" + Criterion.BIC + ")";
+        }
+
+        @Override
+        public int getMinPoints() {
+            return 3;
+        }
+
+        @Override
+        public double getCostEstimate(int pointCount) {
+            // Ортогональное разложение: O(n) на каждую степень
+            return pointCount * 3.0 * MAX_DEGREE;
+        }
+
+        @Override
+        public FunctionApproximation create() {
+            return new PolynomialFunction(MAX_DEGREE, Criterion.BIC);
+        }
+    }
+}
@@ -1,59 +1,112 @@
 package ru.ifmo.cs.model.functions;
 
 import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.service.LevenbergMarquardt;
+import ru.ifmo.cs.service.MathService;
 import org.apache.commons.math3.fitting.PolynomialCurveFitter;
 import org.apache.commons.math3.fitting.WeightedObservedPoints;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public class PowerFunction implements FunctionApproximation {
-    private List<Double> coefficients = new ArrayList<>();
-    private List<Double> calculatedValues = new ArrayList<>();
-    private List<Double> errors = new ArrayList<>();
-    private double standardDeviation;
-    private double rSquared;
+public class PowerFunction extends AbstractFunctionApproximation {
+    private boolean nonlinearRefinement;
+    private LevenbergMarquardt solver; // создаётся при первом уточнении и переиспользуется
+
+    public PowerFunction() {
+        this(Boolean.getBoolean(NONLINEAR_REFINEMENT_PROPERTY));
+    }
+
+    public PowerFunction(boolean nonlinearRefinement) {
+        this.nonlinearRefinement = nonlinearRefinement;
+    }
+
+    public boolean isNonlinearRefinement() {
+        return nonlinearRefinement;
+    }
+
+    public void setNonlinearRefinement(boolean nonlinearRefinement) {
+        this.nonlinearRefinement = nonlinearRefinement;
+    }
 
     @Override
     public FunctionApproximation approximate(List<DataPoint> points) {
+        if (nonlinearRefinement) {
+            return approximateNonlinear(points);
+        }
+
+        double[] logLinear = fitLogLinear(points);
+        if (logLinear == null) {
+            markNotComputed(points.size(), 2);
+            return this;
+        }
+
+        coefficients = logLinear;
+
+        calculateMetrics(points);
+        return this;
+    }
+
+    /**
+     * МНК в исходном пространстве по всем точкам с x > 0, включая y <= 0.
+     * Начальное приближение - решение в логарифмах. При повторном построении того же экземпляра
+     * (итерации IRLS в {@link #approximateRobust}) и у экземпляра, созданного по прошлому результату
+     * ({@link ModelProvider#createWarmStarted}, живой пересчёт), старт - предыдущее решение: данные
+     * и веса меняются мало, и оно ближе к новому минимуму.
+     */
+    private FunctionApproximation approximateNonlinear(List<DataPoint> points) {
+        double[] warmStart = hasValidCoefficients() ? coefficients.clone() : null;
+
+        // x^b определено только при x > 0
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] weights = new double[n];
+        int count = 0;
+        for (DataPoint p : points) {
+            if (p.getX() > 0) {
+                x[count] = p.getX();
+                y[count] = p.getY();
+                weights[count] = p.getWeight();
+                count++;
+            }
+        }
+
+        if (count < 2) {
+            markNotComputed(n, 2);
+            return this;
+        }
+
+        if (solver == null) {
+            solver = new LevenbergMarquardt(MathService.POWER_MODEL);
+        }
+        coefficients = refineNonlinear(solver, x, y, weights, count, warmStart, () -> fitLogLinear(points));
+        calculateMetrics(points);
+        return this;
+    }
+
+    /**
+     * Линейная аппроксимация ln(y) = ln(a) + b*ln(x) по точкам с x > 0 и y > 0; null, если таких точек меньше двух.
+     */
+    private double[] fitLogLinear(List<DataPoint> points) {
         WeightedObservedPoints obs = new WeightedObservedPoints();
-        
-        // Отчистка предыдущих результатов
-        coefficients.clear();
-        calculatedValues.clear();
-        errors.clear();
-        standardDeviation = Double.NaN;
-        rSquared = Double.NaN;
-
-        // Фильтруем точки: для степенной аппроксимации x и y должны быть > 0
+
+        // Фильтруем точки: для степенной аппроксимации в логарифмах x и y должны быть > 0
         for (DataPoint p : points) {
             if (p.getX() > 0 && p.getY() > 0) {
-                obs.add(Math.log(p.getX()), Math.log(p.getY()));
+                obs.add(p.getWeight(), Math.log(p.getX()), Math.log(p.getY()));
             }
         }
 
         // Проверяем, достаточно ли точек для аппроксимации (минимум 2 для линейной регрессии)
         if (obs.toList().size() < 2) {
-            // Если точек недостаточно, устанавливаем коэффициенты в NaN, сигнализируя о неудаче.
-            coefficients.add(Double.NaN); // Коэффициент 'a'
-            coefficients.add(Double.NaN); // Коэффициент 'b'
-
-            // Заполняем calculatedValues и errors значениями NaN для всех исходных точек
-            for (int i = 0; i < points.size(); i++) {
-                calculatedValues.add(Double.NaN);
-                errors.add(Double.NaN);
-            }
-            return this; // Возвращаем текущий объект в состоянии "не вычислено"
+            return null;
         }
 
         PolynomialCurveFitter fitter = PolynomialCurveFitter.create(1);
         double[] coeffs = fitter.fit(obs.toList());
 
-        coefficients.add(Math.exp(coeffs[0]));
-        coefficients.add(coeffs[1]);
-
-        calculateMetrics(points);
-        return this;
+        return new double[]{Math.exp(coeffs[0]), coeffs[1]};
     }
 
     @Override
@@ -61,98 +114,79 @@ public class PowerFunction implements FunctionApproximation {
         return "Степенная";
     }
 
-    @Override
-    public List<Double> getCoefficients() {
-        return coefficients;
-    }
-
     @Override
     public double calculate(double x) {
         // Если коэффициенты невалидны (например, аппроксимация не удалась), возвращаем NaN
-        if (coefficients.isEmpty() || coefficients.get(0).isNaN() || coefficients.get(1).isNaN()) {
+        if (!hasValidCoefficients()) {
             return Double.NaN;
         }
         if (x <= 0) {
             return Double.NaN;
         }
         // Вычисляем значение функции a * x^b
-        return coefficients.get(0) * Math.pow(x, coefficients.get(1));
+        return coefficients[0] * Math.pow(x, coefficients[1]);
     }
 
-    @Override
-    public double getStandardDeviation() {
-        return standardDeviation;
-    }
+    public static class Provider implements ModelProvider {
+        private final boolean nonlinearRefinement;
 
-    @Override
-    public double getRSquared() {
-        return rSquared;
-    }
-
-    @Override
-    public List<Double> getCalculatedValues() {
-        return calculatedValues;
-    }
+        public Provider() {
+            this(Boolean.getBoolean(NONLINEAR_REFINEMENT_PROPERTY));
+        }
 
-    @Override
-    public List<Double> getErrors() {
-        return errors;
-    }
+        public Provider(boolean nonlinearRefinement) {
+            this.nonlinearRefinement = nonlinearRefinement;
+        }
 
-    private void calculateMetrics(List<DataPoint> points) {
-        calculatedValues.clear();
-        errors.clear();
+        @Override
+        public String getName() {
+            return new PowerFunction().getName();
+        }
 
-        double sse = 0; // Сумма квадратов ошибок только для точек, по которым сделано валидное предсказание
-        double sst = 0; // Общая сумма квадратов для ВСЕХ исходных точек
+        @Override
+        public int getMinPoints() {
+            return 2;
+        }
 
-        // Если исходный список пуст, метрики NaN
-        if (points.isEmpty()) {
-            standardDeviation = Double.NaN;
-            rSquared = Double.NaN;
-            return;
+        @Override
+        public boolean requiresPositiveX() {
+            return true;
         }
 
-        // Вычисляем среднее значение Y по ВСЕМ исходным точкам для R^2
-        double meanY = points.stream().mapToDouble(DataPoint::getY).average().orElse(0);
+        @Override
+        public boolean requiresPositiveY() {
+            // При уточнении в исходном пространстве точки с y <= 0 допустимы
+            return !nonlinearRefinement;
+        }
 
-        int validPredictionCount = 0; // Счетчик точек, для которых было получено валидное предсказание
+        @Override
+        public double getCostEstimate(int pointCount) {
+            return pointCount * 8.0;
+        }
 
-        for (DataPoint p : points) {
-            double yActual = p.getY();
-            // yPredicted может быть NaN, если p.getX() <= 0 или p.getY() <= 0 (фильтрация для ln) или если аппроксимация не удалась
-            double yPredicted = calculate(p.getX());
-
-            calculatedValues.add(yPredicted); // Добавляем предсказание (или NaN) для каждой исходной точки
-
-            // Ошибка и вклад в SSE/СКО учитываются только если предсказание валидно
-            if (!Double.isNaN(yPredicted) && Double.isFinite(yPredicted)) {
-                double error = yPredicted - yActual;
-                errors.add(error);
-                sse += error * error;
-                validPredictionCount++;
-            } else {
-                errors.add(Double.NaN); // Для точек без валидного предсказания
-            }
+        /** После нелинейного уточнения модель уже не линейна по параметрам в логарифмах. */
+        @Override
+        public LinearBasis getLinearBasis(DataSummary summary) {
+            return nonlinearRefinement ? null : LinearBasis.power();
+        }
 
-            // SST вычисляется по всем исходным значениям Y
-            sst += (yActual - meanY) * (yActual - meanY);
+        @Override
+        public FunctionApproximation create() {
+            return new PowerFunction(nonlinearRefinement);
         }
 
-        // Вычисляем среднеквадратичное отклонение, основываясь на количестве валидных предсказаний
-        if (validPredictionCount > 0) {
-            standardDeviation = Math.sqrt(sse / validPredictionCount);
-        } else {
-            standardDeviation = Double.NaN; // Нет валидных предсказаний -> нет осмысленного СКО
+        @Override
+        public FunctionApproximation createWarmStarted(ApproximationResult previous) {
+            PowerFunction function = new PowerFunction(nonlinearRefinement);
+            if (nonlinearRefinement) {
+                function.startFrom(previous);
+            }
+            return function;
         }
 
-        // Вычисляем R^2. Если все yActual были одинаковыми (sst=0):
-        //   - если sse=0 (идеальное предсказание), R^2 = 1.0.
-        //   - если sse>0 (неудачное предсказание), R^2 = NaN.
-        if (sst > 0) {
-            rSquared = 1 - sse / sst;
-        } else {
-            rSquared = (sse == 0) ? 1.0 : Double.NaN;
+        @Override
+        public ModelProvider withNonlinearRefinement(boolean enabled) {
+            return enabled == nonlinearRefinement ? this : new Provider(enabled);
         }
     }
 }
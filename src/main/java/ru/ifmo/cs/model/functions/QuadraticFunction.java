@@ -1,28 +1,23 @@
 package ru.ifmo.cs.model.functions;
 
 import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
 import ru.ifmo.cs.service.MathService;
-import java.util.ArrayList;
+
 import java.util.List;
 
-public class QuadraticFunction implements FunctionApproximation {
-    private List<Double> coefficients = new ArrayList<>();
-    private List<Double> calculatedValues = new ArrayList<>();
-    private List<Double> errors = new ArrayList<>();
-    private double standardDeviation;
-    private double rSquared;
+public class QuadraticFunction extends AbstractFunctionApproximation {
 
     @Override
     public FunctionApproximation approximate(List<DataPoint> points) {
-        double[] coeffs = MathService.polynomialRegression(points, 2);
-
-        coefficients.clear();
-        coefficients.add(coeffs[0]); 
-        coefficients.add(coeffs[1]); 
-        coefficients.add(coeffs[2]); 
+        leastSquaresFit = MathService.polynomialFit(points, 2);
+        if (leastSquaresFit == null) {
+            markNotComputed(points.size(), 3);
+            return this;
+        }
+        coefficients = leastSquaresFit.getCoefficients();
 
         calculateMetrics(points);
-
         return this;
     }
 
@@ -31,76 +26,44 @@ public class QuadraticFunction implements FunctionApproximation {
         return "Квадратичная";
     }
 
-    @Override
-    public List<Double> getCoefficients() {
-        return coefficients;
-    }
-
     @Override
     public double calculate(double x) {
         // y = ax² + bx + c
-        return coefficients.get(0) +
-                coefficients.get(1) * x +
-                coefficients.get(2) * x * x;
-    }
-
-    @Override
-    public double getStandardDeviation() {
-        return standardDeviation;
-    }
-
-    @Override
-    public double getRSquared() {
-        return rSquared;
-    }
-
-    @Override
-    public List<Double> getCalculatedValues() {
-        return calculatedValues;
-    }
-
-    @Override
-    public List<Double> getErrors() {
-        return errors;
+        return leastSquaresFit != null ? leastSquaresFit.evaluate(x) : Double.NaN;
     }
 
     @Override
     public String getCoefficientsAsString() {
         return String.format("y = %.4f + %.4f·x + %.4f·x²",
-                coefficients.get(0),
-                coefficients.get(1),
-                coefficients.get(2));
+                coefficients[0],
+                coefficients[1],
+                coefficients[2]);
     }
 
-    private void calculateMetrics(List<DataPoint> points) {
-        calculatedValues.clear();
-        errors.clear();
-
-        double sse = 0; 
-        double sst = 0; 
-        double meanY = calculateMeanY(points);
-
-        for (DataPoint p : points) {
-            double yActual = p.getY();
-            double yPredicted = calculate(p.getX());
-
-            calculatedValues.add(yPredicted);
-            double error = yPredicted - yActual;
-            errors.add(error);
+    public static class Provider implements ModelProvider {
+        @Override
+        public String getName() {
+            return new QuadraticFunction().getName();
+        }
 
-            sse += error * error;
-            sst += (yActual - meanY) * (yActual - meanY);
+        @Override
+        public int getMinPoints() {
+            return 3;
         }
 
-        standardDeviation = Math.sqrt(sse / points.size());
+        @Override
+        public double getCostEstimate(int pointCount) {
+            return pointCount * 9.0;
+        }
 
-        rSquared = 1 - (sse / sst);
-    }
+        @Override
+        public LinearBasis getLinearBasis(DataSummary summary) {
+            return LinearBasis.polynomial(2, summary);
+        }
 
-    private double calculateMeanY(List<DataPoint> points) {
-        return points.stream()
-                .mapToDouble(DataPoint::getY)
-                .average()
-                .orElse(0.0);
+        @Override
+        public FunctionApproximation create() {
+            return new QuadraticFunction();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package ru.ifmo.cs.model.functions;
+
+/**
+ * Функции потерь для робастной аппроксимации методом итеративно перевзвешенных наименьших квадратов.
+ * Весовая функция принимает остаток, нормированный на робастную оценку масштаба.
+ */
+public enum RobustLoss {
+    /** Квадратичная вблизи нуля и линейная на хвостах: выбросы ослабляются, но не отбрасываются. */
+    HUBER(1.345) {
+        @Override
+        public double weight(double u) {
+            double a = Math.abs(u);
+            return a <= tuning ? 1.0 : tuning / a;
+        }
+
+        @Override
+        public double rho(double u) {
+            double a = Math.abs(u);
+            return a <= tuning ? u * u / 2 : tuning * (a - tuning / 2);
+        }
+    },
+    /** Биквадрат Тьюки: остатки больше c·σ получают нулевой вес. */
+    TUKEY(4.685) {
+        @Override
+        public double weight(double u) {
+            double t = u / tuning;
+            if (Math.abs(t) >= 1) {
+                return 0.0;
+            }
+            double s = 1 - t * t;
+            return s * s;
+        }
+
+        @Override
+        public double rho(double u) {
+            double t = u / tuning;
+            if (Math.abs(t) >= 1) {
+                return tuning * tuning / 6;
+            }
+            double s = 1 - t * t;
+            return tuning * tuning / 6 * (1 - s * s * s);
+        }
+    };
+
+    // Константы дают 95% эффективности при нормальном шуме
+    protected final double tuning;
+
+    RobustLoss(double tuning) {
+        this.tuning = tuning;
+    }
+
+    public abstract double weight(double u);
+
+    /** Сама функция потерь ρ(u), для которой weight(u) = ρ'(u)/u; по ней сравниваются модели. */
+    public abstract double rho(double u);
+}
@@ -0,0 +1,516 @@
+package ru.ifmo.cs.model.functions;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.NormalEquations;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Кусочная регрессия: точки, упорядоченные по x, делятся на участки, и на каждом строится свой
+ * многочлен степени degree (по умолчанию прямая). Подходит для процессов со сменой режима.
+ * <p>
+ * Число и положение границ выбираются методом PELT: минимизируется Σ SSE(участка)/σ² + β на участок,
+ * где β = (degree + 2)·ln n (критерий BIC: коэффициенты и граница), а σ² - устойчивая оценка шума
+ * по разностям соседних y. Стоимость любого участка считается за O(d³) по префиксным суммам
+ * Σw·t^k, Σw·t^k·y и Σw·y², без прохода по его точкам, а отсечение PELT удаляет начала участков,
+ * которые уже не могут стать оптимальными. Когда границ мало, отсечение почти не срабатывает и PELT
+ * квадратичен, поэтому на больших наборах поиск идёт по сетке из GRID_SIZE узлов, после чего каждая
+ * граница уточняется по всем точкам между соседними узлами. Если участков получилось больше
+ * maxSegments, β удваивается и поиск повторяется. Модель с заданным числом участков ({@link #withSegments})
+ * ищет границы динамическим программированием по той же сетке - так она перестраивается по частям данных
+ * при скользящем контроле, не выбирая число участков заново.
+ * <p>
+ * Вектор коэффициентов: сначала k - 1 границ по x, затем коэффициенты многочленов участков
+ * (по возрастанию степеней x) слева направо.
+ */
+public class SegmentedFunction extends AbstractFunctionApproximation {
+    // MAD / 0.6745 - состоятельная оценка σ при нормальном шуме
+    private static final double MAD_TO_SIGMA = 1 / 0.6745;
+    private static final int MAX_PENALTY_DOUBLINGS = 40;
+    // Узлов поиска не больше: PELT в худшем случае (мало границ) квадратичен по числу узлов
+    private static final int GRID_SIZE = 512;
+
+    private final int degree;
+    private final int maxSegments;
+    private final int fixedSegments; // 0 - число участков выбирается PELT
+
+    // Участки в нормированной координате t = (x - center) / scale - так префиксные суммы степеней устойчивы
+    private double center;
+    private double scale = 1;
+    private double yShift;
+    private double[] boundaries = new double[0];
+    private double[][] segmentCoefficients = new double[0][];
+
+    public SegmentedFunction() {
+        this(1, Provider.MAX_SEGMENTS);
+    }
+
+    public SegmentedFunction(int degree, int maxSegments) {
+        this(degree, maxSegments, 0);
+    }
+
+    private SegmentedFunction(int degree, int maxSegments, int fixedSegments) {
+        if (degree < 0) {
+            throw new IllegalArgumentException("Степень участка должна быть неотрицательной");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("Число участков должно быть не меньше 1");
+        }
+        this.degree = degree;
+        this.maxSegments = maxSegments;
+        this.fixedSegments = fixedSegments;
+    }
+
+    /** Модель ровно с segments участками (меньше, если на столько участков не хватает точек). */
+    public static SegmentedFunction withSegments(int degree, int segments) {
+        return new SegmentedFunction(degree, segments, segments);
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    /** Число участков построенной модели. */
+    public int getSegmentCount() {
+        return segmentCoefficients.length;
+    }
+
+    /** Границы участков по x (k - 1 значений по возрастанию). */
+    public double[] getBoundaries() {
+        return boundaries.clone();
+    }
+
+    /** Наименьшее число точек участка: коэффициенты и хотя бы одна степень свободы. */
+    private int minSegmentLength() {
+        return degree + 2;
+    }
+
+    @Override
+    public FunctionApproximation approximate(List<DataPoint> points) {
+        int n = points.size();
+        int minLength = minSegmentLength();
+        if (n < minLength) {
+            markNotComputed(n, degree + 1);
+            boundaries = new double[0];
+            segmentCoefficients = new double[0][];
+            return this;
+        }
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] w = new double[n];
+        sortByX(points, x, y, w);
+
+        center = (x[0] + x[n - 1]) / 2;
+        scale = (x[n - 1] - x[0]) / 2;
+        if (!(scale > 0)) {
+            scale = 1;
+        }
+        double weightSum = 0;
+        double weightedY = 0;
+        for (int i = 0; i < n; i++) {
+            weightSum += w[i];
+            weightedY += w[i] * y[i];
+        }
+        yShift = weightSum > 0 ? weightedY / weightSum : 0;
+
+        SegmentFits fits = new SegmentFits(x, y, w, n);
+        double noise = noiseVariance(x, y, n, fits.sums.squares(0, n));
+        double penalty = (degree + 2) * Math.log(n);
+        int[] grid = candidateBoundaries(x, n);
+
+        int[] splits = null;
+        if (fixedSegments > 0) {
+            splits = partition(fits, grid, fixedSegments);
+        } else {
+            for (int attempt = 0; attempt <= MAX_PENALTY_DOUBLINGS; attempt++) {
+                splits = pelt(fits, grid, noise, penalty);
+                if (splits.length + 1 <= maxSegments) {
+                    break;
+                }
+                penalty *= 2;
+            }
+            if (splits.length + 1 > maxSegments) {
+                splits = new int[0];
+            }
+        }
+        refine(fits, x, n, grid, splits);
+
+        int k = splits.length + 1;
+        boundaries = new double[k - 1];
+        segmentCoefficients = new double[k][];
+        int from = 0;
+        for (int s = 0; s < k; s++) {
+            int to = s < k - 1 ? splits[s] : n;
+            if (s < k - 1) {
+                boundaries[s] = (x[to - 1] + x[to]) / 2;
+            }
+            segmentCoefficients[s] = fits.solve(from, to);
+            from = to;
+        }
+
+        coefficients = new double[(k - 1) + k * (degree + 1)];
+        System.arraycopy(boundaries, 0, coefficients, 0, k - 1);
+        for (int s = 0; s < k; s++) {
+            System.arraycopy(toMonomial(segmentCoefficients[s]), 0, coefficients, (k - 1) + s * (degree + 1),
+                    degree + 1);
+        }
+
+        calculateMetrics(points);
+        return this;
+    }
+
+    /**
+     * Допустимые границы участков - индексы i, где x[i] != x[i - 1], вместе с 0 и n. Если их больше
+     * GRID_SIZE, берётся каждая step-я: поиск идёт по сетке, а {@link #refine} уточняет найденные границы
+     * по всем точкам между соседними узлами.
+     */
+    private static int[] candidateBoundaries(double[] x, int n) {
+        int allowed = 0;
+        for (int i = 1; i < n; i++) {
+            if (x[i] != x[i - 1]) {
+                allowed++;
+            }
+        }
+        int step = Math.max(1, (allowed + GRID_SIZE - 1) / GRID_SIZE);
+        int[] grid = new int[allowed / step + 2];
+        int m = 1;
+        int seen = 0;
+        for (int i = 1; i < n && m < grid.length - 1; i++) {
+            if (x[i] != x[i - 1] && ++seen % step == 0) {
+                grid[m++] = i;
+            }
+        }
+        grid[m++] = n;
+        return Arrays.copyOf(grid, m);
+    }
+
+    /**
+     * PELT по узлам сетки: F(t) = min по s [F(s) + C(s, t) + β], C = SSE/σ². Начало s отбрасывается
+     * навсегда, когда F(s) + C(s, t) &gt; F(t): добавление точек не уменьшает SSE участка, так что s
+     * не станет лучше. Возвращает номера узлов сетки - начал участков, кроме первого.
+     */
+    private int[] pelt(SegmentFits fits, int[] grid, double noise, double penalty) {
+        int minLength = minSegmentLength();
+        int m = grid.length;
+        double[] best = new double[m];
+        int[] previous = new int[m];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        best[0] = -penalty;
+
+        int[] candidates = new int[m];
+        double[] candidateCost = new double[m];
+        int candidateCount = 0;
+        int next = 0;
+
+        for (int j = 1; j < m; j++) {
+            int t = grid[j];
+            // Узлы становятся кандидатами, когда до t набирается участок минимальной длины
+            for (; next < j && grid[next] <= t - minLength; next++) {
+                if (Double.isFinite(best[next])) {
+                    candidates[candidateCount++] = next;
+                }
+            }
+
+            double bestValue = Double.POSITIVE_INFINITY;
+            int bestStart = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                int s = candidates[c];
+                double value = best[s] + fits.segmentSse(grid[s], t) / noise;
+                candidateCost[c] = value;
+                if (value + penalty < bestValue) {
+                    bestValue = value + penalty;
+                    bestStart = s;
+                }
+            }
+            if (bestStart < 0) {
+                continue;
+            }
+            best[j] = bestValue;
+            previous[j] = bestStart;
+
+            int kept = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                // Вырожденный участок (мало разных x) может стать допустимым позже - его не отбрасываем
+                if (candidateCost[c] <= bestValue || candidateCost[c] == Double.POSITIVE_INFINITY) {
+                    candidates[kept++] = candidates[c];
+                }
+            }
+            candidateCount = kept;
+        }
+
+        int count = 0;
+        for (int j = previous[m - 1]; j > 0; j = previous[j]) {
+            count++;
+        }
+        int[] result = new int[count];
+        for (int j = previous[m - 1]; j > 0; j = previous[j]) {
+            result[--count] = j;
+        }
+        return result;
+    }
+
+    /**
+     * Наименьшая сумма SSE ровно по segments участкам с границами в узлах сетки: F_s(j) = min по i
+     * [F_{s-1}(i) + SSE(i, j)], O(segments·m²) при SSE участков, посчитанных один раз. Если так разбить
+     * нельзя (мало точек или разных x), берётся наибольшее допустимое число участков. Возвращает номера
+     * узлов, как {@link #pelt}.
+     */
+    private int[] partition(SegmentFits fits, int[] grid, int segments) {
+        int minLength = minSegmentLength();
+        int m = grid.length;
+        int k = Math.min(segments, m - 1);
+        double[] cost = new double[m * m];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < m; i++) {
+            for (int j = i + 1; j < m; j++) {
+                if (grid[j] - grid[i] >= minLength) {
+                    cost[i * m + j] = fits.segmentSse(grid[i], grid[j]);
+                }
+            }
+        }
+
+        double[][] best = new double[k + 1][m];
+        int[][] previous = new int[k + 1][m];
+        for (double[] row : best) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        best[0][0] = 0;
+        for (int s = 1; s <= k; s++) {
+            for (int j = s; j < m; j++) {
+                for (int i = s - 1; i < j; i++) {
+                    double value = best[s - 1][i] + cost[i * m + j];
+                    if (value < best[s][j]) {
+                        best[s][j] = value;
+                        previous[s][j] = i;
+                    }
+                }
+            }
+        }
+
+        while (k > 1 && best[k][m - 1] == Double.POSITIVE_INFINITY) {
+            k--;
+        }
+        int[] result = new int[k - 1];
+        for (int s = k, j = m - 1; s > 1; s--) {
+            j = previous[s][j];
+            result[s - 2] = j;
+        }
+        return result;
+    }
+
+    /**
+     * Переводит номера узлов в индексы точек. Если сетка прорежена, каждая граница по очереди сдвигается
+     * в лучшее положение между соседними узлами при фиксированных соседних границах: SSE двух участков
+     * считается по префиксным суммам, так что проход занимает O(n / GRID_SIZE) на границу.
+     */
+    private void refine(SegmentFits fits, double[] x, int n, int[] grid, int[] splits) {
+        int minLength = minSegmentLength();
+        int[] nodes = splits.clone();
+        for (int q = 0; q < splits.length; q++) {
+            splits[q] = grid[nodes[q]];
+        }
+        for (int q = 0; q < splits.length; q++) {
+            int left = q == 0 ? 0 : splits[q - 1];
+            int right = q == splits.length - 1 ? n : splits[q + 1];
+            int from = Math.max(grid[nodes[q] - 1] + 1, left + minLength);
+            int to = Math.min(grid[nodes[q] + 1] - 1, right - minLength);
+            double bestCost = fits.segmentSse(left, splits[q]) + fits.segmentSse(splits[q], right);
+            for (int p = from; p <= to; p++) {
+                if (x[p] == x[p - 1]) {
+                    continue;
+                }
+                double cost = fits.segmentSse(left, p) + fits.segmentSse(p, right);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    splits[q] = p;
+                }
+            }
+        }
+    }
+
+    /**
+     * σ² шума по псевдоостаткам Гассера: ε_i = y_i - (a·y_{i-1} + b·y_{i+1}) - отклонение от прямой
+     * через соседние точки, a = (x_{i+1} - x_i) / (x_{i+1} - x_{i-1}), b = 1 - a. Линейный тренд в ε
+     * не попадает (в отличие от первых разностей, которые растут с наклоном), а дисперсия ε равна
+     * σ²·(1 + a² + b²), поэтому после деления на этот множитель медиана |ε| даёт σ. Медиана устойчива
+     * к скачкам на границах режимов.
+     * Снизу ограничена малой долей дисперсии y: на точных данных SSE участков - ошибки округления,
+     * и без ограничения они дробили бы прямую на участки.
+     */
+    private static double noiseVariance(double[] x, double[] y, int n, double totalSquares) {
+        double floor = Math.max(totalSquares / n * 1e-9, Double.MIN_NORMAL);
+        if (n < 3) {
+            return floor;
+        }
+        double[] residuals = new double[n - 2];
+        for (int i = 1; i < n - 1; i++) {
+            double span = x[i + 1] - x[i - 1];
+            double a = span > 0 ? (x[i + 1] - x[i]) / span : 0.5;
+            double b = 1 - a;
+            double residual = y[i] - (a * y[i - 1] + b * y[i + 1]);
+            residuals[i - 1] = Math.abs(residual) / Math.sqrt(1 + a * a + b * b);
+        }
+        Arrays.sort(residuals);
+        int mid = residuals.length / 2;
+        double median = residuals.length % 2 == 1
+                ? residuals[mid]
+                : (residuals[mid - 1] + residuals[mid]) / 2;
+        double sigma = median * MAD_TO_SIGMA;
+        return Math.max(sigma * sigma, floor);
+    }
+
+    /** Коэффициенты по степеням x из коэффициентов по степеням t = (x - center) / scale (схема Горнера). */
+    private double[] toMonomial(double[] normalized) {
+        double[] result = new double[degree + 1];
+        double alpha = -center / scale;
+        double beta = 1 / scale;
+        for (int k = degree; k >= 0; k--) {
+            // result = result·(alpha + beta·x) + a_k
+            for (int j = degree; j >= 1; j--) {
+                result[j] = result[j] * alpha + result[j - 1] * beta;
+            }
+            result[0] = result[0] * alpha + normalized[k];
+        }
+        result[0] += yShift;
+        return result;
+    }
+
+    /** Число коэффициентов зависит от найденных границ, поэтому бутстреп-интервалы для них не строятся. */
+    @Override
+    public boolean isParametric() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return degree == 1 ? "Кусочно-линейная" : "Кусочно-полиномиальная (степень " + degree + ")";
+    }
+
+    @Override
+    public double calculate(double x) {
+        if (segmentCoefficients.length == 0 || !hasValidCoefficients()) {
+            return Double.NaN;
+        }
+        int segment = Arrays.binarySearch(boundaries, x);
+        segment = segment >= 0 ? segment + 1 : -segment - 1;
+        double[] c = segmentCoefficients[segment];
+        double t = (x - center) / scale;
+        double value = 0;
+        for (int k = degree; k >= 0; k--) {
+            value = value * t + c[k];
+        }
+        return value + yShift;
+    }
+
+    @Override
+    public String getCoefficientsAsString() {
+        StringBuilder sb = new StringBuilder();
+        int width = degree + 1;
+        int k = segmentCoefficients.length;
+        for (int s = 0; s < k; s++) {
+            if (s > 0) {
+                sb.append("; ");
+            }
+            sb.append(s == 0 ? "x < " + format(k > 1 ? boundaries[0] : Double.POSITIVE_INFINITY)
+                    : s == k - 1 ? "x ≥ " + format(boundaries[s - 1])
+                    : format(boundaries[s - 1]) + " ≤ x < " + format(boundaries[s]));
+            sb.append(": [");
+            for (int j = 0; j < width; j++) {
+                sb.append(String.format("%.6f", coefficients[(k - 1) + s * width + j]));
+                if (j < width - 1) sb.append(", ");
+            }
+            sb.append("]");
+        }
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return String.format("%.4f", value);
+    }
+
+    /**
+     * МНК на участках [from, to) точек в порядке x: нормальные уравнения участка - разности
+     * префиксных сумм, O(d²) на сборку без прохода по его точкам.
+     */
+    private final class SegmentFits {
+        private final NormalEquations.PrefixSums sums;
+        private final double[] gram;
+        private final double[] rhs;
+
+        SegmentFits(double[] x, double[] y, double[] w, int n) {
+            sums = new NormalEquations.PrefixSums(x, y, w, n, degree, center, scale, yShift);
+            gram = new double[(degree + 1) * (degree + 1)];
+            rhs = new double[degree + 1];
+        }
+
+        /** SSE участка [from, to) после МНК; +∞, если нормальные уравнения вырождены. */
+        double segmentSse(int from, int to) {
+            double[] a = solveInto(from, to);
+            if (a == null) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double fitted = 0;
+            for (int k = 0; k <= degree; k++) {
+                fitted += a[k] * sums.moment(k, from, to);
+            }
+            return Math.max(sums.squares(from, to) - fitted, 0);
+        }
+
+        double[] solve(int from, int to) {
+            double[] a = solveInto(from, to);
+            if (a == null) {
+                double[] nan = new double[degree + 1];
+                Arrays.fill(nan, Double.NaN);
+                return nan;
+            }
+            return a.clone();
+        }
+
+        /** Решение нормальных уравнений разложением Холецкого; результат в rhs (переиспользуется). */
+        private double[] solveInto(int from, int to) {
+            int p = degree + 1;
+            sums.assemble(from, to, gram, rhs);
+            if (NormalEquations.factor(gram, p, 0, 1e-12 * sums.power(0, from, to)) < p) {
+                return null;
+            }
+            NormalEquations.solve(gram, p, p, rhs, rhs);
+            return rhs;
+        }
+    }
+
+    // Границы ищутся по всем точкам, поэтому модель не сводится к линейному базису
+    public static class Provider implements ModelProvider {
+        static final int MAX_SEGMENTS = 8;
+
+        @Override
+        public String getName() {
+            return new SegmentedFunction().getName();
+        }
+
+        @Override
+        public int getMinPoints() {
+            // Хотя бы два участка минимальной длины
+            return 2 * (1 + 2);
+        }
+
+        @Override
+        public double getCostEstimate(int pointCount) {
+            // Сортировка и PELT: после отсечения на точку приходится немного кандидатов
+            return pointCount * 40.0;
+        }
+
+        @Override
+        public FunctionApproximation create() {
+            return new SegmentedFunction();
+        }
+
+        @Override
+        public FunctionApproximation createLike(ApproximationResult fitted) {
+            // k - 1 границ и k·(1 + 1) коэффициентов прямых
+            int segments = (fitted.getCoefficientVector().size() + 1) / (1 + 2);
+            return segments >= 1 ? withSegments(1, segments) : create();
+        }
+    }
+}
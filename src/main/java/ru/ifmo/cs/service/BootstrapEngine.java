@@ -0,0 +1,289 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.IndexedPoints;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.LinearBasis;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Бутстреп-интервалы коэффициентов: повторное построение моделей по выборкам с возвращением.
+ * <p>
+ * Повторы делятся на пакеты, каждый пакет - задача fork-join со своим потоком случайных чисел,
+ * отщеплённым от корневого SplittableRandom, поэтому результат не зависит от числа потоков.
+ * Для моделей с {@link LinearBasis} выборка не материализуется: индексы разыгрываются прямо в проходе
+ * по столбцам x, y, w, а статистики, множитель Холецкого и решение переиспользуются между повторами
+ * пакета без выделения памяти. Остальные модели перестраиваются через провайдера.
+ * Для данных, не помещающихся в память, есть однопроходный пуассоновский вариант {@link #poisson}
+ * (его накопители строит {@link OutOfCoreRegression} в том же проходе, что и статистики моделей).
+ * Пакеты сообщают о ходе расчёта и проверяют отмену перед каждым повтором ({@link ProgressMonitor}).
+ */
+public class BootstrapEngine {
+    public static final double DEFAULT_CONFIDENCE = 0.95;
+    private static final int DEFAULT_REPLICATES = 2000;
+    private static final long DEFAULT_SEED = 0xB007L;
+    private static final int BATCH_SIZE = 64;
+
+    private final ForkJoinPool pool;
+    private final int replicates;
+    private final long seed;
+    private final double confidenceLevel;
+
+    public BootstrapEngine() {
+        this(DEFAULT_REPLICATES);
+    }
+
+    public BootstrapEngine(int replicates) {
+        this(ForkJoinPool.commonPool(), replicates, DEFAULT_SEED, DEFAULT_CONFIDENCE);
+    }
+
+    public BootstrapEngine(ForkJoinPool pool, int replicates, long seed, double confidenceLevel) {
+        if (replicates < 2) {
+            throw new IllegalArgumentException("Число повторов должно быть не меньше 2: " + replicates);
+        }
+        this.pool = pool;
+        this.replicates = replicates;
+        this.seed = seed;
+        this.confidenceLevel = confidenceLevel;
+    }
+
+    public int getReplicates() {
+        return replicates;
+    }
+
+    /**
+     * Интервалы для построенных моделей functions, которые соответствуют providers по индексу.
+     * Число коэффициентов берётся из построенной модели; повторы с другим числом коэффициентов
+     * (например, при выборе степени многочлена) не учитываются. Интервалы строятся только для
+     * параметрических моделей ({@link ApproximationResult#isParametric()}): у опорных кривых коэффициенты -
+     * настройки сглаживания, у кусочной регрессии их число зависит от найденных границ.
+     */
+    public List<BootstrapIntervals> run(List<DataPoint> points, DataSummary summary,
+                                        List<ModelProvider> providers, List<? extends ApproximationResult> functions) {
+        return run(points, summary, providers, functions, ProgressMonitor.NONE);
+    }
+
+    /**
+     * То же с наблюдателем: после каждого пакета сообщается доля выполненных повторов, а при отмене
+     * пакеты прекращают работу и бросается CancellationException.
+     */
+    public List<BootstrapIntervals> run(List<DataPoint> points, DataSummary summary,
+                                        List<ModelProvider> providers, List<? extends ApproximationResult> functions,
+                                        ProgressMonitor monitor) {
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] w = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+            w[i] = p.getWeight();
+        }
+
+        SplittableRandom root = new SplittableRandom(seed);
+        Progress progress = new Progress(monitor);
+        List<double[][]> samples = new ArrayList<>(providers.size());
+        List<ReplicateBatch> tasks = new ArrayList<>();
+        for (int m = 0; m < providers.size(); m++) {
+            if (!functions.get(m).isParametric()) {
+                samples.add(null);
+                continue;
+            }
+            ModelProvider provider = providers.get(m);
+            LinearBasis basis = provider.getLinearBasis(summary);
+            int coefficientCount = functions.get(m).getCoefficientVector().size();
+            double[][] modelSamples = new double[coefficientCount][replicates];
+            samples.add(modelSamples);
+            if (basis != null && basis.dimension() != coefficientCount) {
+                basis = null;
+            }
+            for (int from = 0; from < replicates; from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, replicates);
+                tasks.add(basis != null
+                        ? new BasisBatch(x, y, w, basis, modelSamples, from, to, root.split(), progress)
+                        : new RefitBatch(points, provider, modelSamples, from, to, root.split(), progress));
+                progress.total += to - from;
+            }
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Бутстреп прерван");
+        }
+
+        List<BootstrapIntervals> result = new ArrayList<>(providers.size());
+        for (int m = 0; m < providers.size(); m++) {
+            if (samples.get(m) == null) {
+                continue;
+            }
+            result.add(BootstrapIntervals.summarize(functions.get(m).getName(), confidenceLevel, samples.get(m)));
+        }
+        return result;
+    }
+
+    /**
+     * Потоковый накопитель пуассоновского бутстрепа для модели с данным базисом.
+     */
+    public PoissonBootstrap poisson(LinearBasis basis) {
+        return new PoissonBootstrap(basis, replicates, new SplittableRandom(seed));
+    }
+
+    public double getConfidenceLevel() {
+        return confidenceLevel;
+    }
+
+    /** Счётчик выполненных повторов всех пакетов для наблюдателя. */
+    private static final class Progress {
+        final ProgressMonitor monitor;
+        final AtomicInteger done = new AtomicInteger();
+        int total; // Задаётся до запуска пакетов
+
+        Progress(ProgressMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        void batchDone(int replicates) {
+            monitor.progress((double) done.addAndGet(replicates) / total);
+        }
+    }
+
+    /** Пакет повторов [from, to); повтор r записывает коэффициенты в samples[k][r] или NaN при неудаче. */
+    private abstract static class ReplicateBatch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final double[][] samples;
+        final int from;
+        final int to;
+        final SplittableRandom random;
+        final Progress progress;
+
+        ReplicateBatch(double[][] samples, int from, int to, SplittableRandom random, Progress progress) {
+            this.samples = samples;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+            this.progress = progress;
+        }
+
+        /** Отмена проверяется перед каждым повтором: повтор модели с перестроением может быть долгим. */
+        boolean cancelled() {
+            return progress.monitor.isCancelled();
+        }
+
+        void fail(int replicate) {
+            for (double[] coefficient : samples) {
+                coefficient[replicate] = Double.NaN;
+            }
+        }
+    }
+
+    private static final class BasisBatch extends ReplicateBatch {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] x;
+        private final double[] y;
+        private final double[] w;
+        private final LinearBasis basis;
+
+        BasisBatch(double[] x, double[] y, double[] w, LinearBasis basis, double[][] samples,
+                   int from, int to, SplittableRandom random, Progress progress) {
+            super(samples, from, to, random, progress);
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.basis = basis;
+        }
+
+        @Override
+        protected void compute() {
+            int n = x.length;
+            int d = basis.dimension();
+            GramAccumulator statistics = new GramAccumulator(d);
+            double[] features = new double[d];
+            double[] factor = new double[d * d];
+            double[] beta = new double[d];
+            double[] coefficients = new double[d];
+
+            for (int r = from; r < to; r++) {
+                if (cancelled()) {
+                    return;
+                }
+                statistics.reset();
+                for (int draw = 0; draw < n; draw++) {
+                    int i = random.nextInt(n);
+                    if (basis.accepts(x[i], y[i])) {
+                        basis.features(x[i], features);
+                        statistics.add(features, basis.target(y[i]), w[i]);
+                    }
+                }
+                if (statistics.getCount() < d || !statistics.solve(factor, beta)) {
+                    fail(r);
+                    continue;
+                }
+                basis.toModelCoefficients(beta, coefficients);
+                for (int k = 0; k < d; k++) {
+                    samples[k][r] = coefficients[k];
+                }
+            }
+            progress.batchDone(to - from);
+        }
+    }
+
+    private static final class RefitBatch extends ReplicateBatch {
+        private static final long serialVersionUID = 1L;
+
+        private final List<DataPoint> points;
+        private final ModelProvider provider;
+
+        RefitBatch(List<DataPoint> points, ModelProvider provider, double[][] samples,
+                   int from, int to, SplittableRandom random, Progress progress) {
+            super(samples, from, to, random, progress);
+            this.points = points;
+            this.provider = provider;
+        }
+
+        @Override
+        protected void compute() {
+            int n = points.size();
+            // Модель не сохраняет ссылку на список точек, поэтому массив индексов общий для всех повторов
+            int[] indices = new int[n];
+            List<DataPoint> resample = new IndexedPoints(points, indices);
+            for (int r = from; r < to; r++) {
+                if (cancelled()) {
+                    return;
+                }
+                for (int i = 0; i < n; i++) {
+                    indices[i] = random.nextInt(n);
+                }
+                DoubleVector coefficients;
+                try {
+                    coefficients = provider.create().approximate(resample)
+                            .getCoefficientVector();
+                } catch (RuntimeException e) {
+                    // Вырожденная выборка для этой модели - повтор пропускается
+                    fail(r);
+                    continue;
+                }
+                if (coefficients.size() != samples.length) {
+                    fail(r);
+                    continue;
+                }
+                for (int k = 0; k < samples.length; k++) {
+                    samples[k][r] = coefficients.get(k);
+                }
+            }
+            progress.batchDone(to - from);
+        }
+    }
+}
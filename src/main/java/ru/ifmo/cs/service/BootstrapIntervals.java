@@ -0,0 +1,84 @@
+package ru.ifmo.cs.service;
+
+import java.util.Arrays;
+
+/**
+ * Бутстреп-оценки для коэффициентов одной модели: процентильные интервалы и стандартные ошибки.
+ * Коэффициенты в том же порядке, что и в FunctionApproximation.getCoefficientVector().
+ */
+public class BootstrapIntervals {
+    private final String modelName;
+    private final double confidenceLevel;
+    private final double[] lower;
+    private final double[] upper;
+    private final double[] standardErrors;
+    private final int replicates;
+
+    public BootstrapIntervals(String modelName, double confidenceLevel, double[] lower, double[] upper,
+                              double[] standardErrors, int replicates) {
+        this.modelName = modelName;
+        this.confidenceLevel = confidenceLevel;
+        this.lower = lower;
+        this.upper = upper;
+        this.standardErrors = standardErrors;
+        this.replicates = replicates;
+    }
+
+    /**
+     * Сводка по выборкам коэффициентов samples[коэффициент][повтор]; NaN - повтор не удался и не учитывается.
+     */
+    static BootstrapIntervals summarize(String modelName, double confidenceLevel, double[][] samples) {
+        int coefficientCount = samples.length;
+        double[] lower = new double[coefficientCount];
+        double[] upper = new double[coefficientCount];
+        double[] errors = new double[coefficientCount];
+        int valid = 0;
+        double tail = (1 - confidenceLevel) / 2;
+        for (int k = 0; k < coefficientCount; k++) {
+            double[] finite = Arrays.stream(samples[k]).filter(Double::isFinite).sorted().toArray();
+            valid = k == 0 ? finite.length : Math.min(valid, finite.length);
+            lower[k] = SubsampleSelector.percentile(finite, tail);
+            upper[k] = SubsampleSelector.percentile(finite, 1 - tail);
+
+            double mean = 0;
+            double m2 = 0;
+            for (int i = 0; i < finite.length; i++) {
+                double delta = finite[i] - mean;
+                mean += delta / (i + 1);
+                m2 += delta * (finite[i] - mean);
+            }
+            errors[k] = finite.length > 1 ? Math.sqrt(m2 / (finite.length - 1)) : Double.NaN;
+        }
+        return new BootstrapIntervals(modelName, confidenceLevel, lower, upper, errors, valid);
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public double getConfidenceLevel() {
+        return confidenceLevel;
+    }
+
+    public int getCoefficientCount() {
+        return lower.length;
+    }
+
+    public double getLower(int coefficient) {
+        return lower[coefficient];
+    }
+
+    public double getUpper(int coefficient) {
+        return upper[coefficient];
+    }
+
+    /** Стандартное отклонение коэффициента по повторам. */
+    public double getStandardError(int coefficient) {
+        return standardErrors[coefficient];
+    }
+
+    /** Число удавшихся повторов, по которым построены интервалы. */
+    public int getReplicates() {
+        return replicates;
+    }
+}
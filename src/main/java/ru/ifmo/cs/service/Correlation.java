@@ -0,0 +1,334 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Коэффициенты корреляции x и y: Пирсона (линейная связь), Спирмена и τ-b Кендалла (монотонная связь,
+ * устойчивы к выбросам и нелинейной шкале). Веса точек не учитываются. Объект неизменяем.
+ * <p>
+ * Пирсон считается за один проход по Уэлфорду относительно первой точки: средние и суммы отклонений
+ * обновляются инкрементально, поэтому большое смещение данных (например, x - отметки времени)
+ * не приводит к потере точности, в отличие от формулы n·Σxy - Σx·Σy. Части массива обрабатываются
+ * параллельно и объединяются по формулам Чана.
+ * <p>
+ * Ранги получаются поразрядной сортировкой (LSD, 11 бит за проход) 64-битных ключей, упорядоченных
+ * как double, вместе с индексами точек: проходы идут по памяти последовательно, в отличие от двоичного
+ * поиска ранга каждой точки. Повторяющиеся значения получают средний ранг. τ Кендалла - алгоритм Найта
+ * за O(n log n): пары упорядочиваются по (ранг x, ранг y) той же сортировкой, а число несогласованных
+ * пар равно числу инверсий рангов y, которое считает сортировка слиянием.
+ * <p>
+ * Дополнительная память - не больше 40 байт на точку и без объектов на точку, так что ряды в сотни
+ * миллионов точек обрабатываются в обычной куче.
+ */
+public final class Correlation {
+    /** Размер части для параллельного прохода. */
+    private static final int CHUNK = 1 << 16;
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    private final int count;
+    private final double pearson;
+    private final double spearman;
+    private final double kendallTau;
+
+    public Correlation(int count, double pearson, double spearman, double kendallTau) {
+        this.count = count;
+        this.pearson = pearson;
+        this.spearman = spearman;
+        this.kendallTau = kendallTau;
+    }
+
+    public static Correlation of(List<DataPoint> points) {
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+        }
+        return of(x, y, n);
+    }
+
+    /** Массивы не изменяются; учитываются первые count элементов. */
+    public static Correlation of(double[] x, double[] y, int count) {
+        if (count < 2) {
+            return new Correlation(count, Double.NaN, Double.NaN, Double.NaN);
+        }
+        double pearson = moments(count, i -> x[i], i -> y[i]).correlation();
+
+        Ranks rankX = Ranks.of(x, count);
+        Ranks rankY = Ranks.of(y, count);
+        // Удвоенные средние ранги - целые; масштаб не влияет на коэффициент Пирсона для рангов
+        double spearman = moments(count, i -> rankX.doubled[i] & 0xFFFFFFFFL,
+                i -> rankY.doubled[i] & 0xFFFFFFFFL).correlation();
+        double kendall = kendallTau(rankX, rankY, count);
+        return new Correlation(count, pearson, spearman, kendall);
+    }
+
+    /** Только коэффициент Пирсона (без сортировок). */
+    public static double pearson(List<DataPoint> points) {
+        return moments(points.size(), i -> points.get(i).getX(), i -> points.get(i).getY()).correlation();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getPearson() {
+        return pearson;
+    }
+
+    public double getSpearman() {
+        return spearman;
+    }
+
+    public double getKendallTau() {
+        return kendallTau;
+    }
+
+    private static Moments moments(int count, IntToDoubleFunction xs, IntToDoubleFunction ys) {
+        if (count == 0) {
+            return new Moments(0, 0);
+        }
+        // Сдвиг на первую точку: коэффициент не меняется, а слагаемые становятся малыми
+        double shiftX = xs.applyAsDouble(0);
+        double shiftY = ys.applyAsDouble(0);
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    Moments m = new Moments(shiftX, shiftY);
+                    int to = Math.min(count, (c + 1) * CHUNK);
+                    for (int i = c * CHUNK; i < to; i++) {
+                        m.add(xs.applyAsDouble(i), ys.applyAsDouble(i));
+                    }
+                    return m;
+                })
+                .reduce(new Moments(shiftX, shiftY), Moments::combine);
+    }
+
+    /**
+     * τ-b = (n0 - n1 - n2 + n3 - 2·S) / sqrt((n0 - n1)(n0 - n2)), где n0 = n(n-1)/2, n1 и n2 - пары
+     * с равными x и равными y, n3 - пары, равные по обеим координатам, S - число инверсий.
+     */
+    private static double kendallTau(Ranks rankX, Ranks rankY, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) rankX.doubled[i] << 32) | (rankY.doubled[i] & 0xFFFFFFFFL);
+        }
+        radixSort(keys, null, count);
+
+        long jointTies = 0;
+        long jointRun = 1;
+        // Перевод в знаковый порядок: инверсии считаются обычным сравнением int
+        int[] ranks = new int[count];
+        ranks[0] = (int) keys[0] ^ Integer.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            ranks[i] = (int) keys[i] ^ Integer.MIN_VALUE;
+            if (keys[i] == keys[i - 1]) {
+                jointRun++;
+            } else {
+                jointTies += pairs(jointRun);
+                jointRun = 1;
+            }
+        }
+        jointTies += pairs(jointRun);
+
+        long swaps = countInversions(ranks, new int[count]);
+        long total = pairs(count);
+        double denominator = Math.sqrt((double) (total - rankX.tiedPairs) * (total - rankY.tiedPairs));
+        if (!(denominator > 0)) {
+            return 0;
+        }
+        return (total - rankX.tiedPairs - rankY.tiedPairs + jointTies - 2.0 * swaps) / denominator;
+    }
+
+    private static long pairs(long run) {
+        return run * (run - 1) / 2;
+    }
+
+    /** Ключ, беззнаковый порядок которого совпадает с Double.compare. */
+    private static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Устойчивая поразрядная сортировка первых count ключей как беззнаковых; payload (может быть null)
+     * переставляется вместе с ключами. Проходы, в которых у всех ключей одинаковый разряд, пропускаются.
+     */
+    private static void radixSort(long[] keys, int[] payload, int count) {
+        long[] keyBuffer = new long[count];
+        int[] payloadBuffer = payload != null ? new int[count] : null;
+        int[] counts = new int[1 << RADIX_BITS];
+        long[] sourceKeys = keys;
+        int[] sourcePayload = payload;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[(int) (sourceKeys[i] >>> shift) & RADIX_MASK]++;
+            }
+            if (counts[(int) (sourceKeys[0] >>> shift) & RADIX_MASK] == count) {
+                continue;
+            }
+            int offset = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = offset;
+                offset += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int position = counts[(int) (sourceKeys[i] >>> shift) & RADIX_MASK]++;
+                keyBuffer[position] = sourceKeys[i];
+                if (payloadBuffer != null) {
+                    payloadBuffer[position] = sourcePayload[i];
+                }
+            }
+            long[] swapKeys = sourceKeys;
+            sourceKeys = keyBuffer;
+            keyBuffer = swapKeys;
+            int[] swapPayload = sourcePayload;
+            sourcePayload = payloadBuffer;
+            payloadBuffer = swapPayload;
+        }
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, count);
+            if (payload != null) {
+                System.arraycopy(sourcePayload, 0, payload, 0, count);
+            }
+        }
+    }
+
+    /** Восходящая сортировка слиянием с подсчётом пар i &lt; j, a[i] &gt; a[j]; a сортируется. */
+    private static long countInversions(int[] a, int[] buffer) {
+        int n = a.length;
+        long inversions = 0;
+        int[] source = a;
+        int[] target = buffer;
+        for (int width = 1; width < n; width <<= 1) {
+            for (int left = 0; left < n; left += width << 1) {
+                int mid = Math.min(left + width, n);
+                int right = Math.min(left + (width << 1), n);
+                int i = left, j = mid, k = left;
+                while (i < mid && j < right) {
+                    if (source[j] < source[i]) {
+                        inversions += mid - i;
+                        target[k++] = source[j++];
+                    } else {
+                        target[k++] = source[i++];
+                    }
+                }
+                System.arraycopy(source, i, target, k, mid - i);
+                k += mid - i;
+                System.arraycopy(source, j, target, k, right - j);
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return inversions;
+    }
+
+    /**
+     * Удвоенные средние ранги столбца (целые от 2 до 2n, беззнаковые 32 бита) и число пар
+     * с равными значениями.
+     */
+    private static final class Ranks {
+        final int[] doubled;
+        final long tiedPairs;
+
+        private Ranks(int[] doubled, long tiedPairs) {
+            this.doubled = doubled;
+            this.tiedPairs = tiedPairs;
+        }
+
+        static Ranks of(double[] values, int count) {
+            long[] keys = new long[count];
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = sortableBits(values[i]);
+                order[i] = i;
+            }
+            radixSort(keys, order, count);
+
+            int[] doubled = new int[count];
+            long tiedPairs = 0;
+            int start = 0;
+            while (start < count) {
+                int end = start + 1;
+                while (end < count && keys[end] == keys[start]) {
+                    end++;
+                }
+                // Позиции start+1..end (от 1), средний ранг - (start + 1 + end) / 2
+                int rank = start + 1 + end;
+                for (int k = start; k < end; k++) {
+                    doubled[order[k]] = rank;
+                }
+                tiedPairs += pairs(end - start);
+                start = end;
+            }
+            return new Ranks(doubled, tiedPairs);
+        }
+    }
+
+    /** Средние и суммы отклонений (алгоритм Уэлфорда) с объединением частей по Чану. */
+    private static final class Moments {
+        final double shiftX;
+        final double shiftY;
+        long n;
+        double meanX;
+        double meanY;
+        double sxx;
+        double syy;
+        double sxy;
+
+        Moments(double shiftX, double shiftY) {
+            this.shiftX = shiftX;
+            this.shiftY = shiftY;
+        }
+
+        void add(double x, double y) {
+            x -= shiftX;
+            y -= shiftY;
+            n++;
+            double dx = x - meanX;
+            meanX += dx / n;
+            double dy = y - meanY;
+            meanY += dy / n;
+            sxx += dx * (x - meanX);
+            syy += dy * (y - meanY);
+            sxy += dx * (y - meanY);
+        }
+
+        Moments combine(Moments other) {
+            if (other.n == 0) {
+                return this;
+            }
+            if (n == 0) {
+                return other;
+            }
+            Moments m = new Moments(shiftX, shiftY);
+            m.n = n + other.n;
+            double dx = other.meanX - meanX;
+            double dy = other.meanY - meanY;
+            double factor = (double) n * other.n / m.n;
+            m.meanX = meanX + dx * other.n / m.n;
+            m.meanY = meanY + dy * other.n / m.n;
+            m.sxx = sxx + other.sxx + dx * dx * factor;
+            m.syy = syy + other.syy + dy * dy * factor;
+            m.sxy = sxy + other.sxy + dx * dy * factor;
+            return m;
+        }
+
+        // Как и прежде, при нулевом разбросе одного из столбцов корреляция считается нулевой
+        double correlation() {
+            double denominator = Math.sqrt(sxx * syy);
+            return denominator > 0 ? sxy / denominator : 0;
+        }
+    }
+}
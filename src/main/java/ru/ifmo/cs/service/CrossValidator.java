@@ -0,0 +1,315 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.IndexedPoints;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.LinearBasis;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * k-кратный скользящий контроль моделей.
+ * <p>
+ * Для моделей, линейных по параметрам (см. {@link LinearBasis}), за один проход по данным накапливаются
+ * достаточные статистики каждой части. Статистики обучающей выборки части f получаются вычитанием:
+ * S_train(f) = S_total - S_f, и решение для каждой части стоит O(d³) вместо повторного прохода по данным.
+ * Ошибка на контрольной части считается по её точкам в исходных координатах y, как и СКО модели:
+ * формула yᵀWy - 2βᵀb + βᵀAβ по статистикам вычитает почти равные большие числа и при смещённых y
+ * теряет почти всю точность. Второй проход по всем частям вместе - один проход по данным на модель.
+ * Остальные модели перестраиваются на каждой обучающей выборке заново; опорные кривые
+ * ({@link ApproximationResult#isReference()}) не оцениваются - они не участвуют в выборе модели.
+ * Проход по данным и части обрабатываются параллельно в пуле fork-join.
+ */
+public class CrossValidator {
+    public static final int DEFAULT_FOLDS = 10;
+    private static final long DEFAULT_SEED = 0xC0FFEEL;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ForkJoinPool pool;
+    private final int folds;
+    private final long seed;
+
+    public CrossValidator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_FOLDS, DEFAULT_SEED);
+    }
+
+    public CrossValidator(ForkJoinPool pool, int folds, long seed) {
+        if (folds < 2) {
+            throw new IllegalArgumentException("Число частей должно быть не меньше 2: " + folds);
+        }
+        this.pool = pool;
+        this.folds = folds;
+        this.seed = seed;
+    }
+
+    public int getFolds() {
+        return folds;
+    }
+
+    /**
+     * Оценка скользящего контроля для каждой модели в порядке providers: корень из взвешенного
+     * среднего квадрата ошибки на контрольных частях, в тех же единицах, что и СКО модели.
+     * NaN - модель не удалось оценить (слишком мало точек или вырожденная обучающая выборка).
+     */
+    public double[] scoreAll(List<DataPoint> points, DataSummary summary, List<ModelProvider> providers) {
+        return scoreAll(points, summary, providers, null);
+    }
+
+    /**
+     * То же для моделей functions, уже построенных по всем точкам (по индексу providers):
+     * для опорных кривых оценка - NaN без перестроения, остальные модели перестраиваются по частям
+     * со структурой построенной ({@link ModelProvider#createLike}). functions может быть null.
+     */
+    public double[] scoreAll(List<DataPoint> points, DataSummary summary, List<ModelProvider> providers,
+                             List<? extends ApproximationResult> functions) {
+        int n = points.size();
+        double[] scores = new double[providers.size()];
+        Arrays.fill(scores, Double.NaN);
+        if (n < folds) {
+            return scores;
+        }
+
+        int[] assignment = assignFolds(n);
+        int[][] foldIndices = foldIndices(assignment);
+
+        LinearBasis[] modelBases = new LinearBasis[providers.size()];
+        List<LinearBasis> bases = new ArrayList<>();
+        List<Integer> basisModels = new ArrayList<>();
+        List<ForkJoinTask<double[]>> tasks = new ArrayList<>();
+        boolean[] skipped = new boolean[providers.size()];
+        for (int m = 0; m < providers.size(); m++) {
+            if (functions != null && functions.get(m).isReference()) {
+                skipped[m] = true;
+                continue;
+            }
+            LinearBasis basis = providers.get(m).getLinearBasis(summary);
+            modelBases[m] = basis;
+            if (basis != null) {
+                bases.add(basis);
+                basisModels.add(m);
+            } else {
+                ModelProvider provider = providers.get(m);
+                ApproximationResult fitted = functions != null ? functions.get(m) : null;
+                for (int f = 0; f < folds; f++) {
+                    int fold = f;
+                    tasks.add(ForkJoinTask.adapt(
+                            () -> refitFold(points, provider, fitted, assignment, foldIndices[fold])));
+                }
+            }
+        }
+        int refitTasks = tasks.size();
+
+        if (!bases.isEmpty()) {
+            GramAccumulator[][] perFold = pool.invoke(new StatisticsTask(points, bases, assignment, folds, 0, n));
+            for (int b = 0; b < bases.size(); b++) {
+                LinearBasis basis = bases.get(b);
+                GramAccumulator total = new GramAccumulator(basis.dimension());
+                for (GramAccumulator fold : perFold[b]) {
+                    total.addAll(fold);
+                }
+                for (int f = 0; f < folds; f++) {
+                    GramAccumulator held = perFold[b][f];
+                    int[] indices = foldIndices[f];
+                    tasks.add(ForkJoinTask.adapt(() -> subtractFold(points, basis, total, held, indices)));
+                }
+            }
+        }
+
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        // Результат задачи части: {взвешенная сумма квадратов ошибок, сумма весов}
+        int task = 0;
+        for (int m = 0; m < providers.size(); m++) {
+            if (!skipped[m] && modelBases[m] == null) {
+                scores[m] = combine(tasks, task, folds);
+                task += folds;
+            }
+        }
+        for (int b = 0; b < bases.size(); b++) {
+            scores[basisModels.get(b)] = combine(tasks, refitTasks + b * folds, folds);
+        }
+        return scores;
+    }
+
+    public double score(List<DataPoint> points, DataSummary summary, ModelProvider provider) {
+        return scoreAll(points, summary, List.of(provider))[0];
+    }
+
+    private static double combine(List<ForkJoinTask<double[]>> tasks, int from, int count) {
+        double sse = 0;
+        double weight = 0;
+        for (int t = from; t < from + count; t++) {
+            double[] outcome = tasks.get(t).join();
+            sse += outcome[0];
+            weight += outcome[1];
+        }
+        return weight > 0 ? Math.sqrt(sse / weight) : Double.NaN;
+    }
+
+    /**
+     * Равные по размеру части со случайным составом: i mod k с последующим перемешиванием.
+     */
+    private int[] assignFolds(int n) {
+        int[] assignment = new int[n];
+        for (int i = 0; i < n; i++) {
+            assignment[i] = i % folds;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = assignment[i];
+            assignment[i] = assignment[j];
+            assignment[j] = tmp;
+        }
+        return assignment;
+    }
+
+    private int[][] foldIndices(int[] assignment) {
+        int[] sizes = new int[folds];
+        for (int fold : assignment) {
+            sizes[fold]++;
+        }
+        int[][] result = new int[folds][];
+        for (int f = 0; f < folds; f++) {
+            result[f] = new int[sizes[f]];
+        }
+        int[] fill = new int[folds];
+        for (int i = 0; i < assignment.length; i++) {
+            result[assignment[i]][fill[assignment[i]]++] = i;
+        }
+        return result;
+    }
+
+    private static double[] subtractFold(List<DataPoint> points, LinearBasis basis, GramAccumulator total,
+                                         GramAccumulator held, int[] indices) {
+        GramAccumulator train = total.copy();
+        train.subtract(held);
+        if (train.getCount() < basis.dimension()) {
+            return new double[]{Double.NaN, 1};
+        }
+        double[] beta = train.solve();
+        if (beta == null) {
+            return new double[]{Double.NaN, 1};
+        }
+        double sse = 0;
+        double weight = 0;
+        for (int i : indices) {
+            DataPoint p = points.get(i);
+            double predicted = basis.predict(p.getX(), beta);
+            if (Double.isFinite(predicted)) {
+                double e = p.getY() - predicted;
+                sse += p.getWeight() * e * e;
+                weight += p.getWeight();
+            }
+        }
+        return new double[]{sse, weight};
+    }
+
+    private static double[] refitFold(List<DataPoint> points, ModelProvider provider, ApproximationResult fitted,
+                                      int[] assignment, int[] indices) {
+        int[] train = new int[assignment.length - indices.length];
+        int fold = assignment[indices[0]];
+        int t = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] != fold) {
+                train[t++] = i;
+            }
+        }
+        if (train.length < provider.getMinPoints()) {
+            return new double[]{Double.NaN, 1};
+        }
+        ApproximationResult function;
+        try {
+            // Структура модели (например, число участков) берётся из построения по всем точкам
+            FunctionApproximation model = fitted != null ? provider.createLike(fitted) : provider.create();
+            function = model.approximate(new IndexedPoints(points, train));
+        } catch (RuntimeException e) {
+            // Вырожденная обучающая выборка - оценка модели не определена
+            return new double[]{Double.NaN, 1};
+        }
+        double sse = 0;
+        double weight = 0;
+        for (int i : indices) {
+            DataPoint p = points.get(i);
+            double e = p.getY() - function.calculate(p.getX());
+            if (Double.isFinite(e)) {
+                sse += p.getWeight() * e * e;
+                weight += p.getWeight();
+            }
+        }
+        return new double[]{sse, weight};
+    }
+
+    /**
+     * Накопление статистик [модель][часть] по диапазону точек с делением пополам до CHUNK_SIZE.
+     */
+    private static final class StatisticsTask extends RecursiveTask<GramAccumulator[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<DataPoint> points;
+        private final List<LinearBasis> bases;
+        private final int[] assignment;
+        private final int folds;
+        private final int from;
+        private final int to;
+
+        StatisticsTask(List<DataPoint> points, List<LinearBasis> bases, int[] assignment, int folds,
+                       int from, int to) {
+            this.points = points;
+            this.bases = bases;
+            this.assignment = assignment;
+            this.folds = folds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected GramAccumulator[][] compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                StatisticsTask left = new StatisticsTask(points, bases, assignment, folds, from, middle);
+                StatisticsTask right = new StatisticsTask(points, bases, assignment, folds, middle, to);
+                left.fork();
+                GramAccumulator[][] result = right.compute();
+                GramAccumulator[][] other = left.join();
+                for (int b = 0; b < result.length; b++) {
+                    for (int f = 0; f < folds; f++) {
+                        result[b][f].addAll(other[b][f]);
+                    }
+                }
+                return result;
+            }
+
+            GramAccumulator[][] result = new GramAccumulator[bases.size()][folds];
+            double[][] features = new double[bases.size()][];
+            for (int b = 0; b < result.length; b++) {
+                features[b] = new double[bases.get(b).dimension()];
+                for (int f = 0; f < folds; f++) {
+                    result[b][f] = new GramAccumulator(features[b].length);
+                }
+            }
+            for (int i = from; i < to; i++) {
+                DataPoint p = points.get(i);
+                double x = p.getX();
+                double y = p.getY();
+                for (int b = 0; b < result.length; b++) {
+                    LinearBasis basis = bases.get(b);
+                    if (basis.accepts(x, y)) {
+                        basis.features(x, features[b]);
+                        result[b][assignment[i]].add(features[b], basis.target(y), p.getWeight());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -14,27 +14,37 @@ import java.util.List;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 import ru.ifmo.cs.model.DataPoint;
-import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.SegmentedPoints;
+import ru.ifmo.cs.model.functions.ApproximationResult;
 
 public class FileService {
     private static final FileChooser.ExtensionFilter TXT_FILTER = 
             new FileChooser.ExtensionFilter("Text Files (*.txt)", "*.txt");
     private static final FileChooser.ExtensionFilter CSV_FILTER = 
             new FileChooser.ExtensionFilter("CSV Files (*.csv)", "*.csv");
+    private static final FileChooser.ExtensionFilter BINARY_FILTER =
+            new FileChooser.ExtensionFilter("Binary Points (*.xyb)", "*" + MappedPointFile.EXTENSION);
+    private static final FileChooser.ExtensionFilter COMPRESSED_FILTER =
+            new FileChooser.ExtensionFilter("Compressed Points (*.xyg)", "*" + GorillaPointStore.EXTENSION);
+    private static final FileChooser.ExtensionFilter SESSION_FILTER =
+            new FileChooser.ExtensionFilter("Session (*.vm4s)", "*" + SessionFile.EXTENSION);
     private static final FileChooser.ExtensionFilter ALL_FILTER = 
             new FileChooser.ExtensionFilter("All Files", "*.*");
 
+    private final Instrumentation instrumentation = Instrumentation.getDefault();
+
     public File showOpenDialog(Window owner) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Открыть файл с данными");
-        fileChooser.getExtensionFilters().addAll(TXT_FILTER, CSV_FILTER, ALL_FILTER);
+        fileChooser.getExtensionFilters().addAll(TXT_FILTER, CSV_FILTER, COMPRESSED_FILTER, ALL_FILTER);
         return fileChooser.showOpenDialog(owner);
     }
 
     public File showSaveDialog(Window owner) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Сохранить данные");
-        fileChooser.getExtensionFilters().addAll(TXT_FILTER, CSV_FILTER, ALL_FILTER);
+        fileChooser.getExtensionFilters().addAll(TXT_FILTER, CSV_FILTER, COMPRESSED_FILTER, ALL_FILTER);
         return fileChooser.showSaveDialog(owner);
     }
 
@@ -49,52 +59,223 @@ public class FileService {
         return fileChooser.showSaveDialog(owner);
     }
 
+    public File showOpenSessionDialog(Window owner) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Открыть сеанс");
+        fileChooser.getExtensionFilters().addAll(SESSION_FILTER, ALL_FILTER);
+        return fileChooser.showOpenDialog(owner);
+    }
+
+    public File showSaveSessionDialog(Window owner) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Сохранить сеанс");
+        fileChooser.getExtensionFilters().addAll(SESSION_FILTER, ALL_FILTER);
+        fileChooser.setInitialFileName("session" + SessionFile.EXTENSION);
+        return fileChooser.showSaveDialog(owner);
+    }
+
+    public void saveSession(SessionFile.Session session, File file) throws IOException {
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.SESSION)) {
+            timer.setPoints(session.getPoints().size());
+            SessionFile.write(file.toPath(), session);
+        }
+    }
+
+    public SessionFile.Session loadSession(File file) throws IOException {
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.SESSION)) {
+            SessionFile.Session session = SessionFile.read(file.toPath());
+            timer.setPoints(session.getPoints().size());
+            return session;
+        }
+    }
+
     public List<DataPoint> loadPoints(File file) throws IOException {
+        if (isCompressed(file)) {
+            try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE)) {
+                GorillaPointStore store = GorillaPointStore.read(file.toPath());
+                timer.setPoints(store.getCount());
+                return new ArrayList<>(store.asList());
+            }
+        }
         List<DataPoint> points = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE);
+             BufferedReader reader = new BufferedReader(new FileReader(file))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("[,\\s]+");
-                if (parts.length >= 2) {
-                    try {
-                        String xStr = parts[0].trim().replace(',', '.');
-                        String yStr = parts[1].trim().replace(',', '.');
-                        double x = Double.parseDouble(xStr);
-                        double y = Double.parseDouble(yStr);
-                        if (Double.isFinite(x) && Double.isFinite(y)) {
-                            points.add(new DataPoint(x, y));
-                        } else {
-                            System.err.println("Невалидные значения (NaN/Inf) в строке: " + line);
-                        }
-                    } catch (NumberFormatException e) {
-                        System.err.println("Ошибка формата данных в строке: " + line);
-                    }
+                DataPoint point = parseLine(line);
+                if (point != null) {
+                    points.add(point);
                 }
             }
+            timer.setPoints(points.size());
         }
         return points;
     }
 
+    /**
+     * Разбор строки "x y [w]"; null для пустых и ошибочных строк (ошибка выводится в stderr).
+     */
+    private static DataPoint parseLine(String line) {
+        String[] parts = line.split("[,\\s]+");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            String xStr = parts[0].trim().replace(',', '.');
+            String yStr = parts[1].trim().replace(',', '.');
+            double x = Double.parseDouble(xStr);
+            double y = Double.parseDouble(yStr);
+            // Необязательный третий столбец - вес точки
+            double weight = parts.length >= 3
+                    ? Double.parseDouble(parts[2].trim().replace(',', '.'))
+                    : DataPoint.DEFAULT_WEIGHT;
+            if (!(weight > 0) || !Double.isFinite(weight)) {
+                System.err.println("Вес должен быть положительным числом в строке: " + line);
+            } else if (Double.isFinite(x) && Double.isFinite(y)) {
+                return new DataPoint(x, y, weight);
+            } else {
+                System.err.println("Невалидные значения (NaN/Inf) в строке: " + line);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Ошибка формата данных в строке: " + line);
+        }
+        return null;
+    }
+
+    public File showOpenLargeDialog(Window owner) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Открыть большой файл с данными");
+        fileChooser.getExtensionFilters().addAll(BINARY_FILTER, COMPRESSED_FILTER, TXT_FILTER, CSV_FILTER, ALL_FILTER);
+        return fileChooser.showOpenDialog(owner);
+    }
+
+    /**
+     * Открывает файл для обработки вне кучи: двоичный файл точек отображается в память сегментами,
+     * сжатый загружается в кучу без раскодирования, текстовый потоково читается в {@link OffHeapPointStore}
+     * (при большом объёме - с выгрузкой во временный файл).
+     */
+    public SegmentedPoints openLarge(File file) throws IOException {
+        if (file.getName().endsWith(MappedPointFile.EXTENSION)) {
+            return MappedPointFile.open(file.toPath());
+        }
+        if (isCompressed(file)) {
+            return GorillaPointStore.read(file.toPath());
+        }
+        return loadOffHeap(file);
+    }
+
+    public OffHeapPointStore loadOffHeap(File file) throws IOException {
+        OffHeapPointStore store = new OffHeapPointStore();
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE);
+             BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                DataPoint point = parseLine(line);
+                if (point != null) {
+                    store.add(point.getX(), point.getY(), point.getWeight());
+                }
+            }
+            timer.setPoints(store.getCount());
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Потоковое преобразование текстового файла в двоичный формат {@link MappedPointFile}.
+     * Столбец весов пишется, если он есть в первой корректной строке.
+     */
+    public long convertToBinary(File source, File target) throws IOException {
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE);
+             BufferedReader reader = new BufferedReader(new FileReader(source))) {
+            String line;
+            DataPoint first = null;
+            boolean weighted = false;
+            while (first == null && (line = reader.readLine()) != null) {
+                first = parseLine(line);
+                weighted = first != null && line.split("[,\\s]+").length >= 3;
+            }
+            try (MappedPointFile.Writer writer = new MappedPointFile.Writer(target.toPath(), weighted)) {
+                if (first != null) {
+                    writer.append(first.getX(), first.getY(), first.getWeight());
+                }
+                while ((line = reader.readLine()) != null) {
+                    DataPoint point = parseLine(line);
+                    if (point != null) {
+                        writer.append(point.getX(), point.getY(), point.getWeight());
+                    }
+                }
+                timer.setPoints(writer.getCount());
+                return writer.getCount();
+            }
+        }
+    }
+
+    /**
+     * Потоковое преобразование текстового файла в сжатый формат {@link GorillaPointStore}.
+     */
+    public long convertToCompressed(File source, File target) throws IOException {
+        GorillaPointStore store = new GorillaPointStore();
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE);
+             BufferedReader reader = new BufferedReader(new FileReader(source))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                DataPoint point = parseLine(line);
+                if (point != null) {
+                    store.add(point.getX(), point.getY(), point.getWeight());
+                }
+            }
+            timer.setPoints(store.getCount());
+        }
+        store.writeTo(target.toPath());
+        return store.getCount();
+    }
+
+    private static boolean isCompressed(File file) {
+        return file.getName().endsWith(GorillaPointStore.EXTENSION);
+    }
+
     public void savePoints(List<DataPoint> points, File file) throws IOException {
+        if (isCompressed(file)) {
+            GorillaPointStore store = new GorillaPointStore();
+            store.addAll(points);
+            store.writeTo(file.toPath());
+            return;
+        }
+        // Столбец весов пишется, только если хотя бы одна точка взвешена - иначе формат прежний
+        boolean weighted = points.stream().anyMatch(DataPoint::isWeighted);
         try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
             for (DataPoint point : points) {
-                writer.printf("%.6f, %.6f%n", point.getX(), point.getY());
+                if (weighted) {
+                    writer.printf("%.6f, %.6f, %.6f%n", point.getX(), point.getY(), point.getWeight());
+                } else {
+                    writer.printf("%.6f, %.6f%n", point.getX(), point.getY());
+                }
             }
         }
     }
 
     public void saveFullReport(List<DataPoint> points, RegressionResult result, File file) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.REPORT);
+             PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            timer.setPoints(points.size());
             writer.println("Отчет по аппроксимации функций");
             writer.println("==============================");
             writer.println("Сгенерирован: " + new Date());
             writer.println("Количество точек: " + points.size());
             writer.println();
             
+            boolean weighted = points.stream().anyMatch(DataPoint::isWeighted);
             writer.println("Исходные точки:");
-            writer.println("X\tY");
+            writer.println(weighted ? "X\tY\tВес" : "X\tY");
             for (DataPoint p : points) {
-                writer.printf("%.6f\t%.6f%n", p.getX(), p.getY());
+                if (weighted) {
+                    writer.printf("%.6f\t%.6f\t%.6f%n", p.getX(), p.getY(), p.getWeight());
+                } else {
+                    writer.printf("%.6f\t%.6f%n", p.getX(), p.getY());
+                }
             }
             writer.println();
             
@@ -106,20 +287,113 @@ public class FileService {
             writer.println();
             
             writer.println("Коэффициенты функций:");
-            for (FunctionApproximation fa : result.getAllFunctions()) {
+            for (ApproximationResult fa : result.getAllFunctions()) {
                 writer.println(fa.getName() + ": " + fa.getCoefficientsAsString());
             }
             writer.println();
+
+            writer.println("Стандартные ошибки и t-статистики коэффициентов (МНК):");
+            for (ApproximationResult fa : result.getAllFunctions()) {
+                LeastSquaresFit fit = fa.getLeastSquaresFit();
+                if (fit == null) {
+                    continue;
+                }
+                double[] standardErrors = fit.getStandardErrors();
+                double[] tStatistics = fit.getTStatistics();
+                writer.printf("%s (степеней свободы: %d):%n", fa.getName(), fit.getDegreesOfFreedom());
+                for (int k = 0; k < standardErrors.length; k++) {
+                    writer.printf("\tc%d\t%.6f\t%.3f%n", k, standardErrors[k], tStatistics[k]);
+                }
+            }
+            writer.println();
+
+            if (!result.getCoefficientIntervals().isEmpty()) {
+                writer.println("Бутстреп-интервалы коэффициентов (нижняя граница, верхняя граница, стандартная ошибка):");
+                for (ApproximationResult fa : result.getAllFunctions()) {
+                    BootstrapIntervals intervals = result.getCoefficientIntervals(fa);
+                    if (intervals == null) {
+                        continue;
+                    }
+                    writer.printf("%s (%.0f%%, %d повторов):%n", fa.getName(),
+                            intervals.getConfidenceLevel() * 100, intervals.getReplicates());
+                    for (int k = 0; k < intervals.getCoefficientCount(); k++) {
+                        writer.printf("\tc%d\t%.6f\t%.6f\t%.6f%n", k, intervals.getLower(k),
+                                intervals.getUpper(k), intervals.getStandardError(k));
+                    }
+                }
+                writer.println();
+            }
             
-            writer.println("Среднеквадратичные отклонения и коэффициенты детерминации:");
+            writer.println(weighted
+                    ? "Взвешенные среднеквадратичные отклонения и коэффициенты детерминации:"
+                    : "Среднеквадратичные отклонения и коэффициенты детерминации:");
             writer.println("Функция\tСКО\tR²");
-            for (FunctionApproximation fa : result.getAllFunctions()) {
+            for (ApproximationResult fa : result.getAllFunctions()) {
                 writer.printf("%s\t%.6f\t%.6f%n", fa.getName(), fa.getStandardDeviation(), fa.getRSquared());
             }
             writer.println();
+
+            if (!result.getDiagnostics().isEmpty()) {
+                writer.println("Диагностика остатков (Дурбин-Уотсон, число серий, z, p, выбросы |t| > 3, "
+                        + "влиятельные точки D > 4/n, наибольшее D Кука и его точка):");
+                for (ApproximationResult fa : result.getAllFunctions()) {
+                    ResidualDiagnostics diagnostics = result.getDiagnostics(fa);
+                    if (diagnostics == null) {
+                        continue;
+                    }
+                    writer.printf("%s\t%.4f\t%d\t%.3f\t%.4f\t%d\t%s\t%s\t%s%n", fa.getName(),
+                            diagnostics.getDurbinWatson(), diagnostics.getRuns(), diagnostics.getRunsZ(),
+                            diagnostics.getRunsPValue(), diagnostics.getOutlierCount(),
+                            diagnostics.hasLeverage() ? String.valueOf(diagnostics.getInfluentialCount()) : "-",
+                            diagnostics.hasLeverage() ? String.format("%.6f", diagnostics.getMaxCooksDistance()) : "-",
+                            diagnostics.getMaxCookIndex() >= 0 ? String.valueOf(diagnostics.getMaxCookIndex() + 1) : "-");
+                }
+                writer.println();
+
+                // Значения по точкам - для лучшей модели, чтобы отчёт не рос кратно числу моделей
+                ResidualDiagnostics best = result.getDiagnostics(result.getBestFunction());
+                if (best != null && best.hasLeverage()) {
+                    writer.println("Влияние точек для наилучшей модели (" + best.getModelName() + "):");
+                    writer.println("№\tРычаг\tКук\tСтьюдентизированный остаток");
+                    for (int i = 0; i < points.size(); i++) {
+                        writer.printf("%d\t%.6f\t%.6f\t%.4f%n", i + 1, best.getLeverage(i),
+                                best.getCooksDistance(i), best.getStudentizedResidual(i));
+                    }
+                    writer.println();
+                }
+            }
             
-            writer.printf("Коэффициент корреляции Пирсона (линейная): %.6f%n", result.getPearsonCorrelation());
+            if (!result.getCrossValidationScores().isEmpty()) {
+                writer.printf("Скользящий контроль (%d частей), СКО на контрольных частях:%n",
+                        result.getCrossValidationFolds());
+                for (ApproximationResult fa : result.getAllFunctions()) {
+                    if (fa.isReference()) {
+                        continue;
+                    }
+                    writer.printf("%s\t%.6f%n", fa.getName(), result.getCrossValidationScore(fa));
+                }
+                writer.println();
+            }
+
+            Correlation correlation = result.getCorrelation();
+            writer.printf("Коэффициент корреляции Пирсона (линейная): %.6f%n", correlation.getPearson());
+            writer.printf("Коэффициент корреляции Спирмена (ранговая): %.6f%n", correlation.getSpearman());
+            writer.printf("Коэффициент τ-b Кендалла (ранговая): %.6f%n", correlation.getKendallTau());
             writer.println();
+
+            ModelSelectionReport selection = result.getSelectionReport();
+            if (selection != null) {
+                writer.printf("Выбор модели по %d подвыборкам из %d точек:%n",
+                        selection.getSubsampleCount(), selection.getSubsampleSize());
+                writer.println("Функция\tМедиана СКО\t95% интервал\tКонсенсус\tДоля побед");
+                for (ModelSelectionReport.Entry e : selection.getEntries()) {
+                    writer.printf("%s\t%.6f\t[%.6f; %.6f]\t%.3f\t%.3f%n", e.getModelName(), e.getMedianScore(),
+                            e.getScoreLower(), e.getScoreUpper(), e.getConsensus(), e.getWinFraction());
+                }
+                writer.printf("Надёжность выбора (%s): 95%% интервал [%.3f; %.3f]%n", selection.getWinnerName(),
+                        selection.getWinnerConfidenceLower(), selection.getWinnerConfidenceUpper());
+                writer.println();
+            }
             
             double rSquared = result.getBestFunction().getRSquared();
             writer.println("Интерпретация R²: ");
@@ -134,13 +408,15 @@ public class FileService {
             }
             writer.println();
             
-            FunctionApproximation best = result.getBestFunction();
+            ApproximationResult best = result.getBestFunction();
             writer.println("Детали для " + best.getName() + ":");
             writer.println("X\tY\tФ(X)\tОтклонение");
+            DoubleVector calculated = best.getCalculatedValueVector();
+            DoubleVector errors = best.getErrorVector();
             for (int i = 0; i < points.size(); i++) {
                 DataPoint p = points.get(i);
-                double actual = best.getCalculatedValues().get(i);
-                double error = best.getErrors().get(i);
+                double actual = calculated.get(i);
+                double error = errors.get(i);
                 writer.printf("%.6f\t%.6f\t%.6f\t%.6f%n", p.getX(), p.getY(), actual, error);
             }
         }
@@ -0,0 +1,106 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+
+/**
+ * Неизменяемый результат построения модели. Все поля final, поэтому экземпляр безопасно публикуется
+ * через любые ссылки (кэш результатов, другие потоки) и читается без блокировок и копирования.
+ * <p>
+ * Значение в точке вычисляет исходный экземпляр модели: он принадлежит только этому объекту и больше
+ * не перестраивается, а его состояние на момент фиксации видно всем потокам через final-поле.
+ */
+public final class FittedModel implements ApproximationResult {
+    private final FunctionApproximation source;
+    private final String name;
+    private final DoubleVector coefficients;
+    private final DoubleVector calculatedValues;
+    private final DoubleVector errors;
+    private final double standardDeviation;
+    private final double rSquared;
+    private final LeastSquaresFit leastSquaresFit;
+    private final boolean reference;
+    private final boolean parametric;
+
+    private FittedModel(FunctionApproximation source) {
+        this.source = source;
+        this.name = source.getName();
+        this.coefficients = source.getCoefficientVector();
+        this.calculatedValues = source.getCalculatedValueVector();
+        this.errors = source.getErrorVector();
+        this.standardDeviation = source.getStandardDeviation();
+        this.rSquared = source.getRSquared();
+        this.leastSquaresFit = source.getLeastSquaresFit();
+        this.reference = source.isReference();
+        this.parametric = source.isParametric();
+    }
+
+    /**
+     * Фиксирует построенную модель. После вызова экземпляр fitted не должен перестраиваться
+     * и передаваться дальше - им владеет результат.
+     */
+    public static FittedModel of(FunctionApproximation fitted) {
+        return new FittedModel(fitted);
+    }
+
+    /** Исходная модель - для определения вида формулы при сохранении. */
+    FunctionApproximation getSource() {
+        return source;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public double calculate(double x) {
+        return source.calculate(x);
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    @Override
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    @Override
+    public DoubleVector getCoefficientVector() {
+        return coefficients;
+    }
+
+    @Override
+    public DoubleVector getCalculatedValueVector() {
+        return calculatedValues;
+    }
+
+    @Override
+    public DoubleVector getErrorVector() {
+        return errors;
+    }
+
+    @Override
+    public LeastSquaresFit getLeastSquaresFit() {
+        return leastSquaresFit;
+    }
+
+    @Override
+    public boolean isReference() {
+        return reference;
+    }
+
+    @Override
+    public boolean isParametric() {
+        return parametric;
+    }
+
+    @Override
+    public String getCoefficientsAsString() {
+        return source.getCoefficientsAsString();
+    }
+}
@@ -0,0 +1,321 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.PointColumns;
+
+import java.util.Arrays;
+
+/**
+ * Сжатие блока точек по схеме Gorilla (Pelkonen и др., VLDB 2015), без потерь.
+ * <p>
+ * Значения (y, веса и нецелые x) кодируются XOR с предыдущим значением: совпадение - 1 бит, иначе
+ * значащие биты XOR, причём окно ведущих и хвостовых нулей переиспользуется, если новое XOR в него
+ * помещается. Если все x блока - целые числа (отметки времени), x кодируются разностью разностей:
+ * при постоянном шаге это 1 бит на точку. Точки пишутся поочерёдно (x, y[, w]), поэтому блок
+ * декодируется одним проходом.
+ * <p>
+ * Формат блока: 32 бита - число точек, 8 бит - флаги ({@link #FLAG_INTEGER_X}, {@link #FLAG_WEIGHTED}),
+ * затем поток точек.
+ */
+final class GorillaCodec {
+    static final int FLAG_INTEGER_X = 1;
+    static final int FLAG_WEIGHTED = 2;
+    private static final long MAX_EXACT_LONG = 1L << 53;
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * @param w веса или null, если все веса равны 1
+     */
+    static byte[] encode(double[] x, double[] y, double[] w, int count) {
+        boolean integerX = true;
+        for (int i = 0; i < count && integerX; i++) {
+            integerX = isExactLong(x[i]);
+        }
+        BitWriter out = new BitWriter(count);
+        out.write(count, 32);
+        out.write((integerX ? FLAG_INTEGER_X : 0) | (w != null ? FLAG_WEIGHTED : 0), 8);
+
+        DeltaOfDeltaEncoder xTime = integerX ? new DeltaOfDeltaEncoder() : null;
+        XorEncoder xValue = integerX ? null : new XorEncoder();
+        XorEncoder yValue = new XorEncoder();
+        XorEncoder wValue = w != null ? new XorEncoder() : null;
+        for (int i = 0; i < count; i++) {
+            if (integerX) {
+                xTime.write(out, (long) x[i]);
+            } else {
+                xValue.write(out, x[i]);
+            }
+            yValue.write(out, y[i]);
+            if (wValue != null) {
+                wValue.write(out, w[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static Block decode(byte[] block) {
+        BitReader in = new BitReader(block);
+        int count = (int) in.read(32);
+        int flags = (int) in.read(8);
+        boolean integerX = (flags & FLAG_INTEGER_X) != 0;
+        boolean weighted = (flags & FLAG_WEIGHTED) != 0;
+
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] w = weighted ? new double[count] : null;
+        DeltaOfDeltaDecoder xTime = integerX ? new DeltaOfDeltaDecoder() : null;
+        XorDecoder xValue = integerX ? null : new XorDecoder();
+        XorDecoder yValue = new XorDecoder();
+        XorDecoder wValue = weighted ? new XorDecoder() : null;
+        for (int i = 0; i < count; i++) {
+            x[i] = integerX ? xTime.read(in) : xValue.read(in);
+            y[i] = yValue.read(in);
+            if (weighted) {
+                w[i] = wValue.read(in);
+            }
+        }
+        return new Block(x, y, w);
+    }
+
+    /** Целое в пределах точного представления double, без потери знака нуля. */
+    private static boolean isExactLong(double value) {
+        return Math.abs(value) < MAX_EXACT_LONG
+                && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits((double) (long) value);
+    }
+
+    /** Раскодированный блок. */
+    static final class Block implements PointColumns {
+        private final double[] x;
+        private final double[] y;
+        private final double[] w;
+
+        Block(double[] x, double[] y, double[] w) {
+            this.x = x;
+            this.y = y;
+            this.w = w;
+        }
+
+        @Override
+        public int size() {
+            return x.length;
+        }
+
+        @Override
+        public double x(int i) {
+            return x[i];
+        }
+
+        @Override
+        public double y(int i) {
+            return y[i];
+        }
+
+        @Override
+        public double weight(int i) {
+            return w == null ? 1.0 : w[i];
+        }
+    }
+
+    private static final class XorEncoder {
+        private long previous;
+        private int leading = -1;
+        private int trailing;
+        private boolean started;
+
+        void write(BitWriter out, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (!started) {
+                out.write(bits, 64);
+                previous = bits;
+                started = true;
+                return;
+            }
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                return;
+            }
+            out.write(1, 1);
+            // Число ведущих нулей хранится в 5 битах
+            int newLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int newTrailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && newLeading >= leading && newTrailing >= trailing) {
+                out.write(0, 1);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                leading = newLeading;
+                trailing = newTrailing;
+                int significant = 64 - leading - trailing;
+                out.write(1, 1);
+                out.write(leading, 5);
+                // 64 значащих бита записываются как 0
+                out.write(significant & 63, 6);
+                out.write(xor >>> trailing, significant);
+            }
+        }
+    }
+
+    private static final class XorDecoder {
+        private long previous;
+        private int leading;
+        private int trailing;
+        private boolean started;
+
+        double read(BitReader in) {
+            if (!started) {
+                previous = in.read(64);
+                started = true;
+            } else if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(5);
+                    int significant = (int) in.read(6);
+                    trailing = 64 - leading - (significant == 0 ? 64 : significant);
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            return Double.longBitsToDouble(previous);
+        }
+    }
+
+    /**
+     * Разность разностей: 0 - '0'; [-63, 64] - '10' и 7 бит; [-255, 256] - '110' и 9 бит;
+     * [-2047, 2048] - '1110' и 12 бит; иначе '1111' и 64 бита.
+     */
+    private static final class DeltaOfDeltaEncoder {
+        private long previous;
+        private long previousDelta;
+        private boolean started;
+
+        void write(BitWriter out, long value) {
+            if (!started) {
+                out.write(value, 64);
+                previous = value;
+                started = true;
+                return;
+            }
+            long delta = value - previous;
+            long dod = delta - previousDelta;
+            previous = value;
+            previousDelta = delta;
+            if (dod == 0) {
+                out.write(0, 1);
+            } else if (dod >= -63 && dod <= 64) {
+                out.write(0b10, 2);
+                out.write(dod + 63, 7);
+            } else if (dod >= -255 && dod <= 256) {
+                out.write(0b110, 3);
+                out.write(dod + 255, 9);
+            } else if (dod >= -2047 && dod <= 2048) {
+                out.write(0b1110, 4);
+                out.write(dod + 2047, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+        }
+    }
+
+    private static final class DeltaOfDeltaDecoder {
+        private long previous;
+        private long previousDelta;
+        private boolean started;
+
+        double read(BitReader in) {
+            if (!started) {
+                previous = in.read(64);
+                started = true;
+                return previous;
+            }
+            long dod;
+            if (in.read(1) == 0) {
+                dod = 0;
+            } else if (in.read(1) == 0) {
+                dod = in.read(7) - 63;
+            } else if (in.read(1) == 0) {
+                dod = in.read(9) - 255;
+            } else if (in.read(1) == 0) {
+                dod = in.read(12) - 2047;
+            } else {
+                dod = in.read(64);
+            }
+            previousDelta += dod;
+            previous += previousDelta;
+            return previous;
+        }
+    }
+
+    /** Запись битов старшими вперёд. */
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int length;
+        private long pending;
+        private int pendingBits;
+
+        BitWriter(int points) {
+            this.bytes = new byte[Math.max(64, points * 4)];
+        }
+
+        /** Младшие count битов value, count от 1 до 64. */
+        void write(long value, int count) {
+            while (count > 0) {
+                int take = Math.min(64 - pendingBits, count);
+                long chunk = take == 64 ? value : (value >>> (count - take)) & ((1L << take) - 1);
+                pending = take == 64 ? chunk : (pending << take) | chunk;
+                pendingBits += take;
+                count -= take;
+                if (pendingBits == 64) {
+                    flush(8);
+                }
+            }
+        }
+
+        private void flush(int byteCount) {
+            if (length + byteCount > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + byteCount, bytes.length * 2));
+            }
+            for (int k = 0; k < byteCount; k++) {
+                bytes[length++] = (byte) (pending >>> (56 - 8 * k));
+            }
+            pending = 0;
+            pendingBits = 0;
+        }
+
+        byte[] toByteArray() {
+            if (pendingBits > 0) {
+                pending <<= 64 - pendingBits;
+                flush((pendingBits + 7) / 8);
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /** Чтение битов старшими вперёд. */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int position;
+        private int current;
+        private int available;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int count) {
+            long result = 0;
+            while (count > 0) {
+                if (available == 0) {
+                    current = bytes[position++] & 0xFF;
+                    available = 8;
+                }
+                int take = Math.min(available, count);
+                int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+                result = (result << take) | chunk;
+                available -= take;
+                count -= take;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PointColumns;
+import ru.ifmo.cs.model.SegmentedPoints;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Хранилище точек, сжатых блоками по схеме Gorilla ({@link GorillaCodec}).
+ * <p>
+ * Точки накапливаются в открытом блоке из {@link #BLOCK_POINTS}; заполненный блок сжимается и дальше
+ * хранится только в сжатом виде. Для рядов с монотонными целыми x (отметки времени) и медленно
+ * меняющимися y это единицы бит на точку вместо 16-24 байт. Каждый блок - сегмент {@link SegmentedPoints}:
+ * при обработке раскодируется только этот блок, так что потоковые алгоритмы ({@link OutOfCoreRegression})
+ * держат в памяти не больше одного раскодированного блока на поток.
+ * <p>
+ * Тот же набор блоков - файловый формат .xyg: сигнатура "XYG1", число точек, число блоков, затем блоки
+ * с длиной в байтах. Добавление точек однопоточное; чтение сегментов после заполнения можно вести
+ * из нескольких потоков.
+ */
+public final class GorillaPointStore implements SegmentedPoints {
+    public static final String EXTENSION = ".xyg";
+    static final int MAGIC = 0x58594731; // "XYG1"
+    static final int BLOCK_POINTS = 1 << 14;
+
+    private final List<byte[]> blocks = new ArrayList<>();
+    private final double[] pendingX = new double[BLOCK_POINTS];
+    private final double[] pendingY = new double[BLOCK_POINTS];
+    private final double[] pendingW = new double[BLOCK_POINTS];
+    private int pendingCount;
+    private boolean pendingWeighted;
+    private long count;
+    private long compressedBytes;
+
+    public void add(double x, double y, double weight) {
+        pendingX[pendingCount] = x;
+        pendingY[pendingCount] = y;
+        pendingW[pendingCount] = weight;
+        pendingWeighted |= weight != 1.0;
+        pendingCount++;
+        count++;
+        if (pendingCount == BLOCK_POINTS) {
+            addBlock(encodePending());
+            pendingCount = 0;
+            pendingWeighted = false;
+        }
+    }
+
+    public void addAll(List<DataPoint> points) {
+        for (DataPoint p : points) {
+            add(p.getX(), p.getY(), p.getWeight());
+        }
+    }
+
+    private byte[] encodePending() {
+        return GorillaCodec.encode(pendingX, pendingY, pendingWeighted ? pendingW : null, pendingCount);
+    }
+
+    private void addBlock(byte[] block) {
+        blocks.add(block);
+        compressedBytes += block.length;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /** Объём сжатых блоков в байтах; открытый блок хранится несжатым и не учитывается. */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return blocks.size() + (pendingCount > 0 ? 1 : 0);
+    }
+
+    /** Раскодирует блок index; открытый блок возвращается копией. */
+    @Override
+    public PointColumns segment(int index) {
+        if (index < blocks.size()) {
+            return GorillaCodec.decode(blocks.get(index));
+        }
+        if (index == blocks.size() && pendingCount > 0) {
+            return new GorillaCodec.Block(Arrays.copyOf(pendingX, pendingCount),
+                    Arrays.copyOf(pendingY, pendingCount),
+                    pendingWeighted ? Arrays.copyOf(pendingW, pendingCount) : null);
+        }
+        throw new IndexOutOfBoundsException("Сегмент " + index + " вне диапазона 0.." + (getSegmentCount() - 1));
+    }
+
+    /**
+     * Представление в виде списка. Последний раскодированный блок запоминается, поэтому
+     * последовательный обход раскодирует каждый блок один раз. Представление однопоточное.
+     */
+    public List<DataPoint> asList() {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Слишком много точек для представления списком: " + count);
+        }
+        return new ListView();
+    }
+
+    /** Запись в формате .xyg; открытый блок сжимается при записи, хранилище не меняется. */
+    public void writeTo(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(count);
+            out.writeInt(getSegmentCount());
+            for (byte[] block : blocks) {
+                out.writeInt(block.length);
+                out.write(block);
+            }
+            if (pendingCount > 0) {
+                byte[] block = encodePending();
+                out.writeInt(block.length);
+                out.write(block);
+            }
+        }
+    }
+
+    /** Чтение файла .xyg: блоки загружаются в сжатом виде и раскодируются по мере обращения. */
+    public static GorillaPointStore read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Файл не является сжатым файлом точек: " + path);
+            }
+            long count = in.readLong();
+            int blockCount = in.readInt();
+            if (count < 0 || blockCount < 0 || count > (long) blockCount * BLOCK_POINTS) {
+                throw new IOException("Файл точек повреждён: " + path);
+            }
+            GorillaPointStore store = new GorillaPointStore();
+            for (int b = 0; b < blockCount; b++) {
+                int length = in.readInt();
+                if (length < 5) {
+                    throw new IOException("Файл точек повреждён: " + path);
+                }
+                byte[] block = new byte[length];
+                in.readFully(block);
+                store.addBlock(block);
+            }
+            store.count = count;
+            return store;
+        } catch (EOFException e) {
+            throw new IOException("Файл точек обрезан: " + path, e);
+        }
+    }
+
+    /** Данные в куче; закрывать нечего, метод нужен для единообразия с другими хранилищами. */
+    @Override
+    public void close() {
+    }
+
+    private final class ListView extends AbstractList<DataPoint> implements RandomAccess {
+        private int cachedIndex = -1;
+        private PointColumns cached;
+
+        @Override
+        public DataPoint get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Индекс " + index + " вне диапазона 0.." + (count - 1));
+            }
+            int block = index / BLOCK_POINTS;
+            if (block != cachedIndex) {
+                cached = segment(block);
+                cachedIndex = block;
+            }
+            int offset = index % BLOCK_POINTS;
+            return new DataPoint(cached.x(offset), cached.y(offset), cached.weight(offset));
+        }
+
+        @Override
+        public int size() {
+            return (int) count;
+        }
+    }
+}
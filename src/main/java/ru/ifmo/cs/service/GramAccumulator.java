@@ -0,0 +1,125 @@
+package ru.ifmo.cs.service;
+
+import java.util.Arrays;
+
+/**
+ * Достаточные статистики взвешенного линейного МНК: ΦᵀWΦ, ΦᵀWt, tᵀWt и Σw.
+ * Статистики аддитивны: части данных можно накапливать независимо, складывать и вычитать.
+ */
+public final class GramAccumulator {
+    private final int d;
+    private final double[] xtx;
+    private final double[] xty;
+    private double yty;
+    private double weightSum;
+    private long count;
+
+    public GramAccumulator(int dimension) {
+        this.d = dimension;
+        this.xtx = new double[dimension * dimension];
+        this.xty = new double[dimension];
+    }
+
+    public int dimension() {
+        return d;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getWeightSum() {
+        return weightSum;
+    }
+
+    public void add(double[] features, double target, double weight) {
+        for (int a = 0; a < d; a++) {
+            double wa = weight * features[a];
+            xty[a] += wa * target;
+            for (int b = a; b < d; b++) {
+                xtx[a * d + b] += wa * features[b];
+            }
+        }
+        yty += weight * target * target;
+        weightSum += weight;
+        count++;
+    }
+
+    public void addAll(GramAccumulator other) {
+        combine(other, 1);
+    }
+
+    public void subtract(GramAccumulator other) {
+        combine(other, -1);
+    }
+
+    public GramAccumulator copy() {
+        GramAccumulator result = new GramAccumulator(d);
+        result.addAll(this);
+        return result;
+    }
+
+    private void combine(GramAccumulator other, int sign) {
+        for (int i = 0; i < xtx.length; i++) {
+            xtx[i] += sign * other.xtx[i];
+        }
+        for (int i = 0; i < d; i++) {
+            xty[i] += sign * other.xty[i];
+        }
+        yty += sign * other.yty;
+        weightSum += sign * other.weightSum;
+        count += sign * other.count;
+    }
+
+    public void reset() {
+        Arrays.fill(xtx, 0);
+        Arrays.fill(xty, 0);
+        yty = 0;
+        weightSum = 0;
+        count = 0;
+    }
+
+    /**
+     * Решение нормальных уравнений разложением Холецкого; null, если матрица вырождена.
+     */
+    public double[] solve() {
+        double[] beta = new double[d];
+        return solve(new double[d * d], beta) ? beta : null;
+    }
+
+    /**
+     * Вариант без выделения памяти для многократных решений: factor (d·d) - рабочий массив
+     * для множителя L, решение записывается в out. false, если матрица вырождена.
+     */
+    public boolean solve(double[] factor, double[] out) {
+        if (!choleskyFactor(factor)) {
+            return false;
+        }
+        NormalEquations.solve(factor, d, d, xty, out);
+        return true;
+    }
+
+    /** Нижний треугольный множитель L (ΦᵀWΦ = L·Lᵀ) по строкам; null, если матрица не положительно определена. */
+    public double[] choleskyFactor() {
+        double[] l = new double[d * d];
+        return choleskyFactor(l) ? l : null;
+    }
+
+    private boolean choleskyFactor(double[] l) {
+        // Накапливается только верхний треугольник, разложению нужен нижний
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j <= i; j++) {
+                l[i * d + j] = xtx[j * d + i];
+            }
+        }
+        // Относительный порог: потеря значимости при почти вырожденной матрице
+        return NormalEquations.factor(l, d, 1e-13, 0) == d;
+    }
+
+    /** Решение (L·Lᵀ)·x = b для множителя из choleskyFactor. */
+    public double[] choleskySolve(double[] l, double[] b) {
+        double[] x = new double[d];
+        NormalEquations.solve(l, d, d, b, x);
+        return x;
+    }
+}
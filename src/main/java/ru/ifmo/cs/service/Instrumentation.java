@@ -0,0 +1,252 @@
+package ru.ifmo.cs.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Замеры этапов расчёта: гистограмма задержек, число точек и выделенная память по каждому этапу.
+ * <p>
+ * Этап замеряется таймером в try-with-resources:
+ * <pre>
+ * try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.PARSE)) {
+ *     ...
+ *     timer.setPoints(points.size());
+ * }
+ * </pre>
+ * Каждый замер также записывается событием JFR {@link StageEvent}, а сводка доступна через JMX
+ * ({@link InstrumentationMXBean}) и вкладку диагностики. Неудачные выполнения этапа учитываются
+ * {@link #recordFailure} вместе с последней ошибкой. Выделенная память считается только в потоке,
+ * открывшем таймер: работа, переданная в пул fork-join, в неё не входит.
+ */
+public final class Instrumentation implements InstrumentationMXBean {
+    public static final String OBJECT_NAME = "ru.ifmo.cs:type=Instrumentation";
+
+    public static final String PARSE = "Чтение";
+    public static final String FIT = "Построение";
+    public static final String METRICS = "Метрики";
+    public static final String CROSS_VALIDATION = "Скользящий контроль";
+    public static final String BOOTSTRAP = "Бутстреп";
+    public static final String DIAGNOSTICS = "Диагностика";
+    public static final String REPORT = "Отчёт";
+    public static final String RENDER = "Отрисовка";
+    public static final String SESSION = "Сеанс";
+    public static final String CALCULATION = "Расчёт";
+
+    private static final Instrumentation DEFAULT = register(new Instrumentation());
+
+    private final Map<String, StageStatistics> stages = new ConcurrentSkipListMap<>();
+    private final com.sun.management.ThreadMXBean allocations;
+
+    private Instrumentation() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean extended = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        this.allocations = extended != null && extended.isThreadAllocatedMemorySupported()
+                && extended.isThreadAllocatedMemoryEnabled() ? extended : null;
+    }
+
+    public static Instrumentation getDefault() {
+        return DEFAULT;
+    }
+
+    private static Instrumentation register(Instrumentation instrumentation) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(instrumentation, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать MBean " + OBJECT_NAME + ": " + e.getMessage());
+        }
+        return instrumentation;
+    }
+
+    public Timer start(String stage) {
+        return new Timer(stage);
+    }
+
+    /** Этап построения конкретной модели. */
+    public Timer startFit(String modelName) {
+        return new Timer(FIT + ": " + modelName);
+    }
+
+    /** Неудачное выполнение этапа: увеличивает счётчик ошибок и запоминает сообщение последней. */
+    public void recordFailure(String stage, Throwable error) {
+        StageStatistics statistics = stages.computeIfAbsent(stage, name -> new StageStatistics());
+        statistics.failures.increment();
+        statistics.lastError = error.getClass().getSimpleName()
+                + (error.getMessage() != null ? ": " + error.getMessage() : "");
+    }
+
+    @Override
+    public List<StageSnapshot> getStages() {
+        List<StageSnapshot> result = new ArrayList<>(stages.size());
+        stages.forEach((name, statistics) -> result.add(statistics.snapshot(name)));
+        return result;
+    }
+
+    @Override
+    public boolean isAllocationTrackingSupported() {
+        return allocations != null;
+    }
+
+    @Override
+    public void reset() {
+        stages.clear();
+    }
+
+    private long allocatedBytes() {
+        return allocations != null ? allocations.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static final class StageStatistics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder points = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        volatile String lastError;
+
+        StageSnapshot snapshot(String name) {
+            long nanos = latency.getTotalNanos();
+            long pointCount = points.sum();
+            return new StageSnapshot(name, latency.getCount(), latency.getMeanNanos() / 1e6,
+                    latency.valueAtPercentile(50) / 1e6, latency.valueAtPercentile(90) / 1e6,
+                    latency.valueAtPercentile(99) / 1e6, latency.getMaxNanos() / 1e6,
+                    pointCount, nanos > 0 ? pointCount * 1e9 / nanos : 0, allocatedBytes.sum(),
+                    failures.sum(), lastError);
+        }
+    }
+
+    /**
+     * Замер одного выполнения этапа; результат записывается при закрытии.
+     */
+    public final class Timer implements AutoCloseable {
+        private final String stage;
+        private final StageEvent event = new StageEvent();
+        private final long startNanos;
+        private final long startAllocated;
+        private long points;
+
+        private Timer(String stage) {
+            this.stage = stage;
+            this.event.begin();
+            this.startAllocated = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        /** Число точек, обработанных этапом, для пропускной способности. */
+        public void setPoints(long points) {
+            this.points = points;
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startAllocated;
+            StageStatistics statistics = stages.computeIfAbsent(stage, name -> new StageStatistics());
+            statistics.latency.record(elapsed);
+            statistics.points.add(points);
+            statistics.allocatedBytes.add(allocated);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.points = points;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Сводка по этапу; времена в миллисекундах. Открытый класс с get-методами, чтобы JMX
+     * отображал его как составное значение.
+     */
+    public static final class StageSnapshot {
+        private final String stage;
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final long points;
+        private final double pointsPerSecond;
+        private final long allocatedBytes;
+        private final long failures;
+        private final String lastError;
+
+        public StageSnapshot(String stage, long count, double meanMillis, double p50Millis, double p90Millis,
+                             double p99Millis, double maxMillis, long points, double pointsPerSecond,
+                             long allocatedBytes, long failures, String lastError) {
+            this.stage = stage;
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.points = points;
+            this.pointsPerSecond = pointsPerSecond;
+            this.allocatedBytes = allocatedBytes;
+            this.failures = failures;
+            this.lastError = lastError;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getPoints() {
+            return points;
+        }
+
+        public double getPointsPerSecond() {
+            return pointsPerSecond;
+        }
+
+        /** Память, выделенная в потоке этапа за все выполнения. */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /** Сообщение последней ошибки этапа или null, если ошибок не было. */
+        public String getLastError() {
+            return lastError;
+        }
+    }
+}
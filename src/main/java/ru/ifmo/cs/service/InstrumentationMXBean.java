@@ -0,0 +1,15 @@
+package ru.ifmo.cs.service;
+
+import java.util.List;
+
+/**
+ * Метрики этапов расчёта в JMX: объект {@value Instrumentation#OBJECT_NAME}.
+ */
+public interface InstrumentationMXBean {
+
+    List<Instrumentation.StageSnapshot> getStages();
+
+    boolean isAllocationTrackingSupported();
+
+    void reset();
+}
@@ -0,0 +1,238 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * Результат полиномиального МНК вместе с обратной матрицей нормальных уравнений.
+ * Ковариация коэффициентов Cov = s²·(XᵀWX)⁻¹, где s² = Σw·e² / (n - p), поэтому стандартные ошибки,
+ * t-статистики и полосы для любых x считаются без повторного решения. Сама (XᵀWX)⁻¹ хранится тоже:
+ * из неё берутся рычаги точек h = w·φᵀ(XᵀWX)⁻¹φ для диагностики остатков.
+ * <p>
+ * Решение хранится в базисе степеней u = (x - center) / scale со сдвигом y на offset, в котором оно
+ * получено: значения, рычаги и полосы считаются в нём, так как мономы x при x порядка отметок времени
+ * вычитают почти равные большие числа. Коэффициенты и ковариация по степеням x - для отчёта.
+ * Рычаг и дисперсия предсказания от выбора базиса не зависят.
+ */
+public final class LeastSquaresFit {
+    private final double[] coefficients;
+    private final double[] covariance;
+    private final double center;
+    private final double scale;
+    private final double offset;
+    private final double[] basisCoefficients;
+    private final double[] basisCovariance;
+    private final double[] basisInverse;
+    private final double residualVariance;
+    private final int degreesOfFreedom;
+
+    /**
+     * Решение в базисе степеней u = (x - center) / scale для y - offset и обратная матрица
+     * нормальных уравнений в том же базисе.
+     */
+    LeastSquaresFit(double center, double scale, double offset, double[] basisCoefficients,
+                    double[][] basisInverse, double residualVariance, int degreesOfFreedom) {
+        int p = basisCoefficients.length;
+        this.center = center;
+        this.scale = scale;
+        this.offset = offset;
+        this.basisCoefficients = basisCoefficients;
+        this.basisInverse = new double[p * p];
+        this.basisCovariance = new double[p * p];
+        for (int a = 0; a < p; a++) {
+            for (int b = 0; b < p; b++) {
+                this.basisInverse[a * p + b] = basisInverse[a][b];
+                basisCovariance[a * p + b] = residualVariance * basisInverse[a][b];
+            }
+        }
+
+        // Коэффициенты по x линейны по коэффициентам по u: a = T·β (плюс offset в свободном члене),
+        // поэтому Cov(a) = T·Cov(β)·Tᵀ. T[m][j] = C(j, m)·(-center)^(j-m) / scale^j
+        double[] transform = new double[p * p];
+        for (int j = 0; j < p; j++) {
+            double binomial = 1;
+            for (int m = 0; m <= j; m++) {
+                transform[m * p + j] = binomial * Math.pow(-center, j - m) / Math.pow(scale, j);
+                binomial = binomial * (j - m) / (m + 1);
+            }
+        }
+        this.coefficients = new double[p];
+        for (int m = 0; m < p; m++) {
+            for (int j = 0; j < p; j++) {
+                coefficients[m] += transform[m * p + j] * basisCoefficients[j];
+            }
+        }
+        coefficients[0] += offset;
+        double[] product = new double[p * p]; // T·Cov(β)
+        for (int a = 0; a < p; a++) {
+            for (int b = 0; b < p; b++) {
+                double sum = 0;
+                for (int k = 0; k < p; k++) {
+                    sum += transform[a * p + k] * basisCovariance[k * p + b];
+                }
+                product[a * p + b] = sum;
+            }
+        }
+        this.covariance = new double[p * p];
+        for (int a = 0; a < p; a++) {
+            for (int b = 0; b < p; b++) {
+                double sum = 0;
+                for (int k = 0; k < p; k++) {
+                    sum += product[a * p + k] * transform[b * p + k];
+                }
+                covariance[a * p + b] = sum;
+            }
+        }
+        this.residualVariance = residualVariance;
+        this.degreesOfFreedom = degreesOfFreedom;
+    }
+
+    private LeastSquaresFit(double[] coefficients, double[] covariance, double residualVariance,
+                            int degreesOfFreedom) {
+        this.coefficients = coefficients;
+        this.covariance = covariance;
+        // Сохранённое решение - по степеням x: базис совпадает с мономиальным
+        this.center = 0;
+        this.scale = 1;
+        this.offset = 0;
+        this.basisCoefficients = coefficients;
+        this.basisCovariance = covariance;
+        // При точном совпадении (s² = 0) ковариация нулевая и обратную матрицу из неё не восстановить
+        this.basisInverse = new double[covariance.length];
+        for (int k = 0; k < covariance.length; k++) {
+            basisInverse[k] = residualVariance > 0 ? covariance[k] / residualVariance : Double.NaN;
+        }
+        this.residualVariance = residualVariance;
+        this.degreesOfFreedom = degreesOfFreedom;
+    }
+
+    /** Восстановление из сохранённой ковариации (построчно, p×p) без повторного решения. */
+    static LeastSquaresFit restore(double[] coefficients, double[] covariance, double residualVariance,
+                                   int degreesOfFreedom) {
+        if (covariance.length != coefficients.length * coefficients.length) {
+            throw new IllegalArgumentException("Размер ковариации не соответствует числу коэффициентов");
+        }
+        return new LeastSquaresFit(coefficients, covariance, residualVariance, degreesOfFreedom);
+    }
+
+    /** Коэффициенты при степенях x по возрастанию. */
+    public double[] getCoefficients() {
+        return coefficients.clone();
+    }
+
+    public int getDegree() {
+        return coefficients.length - 1;
+    }
+
+    /** Значение многочлена в x, вычисленное в базисе решения (схема Горнера по u). */
+    public double evaluate(double x) {
+        double u = (x - center) / scale;
+        double value = 0;
+        for (int k = basisCoefficients.length - 1; k >= 0; k--) {
+            value = value * u + basisCoefficients[k];
+        }
+        return value + offset;
+    }
+
+    public double getCovariance(int a, int b) {
+        return covariance[a * coefficients.length + b];
+    }
+
+    /**
+     * Рычаг точки h = w·φᵀ(XᵀWX)⁻¹φ, φ = (1, u, u², ...): доля, с которой y точки входит в её же
+     * предсказание. Сумма рычагов по всем точкам равна числу коэффициентов.
+     */
+    public double leverage(double x, double weight) {
+        return leverage(x, weight, new double[coefficients.length]);
+    }
+
+    /** То же с буфером φ длины не меньше числа коэффициентов - для расчёта по всем точкам. */
+    double leverage(double x, double weight, double[] phi) {
+        int p = coefficients.length;
+        double u = (x - center) / scale;
+        double power = 1;
+        for (int k = 0; k < p; k++) {
+            phi[k] = power;
+            power *= u;
+        }
+        double quadratic = 0;
+        for (int a = 0; a < p; a++) {
+            double row = 0;
+            for (int b = 0; b < p; b++) {
+                row += basisInverse[a * p + b] * phi[b];
+            }
+            quadratic += phi[a] * row;
+        }
+        return weight * quadratic;
+    }
+
+    /** Оценка дисперсии единичного наблюдения s²; NaN, если степеней свободы нет. */
+    public double getResidualVariance() {
+        return residualVariance;
+    }
+
+    public int getDegreesOfFreedom() {
+        return degreesOfFreedom;
+    }
+
+    public double[] getStandardErrors() {
+        int p = coefficients.length;
+        double[] result = new double[p];
+        for (int k = 0; k < p; k++) {
+            result[k] = Math.sqrt(covariance[k * p + k]);
+        }
+        return result;
+    }
+
+    /** t_k = a_k / SE(a_k); при n - p степенях свободы проверяет гипотезу a_k = 0. */
+    public double[] getTStatistics() {
+        double[] errors = getStandardErrors();
+        double[] result = new double[errors.length];
+        for (int k = 0; k < errors.length; k++) {
+            result[k] = coefficients[k] / errors[k];
+        }
+        return result;
+    }
+
+    /**
+     * Доверительная полоса для среднего значения модели: ŷ(x) ± t·sqrt(φᵀ·Cov·φ).
+     * Массивы lower и upper заполняются для каждого x.
+     */
+    public void confidenceBand(double[] x, double level, double[] lower, double[] upper) {
+        band(x, level, 0, lower, upper);
+    }
+
+    /**
+     * Полоса предсказания для нового наблюдения с единичным весом: ŷ(x) ± t·sqrt(s² + φᵀ·Cov·φ).
+     */
+    public void predictionBand(double[] x, double level, double[] lower, double[] upper) {
+        band(x, level, residualVariance, lower, upper);
+    }
+
+    private void band(double[] x, double level, double extraVariance, double[] lower, double[] upper) {
+        int p = coefficients.length;
+        double t = degreesOfFreedom > 0
+                ? new TDistribution(degreesOfFreedom).inverseCumulativeProbability((1 + level) / 2)
+                : Double.NaN;
+        double[] phi = new double[p];
+        for (int i = 0; i < x.length; i++) {
+            double u = (x[i] - center) / scale;
+            double power = 1;
+            for (int k = 0; k < p; k++) {
+                phi[k] = power;
+                power *= u;
+            }
+            double value = evaluate(x[i]);
+            double variance = extraVariance;
+            for (int a = 0; a < p; a++) {
+                double row = 0;
+                for (int b = 0; b < p; b++) {
+                    row += basisCovariance[a * p + b] * phi[b];
+                }
+                variance += phi[a] * row;
+            }
+            double halfWidth = t * Math.sqrt(Math.max(variance, 0));
+            lower[i] = value - halfWidth;
+            upper[i] = value + halfWidth;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ru.ifmo.cs.service;
+
+/**
+ * Метод Левенберга-Марквардта для моделей с небольшим числом параметров.
+ * Матрица Якоби не хранится: на каждой итерации сразу накапливаются JᵀJ и Jᵀr.
+ * Все рабочие массивы выделяются один раз в конструкторе, итерации не создают объектов.
+ * Экземпляр не потокобезопасен.
+ */
+public final class LevenbergMarquardt {
+
+    /**
+     * Модель y = f(x; p) с аналитическими производными по параметрам.
+     */
+    public interface Model {
+        int parameterCount();
+
+        double value(double x, double[] p);
+
+        /** Записывает ∂f/∂p_k в gradient и возвращает f(x; p). */
+        double valueAndGradient(double x, double[] p, double[] gradient);
+    }
+
+    private static final int MAX_ITERATIONS = 100;
+    private static final double INITIAL_LAMBDA = 1e-3;
+    private static final double MAX_LAMBDA = 1e12;
+    private static final double RELATIVE_TOLERANCE = 1e-12;
+
+    private final Model model;
+    private final int m;
+    private final double[] jtj;
+    private final double[] jtr;
+    private final double[] system;
+    private final double[] step;
+    private final double[] trial;
+    private final double[] gradient;
+
+    private int iterations;
+    private boolean converged;
+
+    public LevenbergMarquardt(Model model) {
+        this.model = model;
+        this.m = model.parameterCount();
+        this.jtj = new double[m * m];
+        this.jtr = new double[m];
+        this.system = new double[m * m];
+        this.step = new double[m];
+        this.trial = new double[m];
+        this.gradient = new double[m];
+    }
+
+    /**
+     * Уточняет параметры params на месте, минимизируя Σ w_i·(y_i - f(x_i))² по первым count точкам.
+     * weights может быть null (все веса равны 1).
+     *
+     * @return итоговая взвешенная сумма квадратов остатков
+     */
+    public double minimize(double[] x, double[] y, double[] weights, int count, double[] params) {
+        iterations = 0;
+        converged = false;
+        double cost = cost(x, y, weights, count, params);
+        if (!Double.isFinite(cost)) {
+            return cost;
+        }
+        double lambda = INITIAL_LAMBDA;
+
+        while (iterations < MAX_ITERATIONS) {
+            iterations++;
+            accumulateNormalEquations(x, y, weights, count, params);
+
+            boolean accepted = false;
+            double trialCost = cost;
+            while (lambda < MAX_LAMBDA) {
+                for (int i = 0; i < m * m; i++) {
+                    system[i] = jtj[i];
+                }
+                for (int k = 0; k < m; k++) {
+                    // Масштабирование по диагонали делает шаг инвариантным к единицам параметров
+                    system[k * m + k] += lambda * Math.max(jtj[k * m + k], Double.MIN_NORMAL);
+                }
+                if (solveInPlace(system, jtr, step)) {
+                    for (int k = 0; k < m; k++) {
+                        trial[k] = params[k] + step[k];
+                    }
+                    trialCost = cost(x, y, weights, count, trial);
+                    if (Double.isFinite(trialCost) && trialCost <= cost) {
+                        accepted = true;
+                        break;
+                    }
+                }
+                lambda *= 10;
+            }
+
+            if (!accepted) {
+                // Ни один шаг не уменьшает невязку - текущая точка и есть минимум с точностью до округления
+                converged = true;
+                break;
+            }
+
+            System.arraycopy(trial, 0, params, 0, m);
+            double decrease = cost - trialCost;
+            cost = trialCost;
+            lambda = Math.max(lambda / 10, 1e-15);
+
+            if (decrease <= RELATIVE_TOLERANCE * Math.max(cost, Double.MIN_NORMAL) || stepIsNegligible(params)) {
+                converged = true;
+                break;
+            }
+        }
+        return cost;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    private double cost(double[] x, double[] y, double[] weights, int count, double[] p) {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            double r = y[i] - model.value(x[i], p);
+            double w = weights == null ? 1 : weights[i];
+            sum += w * r * r;
+        }
+        return sum;
+    }
+
+    private void accumulateNormalEquations(double[] x, double[] y, double[] weights, int count, double[] p) {
+        for (int i = 0; i < m * m; i++) {
+            jtj[i] = 0;
+        }
+        for (int k = 0; k < m; k++) {
+            jtr[k] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            double f = model.valueAndGradient(x[i], p, gradient);
+            double w = weights == null ? 1 : weights[i];
+            double r = y[i] - f;
+            for (int a = 0; a < m; a++) {
+                double ga = w * gradient[a];
+                jtr[a] += ga * r;
+                for (int b = 0; b <= a; b++) {
+                    jtj[a * m + b] += ga * gradient[b];
+                }
+            }
+        }
+        for (int a = 0; a < m; a++) {
+            for (int b = a + 1; b < m; b++) {
+                jtj[a * m + b] = jtj[b * m + a];
+            }
+        }
+    }
+
+    private boolean stepIsNegligible(double[] params) {
+        for (int k = 0; k < m; k++) {
+            if (Math.abs(step[k]) > RELATIVE_TOLERANCE * (Math.abs(params[k]) + RELATIVE_TOLERANCE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Разложение Холецкого симметричной положительно определённой матрицы a (портится) и решение a·out = b.
+     */
+    private boolean solveInPlace(double[] a, double[] b, double[] out) {
+        if (NormalEquations.factor(a, m, 0, 0) < m) {
+            return false;
+        }
+        NormalEquations.solve(a, m, m, b, out);
+        return true;
+    }
+}
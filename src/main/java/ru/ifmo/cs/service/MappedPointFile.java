@@ -0,0 +1,195 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.PointColumns;
+import ru.ifmo.cs.model.SegmentedPoints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Двоичный файл точек, читаемый отображёнными в память сегментами.
+ * <p>
+ * Формат: заголовок 16 байт (сигнатура "XYB1", флаги, число точек), затем записи x, y[, w]
+ * из double в порядке little-endian. Флаг 1 означает, что в записях есть вес.
+ * Сегмент - окно не больше {@link #SEGMENT_BYTES}; он отображается только на время обработки,
+ * поэтому объём данных ограничен диском, а не кучей: в куче остаются лишь объекты-окна.
+ */
+public final class MappedPointFile implements SegmentedPoints {
+    public static final String EXTENSION = ".xyb";
+    static final int MAGIC = 0x31425958; // "XYB1" в little-endian
+    static final int HEADER_BYTES = 16;
+    static final int FLAG_WEIGHTED = 1;
+    /** Размер окна отображения; MappedByteBuffer адресует не больше 2 ГБ. */
+    static final long SEGMENT_BYTES = 1L << 28;
+
+    private final FileChannel channel;
+    private final boolean weighted;
+    private final int recordBytes;
+    private final long count;
+    private final int pointsPerSegment;
+
+    private MappedPointFile(FileChannel channel, boolean weighted, long count) {
+        this.channel = channel;
+        this.weighted = weighted;
+        this.recordBytes = weighted ? 3 * Double.BYTES : 2 * Double.BYTES;
+        this.count = count;
+        this.pointsPerSegment = (int) (SEGMENT_BYTES / recordBytes);
+    }
+
+    public static MappedPointFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Чтение заголовка целиком
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Файл не является двоичным файлом точек: " + path);
+            }
+            boolean weighted = (header.getInt() & FLAG_WEIGHTED) != 0;
+            long count = header.getLong();
+            long expected = HEADER_BYTES + count * (weighted ? 3 : 2) * Double.BYTES;
+            if (count < 0 || channel.size() < expected) {
+                throw new IOException("Файл точек повреждён или обрезан: " + path);
+            }
+            return new MappedPointFile(channel, weighted, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return (int) ((count + pointsPerSegment - 1) / pointsPerSegment);
+    }
+
+    /**
+     * Отображает сегмент index. Отображение освобождается сборщиком мусора вместе с объектом сегмента,
+     * поэтому ссылку на сегмент не следует хранить дольше его обработки.
+     */
+    @Override
+    public Segment segment(int index) throws IOException {
+        long first = (long) index * pointsPerSegment;
+        int points = (int) Math.min(pointsPerSegment, count - first);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                HEADER_BYTES + first * recordBytes, (long) points * recordBytes);
+        return new Segment(buffer.order(ByteOrder.LITTLE_ENDIAN), points, recordBytes, weighted);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Окно из подряд идущих точек с доступом по индексу без создания объектов. */
+    public static final class Segment implements PointColumns {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int recordBytes;
+        private final boolean weighted;
+
+        Segment(ByteBuffer buffer, int count, int recordBytes, boolean weighted) {
+            this.buffer = buffer;
+            this.count = count;
+            this.recordBytes = recordBytes;
+            this.weighted = weighted;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public double x(int i) {
+            return buffer.getDouble(i * recordBytes);
+        }
+
+        @Override
+        public double y(int i) {
+            return buffer.getDouble(i * recordBytes + Double.BYTES);
+        }
+
+        @Override
+        public double weight(int i) {
+            return weighted ? buffer.getDouble(i * recordBytes + 2 * Double.BYTES) : 1.0;
+        }
+    }
+
+    /**
+     * Последовательная запись файла точек через буфер фиксированного размера.
+     * Число точек в заголовке записывается при закрытии.
+     */
+    public static final class Writer implements AutoCloseable {
+        private static final int BUFFER_BYTES = 1 << 16;
+
+        private final FileChannel channel;
+        private final boolean weighted;
+        private final ByteBuffer buffer;
+        private long count;
+
+        public Writer(Path path, boolean weighted) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.weighted = weighted;
+            this.buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+        }
+
+        public void append(double x, double y, double weight) throws IOException {
+            if (!weighted && weight != 1.0) {
+                throw new IOException("Вес " + weight + " нельзя записать в файл без столбца весов");
+            }
+            if (buffer.remaining() < 3 * Double.BYTES) {
+                flush();
+            }
+            buffer.putDouble(x).putDouble(y);
+            if (weighted) {
+                buffer.putDouble(weight);
+            }
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                buffer.putInt(MAGIC).putInt(weighted ? FLAG_WEIGHTED : 0).putLong(count);
+                buffer.flip();
+                channel.position(0);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package ru.ifmo.cs.service;
 
 import ru.ifmo.cs.model.DataPoint;
-import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.ApproximationResult;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.DecompositionSolver;
 import org.apache.commons.math3.linear.LUDecomposition;
@@ -10,21 +10,79 @@ import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.linear.ArrayRealVector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class MathService {
+    // Порог ведущего элемента LU относительно наибольшего диагонального элемента XᵀWX
+    private static final double RANK_TOLERANCE = 1e-13;
 
     public static double[] polynomialRegression(double[] xValues, double[] yValues, int degree) {
+        return polynomialRegression(xValues, yValues, null, degree);
+    }
+
+    /**
+     * Взвешенный МНК: строки матрицы плана и y умножаются на sqrt(w), что даёт нормальные уравнения XᵀWX·a = XᵀWy.
+     * weights может быть null (все веса равны 1).
+     */
+    public static double[] polynomialRegression(double[] xValues, double[] yValues, double[] weights, int degree) {
+        LeastSquaresFit fit = polynomialFit(xValues, yValues, weights, degree);
+        if (fit == null) {
+            double[] undefined = new double[degree + 1];
+            Arrays.fill(undefined, Double.NaN);
+            return undefined;
+        }
+        return fit.getCoefficients();
+    }
+
+    /**
+     * То же, но с сохранением разложения: обратная матрица (XᵀWX)⁻¹ берётся из того же LU-разложения,
+     * что и решение, и вместе с остаточной дисперсией даёт ковариацию коэффициентов.
+     * <p>
+     * Нормальные уравнения составляются не по степеням x, а по степеням u = (x - center) / scale ∈ [-1, 1]
+     * для y, сдвинутых к середине размаха, как в {@link ru.ifmo.cs.model.functions.LinearBasis}: при x порядка
+     * отметок времени столбцы 1, x, x², x³ различаются на десятки порядков, и XᵀX на исходных x теряет
+     * всю точность. Коэффициенты по степеням x получаются из решения пересчётом в {@link LeastSquaresFit}.
+     * <p>
+     * Возвращает null, если коэффициенты не определяются однозначно: различных x с положительным весом
+     * не больше степени (например, две точки с одним x для прямой) или XᵀWX вырождена в пределах
+     * точности. Тогда не вычисляется только эта модель, а не весь расчёт.
+     */
+    public static LeastSquaresFit polynomialFit(double[] xValues, double[] yValues, double[] weights, int degree) {
         int n = xValues.length;
+        if (!hasDistinctValues(xValues, weights, degree + 1)) {
+            return null;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xValues[i]);
+            maxX = Math.max(maxX, xValues[i]);
+            minY = Math.min(minY, yValues[i]);
+            maxY = Math.max(maxY, yValues[i]);
+        }
+        double center = n > 0 ? (minX + maxX) / 2 : 0;
+        double range = (maxX - minX) / 2;
+        double xScale = range > 0 && Double.isFinite(range) ? range : 1;
+        double offset = (minY + maxY) / 2;
+        if (!Double.isFinite(offset)) {
+            offset = 0;
+        }
+
         double[][] xData = new double[n][degree + 1];
         double[] yData = new double[n];
 
         for (int i = 0; i < n; i++) {
-            double x = xValues[i];
-            yData[i] = yValues[i];
+            double u = (xValues[i] - center) / xScale;
+            double scale = weights == null ? 1 : Math.sqrt(weights[i]);
+            yData[i] = (yValues[i] - offset) * scale;
 
+            double power = scale;
             for (int j = 0; j <= degree; j++) {
-                xData[i][j] = Math.pow(x, j);
+                xData[i][j] = power;
+                power *= u;
             }
         }
 
@@ -35,110 +93,204 @@ public class MathService {
         RealVector Y = new ArrayRealVector(yData, false);
         RealVector XTY = XT.operate(Y);
 
-        DecompositionSolver solver = new LUDecomposition(XTX).getSolver();
-        return solver.solve(XTY).toArray();
+        // В нормированном базисе диагональ XᵀWX одного порядка, поэтому порог ведущего элемента - относительный
+        double maxDiagonal = 0;
+        for (int j = 0; j <= degree; j++) {
+            maxDiagonal = Math.max(maxDiagonal, XTX.getEntry(j, j));
+        }
+        DecompositionSolver solver = new LUDecomposition(XTX, RANK_TOLERANCE * maxDiagonal).getSolver();
+        if (!(maxDiagonal > 0) || !solver.isNonSingular()) {
+            return null;
+        }
+        double[] coefficients = solver.solve(XTY).toArray();
+
+        // Остатки в масштабированных координатах: Σ(sqrt(w)·e)² = Σw·e²
+        double[] fitted = X.operate(coefficients);
+        double sse = 0;
+        for (int i = 0; i < n; i++) {
+            double e = yData[i] - fitted[i];
+            sse += e * e;
+        }
+        int degreesOfFreedom = n - (degree + 1);
+        double residualVariance = degreesOfFreedom > 0 ? sse / degreesOfFreedom : Double.NaN;
+        return new LeastSquaresFit(center, xScale, offset, coefficients, solver.getInverse().getData(),
+                residualVariance, degreesOfFreedom);
+    }
+
+    /**
+     * Есть ли среди x точек с положительным весом хотя бы count различных значений. Ранг матрицы плана
+     * многочлена равен min(степень + 1, число различных x), так что это точная проверка вырожденности.
+     */
+    private static boolean hasDistinctValues(double[] xValues, double[] weights, int count) {
+        double[] seen = new double[count];
+        int found = 0;
+        for (int i = 0; i < xValues.length && found < count; i++) {
+            if (weights != null && !(weights[i] > 0)) {
+                continue;
+            }
+            boolean repeated = false;
+            for (int k = 0; k < found && !repeated; k++) {
+                repeated = seen[k] == xValues[i];
+            }
+            if (!repeated) {
+                seen[found++] = xValues[i];
+            }
+        }
+        return found == count;
+    }
+
+    /** @return null, если коэффициенты не определяются однозначно (см. выше) */
+    public static LeastSquaresFit polynomialFit(List<DataPoint> points, int degree) {
+        double[] x = points.stream().mapToDouble(DataPoint::getX).toArray();
+        double[] y = points.stream().mapToDouble(DataPoint::getY).toArray();
+        return polynomialFit(x, y, DataPoint.weightsOf(points), degree);
     }
 
     public static double[] polynomialRegression(List<DataPoint> points, int degree) {
         double[] x = points.stream().mapToDouble(DataPoint::getX).toArray();
         double[] y = points.stream().mapToDouble(DataPoint::getY).toArray();
-        return polynomialRegression(x, y, degree);
+        return polynomialRegression(x, y, DataPoint.weightsOf(points), degree);
     }
 
     public static double[] exponentialRegression(List<DataPoint> points) {
         List<Double> xList = new ArrayList<>();
         List<Double> yList = new ArrayList<>();
+        List<Double> wList = new ArrayList<>();
 
         for (DataPoint p : points) {
             if (p.getY() <= 0) continue;
             xList.add(p.getX());
             yList.add(Math.log(p.getY()));
+            wList.add(p.getWeight());
         }
 
         double[] x = xList.stream().mapToDouble(Double::doubleValue).toArray();
         double[] y = yList.stream().mapToDouble(Double::doubleValue).toArray();
-        double[] linearCoefs = polynomialRegression(x, y, 1);
+        double[] w = wList.stream().mapToDouble(Double::doubleValue).toArray();
+        double[] linearCoefs = polynomialRegression(x, y, w, 1);
         return new double[]{Math.exp(linearCoefs[0]), linearCoefs[1]};
     }
 
     public static double[] logarithmicRegression(List<DataPoint> points) {
         List<Double> xList = new ArrayList<>();
         List<Double> yList = new ArrayList<>();
+        List<Double> wList = new ArrayList<>();
 
         for (DataPoint p : points) {
             if (p.getX() <= 0) continue;
             xList.add(Math.log(p.getX()));
             yList.add(p.getY());
+            wList.add(p.getWeight());
         }
 
         double[] x = xList.stream().mapToDouble(Double::doubleValue).toArray();
         double[] y = yList.stream().mapToDouble(Double::doubleValue).toArray();
-        return polynomialRegression(x, y, 1);
+        double[] w = wList.stream().mapToDouble(Double::doubleValue).toArray();
+        return polynomialRegression(x, y, w, 1);
     }
 
     public static double[] powerRegression(List<DataPoint> points) {
         List<Double> xList = new ArrayList<>();
         List<Double> yList = new ArrayList<>();
+        List<Double> wList = new ArrayList<>();
 
         for (DataPoint p : points) {
             if (p.getX() <= 0 || p.getY() <= 0) continue;
             xList.add(Math.log(p.getX()));
             yList.add(Math.log(p.getY()));
+            wList.add(p.getWeight());
         }
 
         double[] x = xList.stream().mapToDouble(Double::doubleValue).toArray();
         double[] y = yList.stream().mapToDouble(Double::doubleValue).toArray();
-        double[] linearCoefs = polynomialRegression(x, y, 1);
+        double[] w = wList.stream().mapToDouble(Double::doubleValue).toArray();
+        double[] linearCoefs = polynomialRegression(x, y, w, 1);
         return new double[]{Math.exp(linearCoefs[0]), linearCoefs[1]};
     }
 
-    public static double calculatePearsonCorrelation(List<DataPoint> points) {
-        int n = points.size();
-        double sumX = 0, sumY = 0, sumXY = 0;
-        double sumX2 = 0, sumY2 = 0;
+    /** y = a·e^(bx): ∂f/∂a = e^(bx), ∂f/∂b = a·x·e^(bx). */
+    public static final LevenbergMarquardt.Model EXPONENTIAL_MODEL = new LevenbergMarquardt.Model() {
+        @Override
+        public int parameterCount() {
+            return 2;
+        }
 
-        for (DataPoint p : points) {
-            double x = p.getX();
-            double y = p.getY();
-            sumX += x;
-            sumY += y;
-            sumXY += x * y;
-            sumX2 += x * x;
-            sumY2 += y * y;
+        @Override
+        public double value(double x, double[] p) {
+            return p[0] * Math.exp(p[1] * x);
         }
 
-        double numerator = n * sumXY - sumX * sumY;
-        double denominator = Math.sqrt((n * sumX2 - sumX * sumX) * (n * sumY2 - sumY * sumY));
+        @Override
+        public double valueAndGradient(double x, double[] p, double[] gradient) {
+            double e = Math.exp(p[1] * x);
+            gradient[0] = e;
+            gradient[1] = p[0] * x * e;
+            return p[0] * e;
+        }
+    };
+
+    /** y = a·x^b при x > 0: ∂f/∂a = x^b, ∂f/∂b = a·x^b·ln(x). */
+    public static final LevenbergMarquardt.Model POWER_MODEL = new LevenbergMarquardt.Model() {
+        @Override
+        public int parameterCount() {
+            return 2;
+        }
+
+        @Override
+        public double value(double x, double[] p) {
+            return p[0] * Math.pow(x, p[1]);
+        }
 
-        return Math.abs(denominator) < 1e-10 ? 0 : numerator / denominator;
+        @Override
+        public double valueAndGradient(double x, double[] p, double[] gradient) {
+            double power = Math.pow(x, p[1]);
+            gradient[0] = power;
+            gradient[1] = p[0] * power * Math.log(x);
+            return p[0] * power;
+        }
+    };
+
+    /** Коэффициент Пирсона по Уэлфорду; вместе с рангами Спирмена и Кендалла - {@link Correlation#of}. */
+    public static double calculatePearsonCorrelation(List<DataPoint> points) {
+        return Correlation.pearson(points);
     }
 
-    public static double calculateStandardDeviation(FunctionApproximation function, List<DataPoint> points) {
+    public static double calculateStandardDeviation(ApproximationResult function, List<DataPoint> points) {
         double sse = 0;
+        double totalWeight = 0;
         for (DataPoint p : points) {
             double error = function.calculate(p.getX()) - p.getY();
-            sse += error * error;
+            sse += p.getWeight() * error * error;
+            totalWeight += p.getWeight();
         }
-        return Math.sqrt(sse / points.size());
+        return Math.sqrt(sse / totalWeight);
     }
 
-    public static double calculateRSquared(FunctionApproximation function, List<DataPoint> points) {
+    public static double calculateRSquared(ApproximationResult function, List<DataPoint> points) {
         double sse = 0;
         double sst = 0;
-        double meanY = points.stream().mapToDouble(DataPoint::getY).average().orElse(0);
+        double totalWeight = 0;
+        double meanY = 0;
 
+        // Взвешенные среднее и SST считаются в том же проходе, что и SSE
         for (DataPoint p : points) {
+            double w = p.getWeight();
             double predicted = function.calculate(p.getX());
             double actual = p.getY();
-            sse += Math.pow(predicted - actual, 2);
-            sst += Math.pow(actual - meanY, 2);
+            sse += w * Math.pow(predicted - actual, 2);
+            if (w > 0) {
+                totalWeight += w;
+                double delta = actual - meanY;
+                meanY += delta * w / totalWeight;
+                sst += w * delta * (actual - meanY);
+            }
         }
 
         return 1 - (sse / sst);
     }
 
     public static List<DataPoint> generateFunctionPoints(
-            FunctionApproximation function,
+            ApproximationResult function,
             double minX,
             double maxX,
             int pointsCount
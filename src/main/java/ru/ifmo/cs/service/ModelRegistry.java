@@ -0,0 +1,71 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Реестр семейств моделей. Встроенные и сторонние модели подключаются через ServiceLoader;
+ * поиск выполняется лениво при первом обращении к реестру по умолчанию.
+ */
+public class ModelRegistry {
+    private final List<ModelProvider> providers;
+
+    public ModelRegistry(List<ModelProvider> providers) {
+        this.providers = new CopyOnWriteArrayList<>(providers);
+    }
+
+    public static ModelRegistry getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    public static ModelRegistry load(ClassLoader classLoader) {
+        List<ModelProvider> found = new ArrayList<>();
+        for (ModelProvider provider : ServiceLoader.load(ModelProvider.class, classLoader)) {
+            found.add(provider);
+        }
+        return new ModelRegistry(found);
+    }
+
+    public void register(ModelProvider provider) {
+        providers.add(provider);
+    }
+
+    /** Реестр с теми же моделями, у которых уточнение МНК в исходных координатах включено или выключено. */
+    public ModelRegistry withNonlinearRefinement(boolean enabled) {
+        List<ModelProvider> adjusted = new ArrayList<>(providers.size());
+        for (ModelProvider provider : providers) {
+            adjusted.add(provider.withNonlinearRefinement(enabled));
+        }
+        return new ModelRegistry(adjusted);
+    }
+
+    public List<ModelProvider> getProviders() {
+        return Collections.unmodifiableList(providers);
+    }
+
+    /**
+     * Применимые к данным модели в порядке возрастания оценки стоимости.
+     */
+    public List<ModelProvider> schedule(DataSummary summary) {
+        List<ModelProvider> applicable = new ArrayList<>();
+        for (ModelProvider provider : providers) {
+            if (provider.isApplicable(summary)) {
+                applicable.add(provider);
+            }
+        }
+        int n = summary.getCount();
+        applicable.sort(Comparator.comparingDouble(p -> p.getCostEstimate(n)));
+        return applicable;
+    }
+
+    private static class Holder {
+        static final ModelRegistry DEFAULT = load(ModelRegistry.class.getClassLoader());
+    }
+}
@@ -0,0 +1,78 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.ModelProvider;
+import ru.ifmo.cs.model.functions.RobustLoss;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Запуск применимых моделей из реестра: модели строятся параллельно, каждая на своём экземпляре.
+ */
+public class ModelScheduler {
+    private final ModelRegistry registry;
+    private final Instrumentation instrumentation = Instrumentation.getDefault();
+
+    public ModelScheduler(ModelRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Строит все применимые модели. Каждая модель - отдельный экземпляр, поэтому
+     * построение идёт параллельно; порядок результата совпадает с порядком планирования.
+     * Возвращаемые модели неизменяемы ({@link FittedModel}).
+     */
+    public List<ApproximationResult> fitAll(List<DataPoint> points, DataSummary summary) {
+        return fitAll(points, summary, null);
+    }
+
+    /**
+     * @param robustLoss функция потерь для робастного построения или null для обычного МНК
+     */
+    public List<ApproximationResult> fitAll(List<DataPoint> points, DataSummary summary, RobustLoss robustLoss) {
+        return fitAll(points, summary, robustLoss, List.of());
+    }
+
+    /**
+     * @param previous результаты прошлого расчёта по близким данным (живой пересчёт): модели с тем же
+     *                 именем стартуют с них ({@link ModelProvider#createWarmStarted}); может быть пустым
+     */
+    public List<ApproximationResult> fitAll(List<DataPoint> points, DataSummary summary, RobustLoss robustLoss,
+                                            List<? extends ApproximationResult> previous) {
+        Map<String, ApproximationResult> byName = new HashMap<>();
+        for (ApproximationResult function : previous) {
+            byName.put(function.getName(), function);
+        }
+        // Робастные веса хранятся в рабочей копии точек каждой модели, исходный список только читается
+        return registry.schedule(summary).parallelStream()
+                .<ApproximationResult>map(provider ->
+                        fit(provider, points, robustLoss, byName.get(provider.getName())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Строит одну модель на новом экземпляре и фиксирует результат; метод не меняет общего состояния,
+     * поэтому его можно вызывать из любого числа потоков одновременно.
+     */
+    public FittedModel fit(ModelProvider provider, List<DataPoint> points, RobustLoss robustLoss) {
+        return fit(provider, points, robustLoss, null);
+    }
+
+    /** То же с тёплым стартом от прошлого результата previous этой модели (может быть null). */
+    public FittedModel fit(ModelProvider provider, List<DataPoint> points, RobustLoss robustLoss,
+                           ApproximationResult previous) {
+        FunctionApproximation function = previous != null ? provider.createWarmStarted(previous) : provider.create();
+        try (Instrumentation.Timer timer = instrumentation.startFit(function.getName())) {
+            timer.setPoints(points.size());
+            return FittedModel.of(robustLoss == null
+                    ? function.approximate(points)
+                    : function.approximateRobust(points, robustLoss));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.ifmo.cs.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Итоги выбора модели по подвыборкам: оценки каждой модели и доверительный интервал для победителя.
+ */
+public class ModelSelectionReport {
+
+    public static class Entry {
+        private final String modelName;
+        private final double medianScore;
+        private final double scoreLower;
+        private final double scoreUpper;
+        private final double consensus;
+        private final double winFraction;
+
+        public Entry(String modelName, double medianScore, double scoreLower, double scoreUpper,
+                     double consensus, double winFraction) {
+            this.modelName = modelName;
+            this.medianScore = medianScore;
+            this.scoreLower = scoreLower;
+            this.scoreUpper = scoreUpper;
+            this.consensus = consensus;
+            this.winFraction = winFraction;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        /** Медиана по подвыборкам усечённого (MSAC) СКО на контрольной части. */
+        public double getMedianScore() {
+            return medianScore;
+        }
+
+        /** Нижняя граница 95% интервала оценки по подвыборкам. */
+        public double getScoreLower() {
+            return scoreLower;
+        }
+
+        /** Верхняя граница 95% интервала оценки по подвыборкам. */
+        public double getScoreUpper() {
+            return scoreUpper;
+        }
+
+        /** Средняя доля контрольных точек в пределах порога (консенсус в смысле RANSAC). */
+        public double getConsensus() {
+            return consensus;
+        }
+
+        /** Доля подвыборок, в которых модель оказалась лучшей. */
+        public double getWinFraction() {
+            return winFraction;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final String winnerName;
+    private final double winnerConfidenceLower;
+    private final double winnerConfidenceUpper;
+    private final int subsampleCount;
+    private final int subsampleSize;
+
+    public ModelSelectionReport(List<Entry> entries, String winnerName,
+                                double winnerConfidenceLower, double winnerConfidenceUpper,
+                                int subsampleCount, int subsampleSize) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.winnerName = winnerName;
+        this.winnerConfidenceLower = winnerConfidenceLower;
+        this.winnerConfidenceUpper = winnerConfidenceUpper;
+        this.subsampleCount = subsampleCount;
+        this.subsampleSize = subsampleSize;
+    }
+
+    /** Модели в порядке возрастания медианной оценки. */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public String getWinnerName() {
+        return winnerName;
+    }
+
+    /** 95% интервал Уилсона для вероятности того, что победитель лучший на случайной подвыборке. */
+    public double getWinnerConfidenceLower() {
+        return winnerConfidenceLower;
+    }
+
+    public double getWinnerConfidenceUpper() {
+        return winnerConfidenceUpper;
+    }
+
+    public int getSubsampleCount() {
+        return subsampleCount;
+    }
+
+    public int getSubsampleSize() {
+        return subsampleSize;
+    }
+}
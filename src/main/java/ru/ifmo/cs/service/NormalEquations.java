@@ -0,0 +1,129 @@
+package ru.ifmo.cs.service;
+
+/**
+ * Нормальные уравнения МНК: разложение Холецкого симметричной положительно определённой матрицы
+ * и решение по нему, а также префиксные суммы, из которых уравнения многочлена собираются
+ * на любом отрезке упорядоченных по x точек. Матрицы - плотные d×d по строкам.
+ */
+public final class NormalEquations {
+    private NormalEquations() {
+    }
+
+    /**
+     * Разложение a = L·Lᵀ на месте: L записывается в нижний треугольник a, и читается тоже только он.
+     * Столбец j вырожден, если остаток диагонали не больше relativeTolerance·a[j][j] + absoluteTolerance;
+     * на нём разложение останавливается, а ведущий блок остаётся пригодным для решения.
+     *
+     * @return число разложенных ведущих столбцов; d, если матрица положительно определена
+     */
+    public static int factor(double[] a, int d, double relativeTolerance, double absoluteTolerance) {
+        for (int j = 0; j < d; j++) {
+            double diagonal = a[j * d + j];
+            double threshold = relativeTolerance * Math.abs(diagonal) + absoluteTolerance;
+            for (int k = 0; k < j; k++) {
+                diagonal -= a[j * d + k] * a[j * d + k];
+            }
+            if (!(diagonal > threshold)) {
+                return j;
+            }
+            double root = Math.sqrt(diagonal);
+            a[j * d + j] = root;
+            for (int i = j + 1; i < d; i++) {
+                double s = a[i * d + j];
+                for (int k = 0; k < j; k++) {
+                    s -= a[i * d + k] * a[j * d + k];
+                }
+                a[i * d + j] = s / root;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Решение (L·Lᵀ)·x = b по ведущему блоку rank×rank множителя из {@link #factor}: записывает
+     * x[0..rank). Массивы b и x могут совпадать.
+     */
+    public static void solve(double[] l, int d, int rank, double[] b, double[] x) {
+        for (int i = 0; i < rank; i++) {
+            double s = b[i];
+            for (int k = 0; k < i; k++) {
+                s -= l[i * d + k] * x[k];
+            }
+            x[i] = s / l[i * d + i];
+        }
+        for (int i = rank - 1; i >= 0; i--) {
+            double s = x[i];
+            for (int k = i + 1; k < rank; k++) {
+                s -= l[k * d + i] * x[k];
+            }
+            x[i] = s / l[i * d + i];
+        }
+    }
+
+    /** Матрица Ганкеля G[a][b] = moments[a + b] размера p×p - нормальные уравнения многочлена по моментам. */
+    public static void hankel(double[] moments, int p, double[] out) {
+        for (int a = 0; a < p; a++) {
+            for (int b = 0; b < p; b++) {
+                out[a * p + b] = moments[a + b];
+            }
+        }
+    }
+
+    /**
+     * Префиксные суммы Σw·t^k (k ≤ 2d), Σw·t^k·v (k ≤ d) и Σw·v² по точкам в порядке x, где
+     * t = (x - center) / scale и v = y - shift: сумма по отрезку [from, to) - разность двух префиксов.
+     */
+    public static final class PrefixSums {
+        private final int degree;
+        private final double[][] powers;
+        private final double[][] moments;
+        private final double[] squares;
+
+        public PrefixSums(double[] x, double[] y, double[] w, int n, int degree,
+                          double center, double scale, double shift) {
+            this.degree = degree;
+            powers = new double[2 * degree + 1][n + 1];
+            moments = new double[degree + 1][n + 1];
+            squares = new double[n + 1];
+            for (int i = 0; i < n; i++) {
+                double t = (x[i] - center) / scale;
+                double v = y[i] - shift;
+                double power = w[i];
+                for (int k = 0; k <= 2 * degree; k++) {
+                    powers[k][i + 1] = powers[k][i] + power;
+                    if (k <= degree) {
+                        moments[k][i + 1] = moments[k][i] + power * v;
+                    }
+                    power *= t;
+                }
+                squares[i + 1] = squares[i] + w[i] * v * v;
+            }
+        }
+
+        /** Σw·t^k по отрезку [from, to). */
+        public double power(int k, int from, int to) {
+            return powers[k][to] - powers[k][from];
+        }
+
+        /** Σw·t^k·v по отрезку [from, to). */
+        public double moment(int k, int from, int to) {
+            return moments[k][to] - moments[k][from];
+        }
+
+        /** Σw·v² по отрезку [from, to). */
+        public double squares(int from, int to) {
+            return squares[to] - squares[from];
+        }
+
+        /** Нормальные уравнения многочлена степени d на отрезке [from, to): матрица (d+1)² в gram, правая часть в rhs. */
+        public void assemble(int from, int to, double[] gram, double[] rhs) {
+            int p = degree + 1;
+            for (int a = 0; a < p; a++) {
+                for (int b = 0; b < p; b++) {
+                    gram[a * p + b] = power(a + b, from, to);
+                }
+                rhs[a] = moment(a, from, to);
+            }
+        }
+    }
+}
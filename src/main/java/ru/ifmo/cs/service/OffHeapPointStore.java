@@ -0,0 +1,211 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PointColumns;
+import ru.ifmo.cs.model.SegmentedPoints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Хранилище точек вне кучи в столбцовом виде.
+ * <p>
+ * Точки хранятся блоками по {@link #CHUNK_POINTS}; в блоке подряд лежат столбцы x, y и w.
+ * Пока общий объём не превышает порога, блоки - прямые буферы (direct ByteBuffer); после порога новые блоки
+ * отображаются во временный файл, так что объём ограничен диском. В куче нет объектов на каждую точку,
+ * и сборщик мусора не обходит данные. Блоки служат сегментами {@link SegmentedPoints}: потоковые алгоритмы
+ * читают столбцы напрямую, без копирования.
+ * <p>
+ * Время жизни явное: после {@link #close()} чтение запрещено, временный файл удаляется.
+ * Прямые буферы освобождаются сборщиком вместе с последней ссылкой на них.
+ * Добавление точек однопоточное; чтение после заполнения можно вести из нескольких потоков.
+ */
+public final class OffHeapPointStore implements SegmentedPoints {
+    /** Системное свойство: порог в байтах, после которого блоки размещаются во временном файле. */
+    public static final String SPILL_THRESHOLD_PROPERTY = "ru.ifmo.cs.offHeapSpillBytes";
+    private static final long DEFAULT_SPILL_THRESHOLD = 1L << 30;
+    static final int CHUNK_POINTS = 1 << 20;
+    private static final int CHUNK_BYTES = CHUNK_POINTS * 3 * Double.BYTES;
+
+    private final long spillThresholdBytes;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private long count;
+    private FileChannel spillChannel;
+    private Path spillFile;
+    private long spilledBytes;
+    private boolean closed;
+
+    public OffHeapPointStore() {
+        this(Long.getLong(SPILL_THRESHOLD_PROPERTY, DEFAULT_SPILL_THRESHOLD));
+    }
+
+    public OffHeapPointStore(long spillThresholdBytes) {
+        this.spillThresholdBytes = spillThresholdBytes;
+    }
+
+    public void add(double x, double y, double weight) throws IOException {
+        checkOpen();
+        int offset = (int) (count % CHUNK_POINTS);
+        if (offset == 0) {
+            current = allocateChunk();
+            chunks.add(current);
+        }
+        current.putDouble(offset * Double.BYTES, x);
+        current.putDouble((CHUNK_POINTS + offset) * Double.BYTES, y);
+        current.putDouble((2 * CHUNK_POINTS + offset) * Double.BYTES, weight);
+        count++;
+    }
+
+    public void addAll(List<DataPoint> points) throws IOException {
+        for (DataPoint p : points) {
+            add(p.getX(), p.getY(), p.getWeight());
+        }
+    }
+
+    private ByteBuffer allocateChunk() throws IOException {
+        long inMemory = (long) (chunks.size()) * CHUNK_BYTES - spilledBytes;
+        ByteBuffer chunk;
+        if (inMemory + CHUNK_BYTES <= spillThresholdBytes) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        } else {
+            if (spillChannel == null) {
+                spillFile = Files.createTempFile("points", ".offheap");
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            chunk = spillChannel.map(FileChannel.MapMode.READ_WRITE, spilledBytes, CHUNK_BYTES);
+            spilledBytes += CHUNK_BYTES;
+        }
+        return chunk.order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /** Часть данных уже размещена во временном файле. */
+    public boolean isSpilled() {
+        return spilledBytes > 0;
+    }
+
+    public double x(long index) {
+        return column(index, 0);
+    }
+
+    public double y(long index) {
+        return column(index, 1);
+    }
+
+    public double weight(long index) {
+        return column(index, 2);
+    }
+
+    private double column(long index, int column) {
+        checkOpen();
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " вне диапазона 0.." + (count - 1));
+        }
+        ByteBuffer chunk = chunks.get((int) (index / CHUNK_POINTS));
+        int offset = (int) (index % CHUNK_POINTS);
+        return chunk.getDouble((column * CHUNK_POINTS + offset) * Double.BYTES);
+    }
+
+    @Override
+    public int getSegmentCount() {
+        checkOpen();
+        return chunks.size();
+    }
+
+    /** Блок как сегмент: чтение прямо из буфера блока. */
+    @Override
+    public PointColumns segment(int index) {
+        checkOpen();
+        ByteBuffer chunk = chunks.get(index);
+        int size = (int) Math.min(CHUNK_POINTS, count - (long) index * CHUNK_POINTS);
+        return new Chunk(chunk, size);
+    }
+
+    /**
+     * Представление в виде списка для алгоритмов, работающих с DataPoint. Каждое обращение создаёт
+     * короткоживущий объект точки, поэтому для больших наборов предпочтительны сегменты.
+     */
+    public List<DataPoint> asList() {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Слишком много точек для представления списком: " + count);
+        }
+        return new ListView();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunks.clear();
+        current = null;
+        if (spillChannel != null) {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Хранилище точек закрыто");
+        }
+    }
+
+    private static final class Chunk implements PointColumns {
+        private final ByteBuffer buffer;
+        private final int size;
+
+        Chunk(ByteBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public double x(int i) {
+            return buffer.getDouble(i * Double.BYTES);
+        }
+
+        @Override
+        public double y(int i) {
+            return buffer.getDouble((CHUNK_POINTS + i) * Double.BYTES);
+        }
+
+        @Override
+        public double weight(int i) {
+            return buffer.getDouble((2 * CHUNK_POINTS + i) * Double.BYTES);
+        }
+    }
+
+    private final class ListView extends AbstractList<DataPoint> implements RandomAccess {
+        @Override
+        public DataPoint get(int index) {
+            return new DataPoint(x(index), y(index), weight(index));
+        }
+
+        @Override
+        public int size() {
+            return (int) count;
+        }
+    }
+}
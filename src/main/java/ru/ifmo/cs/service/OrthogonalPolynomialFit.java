@@ -0,0 +1,221 @@
+package ru.ifmo.cs.service;
+
+import java.util.Arrays;
+
+/**
+ * Разложение по ортогональным на данных многочленам (метод Форсайта, трёхчленное рекуррентное соотношение):
+ * p_0 = 1, p_1 = (x - α_0)·p_0, p_{j+1} = (x - α_j)·p_j - β_j·p_{j-1}.
+ * Одно разложение степени D даёт решения МНК для всех степеней 0..D сразу:
+ * коэффициенты c_j не меняются при добавлении новых членов, а SSE убывает на c_j²·γ_j.
+ */
+public final class OrthogonalPolynomialFit {
+
+    public enum Criterion { AIC, BIC, CROSS_VALIDATION }
+
+    private static final double RELATIVE_NORM_EPSILON = 1e-12;
+
+    private final int pointCount;
+    private final int maxDegree;
+    private final double[] alpha;
+    private final double[] beta;
+    private final double[] c;
+    private final double[] gamma;
+    private final double[] sse;
+    private final double[] press;
+
+    private OrthogonalPolynomialFit(int pointCount, int maxDegree, double[] alpha, double[] beta,
+                                    double[] c, double[] gamma, double[] sse, double[] press) {
+        this.pointCount = pointCount;
+        this.maxDegree = maxDegree;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.c = c;
+        this.gamma = gamma;
+        this.sse = sse;
+        this.press = press;
+    }
+
+    /**
+     * Строит разложение до степени maxDegree. Фактическая степень может оказаться меньше,
+     * если различных x недостаточно (норма очередного многочлена вырождается).
+     * Для каждой степени попутно считается PRESS (ошибка скользящего контроля с исключением одной точки)
+     * через диагональ матрицы проекции h_ii = Σ_j p_j(x_i)² / γ_j.
+     */
+    public static OrthogonalPolynomialFit fit(double[] x, double[] y, int maxDegree) {
+        return fit(x, y, null, maxDegree);
+    }
+
+    /**
+     * Взвешенный вариант: скалярное произведение (f, g) = Σ w_i·f(x_i)·g(x_i). weights может быть null.
+     */
+    public static OrthogonalPolynomialFit fit(double[] x, double[] y, double[] weights, int maxDegree) {
+        int n = x.length;
+        int limit = Math.max(0, Math.min(maxDegree, n - 1));
+
+        double[] alpha = new double[limit + 1];
+        double[] beta = new double[limit + 1];
+        double[] c = new double[limit + 1];
+        double[] gamma = new double[limit + 1];
+        double[] sse = new double[limit + 1];
+        double[] press = new double[limit + 1];
+
+        double[] pPrev = new double[n];
+        double[] pCur = new double[n];
+        double[] residual = new double[n];
+        double[] leverage = new double[n];
+
+        // Степень 0: p_0 = 1
+        double sumW = 0, sumY = 0, sumX = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weights == null ? 1 : weights[i];
+            pCur[i] = 1;
+            residual[i] = y[i];
+            sumW += w;
+            sumY += w * y[i];
+            sumX += w * x[i];
+        }
+        gamma[0] = sumW;
+        c[0] = sumY / sumW;
+        alpha[0] = sumX / sumW;
+
+        int degree = 0;
+        updateResidualsAndPress(0, pCur, c[0], gamma[0], weights, residual, leverage, sse, press);
+
+        while (degree < limit) {
+            int j = degree;
+            double gammaNext = 0, sumXP2 = 0, sumYP = 0, scale = 0;
+            for (int i = 0; i < n; i++) {
+                double w = weights == null ? 1 : weights[i];
+                double shifted = (x[i] - alpha[j]) * pCur[i];
+                scale += w * shifted * shifted;
+                double pNext = shifted - beta[j] * pPrev[i];
+                pPrev[i] = pCur[i];
+                pCur[i] = pNext;
+                double wp2 = w * pNext * pNext;
+                gammaNext += wp2;
+                sumXP2 += x[i] * wp2;
+                sumYP += w * y[i] * pNext;
+            }
+            // Все x_i - корни p_{j+1}: различных x не хватает для следующей степени
+            if (gammaNext <= RELATIVE_NORM_EPSILON * scale) {
+                break;
+            }
+            degree = j + 1;
+            gamma[degree] = gammaNext;
+            c[degree] = sumYP / gammaNext;
+            alpha[degree] = sumXP2 / gammaNext;
+            beta[degree] = gammaNext / gamma[j];
+            updateResidualsAndPress(degree, pCur, c[degree], gammaNext, weights, residual, leverage, sse, press);
+        }
+
+        if (degree < limit) {
+            alpha = Arrays.copyOf(alpha, degree + 1);
+            beta = Arrays.copyOf(beta, degree + 1);
+            c = Arrays.copyOf(c, degree + 1);
+            gamma = Arrays.copyOf(gamma, degree + 1);
+            sse = Arrays.copyOf(sse, degree + 1);
+            press = Arrays.copyOf(press, degree + 1);
+        }
+        return new OrthogonalPolynomialFit(n, degree, alpha, beta, c, gamma, sse, press);
+    }
+
+    private static void updateResidualsAndPress(int degree, double[] p, double coefficient, double norm,
+                                                double[] weights, double[] residual, double[] leverage,
+                                                double[] sse, double[] press) {
+        double sumSq = 0, pressSum = 0;
+        for (int i = 0; i < residual.length; i++) {
+            double w = weights == null ? 1 : weights[i];
+            residual[i] -= coefficient * p[i];
+            leverage[i] += w * p[i] * p[i] / norm;
+            double r = residual[i];
+            sumSq += w * r * r;
+            double denom = 1 - leverage[i];
+            pressSum += denom > RELATIVE_NORM_EPSILON ? w * (r / denom) * (r / denom) : Double.POSITIVE_INFINITY;
+        }
+        sse[degree] = sumSq;
+        press[degree] = pressSum;
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    public double getSse(int degree) {
+        return sse[degree];
+    }
+
+    public double getPress(int degree) {
+        return press[degree];
+    }
+
+    /**
+     * Значение многочлена степени degree в точке x по схеме Кленшоу, без перехода к мономам.
+     */
+    public double evaluate(int degree, double x) {
+        double b1 = 0, b2 = 0;
+        for (int j = degree; j >= 0; j--) {
+            double next = j + 1 <= degree ? beta[j + 1] : 0;
+            double b = c[j] + (x - alpha[j]) * b1 - next * b2;
+            b2 = b1;
+            b1 = b;
+        }
+        return b1;
+    }
+
+    /**
+     * Коэффициенты при степенях x (a_0 + a_1·x + ... + a_k·x^k) для отображения и отчётов.
+     */
+    public double[] monomialCoefficients(int degree) {
+        double[] result = new double[degree + 1];
+        double[] prev = new double[degree + 1];
+        double[] cur = new double[degree + 1];
+        cur[0] = 1;
+        result[0] = c[0];
+        for (int j = 0; j < degree; j++) {
+            double[] next = new double[degree + 1];
+            for (int m = 0; m <= j + 1; m++) {
+                double shifted = m > 0 ? cur[m - 1] : 0;
+                next[m] = shifted - alpha[j] * cur[m] - beta[j] * prev[m];
+            }
+            prev = cur;
+            cur = next;
+            for (int m = 0; m <= j + 1; m++) {
+                result[m] += c[j + 1] * cur[m];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Степень от 1 до максимальной, минимизирующая выбранный критерий.
+     */
+    public int selectDegree(Criterion criterion) {
+        int best = Math.min(1, maxDegree);
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int k = Math.min(1, maxDegree); k <= maxDegree; k++) {
+            double score = score(criterion, k);
+            if (score < bestScore) {
+                bestScore = score;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    public double score(Criterion criterion, int degree) {
+        int n = pointCount;
+        int parameters = degree + 1;
+        // Защита от log(0) при точном совпадении
+        double meanSquare = Math.max(sse[degree] / n, Double.MIN_NORMAL);
+        switch (criterion) {
+            case AIC:
+                return n * Math.log(meanSquare) + 2.0 * parameters;
+            case BIC:
+                return n * Math.log(meanSquare) + parameters * Math.log(n);
+            case CROSS_VALIDATION:
+                return press[degree] / n;
+            default:
+                throw new IllegalArgumentException("Неизвестный критерий: " + criterion);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.PointColumns;
+import ru.ifmo.cs.model.SegmentedPoints;
+import ru.ifmo.cs.model.functions.LinearBasis;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/**
+ * Построение моделей по данным вне кучи: файлу, который не помещается в память ({@link MappedPointFile}),
+ * или хранилищу {@link OffHeapPointStore}.
+ * <p>
+ * Три прохода по сегментам {@link SegmentedPoints}, каждый - параллельная свёртка по сегментам в пуле fork-join:
+ * границы данных и разброс y (для R²), достаточные статистики всех моделей с {@link LinearBasis},
+ * суммы квадратов остатков. Куча занята только статистиками размера O(d²) на модель и сегмент,
+ * поэтому пиковое потребление памяти не зависит от объёма файла.
+ * Модели без линейного представления (выбор степени, нелинейное уточнение) в этом режиме не строятся.
+ * <p>
+ * С бутстрепом второй проход заодно накапливает статистики повторов {@link PoissonBootstrap}: данные
+ * по-прежнему читаются один раз, а потоки случайных чисел сегментов разыгрываются заранее по порядку
+ * сегментов, поэтому интервалы не зависят от порядка свёртки.
+ */
+public class OutOfCoreRegression {
+    private final ModelRegistry registry;
+    private final ForkJoinPool pool;
+
+    public OutOfCoreRegression(ModelRegistry registry) {
+        this(registry, ForkJoinPool.commonPool());
+    }
+
+    public OutOfCoreRegression(ModelRegistry registry, ForkJoinPool pool) {
+        this.registry = registry;
+        this.pool = pool;
+    }
+
+    public List<StreamedFit> fitAll(SegmentedPoints points) {
+        return fitAll(points, null);
+    }
+
+    /**
+     * То же с интервалами коэффициентов пуассоновского бутстрепа; bootstrap может быть null.
+     * Каждая точка входит во все повторы, поэтому проход дороже в число повторов раз.
+     */
+    public List<StreamedFit> fitAll(SegmentedPoints points, BootstrapEngine bootstrap) {
+        return fitAll(points, bootstrap, ProgressMonitor.NONE);
+    }
+
+    /**
+     * То же с наблюдателем: доля обработанных сегментов всех трёх проходов сообщается после каждого сегмента
+     * (сегмент второго прохода с бутстрепом весит больше - в число повторов раз). При отмене сегменты
+     * больше не читаются и бросается CancellationException.
+     */
+    public List<StreamedFit> fitAll(SegmentedPoints points, BootstrapEngine bootstrap, ProgressMonitor monitor) {
+        if (points.getCount() == 0) {
+            return List.of();
+        }
+        int segmentCount = points.getSegmentCount();
+        long statisticsWeight = bootstrap != null ? 1 + bootstrap.getReplicates() : 1;
+        Progress progress = new Progress(monitor, segmentCount * (2 + statisticsWeight));
+
+        Bounds bounds = reduce(points, (index, segment) -> Bounds.of(segment), Bounds::merge, progress, 1);
+        DataSummary summary = DataSummary.ofBounds(bounds.count, bounds.minX, bounds.maxX, bounds.minY, bounds.maxY);
+
+        List<ModelProvider> providers = new ArrayList<>();
+        List<LinearBasis> bases = new ArrayList<>();
+        for (ModelProvider provider : registry.schedule(summary)) {
+            LinearBasis basis = provider.getLinearBasis(summary);
+            if (basis != null) {
+                providers.add(provider);
+                bases.add(basis);
+            }
+        }
+        int modelCount = bases.size();
+
+        PoissonBootstrap[] replicates = null;
+        SplittableRandom[][] streams = null;
+        if (bootstrap != null) {
+            replicates = new PoissonBootstrap[modelCount];
+            for (int m = 0; m < modelCount; m++) {
+                replicates[m] = bootstrap.poisson(bases.get(m));
+            }
+            streams = new SplittableRandom[points.getSegmentCount()][modelCount];
+            for (int segment = 0; segment < streams.length; segment++) {
+                for (int m = 0; m < modelCount; m++) {
+                    streams[segment][m] = replicates[m].nextStream();
+                }
+            }
+        }
+        PoissonBootstrap[] prototypes = replicates;
+        SplittableRandom[][] segmentStreams = streams;
+
+        Statistics statistics = reduce(points,
+                (index, segment) -> accumulate(segment, bases, prototypes,
+                        segmentStreams != null ? segmentStreams[index] : null),
+                Statistics::merge, progress, statisticsWeight);
+        double[][] betas = new double[modelCount][];
+        for (int m = 0; m < modelCount; m++) {
+            GramAccumulator gram = statistics.gram[m];
+            betas[m] = gram.getCount() >= bases.get(m).dimension() ? gram.solve() : null;
+        }
+
+        // [0][m] - взвешенная сумма квадратов остатков, [1][m] - сумма весов точек с конечным прогнозом
+        double[][] residuals = reduce(points, (index, segment) -> residuals(segment, bases, betas), (a, b) -> {
+            for (int m = 0; m < modelCount; m++) {
+                a[0][m] += b[0][m];
+                a[1][m] += b[1][m];
+            }
+            return a;
+        }, progress, 1);
+
+        double sst = bounds.m2;
+        List<StreamedFit> result = new ArrayList<>(modelCount);
+        for (int m = 0; m < modelCount; m++) {
+            if (betas[m] == null || !(residuals[1][m] > 0)) {
+                continue;
+            }
+            double sse = residuals[0][m];
+            double sigma = Math.sqrt(sse / residuals[1][m]);
+            double rSquared = sst > 0 ? 1 - sse / sst : (sse == 0 ? 1 : Double.NaN);
+            String name = providers.get(m).getName();
+            BootstrapIntervals intervals = statistics.replicates != null
+                    ? statistics.replicates[m].result(name, bootstrap.getConfidenceLevel())
+                    : null;
+            result.add(new StreamedFit(name, bases.get(m), betas[m], sigma, rSquared,
+                    bounds.count, bounds.minX, bounds.maxX, intervals));
+        }
+        return result;
+    }
+
+    /**
+     * Статистики сегмента; накопители бутстрепа создаются из prototypes с потоками streams этого сегмента.
+     */
+    private static Statistics accumulate(PointColumns segment, List<LinearBasis> bases,
+                                         PoissonBootstrap[] prototypes, SplittableRandom[] streams) {
+        GramAccumulator[] result = new GramAccumulator[bases.size()];
+        PoissonBootstrap[] replicates = prototypes != null ? new PoissonBootstrap[bases.size()] : null;
+        double[][] features = new double[bases.size()][];
+        for (int m = 0; m < result.length; m++) {
+            result[m] = new GramAccumulator(bases.get(m).dimension());
+            features[m] = new double[bases.get(m).dimension()];
+            if (replicates != null) {
+                replicates[m] = prototypes[m].withStream(streams[m]);
+            }
+        }
+        for (int i = 0; i < segment.size(); i++) {
+            double x = segment.x(i);
+            double y = segment.y(i);
+            double w = segment.weight(i);
+            for (int m = 0; m < result.length; m++) {
+                LinearBasis basis = bases.get(m);
+                if (basis.accepts(x, y)) {
+                    basis.features(x, features[m]);
+                    result[m].add(features[m], basis.target(y), w);
+                }
+                if (replicates != null) {
+                    replicates[m].add(x, y, w);
+                }
+            }
+        }
+        return new Statistics(result, replicates);
+    }
+
+    private static double[][] residuals(PointColumns segment, List<LinearBasis> bases, double[][] betas) {
+        double[][] result = new double[2][bases.size()];
+        for (int i = 0; i < segment.size(); i++) {
+            double x = segment.x(i);
+            double y = segment.y(i);
+            double w = segment.weight(i);
+            for (int m = 0; m < betas.length; m++) {
+                if (betas[m] == null) {
+                    continue;
+                }
+                double e = y - bases.get(m).predict(x, betas[m]);
+                if (Double.isFinite(e)) {
+                    result[0][m] += w * e * e;
+                    result[1][m] += w;
+                }
+            }
+        }
+        return result;
+    }
+
+    private <T> T reduce(SegmentedPoints points, SegmentFunction<T> function, BinaryOperator<T> merge,
+                         Progress progress, long segmentWeight) {
+        T result = pool.invoke(new SegmentReduction<>(points, function, merge, progress, segmentWeight,
+                0, points.getSegmentCount()));
+        progress.checkCancelled();
+        return result;
+    }
+
+    /** Счётчик обработанных сегментов всех проходов для наблюдателя. */
+    private static final class Progress {
+        final ProgressMonitor monitor;
+        final long total;
+        final AtomicLong done = new AtomicLong();
+
+        Progress(ProgressMonitor monitor, long total) {
+            this.monitor = monitor;
+            this.total = total;
+        }
+
+        void checkCancelled() {
+            if (monitor.isCancelled()) {
+                throw new CancellationException("Обработка файла прервана");
+            }
+        }
+
+        void segmentDone(long weight) {
+            monitor.progress((double) done.addAndGet(weight) / total);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SegmentFunction<T> {
+        T apply(int index, PointColumns segment);
+    }
+
+    /** Достаточные статистики моделей и (с бутстрепом) их повторов; слияние - по моделям. */
+    private static final class Statistics {
+        final GramAccumulator[] gram;
+        final PoissonBootstrap[] replicates;
+
+        Statistics(GramAccumulator[] gram, PoissonBootstrap[] replicates) {
+            this.gram = gram;
+            this.replicates = replicates;
+        }
+
+        static Statistics merge(Statistics a, Statistics b) {
+            for (int m = 0; m < a.gram.length; m++) {
+                a.gram[m].addAll(b.gram[m]);
+                if (a.replicates != null) {
+                    a.replicates[m].merge(b.replicates[m]);
+                }
+            }
+            return a;
+        }
+    }
+
+    /** Свёртка по диапазону сегментов: деление пополам до одного сегмента, затем слияние частичных итогов. */
+    private static final class SegmentReduction<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final SegmentedPoints points;
+        private final SegmentFunction<T> function;
+        private final BinaryOperator<T> merge;
+        private final Progress progress;
+        private final long segmentWeight;
+        private final int from;
+        private final int to;
+
+        SegmentReduction(SegmentedPoints points, SegmentFunction<T> function, BinaryOperator<T> merge,
+                         Progress progress, long segmentWeight, int from, int to) {
+            this.points = points;
+            this.function = function;
+            this.merge = merge;
+            this.progress = progress;
+            this.segmentWeight = segmentWeight;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                progress.checkCancelled();
+                T result;
+                try {
+                    result = function.apply(from, points.segment(from));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                progress.segmentDone(segmentWeight);
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            SegmentReduction<T> left = new SegmentReduction<>(points, function, merge, progress, segmentWeight,
+                    from, middle);
+            left.fork();
+            T right = new SegmentReduction<>(points, function, merge, progress, segmentWeight,
+                    middle, to).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+
+    /**
+     * Границы данных и взвешенная сумма квадратов отклонений y от среднего (формула Чана для слияния частей).
+     */
+    private static final class Bounds {
+        long count;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double weightSum;
+        double meanY;
+        double m2;
+
+        static Bounds of(PointColumns segment) {
+            Bounds b = new Bounds();
+            for (int i = 0; i < segment.size(); i++) {
+                double x = segment.x(i);
+                double y = segment.y(i);
+                double w = segment.weight(i);
+                b.count++;
+                b.minX = Math.min(b.minX, x);
+                b.maxX = Math.max(b.maxX, x);
+                b.minY = Math.min(b.minY, y);
+                b.maxY = Math.max(b.maxY, y);
+                // Взвешенный алгоритм Уэста
+                b.weightSum += w;
+                double delta = y - b.meanY;
+                b.meanY += delta * w / b.weightSum;
+                b.m2 += w * delta * (y - b.meanY);
+            }
+            return b;
+        }
+
+        static Bounds merge(Bounds a, Bounds b) {
+            Bounds r = new Bounds();
+            r.count = a.count + b.count;
+            r.minX = Math.min(a.minX, b.minX);
+            r.maxX = Math.max(a.maxX, b.maxX);
+            r.minY = Math.min(a.minY, b.minY);
+            r.maxY = Math.max(a.maxY, b.maxY);
+            r.weightSum = a.weightSum + b.weightSum;
+            if (r.weightSum > 0) {
+                double delta = b.meanY - a.meanY;
+                r.meanY = a.meanY + delta * b.weightSum / r.weightSum;
+                r.m2 = a.m2 + b.m2 + delta * delta * a.weightSum * b.weightSum / r.weightSum;
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.functions.LinearBasis;
+
+import java.util.SplittableRandom;
+
+/**
+ * Пуассоновский бутстреп для потоковой обработки: каждая точка входит в каждый повтор
+ * с кратностью k ~ Poisson(1), поэтому все повторы строятся за один проход, без хранения данных
+ * и без знания их объёма заранее. Для каждого повтора хранятся только достаточные статистики.
+ * <p>
+ * Части потока можно обрабатывать независимыми экземплярами (см. {@link #split()}) и затем объединять
+ * через {@link #merge(PoissonBootstrap)}. Экземпляр не потокобезопасен.
+ */
+public final class PoissonBootstrap {
+    /** Накопленные вероятности Poisson(1); хвост за 12 имеет вероятность меньше 1e-10. */
+    private static final double[] POISSON_CDF = new double[13];
+
+    static {
+        double term = Math.exp(-1);
+        double sum = 0;
+        for (int k = 0; k < POISSON_CDF.length; k++) {
+            sum += term;
+            POISSON_CDF[k] = sum;
+            term /= k + 1;
+        }
+    }
+
+    private final LinearBasis basis;
+    private final GramAccumulator[] replicates;
+    private final SplittableRandom random;
+    private final double[] features;
+
+    public PoissonBootstrap(LinearBasis basis, int replicateCount, SplittableRandom random) {
+        this.basis = basis;
+        this.replicates = new GramAccumulator[replicateCount];
+        for (int b = 0; b < replicateCount; b++) {
+            replicates[b] = new GramAccumulator(basis.dimension());
+        }
+        this.random = random;
+        this.features = new double[basis.dimension()];
+    }
+
+    public void add(double x, double y, double weight) {
+        if (!basis.accepts(x, y)) {
+            return;
+        }
+        basis.features(x, features);
+        double target = basis.target(y);
+        for (GramAccumulator replicate : replicates) {
+            int multiplicity = nextPoisson();
+            if (multiplicity > 0) {
+                replicate.add(features, target, weight * multiplicity);
+            }
+        }
+    }
+
+    /** Пустой накопитель той же конфигурации с независимым потоком случайных чисел. */
+    public PoissonBootstrap split() {
+        return withStream(random.split());
+    }
+
+    /**
+     * Отщепить поток случайных чисел, не создавая накопителя: потоки для частей данных разыгрываются
+     * заранее в фиксированном порядке, а сами накопители (по B статистик) создаются только при обработке части.
+     */
+    SplittableRandom nextStream() {
+        return random.split();
+    }
+
+    /** Пустой накопитель той же конфигурации с заданным потоком случайных чисел. */
+    PoissonBootstrap withStream(SplittableRandom stream) {
+        return new PoissonBootstrap(basis, replicates.length, stream);
+    }
+
+    public PoissonBootstrap merge(PoissonBootstrap other) {
+        for (int b = 0; b < replicates.length; b++) {
+            replicates[b].addAll(other.replicates[b]);
+        }
+        return this;
+    }
+
+    public BootstrapIntervals result(String modelName, double confidenceLevel) {
+        int d = basis.dimension();
+        double[][] samples = new double[d][replicates.length];
+        double[] factor = new double[d * d];
+        double[] beta = new double[d];
+        double[] coefficients = new double[d];
+        for (int b = 0; b < replicates.length; b++) {
+            boolean solved = replicates[b].getCount() >= d && replicates[b].solve(factor, beta);
+            if (solved) {
+                basis.toModelCoefficients(beta, coefficients);
+            }
+            for (int k = 0; k < d; k++) {
+                samples[k][b] = solved ? coefficients[k] : Double.NaN;
+            }
+        }
+        return BootstrapIntervals.summarize(modelName, confidenceLevel, samples);
+    }
+
+    private int nextPoisson() {
+        double u = random.nextDouble();
+        int k = 0;
+        while (k < POISSON_CDF.length - 1 && u > POISSON_CDF[k]) {
+            k++;
+        }
+        return k;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+
+import java.util.List;
+
+/**
+ * Влияние погрешности хранения точек (компактные кодировки) на σ и R² модели.
+ * <p>
+ * Если каждое x хранится с погрешностью не больше εx, а y - не больше εy, то ошибка e = f(x) - y
+ * фиксированной функции f меняется не больше чем на Δ = εy + εx·max|f'|, и по неравенству треугольника
+ * во взвешенной норме σ = sqrt(Σw·e²/Σw) тоже меняется не больше чем на Δ. Для моделей, минимизирующих σ,
+ * это же верно и для σ после повторного построения: подстановка решения, найденного по одним данным,
+ * в другие даёт оценку в обе стороны. Взвешенное СКО y меняется не больше чем на εy, откуда
+ * интервал для R² = 1 - σ²/s_y². Для моделей, строящихся в линеаризованных координатах, граница приближённая;
+ * max|f'| оценивается разностями на сетке по диапазону x.
+ */
+public final class PrecisionBounds {
+    private static final int GRID_POINTS = 512;
+
+    private final double sigmaError;
+    private final double rSquaredLower;
+    private final double rSquaredUpper;
+
+    private PrecisionBounds(double sigmaError, double rSquaredLower, double rSquaredUpper) {
+        this.sigmaError = sigmaError;
+        this.rSquaredLower = rSquaredLower;
+        this.rSquaredUpper = rSquaredUpper;
+    }
+
+    public static PrecisionBounds of(ApproximationResult function, List<DataPoint> points,
+                                     double errorX, double errorY) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double totalWeight = 0;
+        double meanY = 0;
+        double sst = 0;
+        for (DataPoint p : points) {
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+            double w = p.getWeight();
+            if (w > 0) {
+                totalWeight += w;
+                double delta = p.getY() - meanY;
+                meanY += delta * w / totalWeight;
+                sst += w * delta * (p.getY() - meanY);
+            }
+        }
+
+        double slope = errorX > 0 ? maxSlope(function, minX, maxX) : 0;
+        double sigmaError = errorY + errorX * slope;
+
+        double sigma = function.getStandardDeviation();
+        double spreadY = totalWeight > 0 ? Math.sqrt(sst / totalWeight) : 0;
+        double lower = Double.NaN;
+        double upper = Double.NaN;
+        if (Double.isFinite(sigma) && Double.isFinite(sigmaError) && spreadY > errorY) {
+            double sigmaHigh = sigma + sigmaError;
+            double sigmaLow = Math.max(sigma - sigmaError, 0);
+            lower = 1 - sigmaHigh * sigmaHigh / ((spreadY - errorY) * (spreadY - errorY));
+            upper = Math.min(1, 1 - sigmaLow * sigmaLow / ((spreadY + errorY) * (spreadY + errorY)));
+        }
+        return new PrecisionBounds(sigmaError, lower, upper);
+    }
+
+    private static double maxSlope(ApproximationResult function, double minX, double maxX) {
+        if (!(maxX > minX)) {
+            return 0;
+        }
+        double step = (maxX - minX) / GRID_POINTS;
+        double slope = 0;
+        double previous = function.calculate(minX);
+        for (int k = 1; k <= GRID_POINTS; k++) {
+            double current = function.calculate(minX + k * step);
+            if (Double.isFinite(previous) && Double.isFinite(current)) {
+                slope = Math.max(slope, Math.abs(current - previous) / step);
+            }
+            previous = current;
+        }
+        return slope;
+    }
+
+    /** Граница |σ(хранимые данные) - σ(полная точность)|. */
+    public double getSigmaError() {
+        return sigmaError;
+    }
+
+    /** Нижняя граница R² при полной точности; NaN, если разброс y не больше погрешности хранения. */
+    public double getRSquaredLower() {
+        return rSquaredLower;
+    }
+
+    public double getRSquaredUpper() {
+        return rSquaredUpper;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.ifmo.cs.service;
+
+/**
+ * Наблюдатель долгого расчёта: получает долю выполненной работы и может запросить отмену.
+ * Методы вызываются из потоков расчёта, в том числе из пула fork-join, поэтому реализация
+ * должна быть потокобезопасной и быстрой.
+ */
+public interface ProgressMonitor {
+    /** Наблюдатель, который ничего не показывает и никогда не отменяет расчёт. */
+    ProgressMonitor NONE = new ProgressMonitor() {
+        @Override
+        public void progress(double done) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /** Доля выполненной работы от 0 до 1. */
+    void progress(double done);
+
+    boolean isCancelled();
+}
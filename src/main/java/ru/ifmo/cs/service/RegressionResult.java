@@ -1,35 +1,138 @@
 package ru.ifmo.cs.service;
 
-import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.ApproximationResult;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-public class RegressionResult {
-    private List<FunctionApproximation> allFunctions;
-    private FunctionApproximation bestFunction;
-    private double pearsonCorrelation;
+/**
+ * Неизменяемый результат расчёта: все поля final, коллекции доступны только для чтения.
+ * Дополнительные сведения (скользящий контроль, бутстреп, диагностика, отчёт о выборе) добавляются
+ * методами with*, которые возвращают новый объект, поэтому один результат можно разделять между потоками
+ * и кэшем.
+ */
+public final class RegressionResult {
+    private final List<ApproximationResult> allFunctions;
+    private final ApproximationResult bestFunction;
+    private final Correlation correlation;
+    private final ModelSelectionReport selectionReport;
+    private final Map<String, Double> crossValidationScores;
+    private final int crossValidationFolds;
+    private final Map<String, BootstrapIntervals> coefficientIntervals;
+    private final Map<String, ResidualDiagnostics> diagnostics;
 
-    public List<FunctionApproximation> getAllFunctions() {
-        return allFunctions;
+    public RegressionResult(List<ApproximationResult> allFunctions, ApproximationResult bestFunction,
+                            Correlation correlation) {
+        this(List.copyOf(allFunctions), bestFunction, correlation, null,
+                Collections.emptyMap(), 0, Collections.emptyMap(), Collections.emptyMap());
     }
 
-    public void setAllFunctions(List<FunctionApproximation> allFunctions) {
+    private RegressionResult(List<ApproximationResult> allFunctions, ApproximationResult bestFunction,
+                             Correlation correlation, ModelSelectionReport selectionReport,
+                             Map<String, Double> crossValidationScores, int crossValidationFolds,
+                             Map<String, BootstrapIntervals> coefficientIntervals,
+                             Map<String, ResidualDiagnostics> diagnostics) {
         this.allFunctions = allFunctions;
+        this.bestFunction = bestFunction;
+        this.correlation = correlation;
+        this.selectionReport = selectionReport;
+        this.crossValidationScores = crossValidationScores;
+        this.crossValidationFolds = crossValidationFolds;
+        this.coefficientIntervals = coefficientIntervals;
+        this.diagnostics = diagnostics;
+    }
+
+    public List<ApproximationResult> getAllFunctions() {
+        return allFunctions;
     }
 
-    public FunctionApproximation getBestFunction() {
+    public ApproximationResult getBestFunction() {
         return bestFunction;
     }
 
-    public void setBestFunction(FunctionApproximation bestFunction) {
-        this.bestFunction = bestFunction;
+    /** Тот же результат с другой наилучшей моделью (например, выбранной по скользящему контролю). */
+    public RegressionResult withBestFunction(ApproximationResult bestFunction) {
+        return new RegressionResult(allFunctions, bestFunction, correlation, selectionReport,
+                crossValidationScores, crossValidationFolds, coefficientIntervals, diagnostics);
+    }
+
+    /** Коэффициенты корреляции Пирсона, Спирмена и Кендалла по исходным точкам. */
+    public Correlation getCorrelation() {
+        return correlation;
     }
 
     public double getPearsonCorrelation() {
-        return pearsonCorrelation;
+        return correlation.getPearson();
+    }
+
+    /**
+     * Отчёт о выборе модели по подвыборкам; null, если модели строились по всем данным.
+     */
+    public ModelSelectionReport getSelectionReport() {
+        return selectionReport;
+    }
+
+    public RegressionResult withSelectionReport(ModelSelectionReport selectionReport) {
+        return new RegressionResult(allFunctions, bestFunction, correlation, selectionReport,
+                crossValidationScores, crossValidationFolds, coefficientIntervals, diagnostics);
+    }
+
+    /**
+     * Оценки k-кратного скользящего контроля по названию модели; пусто, если контроль не выполнялся.
+     */
+    public Map<String, Double> getCrossValidationScores() {
+        return crossValidationScores;
+    }
+
+    public double getCrossValidationScore(ApproximationResult function) {
+        return crossValidationScores.getOrDefault(function.getName(), Double.NaN);
+    }
+
+    public int getCrossValidationFolds() {
+        return crossValidationFolds;
+    }
+
+    public RegressionResult withCrossValidation(Map<String, Double> scores, int folds) {
+        return new RegressionResult(allFunctions, bestFunction, correlation, selectionReport,
+                readOnly(scores), folds, coefficientIntervals, diagnostics);
+    }
+
+    /**
+     * Бутстреп-интервалы коэффициентов по названию модели; пусто, если бутстреп не выполнялся.
+     */
+    public Map<String, BootstrapIntervals> getCoefficientIntervals() {
+        return coefficientIntervals;
+    }
+
+    public BootstrapIntervals getCoefficientIntervals(ApproximationResult function) {
+        return coefficientIntervals.get(function.getName());
+    }
+
+    public RegressionResult withCoefficientIntervals(Map<String, BootstrapIntervals> coefficientIntervals) {
+        return new RegressionResult(allFunctions, bestFunction, correlation, selectionReport,
+                crossValidationScores, crossValidationFolds, readOnly(coefficientIntervals), diagnostics);
+    }
+
+    /**
+     * Диагностика остатков по названию модели; пусто, если не выполнялась (например, для сеанса из файла).
+     */
+    public Map<String, ResidualDiagnostics> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public ResidualDiagnostics getDiagnostics(ApproximationResult function) {
+        return diagnostics.get(function.getName());
+    }
+
+    public RegressionResult withDiagnostics(Map<String, ResidualDiagnostics> diagnostics) {
+        return new RegressionResult(allFunctions, bestFunction, correlation, selectionReport,
+                crossValidationScores, crossValidationFolds, coefficientIntervals, readOnly(diagnostics));
     }
 
-    public void setPearsonCorrelation(double pearsonCorrelation) {
-        this.pearsonCorrelation = pearsonCorrelation;
+    // Порядок моделей сохраняется для отчёта, поэтому копия - LinkedHashMap, а не Map.copyOf
+    private static <V> Map<String, V> readOnly(Map<String, V> source) {
+        return source.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(source));
     }
 }
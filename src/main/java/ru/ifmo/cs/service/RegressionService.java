@@ -1,91 +1,275 @@
 package ru.ifmo.cs.service;
 
 import ru.ifmo.cs.model.DataPoint;
-import ru.ifmo.cs.model.functions.*;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.ModelProvider;
+import ru.ifmo.cs.model.functions.RobustLoss;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
 
+/**
+ * Расчёт всех моделей. Сервис не хранит состояния между вызовами (реестр и планировщик только читаются),
+ * а результаты неизменяемы, поэтому один экземпляр обслуживает любое число потоков без блокировок.
+ */
 public class RegressionService {
-    private RegressionResult lastResult;
-    private static final double EPSILON = 1e-10;
+
+    private static final double MAD_TO_SIGMA = 1 / 0.6745;
+
+    private final ModelRegistry registry;
+    private final ModelScheduler scheduler;
+    private final Instrumentation instrumentation = Instrumentation.getDefault();
+
+    public RegressionService() {
+        this(ModelRegistry.getDefault());
+    }
+
+    public RegressionService(ModelRegistry registry) {
+        this.registry = registry;
+        this.scheduler = new ModelScheduler(registry);
+    }
+
+    /** Общий экземпляр поверх реестра по умолчанию. */
+    public static RegressionService getDefault() {
+        return Holder.DEFAULT;
+    }
 
     public RegressionResult calculateAll(List<DataPoint> points) {
-        RegressionResult result = new RegressionResult();
-
-        List<FunctionApproximation> functions = new ArrayList<>();
-        int n = points.size();
-        
-        // Линейная: минимум 2 точки
-        if (n >= 2) {
-            functions.add(new LinearFunction().approximate(points));
-        }
-        
-        // Квадратичная: минимум 3 точки
-        if (n >= 3) {
-            functions.add(new QuadraticFunction().approximate(points));
+        return calculateAll(points, null);
+    }
+
+    /**
+     * Робастный режим (robustLoss != null): все модели строятся методом IRLS, и лучшая выбирается
+     * по средней потере ρ с общим для всех моделей масштабом остатков, так что единичные выбросы
+     * не меняют выбор.
+     */
+    public RegressionResult calculateAll(List<DataPoint> points, RobustLoss robustLoss) {
+        return calculateAll(points, robustLoss, null);
+    }
+
+    /**
+     * То же с тёплым стартом итерационных моделей от результата previous прошлого расчёта
+     * по близким данным (живой пересчёт); previous может быть null.
+     */
+    public RegressionResult calculateAll(List<DataPoint> points, RobustLoss robustLoss, RegressionResult previous) {
+        DataSummary summary = DataSummary.of(points);
+        // Набор моделей и условия их применимости задаются в реестре
+        return buildResult(points, scheduler.fitAll(points, summary, robustLoss, previousFunctions(previous)),
+                robustLoss);
+    }
+
+    /**
+     * Режим для очень больших наборов: модели ранжируются по стратифицированным подвыборкам,
+     * по всем данным строятся только лучшие кандидаты. На небольших наборах равносилен calculateAll.
+     */
+    public RegressionResult calculateSubsampled(List<DataPoint> points, SubsampleSelector selector) {
+        if (!selector.isWorthwhile(points.size())) {
+            return calculateAll(points);
         }
-        
-        // Кубическая: минимум 4 точки
-        if (n >= 4) {
-            functions.add(new CubicFunction().approximate(points));
+        DataSummary summary = DataSummary.of(points);
+        SubsampleSelector.Selection selection = selector.select(points, summary);
+        return buildResult(points, selection.getFittedCandidates()).withSelectionReport(selection.getReport());
+    }
+
+    /**
+     * Строит все модели и оценивает их k-кратным скользящим контролем; лучшей считается модель
+     * с наименьшей ошибкой на контрольных частях, а не на обучающих данных, поэтому более гибкие
+     * модели не выигрывают только за счёт числа параметров.
+     */
+    public RegressionResult calculateCrossValidated(List<DataPoint> points, CrossValidator validator) {
+        return calculateCrossValidated(points, validator, null);
+    }
+
+    /**
+     * То же с бутстреп-интервалами коэффициентов всех моделей; bootstrap может быть null.
+     */
+    public RegressionResult calculateCrossValidated(List<DataPoint> points, CrossValidator validator,
+                                                    BootstrapEngine bootstrap) {
+        return calculateCrossValidated(points, validator, bootstrap, ProgressMonitor.NONE);
+    }
+
+    /**
+     * То же с наблюдателем для расчёта в фоне: отмена проверяется между этапами и внутри бутстрепа,
+     * отменённый расчёт завершается CancellationException.
+     */
+    public RegressionResult calculateCrossValidated(List<DataPoint> points, CrossValidator validator,
+                                                    BootstrapEngine bootstrap, ProgressMonitor monitor) {
+        return calculateCrossValidated(points, validator, bootstrap, monitor, null);
+    }
+
+    /**
+     * То же с тёплым стартом итерационных моделей от результата previous (может быть null).
+     */
+    public RegressionResult calculateCrossValidated(List<DataPoint> points, CrossValidator validator,
+                                                    BootstrapEngine bootstrap, ProgressMonitor monitor,
+                                                    RegressionResult previous) {
+        // Бутстреп - основная часть работы, построение и контроль занимают начало шкалы
+        double fitShare = bootstrap != null ? 0.1 : 0.5;
+        double validationShare = bootstrap != null ? 0.2 : 1;
+
+        DataSummary summary = DataSummary.of(points);
+        List<ModelProvider> providers = registry.schedule(summary);
+        List<ApproximationResult> functions = scheduler.fitAll(points, summary, null, previousFunctions(previous));
+        checkCancelled(monitor);
+        monitor.progress(fitShare);
+        double[] scores;
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.CROSS_VALIDATION)) {
+            timer.setPoints(points.size());
+            scores = validator.scoreAll(points, summary, providers, functions);
         }
-        
-        // Экспоненциальная: минимум 2 точки
-        if (n >= 2) {
-            functions.add(new ExponentialFunction().approximate(points));
+        checkCancelled(monitor);
+        monitor.progress(validationShare);
+
+        // fitAll сохраняет порядок планирования, поэтому оценки совпадают с моделями по индексу
+        Map<String, Double> byName = new LinkedHashMap<>();
+        for (int m = 0; m < functions.size(); m++) {
+            byName.put(functions.get(m).getName(), scores[m]);
         }
 
-        boolean hasNonPositiveX = points.stream().anyMatch(p -> p.getX() <= 0);
-        boolean hasNonPositiveY = points.stream().anyMatch(p -> p.getY() <= 0);
+        RegressionResult result = buildResult(points, functions).withCrossValidation(byName, validator.getFolds());
+        if (bootstrap != null) {
+            Map<String, BootstrapIntervals> intervals = new LinkedHashMap<>();
+            try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.BOOTSTRAP)) {
+                timer.setPoints(points.size());
+                ProgressMonitor replicates = new ProgressMonitor() {
+                    @Override
+                    public void progress(double done) {
+                        monitor.progress(validationShare + (1 - validationShare) * done);
+                    }
 
-        // Логарифмическая: строим только при x > 0 и минимум 2 точки
-        if (!hasNonPositiveX && n >= 2) {
-            functions.add(new LogarithmicFunction().approximate(points));
+                    @Override
+                    public boolean isCancelled() {
+                        return monitor.isCancelled();
+                    }
+                };
+                for (BootstrapIntervals modelIntervals
+                        : bootstrap.run(points, summary, providers, functions, replicates)) {
+                    intervals.put(modelIntervals.getModelName(), modelIntervals);
+                }
+            }
+            result = result.withCoefficientIntervals(intervals);
         }
+        List<ApproximationResult> scored = functions.stream()
+                .filter(f -> Double.isFinite(byName.getOrDefault(f.getName(), Double.NaN)))
+                .collect(Collectors.toList());
+        return selectBest(scored, Comparator.comparingDouble(f -> byName.get(f.getName())))
+                .map(result::withBestFunction)
+                .orElse(result);
+    }
+
+    private static List<ApproximationResult> previousFunctions(RegressionResult previous) {
+        return previous != null ? previous.getAllFunctions() : List.of();
+    }
 
-        // Степенная: строим только при x > 0 и y > 0 и минимум 2 точки
-        if (!hasNonPositiveX && !hasNonPositiveY && n >= 2) {
-            functions.add(new PowerFunction().approximate(points));
+    private static void checkCancelled(ProgressMonitor monitor) {
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Расчёт прерван");
         }
+    }
 
-        double pearson = calculatePearsonCorrelation(points);
+    private RegressionResult buildResult(List<DataPoint> points, List<ApproximationResult> functions) {
+        return buildResult(points, functions, null);
+    }
 
-        FunctionApproximation bestFunction = functions.stream()
-                .min(Comparator.comparingDouble(FunctionApproximation::getStandardDeviation))
-                .orElseThrow();
+    private RegressionResult buildResult(List<DataPoint> points, List<ApproximationResult> functions,
+                                         RobustLoss robustLoss) {
+        Correlation correlation;
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.METRICS)) {
+            timer.setPoints(points.size());
+            correlation = Correlation.of(points);
+        }
 
-        result.setAllFunctions(functions);
-        result.setBestFunction(bestFunction);
-        result.setPearsonCorrelation(pearson);
+        Comparator<ApproximationResult> order;
+        if (robustLoss == null) {
+            order = Comparator.comparingDouble(ApproximationResult::getStandardDeviation);
+        } else {
+            Map<String, Double> scores = robustScores(points, functions, robustLoss);
+            order = Comparator.comparingDouble(f -> scores.get(f.getName()));
+        }
+        ApproximationResult bestFunction = selectBest(functions, order).orElseThrow();
 
-        lastResult = result;
-        return result;
+        // Рычаги и влияние точек - из сохранённого разложения МНК каждой модели, без повторных построений
+        Map<String, ResidualDiagnostics> diagnostics = new LinkedHashMap<>();
+        try (Instrumentation.Timer timer = instrumentation.start(Instrumentation.DIAGNOSTICS)) {
+            timer.setPoints(points.size());
+            for (ApproximationResult function : functions) {
+                if (function.getErrorVector().size() == points.size()) {
+                    diagnostics.put(function.getName(), ResidualDiagnostics.of(function, points));
+                }
+            }
+        }
+
+        return new RegressionResult(functions, bestFunction, correlation).withDiagnostics(diagnostics);
     }
 
-    private double calculatePearsonCorrelation(List<DataPoint> points) {
-        int n = points.size();
-        double sumX = 0, sumY = 0, sumXY = 0;
-        double sumX2 = 0, sumY2 = 0;
+    /**
+     * Наилучшая модель по порядку order; опорные кривые выбираются, только если других моделей нет.
+     */
+    static Optional<ApproximationResult> selectBest(List<ApproximationResult> functions,
+                                                      Comparator<ApproximationResult> order) {
+        Optional<ApproximationResult> best = functions.stream().filter(f -> !f.isReference()).min(order);
+        return best.isPresent() ? best : functions.stream().min(order);
+    }
 
-        for (DataPoint p : points) {
-            double x = p.getX();
-            double y = p.getY();
-            sumX += x;
-            sumY += y;
-            sumXY += x * y;
-            sumX2 += x * x;
-            sumY2 += y * y;
+    /**
+     * Средняя потеря ρ(r/s) каждой модели по исходным точкам и весам. Масштаб s один для всех моделей -
+     * нормированная MAD остатков лучшей из них: итоговые веса IRLS и собственный масштаб у каждой
+     * модели свои, и оценки с ними несравнимы. Модели без остатков получают NaN и выбираются последними.
+     */
+    static Map<String, Double> robustScores(List<DataPoint> points, List<ApproximationResult> functions,
+                                            RobustLoss loss) {
+        double scale = Double.POSITIVE_INFINITY;
+        double[] buffer = new double[points.size()];
+        for (ApproximationResult function : functions) {
+            DoubleVector errors = function.getErrorVector();
+            if (function.isReference() || errors.size() != points.size()) {
+                continue;
+            }
+            int valid = 0;
+            for (int i = 0; i < errors.size(); i++) {
+                if (Double.isFinite(errors.get(i))) {
+                    buffer[valid++] = Math.abs(errors.get(i));
+                }
+            }
+            if (valid > 0) {
+                Arrays.sort(buffer, 0, valid);
+                double median = valid % 2 == 1
+                        ? buffer[valid / 2]
+                        : (buffer[valid / 2 - 1] + buffer[valid / 2]) / 2;
+                scale = Math.min(scale, MAD_TO_SIGMA * median);
+            }
         }
+        // Точно проходящая через большинство точек модель даёт нулевой масштаб: её потеря остаётся нулевой
+        scale = Math.max(scale, Double.MIN_NORMAL);
 
-        double numerator = n * sumXY - sumX * sumY;
-        double denominator = Math.sqrt((n * sumX2 - sumX * sumX) * (n * sumY2 - sumY * sumY));
-
-        return Math.abs(denominator) < EPSILON ? 0 : numerator / denominator;
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (ApproximationResult function : functions) {
+            DoubleVector errors = function.getErrorVector();
+            double total = 0;
+            double weight = 0;
+            if (errors.size() == points.size()) {
+                for (int i = 0; i < errors.size(); i++) {
+                    double w = points.get(i).getWeight();
+                    if (Double.isFinite(errors.get(i)) && w > 0) {
+                        total += w * loss.rho(errors.get(i) / scale);
+                        weight += w;
+                    }
+                }
+            }
+            scores.put(function.getName(), weight > 0 ? total / weight : Double.NaN);
+        }
+        return scores;
     }
 
-    public RegressionResult getLastResult() {
-        return lastResult;
+    private static class Holder {
+        static final RegressionService DEFAULT = new RegressionService();
     }
 }
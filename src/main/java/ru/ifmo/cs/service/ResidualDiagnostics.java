@@ -0,0 +1,341 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Диагностика остатков одной модели: рычаги, расстояния Кука и стьюдентизированные остатки точек,
+ * статистика Дурбина-Уотсона и критерий серий знаков остатков. Объект неизменяем.
+ * <p>
+ * Рычаги берутся из сохранённой (XᵀWX)⁻¹ решения МНК ({@link LeastSquaresFit#leverage}) за O(d²)
+ * на точку, без n повторных построений: по рычагу h и остатку e удалённый остаток, расстояние Кука
+ * и внешне стьюдентизированный остаток выражаются явно. Храним только рычаги; остальные величины
+ * точки считаются при обращении из рычага и вектора отклонений модели. Для моделей, построенных
+ * не полиномиальным МНК, рычаги неизвестны: доступны нормированные остатки, DW и серии.
+ * <p>
+ * DW и серии считаются в порядке точек (для рядов - по времени), остатки с весами - как sqrt(w)·e.
+ * Все величины собираются параллельно по частям точек; итоги частей объединяются с учётом стыков.
+ */
+public final class ResidualDiagnostics {
+    /** Порог расстояния Кука для влиятельной точки: D &gt; 4/n. */
+    public static final double COOK_THRESHOLD_FACTOR = 4;
+    /** Порог |t| для выброса. */
+    public static final double OUTLIER_THRESHOLD = 3;
+
+    private static final int CHUNK = 1 << 14;
+
+    private final String modelName;
+    private final Residuals residuals;
+    private final DoubleVector leverage;
+    private final double durbinWatson;
+    private final int runs;
+    private final double runsZ;
+    private final double runsPValue;
+    private final int maxCookIndex;
+    private final int influentialCount;
+    private final int outlierCount;
+
+    private ResidualDiagnostics(String modelName, Residuals residuals, DoubleVector leverage, Partial summary) {
+        this.modelName = modelName;
+        this.residuals = residuals;
+        this.leverage = leverage;
+        this.durbinWatson = summary.sumSquares > 0 ? summary.differenceSquares / summary.sumSquares : Double.NaN;
+
+        // Критерий серий Вальда-Вольфовица: нулевые остатки не учитываются
+        long positive = summary.positive;
+        long negative = summary.negative;
+        long total = positive + negative;
+        this.runs = total == 0 ? 0 : (int) (summary.signChanges + 1);
+        double expected = 2.0 * positive * negative / total + 1;
+        double variance = 2.0 * positive * negative * (2.0 * positive * negative - total)
+                / ((double) total * total * (total - 1));
+        if (positive > 0 && negative > 0 && variance > 0) {
+            this.runsZ = (runs - expected) / Math.sqrt(variance);
+            this.runsPValue = 2 * new NormalDistribution().cumulativeProbability(-Math.abs(runsZ));
+        } else {
+            this.runsZ = Double.NaN;
+            this.runsPValue = Double.NaN;
+        }
+        this.maxCookIndex = summary.maxCookIndex;
+        this.influentialCount = summary.influential;
+        this.outlierCount = summary.outliers;
+    }
+
+    /**
+     * Диагностика построенной модели по тем же точкам, по которым она строилась.
+     */
+    public static ResidualDiagnostics of(ApproximationResult function, List<DataPoint> points) {
+        int n = points.size();
+        DoubleVector errors = function.getErrorVector();
+        if (errors.size() != n) {
+            throw new IllegalArgumentException("Отклонения модели не соответствуют точкам: " + function.getName());
+        }
+        double[] weights = DataPoint.weightsOf(points);
+        LeastSquaresFit fit = function.getLeastSquaresFit();
+        int parameters = fit != null ? fit.getDegree() + 1 : function.getCoefficientVector().size();
+
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        int valid = IntStream.range(0, chunks).parallel()
+                .map(c -> countFinite(errors, c * CHUNK, Math.min(n, (c + 1) * CHUNK)))
+                .sum();
+        double variance;
+        if (fit != null && Double.isFinite(fit.getResidualVariance())) {
+            variance = fit.getResidualVariance();
+        } else {
+            double sse = IntStream.range(0, chunks).parallel()
+                    .mapToDouble(c -> weightedSquares(errors, weights, c * CHUNK, Math.min(n, (c + 1) * CHUNK)))
+                    .sum();
+            variance = valid > parameters ? sse / (valid - parameters) : Double.NaN;
+        }
+
+        Residuals residuals = new Residuals(errors, weights, parameters, valid, variance);
+        double[] leverage = fit != null ? new double[n] : null;
+        Partial summary = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    int from = c * CHUNK;
+                    int to = Math.min(n, from + CHUNK);
+                    if (leverage != null) {
+                        double[] phi = new double[parameters];
+                        for (int i = from; i < to; i++) {
+                            leverage[i] = fit.leverage(points.get(i).getX(), residuals.weight(i), phi);
+                        }
+                    }
+                    return residuals.summarize(leverage, from, to);
+                })
+                .reduce(Partial::merge)
+                .orElseGet(Partial::new);
+        return new ResidualDiagnostics(function.getName(), residuals,
+                leverage != null ? DoubleVector.wrap(leverage) : DoubleVector.EMPTY, summary);
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public boolean hasLeverage() {
+        return !leverage.isEmpty();
+    }
+
+    /** Рычаг точки; NaN, если модель построена не МНК. */
+    public double getLeverage(int index) {
+        return hasLeverage() ? leverage.get(index) : Double.NaN;
+    }
+
+    /**
+     * Внешне стьюдентизированный остаток t = r·sqrt((ν - 1) / (ν - r²)), где r = sqrt(w)·e / (s·sqrt(1 - h))
+     * и ν = n - p: остаток, нормированный по σ модели, построенной без этой точки. Без рычагов h = 0.
+     */
+    public double getStudentizedResidual(int index) {
+        return residuals.studentized(index, hasLeverage() ? leverage.get(index) : 0);
+    }
+
+    /** Расстояние Кука D = r²·h / (p·(1 - h)) - сдвиг всех предсказаний при удалении точки. */
+    public double getCooksDistance(int index) {
+        return hasLeverage() ? residuals.cook(index, leverage.get(index)) : Double.NaN;
+    }
+
+    /** Оценка дисперсии s² = Σw·e² / (n - p). */
+    public double getResidualVariance() {
+        return residuals.variance;
+    }
+
+    /** DW = Σ(e_i - e_{i-1})² / Σe_i²: около 2 без автокорреляции, ближе к 0 - положительная. */
+    public double getDurbinWatson() {
+        return durbinWatson;
+    }
+
+    /** Число серий одного знака остатков. */
+    public int getRuns() {
+        return runs;
+    }
+
+    /** z-статистика числа серий: заметно меньше нуля - остатки идут блоками (модель не той формы). */
+    public double getRunsZ() {
+        return runsZ;
+    }
+
+    /** Двусторонний p-уровень критерия серий (нормальное приближение). */
+    public double getRunsPValue() {
+        return runsPValue;
+    }
+
+    /** Индекс точки с наибольшим расстоянием Кука; -1, если рычагов нет. */
+    public int getMaxCookIndex() {
+        return maxCookIndex;
+    }
+
+    public double getMaxCooksDistance() {
+        return maxCookIndex >= 0 ? getCooksDistance(maxCookIndex) : Double.NaN;
+    }
+
+    /** Число точек с D &gt; 4/n. */
+    public int getInfluentialCount() {
+        return influentialCount;
+    }
+
+    /** Число точек с |t| &gt; {@link #OUTLIER_THRESHOLD}. */
+    public int getOutlierCount() {
+        return outlierCount;
+    }
+
+    private static int countFinite(DoubleVector errors, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (Double.isFinite(errors.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double weightedSquares(DoubleVector errors, double[] weights, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double e = errors.get(i);
+            if (Double.isFinite(e)) {
+                sum += (weights == null ? DataPoint.DEFAULT_WEIGHT : weights[i]) * e * e;
+            }
+        }
+        return sum;
+    }
+
+    /** Остатки модели и оценка σ, по которым считаются величины отдельных точек. */
+    private static final class Residuals {
+        final DoubleVector errors;
+        final double[] weights;
+        final int parameters;
+        final int validCount;
+        final double variance;
+
+        Residuals(DoubleVector errors, double[] weights, int parameters, int validCount, double variance) {
+            this.errors = errors;
+            this.weights = weights;
+            this.parameters = parameters;
+            this.validCount = validCount;
+            this.variance = variance;
+        }
+
+        double weight(int index) {
+            return weights == null ? DataPoint.DEFAULT_WEIGHT : weights[index];
+        }
+
+        /** Остаток y - ŷ в масштабе весов; отклонение модели - ŷ - y. */
+        double scaled(int index) {
+            return -errors.get(index) * Math.sqrt(weight(index));
+        }
+
+        double internal(int index, double h) {
+            return scaled(index) / Math.sqrt(variance * (1 - h));
+        }
+
+        double studentized(int index, double h) {
+            double r = internal(index, h);
+            double dof = validCount - parameters;
+            return r * Math.sqrt((dof - 1) / (dof - r * r));
+        }
+
+        double cook(int index, double h) {
+            double r = internal(index, h);
+            return r * r * h / (parameters * (1 - h));
+        }
+
+        Partial summarize(double[] leverage, int from, int to) {
+            Partial part = new Partial();
+            double cookThreshold = COOK_THRESHOLD_FACTOR / validCount;
+            for (int i = from; i < to; i++) {
+                double e = scaled(i);
+                if (!Double.isFinite(e)) {
+                    continue;
+                }
+                part.add(e);
+                double h = leverage != null ? leverage[i] : 0;
+                if (Math.abs(studentized(i, h)) > OUTLIER_THRESHOLD) {
+                    part.outliers++;
+                }
+                if (leverage != null) {
+                    double d = cook(i, h);
+                    if (d > cookThreshold) {
+                        part.influential++;
+                    }
+                    if (!Double.isNaN(d) && (part.maxCookIndex < 0 || d > part.maxCook)) {
+                        part.maxCook = d;
+                        part.maxCookIndex = i;
+                    }
+                }
+            }
+            return part;
+        }
+    }
+
+    /**
+     * Итоги части точек. Соседние части объединяются по граничным остаткам, поэтому разности DW
+     * и смены знака на стыке частей не теряются.
+     */
+    private static final class Partial {
+        double first = Double.NaN;
+        double last = Double.NaN;
+        double sumSquares;
+        double differenceSquares;
+        int firstSign;
+        int lastSign;
+        long signChanges;
+        long positive;
+        long negative;
+        int influential;
+        int outliers;
+        double maxCook = Double.NaN;
+        int maxCookIndex = -1;
+
+        void add(double e) {
+            if (!Double.isNaN(last)) {
+                differenceSquares += (e - last) * (e - last);
+            } else {
+                first = e;
+            }
+            last = e;
+            sumSquares += e * e;
+            int sign = e > 0 ? 1 : e < 0 ? -1 : 0;
+            if (sign != 0) {
+                if (firstSign == 0) {
+                    firstSign = sign;
+                } else if (sign != lastSign) {
+                    signChanges++;
+                }
+                lastSign = sign;
+                if (sign > 0) {
+                    positive++;
+                } else {
+                    negative++;
+                }
+            }
+        }
+
+        Partial merge(Partial right) {
+            Partial m = new Partial();
+            m.first = Double.isNaN(first) ? right.first : first;
+            m.last = Double.isNaN(right.last) ? last : right.last;
+            m.sumSquares = sumSquares + right.sumSquares;
+            m.differenceSquares = differenceSquares + right.differenceSquares;
+            if (!Double.isNaN(last) && !Double.isNaN(right.first)) {
+                m.differenceSquares += (right.first - last) * (right.first - last);
+            }
+            m.firstSign = firstSign != 0 ? firstSign : right.firstSign;
+            m.lastSign = right.lastSign != 0 ? right.lastSign : lastSign;
+            m.signChanges = signChanges + right.signChanges
+                    + (lastSign != 0 && right.firstSign != 0 && lastSign != right.firstSign ? 1 : 0);
+            m.positive = positive + right.positive;
+            m.negative = negative + right.negative;
+            m.influential = influential + right.influential;
+            m.outliers = outliers + right.outliers;
+            boolean rightMax = right.maxCookIndex >= 0 && (maxCookIndex < 0 || right.maxCook > maxCook);
+            m.maxCook = rightMax ? right.maxCook : maxCook;
+            m.maxCookIndex = rightMax ? right.maxCookIndex : maxCookIndex;
+            return m;
+        }
+    }
+}
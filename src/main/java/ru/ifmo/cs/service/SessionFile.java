@@ -0,0 +1,484 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.ColumnEncoding;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PersistentPoints;
+import ru.ifmo.cs.model.PointColumns;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Файл сеанса: точки, результат расчёта и состояние представления, восстанавливаемые без пересчёта.
+ * <p>
+ * Формат: заголовок {@link #HEADER_BYTES} байт (сигнатура "VM4S", версия, флаги, кодировка хранения,
+ * число точек, смещение и длина метаданных), затем столбцы x, y[, w] из double в порядке little-endian,
+ * каждый целиком и с выравниванием на 8 байт, - они отображаются в память и читаются блоками
+ * без разбора. После столбцов - метаданные (DataOutputStream): текст результатов, ряды графика,
+ * состояние таблицы и результат расчёта - коэффициенты, σ, R², решение МНК, скользящий контроль,
+ * бутстреп-интервалы, выбор по подвыборкам и коэффициенты корреляции.
+ * <p>
+ * Точки хранятся значениями после кодирования; при компактной кодировке они кодируются при чтении
+ * повторно, и погрешность хранения отсчитывается от сохранённых значений.
+ */
+public final class SessionFile {
+    public static final String EXTENSION = ".vm4s";
+    static final int MAGIC = 0x53344D56; // "VM4S" в little-endian
+    static final int VERSION = 2;
+    /** Версия 1 хранила только коэффициент Пирсона; такие файлы читаются с NaN для рангов. */
+    static final int MIN_VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int FLAG_WEIGHTED = 1;
+    static final int FLAG_RESULT = 2;
+    /** Столбец отображается одним окном; MappedByteBuffer адресует не больше 2 ГБ. */
+    private static final long MAX_POINTS = Integer.MAX_VALUE / Double.BYTES;
+
+    private SessionFile() {
+    }
+
+    public static void write(Path path, Session session) throws IOException {
+        PersistentPoints points = session.getPoints();
+        long count = points.size();
+        if (count > MAX_POINTS) {
+            throw new IOException("Слишком много точек для файла сеанса: " + count);
+        }
+        boolean weighted = points.isWeighted();
+        RegressionResult result = session.getResult();
+        byte[] metadata = encodeMetadata(session);
+        int columns = weighted ? 3 : 2;
+        long metadataOffset = HEADER_BYTES + columns * count * Double.BYTES;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt((weighted ? FLAG_WEIGHTED : 0) | (result != null ? FLAG_RESULT : 0))
+                    .putInt(points.getEncoding().ordinal())
+                    .putLong(count).putLong(metadataOffset).putLong(metadata.length);
+            header.clear();
+            writeFully(channel, header, 0);
+
+            if (count > 0) {
+                DoubleBuffer x = mapColumn(channel, FileChannel.MapMode.READ_WRITE, 0, count);
+                DoubleBuffer y = mapColumn(channel, FileChannel.MapMode.READ_WRITE, 1, count);
+                DoubleBuffer w = weighted ? mapColumn(channel, FileChannel.MapMode.READ_WRITE, 2, count) : null;
+                // Обход листьев: последовательная запись без спуска по дереву для каждой точки
+                points.forEachLeaf(leaf -> {
+                    for (int i = 0; i < leaf.size(); i++) {
+                        x.put(leaf.x(i));
+                        y.put(leaf.y(i));
+                        if (w != null) {
+                            w.put(leaf.weight(i));
+                        }
+                    }
+                });
+            }
+            writeFully(channel, ByteBuffer.wrap(metadata), metadataOffset);
+        }
+    }
+
+    public static Session read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Чтение заголовка целиком
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Файл не является файлом сеанса: " + path);
+            }
+            int version = header.getInt();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Неподдерживаемая версия файла сеанса: " + version);
+            }
+            int flags = header.getInt();
+            int encodingIndex = header.getInt();
+            long count = header.getLong();
+            long metadataOffset = header.getLong();
+            long metadataLength = header.getLong();
+            boolean weighted = (flags & FLAG_WEIGHTED) != 0;
+            long columnsEnd = HEADER_BYTES + (weighted ? 3 : 2) * count * Double.BYTES;
+            if (count < 0 || count > MAX_POINTS || encodingIndex < 0
+                    || encodingIndex >= ColumnEncoding.values().length || metadataOffset < columnsEnd
+                    || metadataLength < 0 || metadataLength > Integer.MAX_VALUE
+                    || channel.size() < metadataOffset + metadataLength) {
+                throw new IOException("Файл сеанса повреждён или обрезан: " + path);
+            }
+
+            PersistentPoints points = PersistentPoints.empty(ColumnEncoding.values()[encodingIndex]);
+            if (count > 0) {
+                MappedColumns columns = new MappedColumns((int) count,
+                        mapColumn(channel, FileChannel.MapMode.READ_ONLY, 0, count),
+                        mapColumn(channel, FileChannel.MapMode.READ_ONLY, 1, count),
+                        weighted ? mapColumn(channel, FileChannel.MapMode.READ_ONLY, 2, count) : null);
+                points = PersistentPoints.of(columns, points.getEncoding());
+            }
+
+            ByteBuffer metadata = ByteBuffer.allocate((int) metadataLength);
+            readFully(channel, metadata, metadataOffset);
+            try {
+                return decodeMetadata(metadata.array(), points, (flags & FLAG_RESULT) != 0, version);
+            } catch (EOFException | IllegalArgumentException e) {
+                throw new IOException("Файл сеанса повреждён: " + path, e);
+            }
+        }
+    }
+
+    private static DoubleBuffer mapColumn(FileChannel channel, FileChannel.MapMode mode, int column, long count)
+            throws IOException {
+        long bytes = count * Double.BYTES;
+        return channel.map(mode, HEADER_BYTES + column * bytes, bytes)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encodeMetadata(Session session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, session.getResultsText());
+        out.writeBoolean(session.isLiveMode());
+        out.writeInt(session.getSelectedIndex());
+        out.writeInt(session.getChart().size());
+        for (Series series : session.getChart()) {
+            writeString(out, series.getName());
+            writeArray(out, series.getX());
+            writeArray(out, series.getY());
+        }
+        if (session.getResult() != null) {
+            writeResult(out, session.getResult());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Session decodeMetadata(byte[] metadata, PersistentPoints points, boolean hasResult,
+                                          int version) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata));
+        String resultsText = readString(in);
+        boolean liveMode = in.readBoolean();
+        int selectedIndex = in.readInt();
+        int seriesCount = in.readInt();
+        List<Series> chart = new ArrayList<>();
+        for (int s = 0; s < seriesCount; s++) {
+            chart.add(new Series(readString(in), readArray(in), readArray(in)));
+        }
+        RegressionResult result = hasResult ? readResult(in, points.asList(), version) : null;
+        return new Session(points, result, resultsText, chart, liveMode, selectedIndex);
+    }
+
+    private static void writeResult(DataOutputStream out, RegressionResult result) throws IOException {
+        List<ApproximationResult> functions = result.getAllFunctions();
+        out.writeInt(functions.size());
+        for (ApproximationResult fa : functions) {
+            writeString(out, fa.getName());
+            out.writeByte(StoredFunction.formOf(fa).ordinal());
+            writeArray(out, fa.getCoefficientVector().toArray());
+            out.writeDouble(fa.getStandardDeviation());
+            out.writeDouble(fa.getRSquared());
+            LeastSquaresFit fit = fa.getLeastSquaresFit();
+            out.writeBoolean(fit != null);
+            if (fit != null) {
+                double[] coefficients = fit.getCoefficients();
+                int p = coefficients.length;
+                double[] covariance = new double[p * p];
+                for (int a = 0; a < p; a++) {
+                    for (int b = 0; b < p; b++) {
+                        covariance[a * p + b] = fit.getCovariance(a, b);
+                    }
+                }
+                writeArray(out, coefficients);
+                writeArray(out, covariance);
+                out.writeDouble(fit.getResidualVariance());
+                out.writeInt(fit.getDegreesOfFreedom());
+            }
+        }
+        out.writeInt(functions.indexOf(result.getBestFunction()));
+        Correlation correlation = result.getCorrelation();
+        out.writeInt(correlation.getCount());
+        out.writeDouble(correlation.getPearson());
+        out.writeDouble(correlation.getSpearman());
+        out.writeDouble(correlation.getKendallTau());
+
+        out.writeInt(result.getCrossValidationFolds());
+        out.writeInt(result.getCrossValidationScores().size());
+        for (Map.Entry<String, Double> score : result.getCrossValidationScores().entrySet()) {
+            writeString(out, score.getKey());
+            out.writeDouble(score.getValue());
+        }
+
+        out.writeInt(result.getCoefficientIntervals().size());
+        for (BootstrapIntervals intervals : result.getCoefficientIntervals().values()) {
+            int p = intervals.getCoefficientCount();
+            double[] lower = new double[p];
+            double[] upper = new double[p];
+            double[] standardErrors = new double[p];
+            for (int k = 0; k < p; k++) {
+                lower[k] = intervals.getLower(k);
+                upper[k] = intervals.getUpper(k);
+                standardErrors[k] = intervals.getStandardError(k);
+            }
+            writeString(out, intervals.getModelName());
+            out.writeDouble(intervals.getConfidenceLevel());
+            out.writeInt(intervals.getReplicates());
+            writeArray(out, lower);
+            writeArray(out, upper);
+            writeArray(out, standardErrors);
+        }
+
+        ModelSelectionReport selection = result.getSelectionReport();
+        out.writeBoolean(selection != null);
+        if (selection != null) {
+            out.writeInt(selection.getEntries().size());
+            for (ModelSelectionReport.Entry e : selection.getEntries()) {
+                writeString(out, e.getModelName());
+                out.writeDouble(e.getMedianScore());
+                out.writeDouble(e.getScoreLower());
+                out.writeDouble(e.getScoreUpper());
+                out.writeDouble(e.getConsensus());
+                out.writeDouble(e.getWinFraction());
+            }
+            writeString(out, selection.getWinnerName());
+            out.writeDouble(selection.getWinnerConfidenceLower());
+            out.writeDouble(selection.getWinnerConfidenceUpper());
+            out.writeInt(selection.getSubsampleCount());
+            out.writeInt(selection.getSubsampleSize());
+        }
+    }
+
+    private static RegressionResult readResult(DataInputStream in, List<DataPoint> points, int version)
+            throws IOException {
+        StoredFunction.Form[] forms = StoredFunction.Form.values();
+        int functionCount = in.readInt();
+        List<ApproximationResult> functions = new ArrayList<>(functionCount);
+        for (int f = 0; f < functionCount; f++) {
+            String name = readString(in);
+            int form = in.readByte();
+            double[] coefficients = readArray(in);
+            double standardDeviation = in.readDouble();
+            double rSquared = in.readDouble();
+            LeastSquaresFit fit = null;
+            if (in.readBoolean()) {
+                double[] fitCoefficients = readArray(in);
+                double[] covariance = readArray(in);
+                fit = LeastSquaresFit.restore(fitCoefficients, covariance, in.readDouble(), in.readInt());
+            }
+            functions.add(new StoredFunction(name,
+                    form >= 0 && form < forms.length ? forms[form] : StoredFunction.Form.UNKNOWN,
+                    coefficients, standardDeviation, rSquared, fit, points));
+        }
+        int best = in.readInt();
+        if (best < 0 || best >= functions.size()) {
+            throw new IllegalArgumentException("Нет наилучшей модели");
+        }
+
+        Correlation correlation = version >= 2
+                ? new Correlation(in.readInt(), in.readDouble(), in.readDouble(), in.readDouble())
+                : new Correlation(points.size(), in.readDouble(), Double.NaN, Double.NaN);
+        RegressionResult result = new RegressionResult(functions, functions.get(best), correlation);
+
+        int folds = in.readInt();
+        int scoreCount = in.readInt();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (int s = 0; s < scoreCount; s++) {
+            scores.put(readString(in), in.readDouble());
+        }
+        result = result.withCrossValidation(scores, folds);
+
+        int intervalCount = in.readInt();
+        Map<String, BootstrapIntervals> intervals = new LinkedHashMap<>();
+        for (int k = 0; k < intervalCount; k++) {
+            String modelName = readString(in);
+            double confidenceLevel = in.readDouble();
+            int replicates = in.readInt();
+            intervals.put(modelName, new BootstrapIntervals(modelName, confidenceLevel,
+                    readArray(in), readArray(in), readArray(in), replicates));
+        }
+        result = result.withCoefficientIntervals(intervals);
+
+        if (in.readBoolean()) {
+            int entryCount = in.readInt();
+            List<ModelSelectionReport.Entry> entries = new ArrayList<>(entryCount);
+            for (int e = 0; e < entryCount; e++) {
+                entries.add(new ModelSelectionReport.Entry(readString(in), in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readDouble(), in.readDouble()));
+            }
+            result = result.withSelectionReport(new ModelSelectionReport(entries, readString(in), in.readDouble(),
+                    in.readDouble(), in.readInt(), in.readInt()));
+        }
+        return result;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readArray(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available() / Double.BYTES) {
+            throw new EOFException();
+        }
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    /** Столбцы, отображённые из файла; абсолютное чтение без изменения позиции буферов. */
+    private static final class MappedColumns implements PointColumns {
+        private final int size;
+        private final DoubleBuffer x;
+        private final DoubleBuffer y;
+        private final DoubleBuffer w;
+
+        MappedColumns(int size, DoubleBuffer x, DoubleBuffer y, DoubleBuffer w) {
+            this.size = size;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public double x(int i) {
+            return x.get(i);
+        }
+
+        @Override
+        public double y(int i) {
+            return y.get(i);
+        }
+
+        @Override
+        public double weight(int i) {
+            return w == null ? DataPoint.DEFAULT_WEIGHT : w.get(i);
+        }
+    }
+
+    /** Ряд графика как есть: при восстановлении функции заново не вычисляются. */
+    public static final class Series {
+        private final String name;
+        private final double[] x;
+        private final double[] y;
+
+        public Series(String name, double[] x, double[] y) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double[] getX() {
+            return x;
+        }
+
+        public double[] getY() {
+            return y;
+        }
+    }
+
+    /**
+     * Содержимое сеанса. Результат относится к точкам сеанса; null, если расчёт не выполнялся.
+     */
+    public static final class Session {
+        private final PersistentPoints points;
+        private final RegressionResult result;
+        private final String resultsText;
+        private final List<Series> chart;
+        private final boolean liveMode;
+        private final int selectedIndex;
+
+        public Session(PersistentPoints points, RegressionResult result, String resultsText, List<Series> chart,
+                       boolean liveMode, int selectedIndex) {
+            this.points = points;
+            this.result = result;
+            this.resultsText = resultsText;
+            this.chart = chart;
+            this.liveMode = liveMode;
+            this.selectedIndex = selectedIndex;
+        }
+
+        public PersistentPoints getPoints() {
+            return points;
+        }
+
+        public RegressionResult getResult() {
+            return result;
+        }
+
+        public String getResultsText() {
+            return resultsText;
+        }
+
+        public List<Series> getChart() {
+            return chart;
+        }
+
+        public boolean isLiveMode() {
+            return liveMode;
+        }
+
+        /** Выбранная строка таблицы; -1 - нет выбора. */
+        public int getSelectedIndex() {
+            return selectedIndex;
+        }
+    }
+}
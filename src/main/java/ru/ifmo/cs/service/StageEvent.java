@@ -0,0 +1,29 @@
+package ru.ifmo.cs.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR для этапа расчёта. Записывается только при включённой записи, например
+ * {@code -XX:StartFlightRecording:filename=vm4.jfr}; без записи стоимость сводится к проверке флага.
+ */
+@Name("ru.ifmo.cs.Stage")
+@Label("Этап расчёта")
+@Category({"ВМ4", "Аппроксимация"})
+@Description("Время, число точек и выделенная память этапа: чтение, построение модели, метрики, отчёт, отрисовка")
+@StackTrace(false)
+final class StageEvent extends jdk.jfr.Event {
+    @Label("Этап")
+    String stage;
+
+    @Label("Точек")
+    long points;
+
+    @Label("Выделено в потоке этапа")
+    @DataAmount
+    long allocatedBytes;
+}
@@ -0,0 +1,181 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.CubicFunction;
+import ru.ifmo.cs.model.functions.ExponentialFunction;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.LogarithmicFunction;
+import ru.ifmo.cs.model.functions.PolynomialFunction;
+import ru.ifmo.cs.model.functions.PowerFunction;
+import ru.ifmo.cs.model.functions.QuadraticFunction;
+import ru.ifmo.cs.model.functions.SegmentedFunction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Построенная модель, восстановленная из файла сеанса: коэффициенты, σ, R² и решение МНК
+ * берутся из файла, модель не перестраивается. Значение в точке считается по виду формулы
+ * ({@link Form}); значения и отклонения для всех точек вычисляются только при первом обращении
+ * (для отчёта), так как хранить их для миллионов точек в файле слишком дорого.
+ */
+final class StoredFunction implements ApproximationResult {
+    /** Вид формулы по коэффициентам c. */
+    enum Form {
+        /** c0 + c1·x + c2·x² + ... */
+        POLYNOMIAL,
+        /** c0·e^(c1·x) */
+        EXPONENTIAL,
+        /** c0 + c1·ln x */
+        LOGARITHMIC,
+        /** c0·x^c1 */
+        POWER,
+        /** Сторонняя модель: формула неизвестна, значения - NaN */
+        UNKNOWN,
+        /** k - 1 границ b, затем a0 + a1·x на каждом из k участков (добавлен последним - номера в файлах не меняются) */
+        PIECEWISE_LINEAR
+    }
+
+    private final String name;
+    private final Form form;
+    private final double[] coefficients;
+    private final double standardDeviation;
+    private final double rSquared;
+    private final LeastSquaresFit leastSquaresFit;
+    private final List<DataPoint> points;
+    // Вычисляется без блокировок: при гонке оба потока получат одинаковые значения
+    private volatile Evaluation evaluation;
+
+    StoredFunction(String name, Form form, double[] coefficients, double standardDeviation, double rSquared,
+                   LeastSquaresFit leastSquaresFit, List<DataPoint> points) {
+        this.name = name;
+        this.form = form;
+        this.coefficients = coefficients;
+        this.standardDeviation = standardDeviation;
+        this.rSquared = rSquared;
+        this.leastSquaresFit = leastSquaresFit;
+        this.points = points;
+    }
+
+    static Form formOf(ApproximationResult function) {
+        if (function instanceof StoredFunction) {
+            return ((StoredFunction) function).form;
+        }
+        if (function instanceof FittedModel) {
+            return formOf(((FittedModel) function).getSource());
+        }
+        if (function instanceof LinearFunction || function instanceof QuadraticFunction
+                || function instanceof CubicFunction || function instanceof PolynomialFunction) {
+            return Form.POLYNOMIAL;
+        }
+        if (function instanceof ExponentialFunction) {
+            return Form.EXPONENTIAL;
+        }
+        if (function instanceof LogarithmicFunction) {
+            return Form.LOGARITHMIC;
+        }
+        if (function instanceof PowerFunction) {
+            return Form.POWER;
+        }
+        if (function instanceof SegmentedFunction && ((SegmentedFunction) function).getDegree() == 1) {
+            return Form.PIECEWISE_LINEAR;
+        }
+        return Form.UNKNOWN;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public double calculate(double x) {
+        for (double c : coefficients) {
+            if (Double.isNaN(c)) {
+                return Double.NaN;
+            }
+        }
+        switch (form) {
+            case POLYNOMIAL:
+                double value = 0;
+                for (int k = coefficients.length - 1; k >= 0; k--) {
+                    value = value * x + coefficients[k];
+                }
+                return value;
+            case EXPONENTIAL:
+                return coefficients[0] * Math.exp(coefficients[1] * x);
+            case LOGARITHMIC:
+                return x > 0 ? coefficients[0] + coefficients[1] * Math.log(x) : Double.NaN;
+            case POWER:
+                return x > 0 ? coefficients[0] * Math.pow(x, coefficients[1]) : Double.NaN;
+            case PIECEWISE_LINEAR:
+                int segments = (coefficients.length + 1) / 3;
+                int segment = Arrays.binarySearch(coefficients, 0, segments - 1, x);
+                segment = segment >= 0 ? segment + 1 : -segment - 1;
+                int offset = segments - 1 + 2 * segment;
+                return coefficients[offset] + coefficients[offset + 1] * x;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    @Override
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    @Override
+    public DoubleVector getCoefficientVector() {
+        return DoubleVector.wrap(coefficients);
+    }
+
+    @Override
+    public DoubleVector getCalculatedValueVector() {
+        return evaluate().calculatedValues;
+    }
+
+    @Override
+    public DoubleVector getErrorVector() {
+        return evaluate().errors;
+    }
+
+    @Override
+    public LeastSquaresFit getLeastSquaresFit() {
+        return leastSquaresFit;
+    }
+
+    private Evaluation evaluate() {
+        Evaluation result = evaluation;
+        if (result != null) {
+            return result;
+        }
+        int n = points.size();
+        double[] calculated = new double[n];
+        double[] deviations = new double[n];
+        for (int i = 0; i < n; i++) {
+            DataPoint p = points.get(i);
+            calculated[i] = calculate(p.getX());
+            deviations[i] = Double.isFinite(calculated[i]) ? calculated[i] - p.getY() : Double.NaN;
+        }
+        result = new Evaluation(DoubleVector.wrap(calculated), DoubleVector.wrap(deviations));
+        evaluation = result;
+        return result;
+    }
+
+    private static final class Evaluation {
+        final DoubleVector calculatedValues;
+        final DoubleVector errors;
+
+        Evaluation(DoubleVector calculatedValues, DoubleVector errors) {
+            this.calculatedValues = calculatedValues;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.LinearBasis;
+
+/**
+ * Модель, построенная потоково по данным вне памяти: только коэффициенты и метрики,
+ * без значений в отдельных точках.
+ */
+public final class StreamedFit {
+    private final String name;
+    private final LinearBasis basis;
+    private final double[] beta;
+    private final double[] coefficients;
+    private final double standardDeviation;
+    private final double rSquared;
+    private final long pointCount;
+    private final double minX;
+    private final double maxX;
+    private final BootstrapIntervals coefficientIntervals;
+
+    StreamedFit(String name, LinearBasis basis, double[] beta, double standardDeviation, double rSquared,
+                long pointCount, double minX, double maxX, BootstrapIntervals coefficientIntervals) {
+        this.name = name;
+        this.basis = basis;
+        this.beta = beta;
+        this.coefficients = basis.toModelCoefficients(beta);
+        this.standardDeviation = standardDeviation;
+        this.rSquared = rSquared;
+        this.pointCount = pointCount;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.coefficientIntervals = coefficientIntervals;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double calculate(double x) {
+        return basis.predict(x, beta);
+    }
+
+    /** Коэффициенты в том же виде, что у соответствующей FunctionApproximation. */
+    public DoubleVector getCoefficientVector() {
+        return DoubleVector.wrap(coefficients);
+    }
+
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    /** Диапазон x данных, по которым построена модель. */
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /** Интервалы пуассоновского бутстрепа или null, если расчёт шёл без бутстрепа. */
+    public BootstrapIntervals getCoefficientIntervals() {
+        return coefficientIntervals;
+    }
+
+    public String getCoefficientsAsString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < coefficients.length; i++) {
+            sb.append(String.format("%.6f", coefficients[i]));
+            if (i < coefficients.length - 1) sb.append(", ");
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,337 @@
+package ru.ifmo.cs.service;
+
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.IndexedPoints;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Выбор модели на больших наборах данных по стратифицированным случайным подвыборкам.
+ * <p>
+ * На каждой подвыборке все модели строятся по обучающей части и оцениваются на независимой контрольной
+ * по правилу MSAC (вариант RANSAC): вклад точки - min(r², τ²), где порог τ равен трём робастным СКО
+ * лучшей модели на этой подвыборке. Поэтому редкие грубые выбросы ограничены τ и не решают исход.
+ * Полностью по всем данным строятся только несколько лучших кандидатов.
+ * Опорные кривые ({@link ApproximationResult#isReference()}) не выбираются наилучшей моделью, поэтому
+ * не оцениваются на подвыборках и не занимают мест кандидатов: они строятся по всем данным вместе с ними.
+ * Подвыборки обрабатываются параллельно в пуле fork-join.
+ */
+public class SubsampleSelector {
+    private static final int DEFAULT_SUBSAMPLE_SIZE = 2000;
+    private static final int DEFAULT_SUBSAMPLE_COUNT = 32;
+    private static final int DEFAULT_TOP_CANDIDATES = 2;
+    private static final long DEFAULT_SEED = 0x5EEDL;
+
+    private static final int STRATA = 32;
+    private static final double CONSENSUS_THRESHOLD = 3.0;
+    private static final double MAD_TO_SIGMA = 1 / 0.6745;
+    private static final double Z_95 = 1.96;
+
+    /** Результат выбора: полностью построенные кандидаты и отчёт по подвыборкам. */
+    public static class Selection {
+        private final List<ApproximationResult> fittedCandidates;
+        private final ModelSelectionReport report;
+
+        Selection(List<ApproximationResult> fittedCandidates, ModelSelectionReport report) {
+            this.fittedCandidates = fittedCandidates;
+            this.report = report;
+        }
+
+        public List<ApproximationResult> getFittedCandidates() {
+            return fittedCandidates;
+        }
+
+        public ModelSelectionReport getReport() {
+            return report;
+        }
+    }
+
+    private final ModelRegistry registry;
+    private final ForkJoinPool pool;
+    private final int subsampleSize;
+    private final int subsampleCount;
+    private final int topCandidates;
+    private final long seed;
+
+    public SubsampleSelector(ModelRegistry registry) {
+        this(registry, ForkJoinPool.commonPool(), DEFAULT_SUBSAMPLE_SIZE, DEFAULT_SUBSAMPLE_COUNT,
+                DEFAULT_TOP_CANDIDATES, DEFAULT_SEED);
+    }
+
+    public SubsampleSelector(ModelRegistry registry, ForkJoinPool pool, int subsampleSize, int subsampleCount,
+                             int topCandidates, long seed) {
+        this.registry = registry;
+        this.pool = pool;
+        this.subsampleSize = subsampleSize;
+        this.subsampleCount = subsampleCount;
+        this.topCandidates = topCandidates;
+        this.seed = seed;
+    }
+
+    /**
+     * Подвыборки имеют смысл, только если данных заметно больше, чем в обучающей и контрольной частях вместе.
+     */
+    public boolean isWorthwhile(int pointCount) {
+        return pointCount > 4L * subsampleSize;
+    }
+
+    public Selection select(List<DataPoint> points, DataSummary summary) {
+        List<ModelProvider> providers = new ArrayList<>();
+        List<ModelProvider> references = new ArrayList<>();
+        for (ModelProvider provider : registry.schedule(summary)) {
+            (provider.create().isReference() ? references : providers).add(provider);
+        }
+        int modelCount = providers.size();
+        if (modelCount == 0) {
+            throw new IllegalStateException("Нет моделей, применимых к данным");
+        }
+
+        Strata strata = Strata.build(points, summary);
+        SplittableRandom root = new SplittableRandom(seed);
+        List<SubsampleTask> tasks = new ArrayList<>(subsampleCount);
+        for (int b = 0; b < subsampleCount; b++) {
+            // Независимый поток случайных чисел для каждой подвыборки: результат не зависит от числа потоков
+            tasks.add(new SubsampleTask(points, strata, providers, root.split(), subsampleSize));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        double[][] scores = new double[modelCount][subsampleCount];
+        double[] consensus = new double[modelCount];
+        int[] wins = new int[modelCount];
+        for (int b = 0; b < subsampleCount; b++) {
+            double[][] outcome = tasks.get(b).join();
+            int winner = -1;
+            for (int m = 0; m < modelCount; m++) {
+                scores[m][b] = outcome[0][m];
+                consensus[m] += outcome[1][m] / subsampleCount;
+                if (!Double.isNaN(outcome[0][m]) && (winner < 0 || outcome[0][m] < outcome[0][winner])) {
+                    winner = m;
+                }
+            }
+            if (winner >= 0) {
+                wins[winner]++;
+            }
+        }
+
+        List<ModelSelectionReport.Entry> entries = new ArrayList<>(modelCount);
+        Integer[] ranking = new Integer[modelCount];
+        double[] medians = new double[modelCount];
+        for (int m = 0; m < modelCount; m++) {
+            double[] finite = Arrays.stream(scores[m]).filter(Double::isFinite).sorted().toArray();
+            medians[m] = percentile(finite, 0.5);
+            entries.add(new ModelSelectionReport.Entry(providers.get(m).getName(), medians[m],
+                    percentile(finite, 0.025), percentile(finite, 0.975),
+                    consensus[m], (double) wins[m] / subsampleCount));
+            ranking[m] = m;
+        }
+        Arrays.sort(ranking, Comparator.comparingDouble(m -> sortKey(medians[m])));
+        entries.sort(Comparator.comparingDouble(e -> sortKey(e.getMedianScore())));
+
+        // Полное построение только для лучших кандидатов и опорных кривых
+        int top = Math.min(topCandidates, modelCount);
+        List<ModelProvider> finalists = new ArrayList<>(top + references.size());
+        for (int r = 0; r < top; r++) {
+            finalists.add(providers.get(ranking[r]));
+        }
+        finalists.addAll(references);
+        List<ApproximationResult> fitted = pool.invoke(ForkJoinTask.adapt(() -> finalists.parallelStream()
+                .<ApproximationResult>map(provider -> FittedModel.of(provider.create().approximate(points)))
+                .collect(Collectors.toList())));
+
+        ApproximationResult best = RegressionService.selectBest(fitted,
+                Comparator.comparingDouble(ApproximationResult::getStandardDeviation)).orElseThrow();
+        int winnerIndex = providers.indexOf(finalists.get(fitted.indexOf(best)));
+        double[] interval = wilsonInterval(wins[winnerIndex], subsampleCount);
+
+        ModelSelectionReport report = new ModelSelectionReport(entries, best.getName(),
+                interval[0], interval[1], subsampleCount, subsampleSize);
+        return new Selection(fitted, report);
+    }
+
+    // Модели без единой оценки идут в конец
+    private static double sortKey(double score) {
+        return Double.isNaN(score) ? Double.MAX_VALUE : score;
+    }
+
+    static double percentile(double[] sorted, double q) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        double position = q * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private static double[] wilsonInterval(int successes, int trials) {
+        double p = (double) successes / trials;
+        double z2 = Z_95 * Z_95;
+        double denominator = 1 + z2 / trials;
+        double center = (p + z2 / (2.0 * trials)) / denominator;
+        double halfWidth = Z_95 * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / denominator;
+        return new double[]{Math.max(0, center - halfWidth), Math.min(1, center + halfWidth)};
+    }
+
+    /**
+     * Разбиение индексов точек на страты равной ширины по x (сортировка подсчётом, O(n)).
+     * Выборка из каждой страты пропорциональна её размеру, поэтому вся ось x покрыта даже на малых подвыборках.
+     */
+    private static final class Strata {
+        final int[] members;
+        final int[] offsets;
+
+        private Strata(int[] members, int[] offsets) {
+            this.members = members;
+            this.offsets = offsets;
+        }
+
+        static Strata build(List<DataPoint> points, DataSummary summary) {
+            int n = points.size();
+            double minX = summary.getMinX();
+            double range = summary.getMaxX() - minX;
+            int strataCount = range > 0 ? STRATA : 1;
+
+            int[] stratumOf = new int[n];
+            int[] offsets = new int[strataCount + 1];
+            for (int i = 0; i < n; i++) {
+                int s = range > 0 ? (int) ((points.get(i).getX() - minX) / range * strataCount) : 0;
+                s = Math.min(s, strataCount - 1);
+                stratumOf[i] = s;
+                offsets[s + 1]++;
+            }
+            for (int s = 0; s < strataCount; s++) {
+                offsets[s + 1] += offsets[s];
+            }
+            int[] cursor = Arrays.copyOf(offsets, strataCount);
+            int[] members = new int[n];
+            for (int i = 0; i < n; i++) {
+                members[cursor[stratumOf[i]]++] = i;
+            }
+            return new Strata(members, offsets);
+        }
+
+        /** Стратифицированная выборка индексов с возвращением. */
+        int[] sample(int size, SplittableRandom random) {
+            int n = members.length;
+            int[] result = new int[size];
+            int filled = 0;
+            int strataCount = offsets.length - 1;
+            for (int s = 0; s < strataCount && filled < size; s++) {
+                int count = offsets[s + 1] - offsets[s];
+                if (count == 0) {
+                    continue;
+                }
+                // Пропорциональное размещение по накопленной доле, чтобы округления не накапливались
+                int quota = s == strataCount - 1
+                        ? size - filled
+                        : (int) Math.max(0, Math.min(size - filled, Math.round((double) size * offsets[s + 1] / n) - filled));
+                for (int k = 0; k < quota; k++) {
+                    result[filled++] = members[offsets[s] + random.nextInt(count)];
+                }
+            }
+            while (filled < size) {
+                result[filled++] = members[random.nextInt(n)];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Оценка всех моделей на одной подвыборке: [0][m] - усечённое СКО, [1][m] - доля точек в консенсусе.
+     */
+    private static final class SubsampleTask extends RecursiveTask<double[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<DataPoint> points;
+        private final Strata strata;
+        private final List<ModelProvider> providers;
+        private final SplittableRandom random;
+        private final int size;
+
+        SubsampleTask(List<DataPoint> points, Strata strata, List<ModelProvider> providers,
+                      SplittableRandom random, int size) {
+            this.points = points;
+            this.strata = strata;
+            this.providers = providers;
+            this.random = random;
+            this.size = size;
+        }
+
+        @Override
+        protected double[][] compute() {
+            List<DataPoint> train = new IndexedPoints(points, strata.sample(size, random));
+            List<DataPoint> validation = new IndexedPoints(points, strata.sample(size, random));
+
+            int modelCount = providers.size();
+            double[][] residuals = new double[modelCount][];
+            double[] scratch = new double[size];
+            double minScale = Double.POSITIVE_INFINITY;
+
+            for (int m = 0; m < modelCount; m++) {
+                ApproximationResult function;
+                try {
+                    function = providers.get(m).create().approximate(train);
+                } catch (RuntimeException e) {
+                    // Вырожденная подвыборка для этой модели - модель не участвует в этом раунде
+                    continue;
+                }
+                double[] r = new double[size];
+                int finite = 0;
+                for (int i = 0; i < size; i++) {
+                    DataPoint p = validation.get(i);
+                    r[i] = p.getY() - function.calculate(p.getX());
+                    if (Double.isFinite(r[i])) {
+                        scratch[finite++] = Math.abs(r[i]);
+                    }
+                }
+                residuals[m] = r;
+                if (finite > 0) {
+                    Arrays.sort(scratch, 0, finite);
+                    double mad = finite % 2 == 1
+                            ? scratch[finite / 2]
+                            : (scratch[finite / 2 - 1] + scratch[finite / 2]) / 2;
+                    minScale = Math.min(minScale, MAD_TO_SIGMA * mad);
+                }
+            }
+
+            double tau = CONSENSUS_THRESHOLD * minScale;
+            if (!(tau > 0) || Double.isInfinite(tau)) {
+                tau = Double.MIN_NORMAL; // Точная подгонка: в консенсусе только совпадающие точки
+            }
+            double tau2 = tau * tau;
+
+            double[][] outcome = new double[2][modelCount];
+            for (int m = 0; m < modelCount; m++) {
+                if (residuals[m] == null) {
+                    outcome[0][m] = Double.NaN;
+                    continue;
+                }
+                double cost = 0;
+                int inliers = 0;
+                for (double r : residuals[m]) {
+                    double r2 = Double.isFinite(r) ? r * r : Double.POSITIVE_INFINITY;
+                    if (r2 <= tau2) {
+                        cost += r2;
+                        inliers++;
+                    } else {
+                        cost += tau2;
+                    }
+                }
+                outcome[0][m] = Math.sqrt(cost / size);
+                outcome[1][m] = (double) inliers / size;
+            }
+            return outcome;
+        }
+    }
+}
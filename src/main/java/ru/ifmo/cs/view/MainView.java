@@ -32,6 +32,7 @@ public class MainView extends Application {
         primaryStage.setScene(scene);
         primaryStage.setMinWidth(800);
         primaryStage.setMinHeight(600);
+        StartupProbe.attach(scene);
         primaryStage.show();
     }
 }
@@ -0,0 +1,65 @@
+package ru.ifmo.cs.view;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.service.BootstrapEngine;
+import ru.ifmo.cs.service.CrossValidator;
+import ru.ifmo.cs.service.FileService;
+import ru.ifmo.cs.service.RegressionService;
+
+/**
+ * Замер времени до первого кадра для задач быстрого запуска в build.gradle.
+ * <p>
+ * Управляется системным свойством {@value #PROPERTY}:
+ * <ul>
+ *     <li>{@code measure} - после первого кадра печатается строка {@code first-frame-ms=N}
+ *     (миллисекунды от запуска JVM) и приложение завершается;</li>
+ *     <li>{@code train} - то же, но перед выходом выполняется один расчёт, чтобы классы расчёта
+ *     и commons-math попали в архив CDS, записываемый обучающим запуском.</li>
+ * </ul>
+ * Без свойства ничего не делает.
+ */
+final class StartupProbe {
+    static final String PROPERTY = "ru.ifmo.cs.startup";
+
+    private StartupProbe() {
+    }
+
+    static void attach(Scene scene) {
+        String mode = System.getProperty(PROPERTY);
+        if (mode == null) {
+            return;
+        }
+        boolean[] fired = new boolean[1];
+        scene.addPostLayoutPulseListener(() -> {
+            if (fired[0]) {
+                return;
+            }
+            fired[0] = true;
+            // Задача выполнится после завершения импульса, то есть после отрисовки кадра
+            Platform.runLater(() -> {
+                long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+                System.out.println("first-frame-ms=" + elapsed);
+                if ("train".equals(mode)) {
+                    train();
+                }
+                Platform.exit();
+            });
+        });
+    }
+
+    private static void train() {
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            double x = i / 20.0;
+            points.add(new DataPoint(x, 2 * x * x - x + 1 + Math.sin(i)));
+        }
+        new FileService();
+        RegressionService.getDefault().calculateCrossValidated(points, new CrossValidator(), new BootstrapEngine());
+    }
+}
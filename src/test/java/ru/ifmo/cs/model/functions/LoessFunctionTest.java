@@ -0,0 +1,74 @@
+package ru.ifmo.cs.model.functions;
+
+import org.apache.commons.math3.analysis.interpolation.LoessInterpolator;
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoessFunctionTest {
+    /** Локальный многочлен степени degree воспроизводит многочлен той же степени точно. */
+    @Test
+    void reproducesPolynomialOfLocalDegree() {
+        List<DataPoint> line = new ArrayList<>();
+        List<DataPoint> parabola = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double x = 1e6 + i * 0.37;
+            line.add(new DataPoint(x, 3 - 0.25 * (x - 1e6)));
+            double t = (x - 1e6) / 1000;
+            parabola.add(new DataPoint(x, 1 + t - 0.5 * t * t));
+        }
+        LoessFunction linear = new LoessFunction(0.2, 1);
+        linear.approximate(line);
+        LoessFunction quadratic = new LoessFunction(0.2, 2);
+        quadratic.approximate(parabola);
+        for (int i = 0; i < line.size(); i += 7) {
+            DataPoint p = line.get(i);
+            assertEquals(p.getY(), linear.calculate(p.getX()), 1e-6, "прямая в x = " + p.getX());
+            DataPoint q = parabola.get(i);
+            assertEquals(q.getY(), quadratic.calculate(q.getX()), 1e-6, "парабола в x = " + q.getX());
+        }
+    }
+
+    /** Ступенчатое ядро и сплайн между узлами близки к точному LOESS с ядром tricube. */
+    @Test
+    void closeToDirectLoess() {
+        Random random = new Random(9);
+        int n = 2000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            x[i] = i * 0.005;
+            y[i] = Math.sin(x[i]) + 0.1 * random.nextGaussian();
+            points.add(new DataPoint(x[i], y[i]));
+        }
+        double[] expected = new LoessInterpolator(0.3, 0).smooth(x, y);
+        LoessFunction function = new LoessFunction(0.3, 1);
+        function.approximate(points);
+        for (int i = 0; i < n; i++) {
+            assertEquals(expected[i], function.calculate(x[i]), 0.02, "x = " + x[i]);
+        }
+    }
+
+    @Test
+    void isReferenceCurve() {
+        LoessFunction function = new LoessFunction();
+        assertTrue(function.isReference());
+        assertFalse(function.isParametric());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new LoessFunction(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LoessFunction(1.5, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LoessFunction(0.3, 3));
+    }
+}
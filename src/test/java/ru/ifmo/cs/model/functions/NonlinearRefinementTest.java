@@ -0,0 +1,106 @@
+package ru.ifmo.cs.model.functions;
+
+import org.apache.commons.math3.analysis.ParametricUnivariateFunction;
+import org.apache.commons.math3.fitting.SimpleCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonlinearRefinementTest {
+    private static final ParametricUnivariateFunction EXPONENTIAL = new ParametricUnivariateFunction() {
+        @Override
+        public double value(double x, double... p) {
+            return p[0] * Math.exp(p[1] * x);
+        }
+
+        @Override
+        public double[] gradient(double x, double... p) {
+            double e = Math.exp(p[1] * x);
+            return new double[]{e, p[0] * x * e};
+        }
+    };
+
+    private static final ParametricUnivariateFunction POWER = new ParametricUnivariateFunction() {
+        @Override
+        public double value(double x, double... p) {
+            return p[0] * Math.pow(x, p[1]);
+        }
+
+        @Override
+        public double[] gradient(double x, double... p) {
+            double e = Math.pow(x, p[1]);
+            return new double[]{e, p[0] * Math.log(x) * e};
+        }
+    };
+
+    /** Аддитивный шум в исходных координатах: решение в логарифмах смещено, уточнённое - нет. */
+    private static List<DataPoint> noisy(ParametricUnivariateFunction f, double[] p, double shift, long seed) {
+        Random random = new Random(seed);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            double x = 0.1 + i * 0.05;
+            points.add(new DataPoint(x, f.value(x, p) + shift + 0.3 * random.nextGaussian()));
+        }
+        return points;
+    }
+
+    private static double[] reference(ParametricUnivariateFunction f, List<DataPoint> points, double[] guess) {
+        WeightedObservedPoints observations = new WeightedObservedPoints();
+        for (DataPoint p : points) {
+            observations.add(p.getWeight(), p.getX(), p.getY());
+        }
+        return SimpleCurveFitter.create(f, guess).withMaxIterations(1000).fit(observations.toList());
+    }
+
+    private static void assertCoefficients(double[] expected, ApproximationResult fit, String message) {
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], fit.getCoefficientVector().get(k), 1e-6 * Math.max(1, Math.abs(expected[k])),
+                    message + ": коэффициент " + k);
+        }
+    }
+
+    @Test
+    void refinementMatchesReferenceLevenbergMarquardt() {
+        List<DataPoint> exponential = noisy(EXPONENTIAL, new double[]{2, 0.7}, 0, 5);
+        ApproximationResult refined = new ExponentialFunction(true).approximate(exponential);
+        assertCoefficients(reference(EXPONENTIAL, exponential, new double[]{1, 0.5}), refined, "экспонента");
+        assertTrue(refined.getStandardDeviation()
+                < new ExponentialFunction(false).approximate(exponential).getStandardDeviation());
+
+        List<DataPoint> power = noisy(POWER, new double[]{3, 1.5}, 0, 6);
+        assertCoefficients(reference(POWER, power, new double[]{1, 1}),
+                new PowerFunction(true).approximate(power), "степень");
+    }
+
+    /** Построение от прошлого результата сходится к тому же решению, что и с нуля. */
+    @Test
+    void warmStartedRefitConvergesToColdFit() {
+        ModelProvider provider = new ExponentialFunction.Provider(true);
+        ApproximationResult previous = provider.create().approximate(noisy(EXPONENTIAL, new double[]{2, 0.7}, 0, 7));
+        List<DataPoint> edited = noisy(EXPONENTIAL, new double[]{2, 0.7}, 0.2, 8);
+
+        ApproximationResult cold = provider.create().approximate(edited);
+        ApproximationResult warm = provider.createWarmStarted(previous).approximate(edited);
+        assertCoefficients(cold.getCoefficientVector().toArray(), warm, "тёплый старт");
+    }
+
+    @Test
+    void refinementIsChosenPerProvider() {
+        ModelProvider exponential = new ExponentialFunction.Provider(false).withNonlinearRefinement(true);
+        assertNull(exponential.getLinearBasis(null), "уточнённая модель не линейна в логарифмах");
+        assertTrue(((ExponentialFunction) exponential.create()).isNonlinearRefinement());
+
+        ModelProvider power = new PowerFunction.Provider(false).withNonlinearRefinement(true);
+        assertFalse(power.requiresPositiveY(), "при уточнении допустимы y <= 0");
+        assertTrue(((PowerFunction) power.create()).isNonlinearRefinement());
+    }
+}
@@ -0,0 +1,118 @@
+package ru.ifmo.cs.model.functions;
+
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.service.CrossValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedFunctionTest {
+    private static final double NOISE = 0.1;
+
+    /** Три режима: рост, спад и плато с границами в x = 10 и x = 20. */
+    private static List<DataPoint> regimes(int n) {
+        Random random = new Random(11);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double x = 30.0 * i / n;
+            double y = x < 10 ? x : x < 20 ? 20 - x : 0;
+            points.add(new DataPoint(x, y + NOISE * random.nextGaussian()));
+        }
+        return points;
+    }
+
+    @Test
+    void peltFindsRegimeBoundaries() {
+        SegmentedFunction function = new SegmentedFunction();
+        function.approximate(regimes(3000));
+        assertEquals(3, function.getSegmentCount());
+        assertEquals(10, function.getBoundaries()[0], 0.1);
+        assertEquals(20, function.getBoundaries()[1], 0.1);
+        assertEquals(NOISE, function.getStandardDeviation(), 0.1 * NOISE);
+    }
+
+    @Test
+    void straightLineIsOneSegment() {
+        Random random = new Random(3);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double x = i * 0.01;
+            points.add(new DataPoint(x, 4 - 0.5 * x + NOISE * random.nextGaussian()));
+        }
+        SegmentedFunction function = new SegmentedFunction();
+        function.approximate(points);
+        assertEquals(1, function.getSegmentCount());
+        assertEquals(0, function.getBoundaries().length);
+    }
+
+    /** Оценка шума не зависит от общего наклона, поэтому излом находится и на крутой прямой. */
+    @Test
+    void breakIsFoundRegardlessOfCommonSlope() {
+        for (double slope : new double[]{0, 1, 10, 100, 1e4}) {
+            Random random = new Random(21);
+            List<DataPoint> points = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                double x = i;
+                double y = slope * x + (x > 200 ? 0.3 * (x - 200) : 0) + random.nextGaussian();
+                points.add(new DataPoint(x, y));
+            }
+            SegmentedFunction function = new SegmentedFunction();
+            function.approximate(points);
+            assertEquals(2, function.getSegmentCount(), "наклон " + slope);
+            assertEquals(200, function.getBoundaries()[0], 20, "наклон " + slope);
+        }
+    }
+
+    /** Штраф увеличивается, пока PELT не уложится в заданное число участков. */
+    @Test
+    void maxSegmentsIsRespected() {
+        SegmentedFunction function = new SegmentedFunction(1, 2);
+        function.approximate(regimes(3000));
+        assertTrue(function.getSegmentCount() <= 2, "участков: " + function.getSegmentCount());
+    }
+
+    @Test
+    void fixedSegmentCountIsKept() {
+        List<DataPoint> points = regimes(3000);
+        for (int segments = 1; segments <= 5; segments++) {
+            SegmentedFunction function = SegmentedFunction.withSegments(1, segments);
+            function.approximate(points);
+            assertEquals(segments, function.getSegmentCount());
+        }
+        SegmentedFunction three = SegmentedFunction.withSegments(1, 3);
+        three.approximate(points);
+        assertEquals(10, three.getBoundaries()[0], 0.1);
+        assertEquals(20, three.getBoundaries()[1], 0.1);
+    }
+
+    @Test
+    void providerRefitsWithSegmentCountOfFullFit() {
+        List<DataPoint> points = regimes(3000);
+        SegmentedFunction.Provider provider = new SegmentedFunction.Provider();
+        SegmentedFunction fitted = new SegmentedFunction();
+        fitted.approximate(points);
+        SegmentedFunction refit = (SegmentedFunction) provider.createLike(fitted);
+        refit.approximate(points.subList(0, 2000));
+        assertEquals(fitted.getSegmentCount(), refit.getSegmentCount());
+        assertFalse(fitted.isParametric());
+    }
+
+    @Test
+    void crossValidationScoreIsNotBelowTrainingError() {
+        List<DataPoint> points = regimes(3000);
+        SegmentedFunction fitted = new SegmentedFunction();
+        fitted.approximate(points);
+        double score = new CrossValidator(ForkJoinPool.commonPool(), 10, 5).scoreAll(points,
+                DataSummary.of(points), List.of(new SegmentedFunction.Provider()), List.of(fitted))[0];
+        assertTrue(score >= fitted.getStandardDeviation(), score + " < " + fitted.getStandardDeviation());
+        assertEquals(NOISE, score, 0.1 * NOISE);
+    }
+}
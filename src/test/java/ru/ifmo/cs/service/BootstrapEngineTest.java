@@ -0,0 +1,126 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.LoessFunction;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BootstrapEngineTest {
+    private static List<DataPoint> line() {
+        Random random = new Random(11);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            double x = i * 0.05;
+            points.add(new DataPoint(x, 1.5 + 0.7 * x + 0.5 * random.nextGaussian()));
+        }
+        return points;
+    }
+
+    /** Та же линейная модель, но без базиса: повторы строятся заново через approximate. */
+    private static final class RefitProvider implements ModelProvider {
+        private final ModelProvider delegate = new LinearFunction.Provider();
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public int getMinPoints() {
+            return delegate.getMinPoints();
+        }
+
+        @Override
+        public double getCostEstimate(int pointCount) {
+            return delegate.getCostEstimate(pointCount);
+        }
+
+        @Override
+        public FunctionApproximation create() {
+            return delegate.create();
+        }
+    }
+
+    private static BootstrapIntervals intervals(ModelProvider provider, long seed) {
+        List<DataPoint> points = line();
+        BootstrapEngine engine = new BootstrapEngine(ForkJoinPool.commonPool(), 1000, seed, 0.95);
+        List<BootstrapIntervals> result = engine.run(points, DataSummary.of(points), List.of(provider),
+                List.of(new LinearFunction().approximate(points)));
+        assertEquals(1, result.size());
+        return result.get(0);
+    }
+
+    /** Стандартные ошибки по повторам близки к аналитическим для гомоскедастичного шума. */
+    @Test
+    void standardErrorsMatchAnalytic() {
+        SimpleRegression regression = new SimpleRegression();
+        for (DataPoint p : line()) {
+            regression.addData(p.getX(), p.getY());
+        }
+        for (ModelProvider provider : List.of(new LinearFunction.Provider(), new RefitProvider())) {
+            BootstrapIntervals intervals = intervals(provider, 1);
+            assertEquals(regression.getInterceptStdErr(), intervals.getStandardError(0),
+                    0.15 * regression.getInterceptStdErr(), "свободный член");
+            assertEquals(regression.getSlopeStdErr(), intervals.getStandardError(1),
+                    0.15 * regression.getSlopeStdErr(), "наклон");
+            assertTrue(intervals.getLower(1) < regression.getSlope() && regression.getSlope() < intervals.getUpper(1));
+        }
+    }
+
+    /** Каждый пакет получает свой поток случайных чисел заранее, поэтому порядок выполнения не важен. */
+    @Test
+    void sameSeedGivesSameIntervals() {
+        BootstrapIntervals first = intervals(new LinearFunction.Provider(), 7);
+        BootstrapIntervals second = intervals(new LinearFunction.Provider(), 7);
+        for (int k = 0; k < first.getCoefficientCount(); k++) {
+            assertEquals(first.getLower(k), second.getLower(k));
+            assertEquals(first.getUpper(k), second.getUpper(k));
+        }
+    }
+
+    @Test
+    void cancellationStopsRun() {
+        List<DataPoint> points = line();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void progress(double done) {
+                cancelled.set(true);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.get();
+            }
+        };
+        BootstrapEngine engine = new BootstrapEngine(ForkJoinPool.commonPool(), 2000, 1, 0.95);
+        assertThrows(CancellationException.class, () -> engine.run(points, DataSummary.of(points),
+                List.of(new RefitProvider()), List.of(new LinearFunction().approximate(points)), monitor));
+    }
+
+    @Test
+    void referenceCurveGetsNoIntervals() {
+        List<DataPoint> points = line();
+        List<BootstrapIntervals> result = new BootstrapEngine(ForkJoinPool.commonPool(), 100, 1, 0.95)
+                .run(points, DataSummary.of(points),
+                        List.of(new LinearFunction.Provider(), new LoessFunction.Provider()),
+                        List.of(new LinearFunction().approximate(points), new LoessFunction().approximate(points)));
+        assertEquals(1, result.size());
+        assertEquals(new LinearFunction().getName(), result.get(0).getModelName());
+    }
+}
@@ -0,0 +1,72 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.stat.correlation.KendallsCorrelation;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorrelationTest {
+    /** Несколько частей параллельного прохода, отрицательные значения и много повторов. */
+    @Test
+    void matchesCommonsMathWithTies() {
+        Random random = new Random(3);
+        int n = 150_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.round(random.nextGaussian() * 50) / 10.0;
+            y[i] = Math.round((x[i] * x[i] * x[i] - x[i] + random.nextGaussian() * 20)) / 4.0;
+        }
+        Correlation correlation = Correlation.of(x, y, n);
+        assertEquals(new PearsonsCorrelation().correlation(x, y), correlation.getPearson(), 1e-12, "Пирсон");
+        assertEquals(new SpearmansCorrelation().correlation(x, y), correlation.getSpearman(), 1e-12, "Спирмен");
+        assertEquals(new KendallsCorrelation().correlation(x, y), correlation.getKendallTau(), 1e-12, "Кендалл");
+    }
+
+    /** x - отметки времени в миллисекундах: формула n·Σxy - Σx·Σy здесь теряет все знаки. */
+    @Test
+    void pearsonKeepsPrecisionForLargeOffset() {
+        Random random = new Random(5);
+        List<DataPoint> points = new ArrayList<>();
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1.7e12 + i;
+            y[i] = 0.3 * i + random.nextGaussian() * 40;
+            points.add(new DataPoint(x[i], y[i]));
+        }
+        double expected = new PearsonsCorrelation().correlation(x, y);
+        assertEquals(expected, Correlation.pearson(points), 1e-9);
+        assertEquals(expected, Correlation.of(points).getPearson(), 1e-9);
+    }
+
+    @Test
+    void onlyFirstCountElementsAreUsed() {
+        double[] x = {1, 2, 3, 4, 5, 100, -100};
+        double[] y = {2, 1, 4, 3, 5, -100, 100};
+        Correlation correlation = Correlation.of(x, y, 5);
+        double[] xs = Arrays.copyOf(x, 5);
+        double[] ys = Arrays.copyOf(y, 5);
+        assertEquals(5, correlation.getCount());
+        assertEquals(new PearsonsCorrelation().correlation(xs, ys), correlation.getPearson(), 1e-12);
+        assertEquals(new KendallsCorrelation().correlation(xs, ys), correlation.getKendallTau(), 1e-12);
+        assertEquals(-100.0, x[6], "массив не изменяется");
+    }
+
+    @Test
+    void tooFewPointsGiveNaN() {
+        Correlation correlation = Correlation.of(new double[]{1}, new double[]{2}, 1);
+        assertTrue(Double.isNaN(correlation.getPearson()));
+        assertTrue(Double.isNaN(correlation.getSpearman()));
+        assertTrue(Double.isNaN(correlation.getKendallTau()));
+    }
+}
@@ -0,0 +1,112 @@
+package ru.ifmo.cs.service;
+
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.functions.CubicFunction;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.LoessFunction;
+import ru.ifmo.cs.model.functions.ModelProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrossValidatorTest {
+    private static final double NOISE = 0.23;
+
+    private static List<DataPoint> line(double offset) {
+        Random random = new Random(42);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double x = i * 0.01;
+            points.add(new DataPoint(x, offset + 2 * x + NOISE * random.nextGaussian()));
+        }
+        return points;
+    }
+
+    private static double[] scores(List<DataPoint> points) {
+        CrossValidator validator = new CrossValidator(ForkJoinPool.commonPool(), 10, 7);
+        List<ModelProvider> providers = List.of(new LinearFunction.Provider(), new CubicFunction.Provider());
+        return validator.scoreAll(points, DataSummary.of(points), providers);
+    }
+
+    @Test
+    void scoreDoesNotDependOnOffsetOfY() {
+        double[] reference = scores(line(0));
+        for (double offset : new double[]{1e6, 1e8}) {
+            double[] shifted = scores(line(offset));
+            for (int m = 0; m < reference.length; m++) {
+                assertEquals(reference[m], shifted[m], 1e-3 * reference[m], "смещение " + offset + ", модель " + m);
+            }
+        }
+    }
+
+    @Test
+    void scoreIsNotBelowTrainingErrorForOffsetData() {
+        List<DataPoint> points = line(1e6);
+        double training = new LinearFunction().approximate(points).getStandardDeviation();
+        double score = scores(points)[0];
+        // Ошибка на контрольных частях не меньше обучающей и близка к уровню шума
+        assertTrue(score >= training, score + " < " + training);
+        assertEquals(NOISE, score, 0.1 * NOISE);
+    }
+
+    @Test
+    void scoreMatchesExplicitRefitOnEachFold() {
+        List<DataPoint> points = line(1e8);
+        int folds = 5;
+        CrossValidator validator = new CrossValidator(ForkJoinPool.commonPool(), folds, 3);
+        double score = validator.score(points, DataSummary.of(points), new LinearFunction.Provider());
+
+        // Те же части (то же перемешивание, что в CrossValidator), но каждая модель строится заново
+        int[] assignment = new int[points.size()];
+        for (int i = 0; i < assignment.length; i++) {
+            assignment[i] = i % folds;
+        }
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = assignment.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = assignment[i];
+            assignment[i] = assignment[j];
+            assignment[j] = tmp;
+        }
+        double sse = 0;
+        for (int f = 0; f < folds; f++) {
+            List<DataPoint> train = new ArrayList<>();
+            for (int i = 0; i < points.size(); i++) {
+                if (assignment[i] != f) {
+                    train.add(points.get(i));
+                }
+            }
+            LinearFunction fit = new LinearFunction();
+            fit.approximate(train);
+            for (int i = 0; i < points.size(); i++) {
+                if (assignment[i] == f) {
+                    double e = points.get(i).getY() - fit.calculate(points.get(i).getX());
+                    sse += e * e;
+                }
+            }
+        }
+        assertEquals(Math.sqrt(sse / points.size()), score, 1e-6);
+    }
+
+    @Test
+    void referenceCurveIsNotScored() {
+        List<DataPoint> points = line(0);
+        List<ModelProvider> providers = List.of(new LinearFunction.Provider(), new LoessFunction.Provider());
+        List<FunctionApproximation> functions = List.of(
+                new LinearFunction().approximate(points), new LoessFunction().approximate(points));
+        double[] scores = new CrossValidator(ForkJoinPool.commonPool(), 10, 7)
+                .scoreAll(points, DataSummary.of(points), providers, functions);
+        assertFalse(Double.isNaN(scores[0]));
+        assertTrue(Double.isNaN(scores[1]));
+    }
+}
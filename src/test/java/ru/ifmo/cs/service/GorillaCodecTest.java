@@ -0,0 +1,105 @@
+package ru.ifmo.cs.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.ifmo.cs.model.PointColumns;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaCodecTest {
+    @TempDir
+    Path directory;
+
+    private static void assertSameBits(double expected, double actual, String message) {
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual), message);
+    }
+
+    /** Сжатие без потерь: совпадают все биты, включая -0.0, NaN, бесконечности и субнормальные числа. */
+    @Test
+    void roundTripIsBitExact() {
+        Random random = new Random(1);
+        int n = 1000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] w = new double[n];
+        double[] special = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, -1e-310};
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = i < special.length ? special[i] : random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+            w[i] = i % 3 == 0 ? 1.0 : random.nextDouble();
+        }
+        GorillaCodec.Block block = GorillaCodec.decode(GorillaCodec.encode(x, y, w, n));
+        assertEquals(n, block.size());
+        for (int i = 0; i < n; i++) {
+            assertSameBits(x[i], block.x(i), "x[" + i + "]");
+            assertSameBits(y[i], block.y(i), "y[" + i + "]");
+            assertSameBits(w[i], block.weight(i), "w[" + i + "]");
+        }
+    }
+
+    /** Целые x с переменным шагом и отрицательными разностями; -0.0 не считается целым. */
+    @Test
+    void integerAbscissasRoundTrip() {
+        double[] x = {1.7e12, 1.7e12 + 1000, 1.7e12 + 2000, 1.7e12 + 2999, 5, -3e15, 0, 1L << 52};
+        double[] y = new double[x.length];
+        GorillaCodec.Block block = GorillaCodec.decode(GorillaCodec.encode(x, y, null, x.length));
+        for (int i = 0; i < x.length; i++) {
+            assertSameBits(x[i], block.x(i), "x[" + i + "]");
+            assertEquals(1.0, block.weight(i));
+        }
+
+        double[] negativeZero = {1, 2, -0.0};
+        block = GorillaCodec.decode(GorillaCodec.encode(negativeZero, new double[3], null, 3));
+        assertSameBits(-0.0, block.x(2), "-0.0");
+    }
+
+    /** Отметки времени с постоянным шагом и повторяющиеся y - единицы бит на точку. */
+    @Test
+    void smoothSeriesIsCompressed() {
+        int n = 10_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 1.7e12 + 60_000.0 * i;
+            y[i] = 20 + (i / 50) * 0.5;
+        }
+        byte[] encoded = GorillaCodec.encode(x, y, null, n);
+        assertTrue(encoded.length * 8.0 / n < 4, "бит на точку: " + encoded.length * 8.0 / n);
+    }
+
+    /** Хранилище из нескольких блоков, включая открытый, сохраняется в файл и читается без потерь. */
+    @Test
+    void storeRoundTripsThroughFile() throws IOException {
+        Random random = new Random(2);
+        int n = GorillaPointStore.BLOCK_POINTS * 2 + 123;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        GorillaPointStore store = new GorillaPointStore();
+        for (int i = 0; i < n; i++) {
+            x[i] = 1.7e12 + 1000.0 * i;
+            y[i] = Math.sin(i * 1e-3) + 0.01 * random.nextGaussian();
+            store.add(x[i], y[i], 1.0);
+        }
+        assertEquals(3, store.getSegmentCount());
+        Path file = directory.resolve("points" + GorillaPointStore.EXTENSION);
+        store.writeTo(file);
+
+        GorillaPointStore restored = GorillaPointStore.read(file);
+        assertEquals(n, restored.getCount());
+        int i = 0;
+        for (int s = 0; s < restored.getSegmentCount(); s++) {
+            PointColumns segment = restored.segment(s);
+            for (int j = 0; j < segment.size(); j++, i++) {
+                assertSameBits(x[i], segment.x(j), "x[" + i + "]");
+                assertSameBits(y[i], segment.y(j), "y[" + i + "]");
+            }
+        }
+        assertEquals(n, i);
+    }
+}
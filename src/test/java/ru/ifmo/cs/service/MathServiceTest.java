@@ -0,0 +1,115 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.functions.CubicFunction;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.QuadraticFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MathServiceTest {
+    // Отметки времени в секундах с шагом в минуту
+    private static final double START = 1.7e9;
+    private static final double STEP = 60;
+    private static final int COUNT = 500;
+
+    private static List<DataPoint> timestamps(double a0, double a1, double a2, double a3) {
+        Random random = new Random(5);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            double t = i / (double) COUNT;
+            double y = a0 + a1 * t + a2 * t * t + a3 * t * t * t + 0.01 * random.nextGaussian();
+            points.add(new DataPoint(START + i * STEP, y));
+        }
+        return points;
+    }
+
+    @Test
+    void linearFitOnTimestampsMatchesSimpleRegression() {
+        List<DataPoint> points = timestamps(1e5, 3, 0, 0);
+        SimpleRegression reference = new SimpleRegression();
+        for (DataPoint p : points) {
+            reference.addData(p.getX(), p.getY());
+        }
+        LinearFunction linear = new LinearFunction();
+        linear.approximate(points);
+        LeastSquaresFit fit = linear.getLeastSquaresFit();
+
+        assertEquals(reference.getSlope(), fit.getCoefficients()[1], 1e-9 * Math.abs(reference.getSlope()));
+        assertEquals(reference.getSlopeStdErr(), fit.getStandardErrors()[1], 1e-6 * reference.getSlopeStdErr());
+        assertEquals(Math.sqrt(reference.getMeanSquareError()), Math.sqrt(fit.getResidualVariance()), 1e-9);
+        for (DataPoint p : points) {
+            assertEquals(reference.predict(p.getX()), linear.calculate(p.getX()), 1e-8);
+        }
+    }
+
+    @Test
+    void cubicFitOnTimestampsMatchesReferenceOnShiftedX() {
+        List<DataPoint> points = timestamps(2, -1, 4, -3);
+        // Эталон строится по сдвинутым x, где нормальные уравнения commons-math обусловлены нормально
+        WeightedObservedPoints shifted = new WeightedObservedPoints();
+        for (DataPoint p : points) {
+            shifted.add((p.getX() - START) / STEP / COUNT, p.getY());
+        }
+        double[] c = PolynomialCurveFitter.create(3).fit(shifted.toList());
+
+        CubicFunction cubic = new CubicFunction();
+        cubic.approximate(points);
+        for (DataPoint p : points) {
+            double t = (p.getX() - START) / STEP / COUNT;
+            double expected = c[0] + c[1] * t + c[2] * t * t + c[3] * t * t * t;
+            assertEquals(expected, cubic.calculate(p.getX()), 1e-7);
+        }
+        assertEquals(0.01, cubic.getStandardDeviation(), 0.002);
+    }
+
+    @Test
+    void leveragesSumToCoefficientCount() {
+        List<DataPoint> points = timestamps(0, 1, 1, 1);
+        CubicFunction cubic = new CubicFunction();
+        cubic.approximate(points);
+        LeastSquaresFit fit = cubic.getLeastSquaresFit();
+        double sum = 0;
+        for (DataPoint p : points) {
+            sum += fit.leverage(p.getX(), p.getWeight());
+        }
+        assertEquals(4, sum, 1e-9);
+    }
+
+    /** Повторяющиеся x: вырожденная модель не вычисляется, остальные строятся, расчёт не прерывается. */
+    @Test
+    void repeatedAbscissasLeaveOnlyDegenerateModelsUncomputed() {
+        List<DataPoint> threeValues = new ArrayList<>();
+        for (double x : new double[]{1, 1, 2, 2, 3, 3}) {
+            threeValues.add(new DataPoint(x, x * x + (threeValues.size() % 2) * 0.1));
+        }
+        CubicFunction cubic = new CubicFunction();
+        cubic.approximate(threeValues);
+        assertTrue(Double.isNaN(cubic.calculate(2)));
+        assertNull(cubic.getLeastSquaresFit());
+        QuadraticFunction quadratic = new QuadraticFunction();
+        quadratic.approximate(threeValues);
+        assertEquals(4.05, quadratic.calculate(2), 1e-9);
+
+        RegressionResult result = RegressionService.getDefault().calculateAll(threeValues);
+        assertNotNull(result.getBestFunction());
+        assertTrue(result.getAllFunctions().stream().anyMatch(f -> Double.isNaN(f.getStandardDeviation())));
+
+        List<DataPoint> oneValue = List.of(new DataPoint(5, 1), new DataPoint(5, 2));
+        LinearFunction line = new LinearFunction();
+        line.approximate(oneValue);
+        assertTrue(Double.isNaN(line.getStandardDeviation()));
+        RegressionService.getDefault().calculateAll(oneValue);
+    }
+}
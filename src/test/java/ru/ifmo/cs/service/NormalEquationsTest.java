@@ -0,0 +1,94 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NormalEquationsTest {
+    @Test
+    void solveMatchesCommonsMathCholesky() {
+        Random random = new Random(50);
+        int d = 5;
+        double[][] b = new double[d][d];
+        for (double[] row : b) {
+            for (int j = 0; j < d; j++) {
+                row[j] = random.nextGaussian();
+            }
+        }
+        RealMatrix root = new Array2DRowRealMatrix(b);
+        RealMatrix spd = root.multiply(root.transpose()).add(MatrixUtils.createRealIdentityMatrix(d));
+        double[] rhs = random.doubles(d).toArray();
+
+        double[] a = new double[d * d];
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j < d; j++) {
+                a[i * d + j] = spd.getEntry(i, j);
+            }
+        }
+        assertEquals(d, NormalEquations.factor(a, d, 1e-13, 0));
+        double[] x = rhs.clone();
+        NormalEquations.solve(a, d, d, x, x);
+
+        double[] expected = new CholeskyDecomposition(spd).getSolver().solve(new ArrayRealVector(rhs)).toArray();
+        for (int i = 0; i < d; i++) {
+            assertEquals(expected[i], x[i], 1e-10, "x[" + i + "]");
+        }
+    }
+
+    /** Вырожденная матрица Ганкеля разлагается до ранга; ведущий блок даёт многочлен меньшей степени. */
+    @Test
+    void rankDeficientHankelKeepsLeadingBlock() {
+        // Две различные точки t = ±1: многочлен второй степени не определён, прямая - да
+        double[] moments = {2, 0, 2, 0, 2};
+        double[] factor = new double[9];
+        NormalEquations.hankel(moments, 3, factor);
+        int rank = NormalEquations.factor(factor, 3, 1e-10, 0);
+        assertEquals(2, rank);
+
+        double[] beta = new double[rank];
+        NormalEquations.solve(factor, 3, rank, new double[]{4, 2, 0}, beta);
+        assertEquals(2, beta[0], 1e-12);
+        assertEquals(1, beta[1], 1e-12);
+    }
+
+    /** Уравнения, собранные из префиксных сумм по отрезку, дают тот же многочлен, что и МНК по его точкам. */
+    @Test
+    void prefixSumsAssembleSegmentEquations() {
+        Random random = new Random(51);
+        int n = 200;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] w = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i * 0.1;
+            y[i] = 3 - x[i] + 0.2 * x[i] * x[i] + random.nextGaussian();
+            w[i] = 0.5 + random.nextDouble();
+        }
+        int from = 40;
+        int to = 130;
+        NormalEquations.PrefixSums sums = new NormalEquations.PrefixSums(x, y, w, n, 2, 0, 1, 0);
+        double[] gram = new double[9];
+        double[] beta = new double[3];
+        sums.assemble(from, to, gram, beta);
+        assertEquals(3, NormalEquations.factor(gram, 3, 0, 1e-12 * sums.power(0, from, to)));
+        NormalEquations.solve(gram, 3, 3, beta, beta);
+
+        WeightedObservedPoints observations = new WeightedObservedPoints();
+        for (int i = from; i < to; i++) {
+            observations.add(w[i], x[i], y[i]);
+        }
+        double[] expected = PolynomialCurveFitter.create(2).fit(observations.toList());
+        for (int k = 0; k < 3; k++) {
+            assertEquals(expected[k], beta[k], 1e-8, "коэффициент " + k);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
+import org.apache.commons.math3.fitting.PolynomialCurveFitter;
+import org.apache.commons.math3.fitting.WeightedObservedPoints;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrthogonalPolynomialFitTest {
+    private static final int N = 60;
+
+    private static double[] xs() {
+        double[] x = new double[N];
+        for (int i = 0; i < N; i++) {
+            x[i] = -3 + 6.0 * i / (N - 1);
+        }
+        return x;
+    }
+
+    private static double[] cubic(double[] x, long seed) {
+        Random random = new Random(seed);
+        double[] y = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            y[i] = 1 - 2 * x[i] + 0.5 * x[i] * x[i] + 0.3 * x[i] * x[i] * x[i] + 0.2 * random.nextGaussian();
+        }
+        return y;
+    }
+
+    @Test
+    void everyDegreeMatchesLeastSquares() {
+        double[] x = xs();
+        double[] y = cubic(x, 1);
+        double[] w = new double[N];
+        for (int i = 0; i < N; i++) {
+            w[i] = 1 + i % 4;
+        }
+        OrthogonalPolynomialFit fit = OrthogonalPolynomialFit.fit(x, y, w, 5);
+        WeightedObservedPoints observed = new WeightedObservedPoints();
+        for (int i = 0; i < N; i++) {
+            observed.add(w[i], x[i], y[i]);
+        }
+        for (int degree = 0; degree <= 5; degree++) {
+            double[] expected = PolynomialCurveFitter.create(degree).fit(observed.toList());
+            assertArrayEquals(expected, fit.monomialCoefficients(degree), 1e-8, "степень " + degree);
+            PolynomialFunction polynomial = new PolynomialFunction(expected);
+            double sse = 0;
+            for (int i = 0; i < N; i++) {
+                assertEquals(polynomial.value(x[i]), fit.evaluate(degree, x[i]), 1e-9, "Кленшоу, степень " + degree);
+                double residual = y[i] - polynomial.value(x[i]);
+                sse += w[i] * residual * residual;
+            }
+            assertEquals(sse, fit.getSse(degree), 1e-9 * sse, "SSE, степень " + degree);
+        }
+    }
+
+    /** PRESS через h_ii совпадает с явным исключением каждой точки. */
+    @Test
+    void pressMatchesLeaveOneOut() {
+        double[] x = xs();
+        double[] y = cubic(x, 2);
+        OrthogonalPolynomialFit fit = OrthogonalPolynomialFit.fit(x, y, 3);
+        for (int degree = 1; degree <= 3; degree++) {
+            double press = 0;
+            for (int out = 0; out < N; out++) {
+                WeightedObservedPoints observed = new WeightedObservedPoints();
+                for (int i = 0; i < N; i++) {
+                    if (i != out) {
+                        observed.add(x[i], y[i]);
+                    }
+                }
+                PolynomialFunction polynomial = new PolynomialFunction(
+                        PolynomialCurveFitter.create(degree).fit(observed.toList()));
+                double residual = y[out] - polynomial.value(x[out]);
+                press += residual * residual;
+            }
+            assertEquals(press, fit.getPress(degree), 1e-8 * press, "степень " + degree);
+        }
+    }
+
+    @Test
+    void criteriaSelectTrueDegree() {
+        double[] x = xs();
+        double[] y = cubic(x, 3);
+        OrthogonalPolynomialFit fit = OrthogonalPolynomialFit.fit(x, y, 8);
+        assertEquals(3, fit.selectDegree(OrthogonalPolynomialFit.Criterion.BIC));
+        assertEquals(3, fit.selectDegree(OrthogonalPolynomialFit.Criterion.CROSS_VALIDATION));
+    }
+
+    /** Степень ограничена числом различных x: три значения x допускают не более чем квадратичный многочлен. */
+    @Test
+    void degreeIsLimitedByDistinctAbscissas() {
+        double[] x = {1, 1, 2, 2, 3, 3, 1, 2, 3};
+        double[] y = new double[x.length];
+        Arrays.setAll(y, i -> x[i] * x[i] + (i % 2) * 0.1);
+        OrthogonalPolynomialFit fit = OrthogonalPolynomialFit.fit(x, y, 6);
+        assertEquals(2, fit.getMaxDegree());
+    }
+}
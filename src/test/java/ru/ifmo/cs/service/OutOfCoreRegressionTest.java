@@ -0,0 +1,90 @@
+package ru.ifmo.cs.service;
+
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutOfCoreRegressionTest {
+
+    @Test
+    void poissonBootstrapIntervalsMatchAnalyticStandardError() throws IOException {
+        Random random = new Random(8);
+        SimpleRegression reference = new SimpleRegression();
+        try (OffHeapPointStore store = new OffHeapPointStore()) {
+            for (int i = 0; i < 20000; i++) {
+                double x = i * 0.0005;
+                double y = 1 + 2 * x + 0.5 * random.nextGaussian();
+                store.add(x, y, 1);
+                reference.addData(x, y);
+            }
+            OutOfCoreRegression regression = new OutOfCoreRegression(ModelRegistry.getDefault());
+            StreamedFit linear = find(regression.fitAll(store, new BootstrapEngine(400)), "Линейная");
+            BootstrapIntervals intervals = linear.getCoefficientIntervals();
+            assertNotNull(intervals);
+
+            assertTrue(intervals.getLower(1) < 2 && 2 < intervals.getUpper(1));
+            assertEquals(reference.getSlopeStdErr(), intervals.getStandardError(1), 0.2 * reference.getSlopeStdErr());
+            assertEquals(reference.getInterceptStdErr(), intervals.getStandardError(0),
+                    0.2 * reference.getInterceptStdErr());
+
+            // Без бутстрепа интервалов нет, а коэффициенты те же
+            StreamedFit plain = find(regression.fitAll(store), "Линейная");
+            assertNull(plain.getCoefficientIntervals());
+            assertEquals(plain.getCoefficientVector().get(1), linear.getCoefficientVector().get(1), 0);
+        }
+    }
+
+    @Test
+    void progressCoversAllPassesAndCancellationStopsReading() {
+        GorillaPointStore store = new GorillaPointStore();
+        for (int i = 0; i < 100_000; i++) {
+            store.add(i, 3 + 0.5 * i, 1);
+        }
+        OutOfCoreRegression regression = new OutOfCoreRegression(ModelRegistry.getDefault());
+        List<Double> reported = new ArrayList<>();
+        regression.fitAll(store, new BootstrapEngine(20), new ProgressMonitor() {
+            @Override
+            public synchronized void progress(double done) {
+                reported.add(done);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        assertEquals(3 * store.getSegmentCount(), reported.size());
+        assertEquals(1.0, Collections.max(reported), 1e-12);
+
+        AtomicInteger segments = new AtomicInteger();
+        assertThrows(CancellationException.class, () -> regression.fitAll(store, null, new ProgressMonitor() {
+            @Override
+            public void progress(double done) {
+                segments.incrementAndGet();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return segments.get() > 0;
+            }
+        }));
+        assertTrue(segments.get() < 3 * store.getSegmentCount(), "прочитано сегментов: " + segments.get());
+    }
+
+    private static StreamedFit find(List<StreamedFit> fits, String name) {
+        return fits.stream().filter(f -> f.getName().equals(name)).findFirst().orElseThrow();
+    }
+}
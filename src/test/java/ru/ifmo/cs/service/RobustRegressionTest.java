@@ -0,0 +1,86 @@
+package ru.ifmo.cs.service;
+
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DoubleVector;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.ExponentialFunction;
+import ru.ifmo.cs.model.functions.FunctionApproximation;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.LogarithmicFunction;
+import ru.ifmo.cs.model.functions.PowerFunction;
+import ru.ifmo.cs.model.functions.RobustLoss;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobustRegressionTest {
+    /** Прямая 1 + 2x с шумом 0.1 и каждой десятой точкой, сдвинутой на +30. */
+    private static List<DataPoint> lineWithOutliers() {
+        Random random = new Random(31);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double x = 1 + i * 0.05;
+            double y = 1 + 2 * x + 0.1 * random.nextGaussian();
+            points.add(new DataPoint(x, i % 10 == 3 ? y + 30 : y));
+        }
+        return points;
+    }
+
+    @Test
+    void robustLossesRecoverLineDespiteOutliers() {
+        List<DataPoint> points = lineWithOutliers();
+        FunctionApproximation ordinary = new LinearFunction().approximate(points);
+        assertTrue(Math.abs(ordinary.calculate(1) - 3) > 1, "обычный МНК сдвигается выбросами");
+
+        for (RobustLoss loss : RobustLoss.values()) {
+            FunctionApproximation robust = new LinearFunction().approximateRobust(points, loss);
+            double tolerance = loss == RobustLoss.TUKEY ? 0.1 : 0.5;
+            assertEquals(3, robust.calculate(1), tolerance, loss + ": значение при x = 1");
+            assertEquals(21, robust.calculate(10), tolerance, loss + ": значение при x = 10");
+        }
+        // Биквадрат отбрасывает выбросы полностью, Хьюбер - только ослабляет
+        assertTrue(Math.abs(new LinearFunction().approximateRobust(points, RobustLoss.TUKEY).calculate(1) - 3)
+                < Math.abs(new LinearFunction().approximateRobust(points, RobustLoss.HUBER).calculate(1) - 3));
+    }
+
+    /** СКО робастной модели считается по исходным весам: одинаково для всех моделей, а не с весами IRLS. */
+    @Test
+    void robustMetricsUseOriginalWeights() {
+        List<DataPoint> points = lineWithOutliers();
+        for (RobustLoss loss : RobustLoss.values()) {
+            ApproximationResult robust = new LinearFunction().approximateRobust(points, loss);
+            DoubleVector errors = robust.getErrorVector();
+            double sse = 0;
+            for (int i = 0; i < errors.size(); i++) {
+                sse += errors.get(i) * errors.get(i);
+            }
+            assertEquals(Math.sqrt(sse / points.size()), robust.getStandardDeviation(), 1e-9, loss.toString());
+        }
+    }
+
+    /** Лучшая модель выбирается по общей шкале; модель, верная для большинства точек, выигрывает. */
+    @Test
+    void bestRobustModelIsChosenOnCommonScale() {
+        List<DataPoint> points = lineWithOutliers();
+        RegressionService service = new RegressionService(new ModelRegistry(List.of(
+                new LinearFunction.Provider(), new LogarithmicFunction.Provider(),
+                new ExponentialFunction.Provider(), new PowerFunction.Provider())));
+        String linear = new LinearFunction().getName();
+
+        for (RobustLoss loss : RobustLoss.values()) {
+            RegressionResult result = service.calculateAll(points, loss);
+            assertEquals(linear, result.getBestFunction().getName(), loss.toString());
+
+            Map<String, Double> scores = RegressionService.robustScores(points, result.getAllFunctions(), loss);
+            for (Map.Entry<String, Double> score : scores.entrySet()) {
+                assertTrue(scores.get(linear) <= score.getValue(), loss + ": " + score.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.ifmo.cs.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.ifmo.cs.model.ColumnEncoding;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.PersistentPoints;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionFileTest {
+    @TempDir
+    Path directory;
+
+    private static List<DataPoint> points() {
+        Random random = new Random(17);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            double x = i * 0.05;
+            points.add(new DataPoint(x, 3 * Math.exp(0.2 * x) + 0.1 * random.nextGaussian(), 1 + (i % 3)));
+        }
+        return points;
+    }
+
+    @Test
+    void sessionWithResultSurvivesRoundTrip() throws IOException {
+        PersistentPoints points = PersistentPoints.of(points(), ColumnEncoding.DOUBLE);
+        List<DataPoint> list = points.asList();
+        RegressionResult result = RegressionService.getDefault().calculateCrossValidated(list,
+                new CrossValidator(ForkJoinPool.commonPool(), 5, 1),
+                new BootstrapEngine(ForkJoinPool.commonPool(), 50, 2, 0.9));
+        List<SessionFile.Series> chart = List.of(
+                new SessionFile.Series("Точки", new double[]{1, 2, 3}, new double[]{4, 5, 6}));
+        Path file = directory.resolve("session" + SessionFile.EXTENSION);
+        SessionFile.write(file, new SessionFile.Session(points, result, "отчёт", chart, true, 7));
+
+        SessionFile.Session restored = SessionFile.read(file);
+        assertEquals(ColumnEncoding.DOUBLE, restored.getPoints().getEncoding());
+        assertEquals(points.size(), restored.getPoints().size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.x(i), restored.getPoints().x(i));
+            assertEquals(points.y(i), restored.getPoints().y(i));
+            assertEquals(points.weight(i), restored.getPoints().weight(i));
+        }
+        assertEquals("отчёт", restored.getResultsText());
+        assertEquals(1, restored.getChart().size());
+        assertEquals("Точки", restored.getChart().get(0).getName());
+        assertArrayEquals(new double[]{4, 5, 6}, restored.getChart().get(0).getY());
+        assertEquals(true, restored.isLiveMode());
+        assertEquals(7, restored.getSelectedIndex());
+
+        RegressionResult loaded = restored.getResult();
+        assertNotNull(loaded);
+        assertEquals(result.getBestFunction().getName(), loaded.getBestFunction().getName());
+        assertEquals(result.getAllFunctions().size(), loaded.getAllFunctions().size());
+        for (int f = 0; f < result.getAllFunctions().size(); f++) {
+            ApproximationResult expected = result.getAllFunctions().get(f);
+            ApproximationResult actual = loaded.getAllFunctions().get(f);
+            assertEquals(expected.getName(), actual.getName());
+            assertArrayEquals(expected.getCoefficientVector().toArray(), actual.getCoefficientVector().toArray());
+            assertEquals(expected.getStandardDeviation(), actual.getStandardDeviation());
+            assertEquals(expected.getRSquared(), actual.getRSquared());
+            // Восстановленная модель вычисляется по сохранённым коэффициентам, без пересчёта;
+            // для моделей без известной формулы (LOESS) значения не восстанавливаются
+            StoredFunction.Form form = StoredFunction.formOf(expected);
+            for (double x : new double[]{0.5, 5, 9.5}) {
+                if (form == StoredFunction.Form.UNKNOWN) {
+                    assertTrue(Double.isNaN(actual.calculate(x)), expected.getName());
+                    continue;
+                }
+                assertEquals(expected.calculate(x), actual.calculate(x), 1e-9 * (1 + Math.abs(expected.calculate(x))),
+                        expected.getName() + " в x = " + x);
+            }
+            LeastSquaresFit fit = expected.getLeastSquaresFit();
+            if (fit == null) {
+                assertNull(actual.getLeastSquaresFit());
+            } else {
+                assertArrayEquals(fit.getStandardErrors(), actual.getLeastSquaresFit().getStandardErrors(), 1e-12);
+                assertEquals(fit.getDegreesOfFreedom(), actual.getLeastSquaresFit().getDegreesOfFreedom());
+            }
+        }
+
+        assertEquals(result.getCorrelation().getPearson(), loaded.getCorrelation().getPearson());
+        assertEquals(result.getCorrelation().getKendallTau(), loaded.getCorrelation().getKendallTau());
+        assertEquals(result.getCrossValidationFolds(), loaded.getCrossValidationFolds());
+        assertEquals(result.getCrossValidationScores(), loaded.getCrossValidationScores());
+        assertEquals(result.getCoefficientIntervals().keySet(), loaded.getCoefficientIntervals().keySet());
+        for (Map.Entry<String, BootstrapIntervals> entry : result.getCoefficientIntervals().entrySet()) {
+            BootstrapIntervals expected = entry.getValue();
+            BootstrapIntervals actual = loaded.getCoefficientIntervals().get(entry.getKey());
+            assertEquals(expected.getReplicates(), actual.getReplicates());
+            assertEquals(expected.getConfidenceLevel(), actual.getConfidenceLevel());
+            for (int k = 0; k < expected.getCoefficientCount(); k++) {
+                assertEquals(expected.getLower(k), actual.getLower(k));
+                assertEquals(expected.getUpper(k), actual.getUpper(k));
+            }
+        }
+    }
+
+    @Test
+    void sessionWithoutResultKeepsCompactEncoding() throws IOException {
+        PersistentPoints points = PersistentPoints.of(points(), ColumnEncoding.SCALED16);
+        Path file = directory.resolve("compact" + SessionFile.EXTENSION);
+        SessionFile.write(file, new SessionFile.Session(points, null, "", List.of(), false, -1));
+
+        SessionFile.Session restored = SessionFile.read(file);
+        assertNull(restored.getResult());
+        assertEquals(ColumnEncoding.SCALED16, restored.getPoints().getEncoding());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.x(i), restored.getPoints().x(i));
+            assertEquals(points.y(i), restored.getPoints().y(i));
+        }
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        PersistentPoints points = PersistentPoints.of(points(), ColumnEncoding.DOUBLE);
+        Path file = directory.resolve("truncated" + SessionFile.EXTENSION);
+        SessionFile.write(file, new SessionFile.Session(points, null, "", List.of(), false, -1));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) / 2);
+        }
+        assertThrows(IOException.class, () -> SessionFile.read(file));
+    }
+}
@@ -0,0 +1,52 @@
+package ru.ifmo.cs.service;
+
+import org.junit.jupiter.api.Test;
+import ru.ifmo.cs.model.DataPoint;
+import ru.ifmo.cs.model.DataSummary;
+import ru.ifmo.cs.model.functions.ApproximationResult;
+import ru.ifmo.cs.model.functions.CubicFunction;
+import ru.ifmo.cs.model.functions.LinearFunction;
+import ru.ifmo.cs.model.functions.LoessFunction;
+import ru.ifmo.cs.model.functions.QuadraticFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SubsampleSelectorTest {
+    /** Опорная кривая не ранжируется и не занимает места кандидата, но строится по всем данным. */
+    @Test
+    void referenceCurveIsNotRanked() {
+        Random random = new Random(8);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            double x = i * 1e-3;
+            points.add(new DataPoint(x, 1 + 0.5 * x - 0.02 * x * x + 0.1 * random.nextGaussian()));
+        }
+        ModelRegistry registry = new ModelRegistry(List.of(new LinearFunction.Provider(),
+                new QuadraticFunction.Provider(), new CubicFunction.Provider(), new LoessFunction.Provider()));
+        SubsampleSelector selector = new SubsampleSelector(registry, ForkJoinPool.commonPool(), 1000, 16, 2, 1);
+        SubsampleSelector.Selection selection = selector.select(points, DataSummary.of(points));
+
+        String loess = new LoessFunction().getName();
+        ModelSelectionReport report = selection.getReport();
+        assertEquals(3, report.getEntries().size());
+        double wins = 0;
+        for (ModelSelectionReport.Entry entry : report.getEntries()) {
+            assertFalse(entry.getModelName().equals(loess));
+            wins += entry.getWinFraction();
+        }
+        assertEquals(1, wins, 1e-12, "каждая подвыборка выбирает одну из выбираемых моделей");
+
+        List<ApproximationResult> fitted = selection.getFittedCandidates();
+        assertEquals(3, fitted.size());
+        assertEquals(2, fitted.stream().filter(f -> !f.isReference()).count());
+        assertTrue(fitted.stream().anyMatch(f -> f.getName().equals(loess)));
+        assertFalse(report.getWinnerName().equals(loess));
+    }
+}